@@ -1,33 +1,45 @@
 package com.facebook.administrator.myanimated;
 
+import android.animation.ValueAnimator;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.util.Pools;
 import android.support.v7.app.AppCompatActivity;
+import android.util.DisplayMetrics;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
-import android.animation.ValueAnimator;
 
+import com.example.administrator.myanimated.BuildConfig;
 import com.example.administrator.myanimated.R;
 import com.facebook.bitmapFactory.ArtBitmapFactory;
 import com.facebook.bitmapFactory.EmptyJpegGenerator;
 import com.facebook.bitmapFactory.GingerbreadBitmapFactory;
 import com.facebook.bitmapFactory.HoneycombBitmapFactory;
 import com.facebook.bitmapFactory.PlatformBitmapFactory;
+import com.facebook.common.s.ByteConstants;
+import com.facebook.common.s.Closeables;
+import com.facebook.common.stream.PooledByteBufferOutputStream;
 import com.facebook.common.util.SDCardUtils;
 import com.facebook.executor.executorSupplier.DefaultExecutorSupplier;
+import com.facebook.executor.executorSupplier.ExecutorSupplier;
 import com.facebook.factoryAndProvider.AnimatedFactoryProvider;
 import com.facebook.factoryAndProvider.animatedFactory.AnimatedFactory;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.AnimatedDrawableFactory;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatedDrawable;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.AnimatedImageFactory;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.ProgressiveAnimatedImageDecoder;
+import com.facebook.image.CloseableAnimatedImage;
 import com.facebook.image.CloseableImage;
 import com.facebook.image.CloseableStaticBitmap;
 import com.facebook.image.EncodedImage;
 import com.facebook.image.imageDecode.DefaultImageDecoder;
 import com.facebook.image.imageDecode.ImageDecodeOptions;
 import com.facebook.image.imageDecode.ImageDecoder;
+import com.facebook.image.imageDecode.ResizeOptions;
+import com.facebook.image.imageFormat.DefaultImageFormats;
+import com.facebook.image.imageFormat.ImageFormat;
 import com.facebook.image.imageInfo.ImmutableQualityInfo;
 import com.facebook.imagepipeline.memory.PooledByteBuffer;
 import com.facebook.platformDecoder.ArtDecoder;
@@ -38,11 +50,13 @@ import com.facebook.pool.poolFactory.PoolConfig;
 import com.facebook.pool.poolFactory.PoolFactory;
 import com.facebook.pool.poolFactory.PooledByteBufferFactory;
 import com.facebook.references.CloseableReference;
+import com.facebook.references.SharedReference;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -94,6 +108,18 @@ public class MainActivity extends AppCompatActivity {
                 valueAnimator.start();
             }
         });
+        progressiveWebpButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                loadAnimatedImageProgressively("4.webp", DefaultImageFormats.WEBP_ANIMATED);
+            }
+        });
+        progressiveGifButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                loadAnimatedImageProgressively("5.gif", DefaultImageFormats.GIF);
+            }
+        });
     }
 
     Button pngButton;
@@ -101,6 +127,8 @@ public class MainActivity extends AppCompatActivity {
     Button staticWebpButton;
     Button dynamicWebpButton;
     Button gifButton;
+    Button progressiveWebpButton;
+    Button progressiveGifButton;
     ImageView imageView;
     private void initView(){
         pngButton=(Button)findViewById(R.id.setPng);
@@ -108,29 +136,44 @@ public class MainActivity extends AppCompatActivity {
         staticWebpButton=(Button)findViewById(R.id.setStaticWebp);
         dynamicWebpButton=(Button)findViewById(R.id.setDynamicWebp);
         gifButton=(Button)findViewById(R.id.setGif);
+        progressiveWebpButton=(Button)findViewById(R.id.setProgressiveWebp);
+        progressiveGifButton=(Button)findViewById(R.id.setProgressiveGif);
         imageView=(ImageView)findViewById(R.id.testImageView);
     }
 
     AnimatedDrawableFactory mAnimatedDrawableFactory;
+    AnimatedImageFactory mAnimatedImageFactory;
     ImageDecoder mImageDecoder;
     PooledByteBufferFactory pooledByteBufferFactory;
+    PoolFactory poolFactory;
+    ExecutorSupplier mExecutorSupplier;
     private void initFresco(){
-        PoolFactory poolFactory=new PoolFactory(PoolConfig.newBuilder().build());
+        //存活对象的全局map和对未关闭引用的跟踪只用于调试
+        SharedReference.setTrackLiveObjects(BuildConfig.DEBUG);
+        CloseableReference.setUseFinalizers(BuildConfig.DEBUG);
+        poolFactory=new PoolFactory(PoolConfig.newBuilder()
+                .setMappedFileMinSize(64 * ByteConstants.KB)
+                .build());
         PlatformDecoder mPlatformDecoder=buildPlatformDecoder(poolFactory,true);
         PlatformBitmapFactory mPlatformBitmapFactory=buildPlatformBitmapFactory(
                 poolFactory
                 ,mPlatformDecoder);
+        mExecutorSupplier=new DefaultExecutorSupplier(2);
         AnimatedFactory mAnimatedFactory= AnimatedFactoryProvider.getAnimatedFactory(
                 mPlatformBitmapFactory,
-                new DefaultExecutorSupplier(2) );
+                mExecutorSupplier);
+        mAnimatedImageFactory=mAnimatedFactory.getAnimatedImageFactory();
 
+        pooledByteBufferFactory=poolFactory.getPooledByteBufferFactory();
         mImageDecoder = new DefaultImageDecoder(
                 mAnimatedFactory.getAnimatedImageFactory(),
                 mPlatformDecoder,
-                Bitmap.Config.ARGB_8888);
+                Bitmap.Config.ARGB_8888,
+                null,
+                pooledByteBufferFactory,
+                poolFactory.getSmallByteArrayPool());
 
         mAnimatedDrawableFactory=mAnimatedFactory.getAnimatedDrawableFactory(this);
-        pooledByteBufferFactory=poolFactory.getPooledByteBufferFactory();
     }
 
     private CloseableImage initCloseableImage(String fileName){
@@ -149,10 +192,91 @@ public class MainActivity extends AppCompatActivity {
         }
         ref = CloseableReference.of(pooledByteBuffer);
         EncodedImage encodedImage=new EncodedImage(ref);
-        CloseableImage image=mImageDecoder.decode(encodedImage,encodedImage.getSize(),ImmutableQualityInfo.FULL_QUALITY, ImageDecodeOptions.newBuilder().build());
+        //静态图片不需要解码得比屏幕大
+        DisplayMetrics displayMetrics=getResources().getDisplayMetrics();
+        ImageDecodeOptions options=ImageDecodeOptions.newBuilder()
+                .setResizeOptions(new ResizeOptions(displayMetrics.widthPixels,displayMetrics.heightPixels))
+                .build();
+        CloseableImage image=mImageDecoder.decode(encodedImage,encodedImage.getSize(),ImmutableQualityInfo.FULL_QUALITY, options);
         return image;
     }
 
+    //每次读取的字节数，模拟从网络分段到达的数据
+    private static final int PROGRESSIVE_CHUNK_SIZE = 16 * ByteConstants.KB;
+
+    /**
+     * 渐进式的演示：模拟从网络分段到达的数据，一边读取一边解码动画，第一张中间图片创建drawable，
+     * 之后的图片通过{@link AnimatedDrawable#appendFrames}追加帧。
+     * 本地文件一次性加载时走上面的映射文件路径，不要用这个方法
+     */
+    private void loadAnimatedImageProgressively(final String fileName, final ImageFormat imageFormat){
+        //只在UI线程访问
+        final ProgressiveTarget target=new ProgressiveTarget();
+        mExecutorSupplier.forLocalStorageRead().execute(new Runnable() {
+            @Override
+            public void run() {
+                ProgressiveAnimatedImageDecoder decoder=new ProgressiveAnimatedImageDecoder(
+                        mAnimatedImageFactory,
+                        poolFactory.getNativeMemoryChunkPool(),
+                        poolFactory.getPooledByteStreams(),
+                        imageFormat,
+                        ImageDecodeOptions.defaults(),
+                        Bitmap.Config.ARGB_8888);
+                PooledByteBufferOutputStream outputStream=pooledByteBufferFactory.newOutputStream();
+                InputStream inputStream=null;
+                try {
+                    inputStream=new FileInputStream(
+                            SDCardUtils.getCacheDir(MainActivity.this)+"/"+fileName);
+                    byte[] chunk=new byte[PROGRESSIVE_CHUNK_SIZE];
+                    int read;
+                    while ((read=inputStream.read(chunk))!=-1){
+                        outputStream.write(chunk,0,read);
+                        showFrames(decoder.onNewData(outputStream),target);
+                    }
+                    showFrames(decoder.onLastData(outputStream),target);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    decoder.close();
+                    outputStream.close();
+                    Closeables.closeQuietly(inputStream);
+                }
+            }
+        });
+    }
+
+    /**
+     * 渐进式演示中正在显示的drawable和它当前使用的图片
+     */
+    private static class ProgressiveTarget {
+        AnimatedDrawable drawable;
+        CloseableImage image;
+    }
+
+    /**
+     * 每张中间图片都由这里关闭：它的帧交给drawable之后，前一张图片就不再需要了，
+     * 最后一张图片跟着drawable一直存在
+     */
+    private void showFrames(final CloseableImage closeableImage, final ProgressiveTarget target){
+        if (closeableImage==null)return;
+        imageView.post(new Runnable() {
+            @Override
+            public void run() {
+                if (target.drawable==null){
+                    target.drawable=(AnimatedDrawable)mAnimatedDrawableFactory.create(closeableImage);
+                    imageView.setImageDrawable(target.drawable);
+                    target.drawable.start();
+                }else {
+                    target.drawable.appendFrames(
+                            ((CloseableAnimatedImage)closeableImage).getImageResult());
+                    //缓存的帧已经被新的backend接管，旧的图片可以关闭了
+                    target.image.close();
+                }
+                target.image=closeableImage;
+            }
+        });
+    }
+
     public static PlatformBitmapFactory buildPlatformBitmapFactory(
             PoolFactory poolFactory,
             PlatformDecoder platformDecoder) {
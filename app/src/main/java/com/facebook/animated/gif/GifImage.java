@@ -67,11 +67,29 @@ public class GifImage implements AnimatedImage, AnimatedImageDecoder {
         return nativeCreateFromNativeMemory(nativePtr, sizeInBytes);
     }
 
+    /**
+     * Creates a {@link GifImage} from a direct buffer, such as a mapped file, without copying the
+     * data onto the java heap first. This will throw if it fails to create.
+     *
+     * @param source a direct buffer holding the data from 0 to its capacity (the native side
+     *     makes a copy)
+     */
+    public static GifImage create(ByteBuffer source) {
+        ensure();
+        Preconditions.checkArgument(source.isDirect());
+        return nativeCreateFromDirectByteBuffer(source);
+    }
+
     @Override
     public AnimatedImage decode(long nativePtr, int sizeInBytes) {
         return GifImage.create(nativePtr, sizeInBytes);
     }
 
+    @Override
+    public AnimatedImage decode(ByteBuffer byteBuffer) {
+        return GifImage.create(byteBuffer);
+    }
+
     @DoNotStrip
     public GifImage() {
     }
@@ -77,11 +77,29 @@ public class WebPImage implements AnimatedImage, AnimatedImageDecoder {
         return nativeCreateFromNativeMemory(nativePtr, sizeInBytes);
     }
 
+    /**
+     * Creates a {@link WebPImage} from a direct buffer, such as a mapped file, without copying the
+     * data onto the java heap first. This will throw if it fails to create.
+     *
+     * @param source a direct buffer holding the data from 0 to its capacity (the native side
+     *     makes a copy)
+     */
+    public static WebPImage create(ByteBuffer source) {
+        StaticWebpNativeLoader.ensure();
+        Preconditions.checkArgument(source.isDirect());
+        return nativeCreateFromDirectByteBuffer(source);
+    }
+
     @Override
     public AnimatedImage decode(long nativePtr, int sizeInBytes) {
         return WebPImage.create(nativePtr, sizeInBytes);
     }
 
+    @Override
+    public AnimatedImage decode(ByteBuffer byteBuffer) {
+        return WebPImage.create(byteBuffer);
+    }
+
     @Override
     public int getWidth() {
         return nativeGetWidth();
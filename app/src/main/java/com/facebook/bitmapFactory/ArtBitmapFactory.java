@@ -8,8 +8,6 @@ import android.annotation.TargetApi;
 import android.graphics.Bitmap;
 import android.os.Build;
 
-import com.facebook.common.util.BitmapUtil;
-import com.facebook.imagepipeline.nativecode.Bitmaps;
 import com.facebook.pool.BitmapPool;
 import com.facebook.references.CloseableReference;
 
@@ -43,9 +41,7 @@ public class ArtBitmapFactory extends PlatformBitmapFactory {
             int width,
             int height,
             Bitmap.Config bitmapConfig) {
-        int sizeInBytes = BitmapUtil.getSizeInByteForBitmap(width, height, bitmapConfig);
-        Bitmap bitmap = mBitmapPool.get(sizeInBytes);
-        Bitmaps.reconfigureBitmap(bitmap, width, height, bitmapConfig);
+        Bitmap bitmap = mBitmapPool.get(width, height, bitmapConfig);
         return CloseableReference.of(bitmap, mBitmapPool);
     }
 }
@@ -10,11 +10,20 @@ import com.facebook.common.s.Preconditions;
 import com.facebook.imagepipeline.memory.PooledByteBuffer;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * An InputStream implementation over a {@link PooledByteBuffer} instance
+ * <p>
+ * 如果可能的话，通过{@link PooledByteBuffer#getByteBuffer()}读取，这样每次读都不需要JNI调用。
+ * 视图不持有内存，buffer关闭后它的内存会回到池子里给别人用，所以每次读视图都持有buffer的锁并检查它没有关闭
+ * Reads through {@link PooledByteBuffer#getByteBuffer()} where views are supported, so reads
+ * don't call into JNI each time. The view doesn't own the memory, which goes back to the pool
+ * once the buffer is closed, so every read of the view holds the buffer's lock and checks that
+ * the buffer isn't closed.
  */
 @NotThreadSafe
 public class PooledByteBufferInputStream extends InputStream {
@@ -22,6 +31,9 @@ public class PooledByteBufferInputStream extends InputStream {
     @VisibleForTesting
     final PooledByteBuffer mPooledByteBuffer;
 
+    @Nullable
+    private final ByteBuffer mByteBuffer; // view of the buffer or null to read through it
+
     @VisibleForTesting
     int mOffset; // current offset in the chunk
     @VisibleForTesting
@@ -35,6 +47,7 @@ public class PooledByteBufferInputStream extends InputStream {
         super();
         Preconditions.checkArgument(!pooledByteBuffer.isClosed());
         mPooledByteBuffer = Preconditions.checkNotNull(pooledByteBuffer);
+        mByteBuffer = pooledByteBuffer.getByteBuffer();
         mOffset = 0;
         mMark = 0;
     }
@@ -72,7 +85,17 @@ public class PooledByteBufferInputStream extends InputStream {
         if (available() <= 0) {
             return -1;
         }
-        return ((int) mPooledByteBuffer.read(mOffset++))  & 0xFF;
+        final byte b;
+        if (mByteBuffer != null) {
+            synchronized (mPooledByteBuffer) {
+                ensureNotClosed();
+                b = mByteBuffer.get(mOffset);
+            }
+        } else {
+            b = mPooledByteBuffer.read(mOffset);
+        }
+        mOffset++;
+        return ((int) b) & 0xFF;
     }
 
     @Override
@@ -107,7 +130,15 @@ public class PooledByteBufferInputStream extends InputStream {
         }
 
         int numToRead = Math.min(available, length);
-        mPooledByteBuffer.read(mOffset, buffer, offset, numToRead);
+        if (mByteBuffer != null) {
+            synchronized (mPooledByteBuffer) {
+                ensureNotClosed();
+                mByteBuffer.position(mOffset);
+                mByteBuffer.get(buffer, offset, numToRead);
+            }
+        } else {
+            mPooledByteBuffer.read(mOffset, buffer, offset, numToRead);
+        }
         mOffset += numToRead;
         return numToRead;
     }
@@ -134,4 +165,15 @@ public class PooledByteBufferInputStream extends InputStream {
         mOffset += skipped;
         return skipped;
     }
+
+    /**
+     * 视图只能在buffer的锁里读，关闭也持有同一个锁
+     * The view may only be read while holding the buffer's lock, which close() holds as well.
+     * @throws PooledByteBuffer.ClosedException if the buffer has been closed
+     */
+    private void ensureNotClosed() {
+        if (mPooledByteBuffer.isClosed()) {
+            throw new PooledByteBuffer.ClosedException();
+        }
+    }
 }
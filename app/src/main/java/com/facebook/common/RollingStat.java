@@ -5,57 +5,129 @@ package com.facebook.common;
  */
 
 import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import com.facebook.common.time.MonotonicClock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
 
 /**
  * 简单的类来跟踪一个滚动的统计效率。
  * Simple class to track a rolling stat efficiently.
+ * <p>
+ * The stat is kept as one counter per second over the last {@link #WINDOWS} seconds. Each counter
+ * is packed with the second it belongs to into one slot of an {@link AtomicLongArray} and updated
+ * with a compare-and-set, so the UI thread and the worker threads can report concurrently without
+ * locking or allocating. Besides sums, percentiles of the per-second counts can be read.
  */
+@ThreadSafe
 public class RollingStat {
 
     private static final int WINDOWS = 60;
 
-    private final short[] mStat;
+    private static final long COUNT_MASK = 0xffffffffL;
+
+    /**
+     * 每个槽的高32位是所属的秒，低32位是这一秒的计数
+     * Each slot holds the second it belongs to in the high 32 bits and its count in the low 32 bits.
+     */
+    private final AtomicLongArray mStat;
+
+    private final MonotonicClock mClock;
 
     public RollingStat() {
-        mStat = new short[WINDOWS];
+        this(new MonotonicClock() {
+            @Override
+            public long now() {
+                return SystemClock.uptimeMillis();
+            }
+        });
+    }
+
+    @VisibleForTesting
+    public RollingStat(MonotonicClock clock) {
+        mStat = new AtomicLongArray(WINDOWS);
+        mClock = clock;
     }
 
     public void incrementStats(int toAdd) {
-        long nowMs = SystemClock.uptimeMillis();
-        long nowSeconds = nowMs / 1000;
+        long nowSeconds = getNowSeconds();
         int statsIndex = (int) (nowSeconds % WINDOWS);
-        int marker = (int) ((nowSeconds / WINDOWS) & 0xff);
-
-        short bucketData = mStat[statsIndex];
-        int prevCount = bucketData & 0xff;
-        int prevMarker = (bucketData >> 8) & 0xff;
-
-        int newCount;
-        if (marker != prevMarker) {
-            newCount = toAdd;
-        } else {
-            newCount = prevCount + toAdd;
+        while (true) {
+            long bucketData = mStat.get(statsIndex);
+            long newCount = toAdd;
+            if ((bucketData >>> 32) == nowSeconds) {
+                newCount += bucketData & COUNT_MASK;
+            }
+            long newData = (nowSeconds << 32) | (newCount & COUNT_MASK);
+            if (mStat.compareAndSet(statsIndex, bucketData, newData)) {
+                return;
+            }
         }
-
-        int newData = (marker << 8) | newCount;
-        mStat[statsIndex] = (short) newData;
     }
 
+    /**
+     * 获取最近几秒（不包括当前这一秒）的总和
+     * Gets the sum over the previous seconds, not including the current one.
+     *
+     * @param previousSeconds the number of seconds, at most {@link #WINDOWS}
+     * @return the sum
+     */
     public int getSum(int previousSeconds) {
-        long nowMs = SystemClock.uptimeMillis();
-        long nowSeconds = nowMs / 1000;
-        int statsIndexStart = (int) ((nowSeconds - previousSeconds) % WINDOWS);
-        int currentMarker = (int) ((nowSeconds / WINDOWS) & 0xff);
-
+        long nowSeconds = getNowSeconds();
         int sum = 0;
-        for (int i = 0; i < previousSeconds; i++) {
-            short bucketData = mStat[(statsIndexStart + i) % WINDOWS];
-            int count = bucketData & 0xff;
-            int marker = (bucketData >> 8) & 0xff;
-            if (marker == currentMarker) {
-                sum += count;
-            }
+        for (int i = 1; i <= previousSeconds; i++) {
+            sum += getCount(nowSeconds - i);
         }
         return sum;
     }
+
+    /**
+     * 获取最近几秒（不包括当前这一秒）中每秒计数的百分位数
+     * Gets a percentile of the per-second counts over the previous seconds, not including the
+     * current one. Doesn't allocate.
+     *
+     * @param previousSeconds the number of seconds, at most {@link #WINDOWS}
+     * @param percentile the percentile between 0 and 100
+     * @return the count of the second at that percentile or 0 if {@code previousSeconds} is 0
+     */
+    public int getPercentile(int previousSeconds, double percentile) {
+        if (previousSeconds <= 0) {
+            return 0;
+        }
+        long nowSeconds = getNowSeconds();
+        int rank = (int) Math.ceil(previousSeconds * Math.max(0, Math.min(100, percentile)) / 100);
+        rank = Math.max(1, rank);
+        // Nearest-rank selection over at most 60 values, quadratic but allocation free.
+        for (int i = 1; i <= previousSeconds; i++) {
+            int candidate = getCount(nowSeconds - i);
+            int smaller = 0;
+            int equal = 0;
+            for (int j = 1; j <= previousSeconds; j++) {
+                int count = getCount(nowSeconds - j);
+                if (count < candidate) {
+                    smaller++;
+                } else if (count == candidate) {
+                    equal++;
+                }
+            }
+            if (smaller < rank && rank <= smaller + equal) {
+                return candidate;
+            }
+        }
+        // Only reached if counts changed while reading.
+        return getCount(nowSeconds - 1);
+    }
+
+    private long getNowSeconds() {
+        return (mClock.now() / 1000) & COUNT_MASK;
+    }
+
+    private int getCount(long second) {
+        second &= COUNT_MASK;
+        long bucketData = mStat.get((int) (second % WINDOWS));
+        return (bucketData >>> 32) == second ? (int) bucketData : 0;
+    }
 }
@@ -118,6 +118,30 @@ public class AnimatedDrawableUtil {
         }
     }
 
+    /**
+     * 检查bitmap中是否所有的像素都是不透明的
+     * Checks whether all the pixels of the bitmap are fully opaque.
+     *
+     * @param bitmap the bitmap to check
+     * @return whether the bitmap has no transparent or translucent pixels
+     */
+    public boolean isFullyOpaque(Bitmap bitmap) {
+        if (!bitmap.hasAlpha()) {
+            return true;
+        }
+        int width = bitmap.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if ((row[x] >>> 24) != 0xFF) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      *
      * Checks whether the specified frame number is outside the range inclusive of both start and end.
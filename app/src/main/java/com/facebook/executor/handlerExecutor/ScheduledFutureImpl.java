@@ -53,6 +53,8 @@ public class ScheduledFutureImpl<V> implements RunnableFuture<V>, ScheduledFutur
 
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
+        // Drop the pending message too, so a cancelled task doesn't wake up the handler thread.
+        mHandler.removeCallbacks(this);
         return mListenableFuture.cancel(mayInterruptIfRunning);
     }
 
@@ -13,6 +13,7 @@ import com.facebook.common.util.AnimatedDrawableUtil;
 import com.facebook.executor.executorSupplier.DefaultExecutorSupplier;
 import com.facebook.executor.executorSupplier.ExecutorSupplier;
 import com.facebook.executor.handlerExecutor.UiThreadImmediateExecutorService;
+import com.facebook.executor.serialExecutor.ConstrainedExecutorService;
 import com.facebook.executor.serialExecutor.DefaultSerialExecutorService;
 import com.facebook.executor.serialExecutor.SerialExecutorService;
 import com.facebook.factoryAndProvider.AnimatedFactoryProvider;
@@ -21,6 +22,8 @@ import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.A
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableBackend;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableBackendImpl;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableCachingBackendImpl;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedFrameCacheManager;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedFrameDiskStore;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.provider.AnimatedDrawableBackendProvider;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.provider.AnimatedDrawableCachingBackendImplProvider;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatedDrawable;
@@ -29,6 +32,7 @@ import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.Anim
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.AnimatedImageFactoryImpl;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImageResult;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -44,6 +48,12 @@ import javax.annotation.concurrent.NotThreadSafe;
 @DoNotStrip
 public class AnimatedFactoryImpl implements AnimatedFactory {
 
+    /**
+     * 并行解码动画帧时最多使用的线程数
+     * Maximum number of threads used to decode the frames of animations in parallel.
+     */
+    private static final int MAX_PARALLEL_DECODE_THREADS = 4;
+
     /**
      * 内部产生的提供{@link AnimatedDrawableBackend}的provider，一般提供的是{@link AnimatedDrawableBackendImpl}
      */
@@ -82,8 +92,11 @@ public class AnimatedFactoryImpl implements AnimatedFactory {
      * 1.如果{@link AnimatedDrawableFactory}(A)没有初始化过，那么就创建它.
      * 2.通过{@link DefaultExecutorSupplier#forDecode()}(B)提供的一个图片解码线程池，
      * 创建一个{@link SerialExecutorService}(C),C是用来串行执行任务的ExecutorService。
+     * 同时在B上创建一个有界的{@link ConstrainedExecutorService}(F)，用于并行地解码互相独立的帧序列。
      * 3.创建一个{@link ActivityManager}(D)
-     * 4.调用传入C和D{@link #buildAnimatedDrawableFactory}
+     * 4.通过D创建一个所有动画共享帧缓存预算的{@link AnimatedFrameCacheManager}(E)
+     * 5.在应用缓存目录下创建一个所有动画共享的{@link AnimatedFrameDiskStore}(G)，它在第一次写入的时候才会创建映射文件
+     * 6.调用传入C、F、D、E和G{@link #buildAnimatedDrawableFactory}
      * @param context
      * @return
      */
@@ -92,11 +105,25 @@ public class AnimatedFactoryImpl implements AnimatedFactory {
         if (mAnimatedDrawableFactory == null) {
             SerialExecutorService serialExecutorService =
                     new DefaultSerialExecutorService(mExecutorSupplier.forDecode());
+            int parallelDecodeThreads = Math.max(
+                    1,
+                    Math.min(MAX_PARALLEL_DECODE_THREADS, Runtime.getRuntime().availableProcessors()));
+            ExecutorService parallelExecutorService = ConstrainedExecutorService.newConstrainedExecutor(
+                    "AnimatedFrameDecoder",
+                    parallelDecodeThreads,
+                    Integer.MAX_VALUE,
+                    mExecutorSupplier.forDecode());
             ActivityManager activityManager =
                     (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            AnimatedFrameCacheManager frameCacheManager = new AnimatedFrameCacheManager(
+                    AnimatedFrameCacheManager.getDefaultMaxBytes(activityManager),
+                    RealtimeSinceBootClock.get());
             mAnimatedDrawableFactory = buildAnimatedDrawableFactory(
                     serialExecutorService,
+                    parallelExecutorService,
                     activityManager,
+                    frameCacheManager,
+                    new AnimatedFrameDiskStore(context.getCacheDir()),
                     getAnimatedDrawableUtil(),
                     getAnimatedDrawableBackendProvider(),
                     UiThreadImmediateExecutorService.getInstance(),
@@ -124,7 +151,10 @@ public class AnimatedFactoryImpl implements AnimatedFactory {
      * 2.调用{@link #createAnimatedDrawableFactory}
      *
      * @param serialExecutorService {@link #getAnimatedDrawableFactory}传入
+     * @param parallelExecutorService {@link #getAnimatedDrawableFactory}传入，用于并行解码
      * @param activityManager {@link #getAnimatedDrawableFactory}传入
+     * @param frameCacheManager {@link #getAnimatedDrawableFactory}传入，所有backend共享的帧缓存预算
+     * @param frameDiskStore {@link #getAnimatedDrawableFactory}传入，所有backend共享的磁盘帧存储
      * @param animatedDrawableUtil 本类构造
      * @param animatedDrawableBackendProvider 本类构造
      * @param scheduledExecutorService {@link UiThreadImmediateExecutorService#getInstance} 将事件传回主线程的ExecutorService
@@ -134,7 +164,10 @@ public class AnimatedFactoryImpl implements AnimatedFactory {
      */
     private AnimatedDrawableFactory buildAnimatedDrawableFactory(
             final SerialExecutorService serialExecutorService,
+            final ExecutorService parallelExecutorService,
             final ActivityManager activityManager,
+            final AnimatedFrameCacheManager frameCacheManager,
+            final AnimatedFrameDiskStore frameDiskStore,
             final AnimatedDrawableUtil animatedDrawableUtil,
             AnimatedDrawableBackendProvider animatedDrawableBackendProvider,
             ScheduledExecutorService scheduledExecutorService,
@@ -148,11 +181,14 @@ public class AnimatedFactoryImpl implements AnimatedFactory {
                             AnimatedDrawableOptions options) {
                         return new AnimatedDrawableCachingBackendImpl(
                                 serialExecutorService,
+                                parallelExecutorService,
                                 activityManager,
                                 animatedDrawableUtil,
                                 monotonicClock,
                                 animatedDrawableBackend,
-                                options);
+                                options,
+                                frameCacheManager,
+                                frameDiskStore);
                     }
                 };
 
@@ -21,9 +21,11 @@ import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.a
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.provider.AnimatedDrawableBackendProvider;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.provider.AnimatedDrawableCachingBackendImplProvider;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatedDrawable;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatedFrameScheduler;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableDiagnostics;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableDiagnosticsImpl;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableDiagnosticsNoop;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableMetrics;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableOptions;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.AnimatedImageFactoryImpl;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImage;
@@ -33,6 +35,8 @@ import com.facebook.image.CloseableImage;
 
 import java.util.concurrent.ScheduledExecutorService;
 
+import javax.annotation.Nullable;
+
 /**
  * {@link AnimatedDrawable}.的工厂的实现，只由{@link AnimatedFactoryImpl}创建
  * Factory for instances of {@link AnimatedDrawable}.
@@ -49,9 +53,23 @@ public class AnimatedDrawableFactoryImpl implements AnimatedDrawableFactory {
     private final AnimatedDrawableCachingBackendImplProvider mAnimatedDrawableCachingBackendProvider;
     private final AnimatedDrawableUtil mAnimatedDrawableUtil;
     /**
-     *{@link UiThreadImmediateExecutorService#getInstance} 将事件传回主线程的ExecutorService
+     * 所有创建的drawable共享的帧调度器，运行在{@link UiThreadImmediateExecutorService#getInstance}上
+     * The frame scheduler shared by all the created drawables, running on
+     * {@link UiThreadImmediateExecutorService#getInstance}.
      */
-    private final ScheduledExecutorService mScheduledExecutorServiceForUiThread;
+    private final AnimatedFrameScheduler mFrameScheduler;
+
+    /**
+     * 所有创建的drawable的汇总性能指标
+     * The aggregate metrics of all the created drawables.
+     */
+    private final AnimatedDrawableMetrics mAggregateMetrics;
+
+    /**
+     * 是否为新创建的drawable记录性能指标
+     * Whether metrics are recorded for newly created drawables.
+     */
+    private volatile boolean mMetricsEnabled;
     private final MonotonicClock mMonotonicClock;
     private final Resources mResources;
 
@@ -64,16 +82,42 @@ public class AnimatedDrawableFactoryImpl implements AnimatedDrawableFactory {
         mAnimatedDrawableBackendProvider = animatedDrawableBackendProvider;
         mAnimatedDrawableCachingBackendProvider = animatedDrawableCachingBackendProvider;
         mAnimatedDrawableUtil = animatedDrawableUtil;
-        mScheduledExecutorServiceForUiThread = scheduledExecutorService;
         mMonotonicClock = new MonotonicClock() {
             @Override
             public long now() {
                 return SystemClock.uptimeMillis();
             }
         };
+        mFrameScheduler = new AnimatedFrameScheduler(scheduledExecutorService, mMonotonicClock);
+        mAggregateMetrics = new AnimatedDrawableMetrics();
         mResources = resources;
     }
 
+    /**
+     * 获取所有drawable的汇总性能指标
+     * Gets the aggregate metrics of all the drawables created while metrics were enabled.
+     *
+     * @return the aggregate metrics
+     */
+    public AnimatedDrawableMetrics getAggregateMetrics() {
+        return mAggregateMetrics;
+    }
+
+    /**
+     * 开始或者停止记录之后创建的drawable的性能指标，并设置定期接收指标的回调
+     * Starts or stops recording metrics for the drawables created from now on and sets the
+     * listener receiving them periodically.
+     *
+     * @param listener the listener or null to stop recording
+     * @param sampleIntervalMs the minimum interval between two samples of the same drawable
+     */
+    public void setMetricsListener(
+            @Nullable AnimatedDrawableMetrics.Listener listener,
+            long sampleIntervalMs) {
+        mAggregateMetrics.setListener(listener, sampleIntervalMs);
+        mMetricsEnabled = listener != null;
+    }
+
     /**
      * 通过 {@link CloseableAnimatedImage}(A)，创建一个{@link AnimatedDrawable}，A由{@link AnimatedImageFactoryImpl#decodeGif}或{@link AnimatedImageFactoryImpl#decodeWebP}提供
      * Creates an {@link AnimatedDrawable} based on an {@link CloseableImage} which should be a CloseableAnimatedImage.
@@ -124,7 +168,7 @@ public class AnimatedDrawableFactoryImpl implements AnimatedDrawableFactory {
     /**
      * 1.将传入的animatedDrawableBackend通过{@link #mAnimatedDrawableCachingBackendProvider}用{@link AnimatedDrawableCachingBackendImpl}(A)包装
      * 2.通过{@link AnimatedDrawableOptions#enableDebugging}判断是否为debug模式，如果是就创建一个{@link AnimatedDrawableDiagnostics}(B)用于在动画上绘制一层debug信息
-     * 3.使用A、B、{@link #mScheduledExecutorServiceForUiThread}和{@link #mMonotonicClock}创建一个{@link AnimatedDrawable}
+     * 3.使用A、B、{@link #mFrameScheduler}和{@link #mMonotonicClock}创建一个{@link AnimatedDrawable}
      *
      * @param options
      * @param animatedDrawableBackend
@@ -146,10 +190,16 @@ public class AnimatedDrawableFactoryImpl implements AnimatedDrawableFactory {
             animatedDrawableDiagnostics = AnimatedDrawableDiagnosticsNoop.getInstance();
         }
 
-        return new AnimatedDrawable(
-                mScheduledExecutorServiceForUiThread,
+        AnimatedDrawable animatedDrawable = new AnimatedDrawable(
+                mFrameScheduler,
                 animatedDrawableCachingBackend,
                 animatedDrawableDiagnostics,
                 mMonotonicClock);
+        animatedDrawable.setUseSharedAnimationClock(options.useSharedAnimationClock);
+        animatedDrawable.setFrameDropPolicy(options.frameDropPolicy);
+        if (mMetricsEnabled) {
+            animatedDrawable.setMetrics(new AnimatedDrawableMetrics(mAggregateMetrics));
+        }
+        return animatedDrawable;
     }
 }
@@ -145,6 +145,16 @@ public interface AnimatedDrawableBackend {
      */
     AnimatedDrawableBackend forNewBounds(Rect bounds);
 
+    /**
+     * 创建一个使用相同边界的AnimatedDrawableBackend，渲染从同一个文件更多的数据中解码出的帧更多的图片
+     * Creates a new {@link AnimatedDrawableBackend} with the same bounds for an image decoded from
+     * more bytes of the same file, so it has the frames of this one and more.
+     *
+     * @param animatedImageResult the image with more frames
+     * @return a new {@link AnimatedDrawableBackend} for the image
+     */
+    AnimatedDrawableBackend forNewImage(AnimatedImageResult animatedImageResult);
+
     /**
      * 获取当前对象的缓存byte数值
      * Gets the number of bytes currently used by the backend for caching (for debugging)
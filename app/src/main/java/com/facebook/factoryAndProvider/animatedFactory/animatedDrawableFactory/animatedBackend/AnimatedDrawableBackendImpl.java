@@ -18,6 +18,9 @@ import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.anim
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImageResult;
 import com.facebook.references.CloseableReference;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.annotation.concurrent.GuardedBy;
 
 /**
@@ -53,8 +56,13 @@ public class AnimatedDrawableBackendImpl implements AnimatedDrawableBackend {
      */
     private final AnimatedDrawableFrameInfo[] mFrameInfos;
 
+    /**
+     * 空闲的临时bitmap。每个正在渲染的线程使用自己的临时bitmap，这样多个线程可以同时解码不同的帧
+     * Free temporary bitmaps. Every rendering thread uses a temporary bitmap of its own so frames can
+     * be decoded on several threads at the same time.
+     */
     @GuardedBy("this")
-    private Bitmap mTempBitmap;
+    private final List<Bitmap> mTempBitmaps = new ArrayList<Bitmap>();
 
     public AnimatedDrawableBackendImpl(
             AnimatedDrawableUtil animatedDrawableUtil,
@@ -164,11 +172,19 @@ public class AnimatedDrawableBackendImpl implements AnimatedDrawableBackend {
                 bounds);
     }
 
+    @Override
+    public AnimatedDrawableBackend forNewImage(AnimatedImageResult animatedImageResult) {
+        return new AnimatedDrawableBackendImpl(
+                mAnimatedDrawableUtil,
+                animatedImageResult,
+                mRenderedBounds);
+    }
+
     @Override
     public synchronized int getMemoryUsage() {
         int bytes = 0;
-        if (mTempBitmap != null) {
-            bytes += mAnimatedDrawableUtil.getSizeOfBitmap(mTempBitmap);
+        for (int i = 0; i < mTempBitmaps.size(); i++) {
+            bytes += mAnimatedDrawableUtil.getSizeOfBitmap(mTempBitmaps.get(i));
         }
         bytes += mAnimatedImage.getSizeInBytes();
         return bytes;
@@ -216,16 +232,17 @@ public class AnimatedDrawableBackendImpl implements AnimatedDrawableBackend {
         int xOffset = (int) (frame.getXOffset() * xScale);
         int yOffset = (int) (frame.getYOffset() * yScale);
 
-        synchronized (this) {
-            if (mTempBitmap == null) {
-                mTempBitmap = Bitmap.createBitmap(
-                        mRenderedBounds.width(),
-                        mRenderedBounds.height(),
-                        Bitmap.Config.ARGB_8888);
-            }
-            mTempBitmap.eraseColor(Color.TRANSPARENT);
-            frame.renderFrame(frameWidth, frameHeight, mTempBitmap);
-            canvas.drawBitmap(mTempBitmap, xOffset, yOffset, null);
+        Bitmap tempBitmap = obtainTempBitmap(mRenderedBounds.width(), mRenderedBounds.height());
+        try {
+            tempBitmap.eraseColor(Color.TRANSPARENT);
+            frame.renderFrame(frameWidth, frameHeight, tempBitmap);
+            // Only the frame's own rectangle holds pixels, so don't blend the rest of the temp bitmap.
+            canvas.save();
+            canvas.clipRect(xOffset, yOffset, xOffset + frameWidth, yOffset + frameHeight);
+            canvas.drawBitmap(tempBitmap, xOffset, yOffset, null);
+            canvas.restore();
+        } finally {
+            releaseTempBitmap(tempBitmap);
         }
     }
 
@@ -234,31 +251,40 @@ public class AnimatedDrawableBackendImpl implements AnimatedDrawableBackend {
         int frameHeight = frame.getHeight();
         int xOffset = frame.getXOffset();
         int yOffset = frame.getYOffset();
-        synchronized (this) {
-            if (mTempBitmap == null) {
-                mTempBitmap = Bitmap.createBitmap(
-                        mAnimatedImage.getWidth(),
-                        mAnimatedImage.getHeight(),
-                        Bitmap.Config.ARGB_8888);
-            }
-            mTempBitmap.eraseColor(Color.TRANSPARENT);
-            frame.renderFrame(frameWidth, frameHeight, mTempBitmap);
+        Bitmap tempBitmap = obtainTempBitmap(mAnimatedImage.getWidth(), mAnimatedImage.getHeight());
+        try {
+            tempBitmap.eraseColor(Color.TRANSPARENT);
+            frame.renderFrame(frameWidth, frameHeight, tempBitmap);
 
             float xScale = (float) mRenderedBounds.width() / (float) mAnimatedImage.getWidth();
             float yScale = (float) mRenderedBounds.height() / (float) mAnimatedImage.getHeight();
             canvas.save();
             canvas.scale(xScale, yScale);
             canvas.translate(xOffset, yOffset);
-            canvas.drawBitmap(mTempBitmap, 0, 0, null);
+            canvas.clipRect(0, 0, frameWidth, frameHeight);
+            canvas.drawBitmap(tempBitmap, 0, 0, null);
             canvas.restore();
+        } finally {
+            releaseTempBitmap(tempBitmap);
         }
     }
 
+    private synchronized Bitmap obtainTempBitmap(int width, int height) {
+        if (!mTempBitmaps.isEmpty()) {
+            return mTempBitmaps.remove(mTempBitmaps.size() - 1);
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private synchronized void releaseTempBitmap(Bitmap bitmap) {
+        mTempBitmaps.add(bitmap);
+    }
+
     @Override
     public synchronized void dropCaches() {
-        if (mTempBitmap != null) {
-            mTempBitmap.recycle();
-            mTempBitmap = null;
+        for (int i = 0; i < mTempBitmaps.size(); i++) {
+            mTempBitmaps.get(i).recycle();
         }
+        mTempBitmaps.clear();
     }
 }
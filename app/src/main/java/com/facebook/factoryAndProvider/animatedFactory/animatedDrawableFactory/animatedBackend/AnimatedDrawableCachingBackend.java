@@ -7,14 +7,35 @@ package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableMetrics;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImageResult;
+import com.facebook.references.BorrowedReference;
 import com.facebook.references.CloseableReference;
 
+import javax.annotation.Nullable;
+
 /**
  * 一个{@link AnimatedDrawableBackend}的包装，其可以添加高速缓存和预读
  * A specialized version of {@link AnimatedDrawableBackend} that adds caching and prefetching.
  */
 public interface AnimatedDrawableCachingBackend extends AnimatedDrawableBackend {
 
+    /**
+     * 帧渲染好之后的回调
+     * Listener for rendered frames.
+     */
+    interface FrameReadyListener {
+
+        /**
+         * 一帧已经渲染好并被缓存了，{@link #getBitmapForFrame}现在可以返回它。可能在任何线程被调用
+         * Called when a frame was rendered and cached, so {@link #getBitmapForFrame} can return it
+         * now. May be called on any thread.
+         *
+         * @param frameNumber the frame number
+         */
+        void onFrameReady(int frameNumber);
+    }
+
     /**
      * 获取指定帧的bitmap，这个bitmap的大小依靠{@link #getRenderedWidth()}和{@link #getRenderedHeight()}确定
      * Gets the bitmap for the specified frame number. The bitmap should be the size of the
@@ -29,6 +50,18 @@ public interface AnimatedDrawableCachingBackend extends AnimatedDrawableBackend
      */
     CloseableReference<Bitmap> getBitmapForFrame(int frameNumber);
 
+    /**
+     * 和{@link #getBitmapForFrame}一样，但是把bitmap借到一个可重用的持有者中，这样每一帧都不需要新建引用对象
+     * Like {@link #getBitmapForFrame} but borrows the bitmap into a reusable holder, so drawing a
+     * frame doesn't allocate a new reference.
+     *
+     * @param frameNumber the frame number (0-based)
+     * @param borrowed the holder to borrow into, the bitmap borrowed before is released
+     * @return true if the bitmap was borrowed, false if it's not ready yet and the holder is left
+     *    untouched
+     */
+    boolean borrowBitmapForFrame(int frameNumber, BorrowedReference<Bitmap> borrowed);
+
     /**
      * 获取预览帧的bitmap，这个只能返回非null如果{@code ImageDecodeOptions}已经被配制成解码的预览帧
      * Gets the bitmap for the preview frame. This will only return non-null if the
@@ -41,6 +74,16 @@ public interface AnimatedDrawableCachingBackend extends AnimatedDrawableBackend
      */
     CloseableReference<Bitmap> getPreviewBitmap();
 
+    /**
+     * 和{@link #getPreviewBitmap}一样，但是把bitmap借到一个可重用的持有者中
+     * Like {@link #getPreviewBitmap} but borrows the bitmap into a reusable holder.
+     *
+     * @param borrowed the holder to borrow into, the bitmap borrowed before is released
+     * @return true if the bitmap was borrowed, false if there is no preview bitmap set and the
+     *    holder is left untouched
+     */
+    boolean borrowPreviewBitmap(BorrowedReference<Bitmap> borrowed);
+
     /**
      * 可能有用的调试
      * Appends a string about the state of the backend that might be useful for debugging.
@@ -49,7 +92,45 @@ public interface AnimatedDrawableCachingBackend extends AnimatedDrawableBackend
      */
     void appendDebugOptionString(StringBuilder sb);
 
+    /**
+     * 设置帧渲染好之后的回调，这样使用者就不需要轮询{@link #getBitmapForFrame}
+     * Sets the listener told about rendered frames, so callers don't need to poll
+     * {@link #getBitmapForFrame}.
+     *
+     * @param listener the listener or null to remove it
+     */
+    void setFrameReadyListener(@Nullable FrameReadyListener listener);
+
+    /**
+     * 获取最近的平均帧渲染耗时
+     * Gets the recent average time it takes to render a frame.
+     *
+     * @return the average render time in ms or -1 if no frame was rendered yet
+     */
+    long getAverageRenderMs();
+
+    /**
+     * 设置记录性能指标的实例
+     * Sets the metrics the backend records its decode and cache performance in.
+     *
+     * @param metrics the metrics or null to stop recording
+     */
+    void setMetrics(@Nullable AnimatedDrawableMetrics metrics);
+
+    /**
+     * 判断指定的帧是否是关键帧，关键帧不依赖前面的任何帧就可以渲染
+     * Returns whether the frame is a key frame, i.e. it renders without any of the frames before it.
+     *
+     * @param frameNumber the frame number (0-based)
+     * @return whether the frame is a key frame
+     */
+    boolean isKeyFrame(int frameNumber);
+
     // Overridden to restrict the return type.
     @Override
     AnimatedDrawableCachingBackend forNewBounds(Rect bounds);
+
+    // Overridden to restrict the return type. The new backend takes over the cached frames.
+    @Override
+    AnimatedDrawableCachingBackend forNewImage(AnimatedImageResult animatedImageResult);
 }
@@ -18,13 +18,20 @@ import com.facebook.common.time.MonotonicClock;
 import com.facebook.common.util.AnimatedDrawableUtil;
 import com.facebook.executor.serialExecutor.SerialExecutorService;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatedDrawableFrameInfo;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AdaptivePrefetchWindow;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableMetrics;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableOptions;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedImageCompositor;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.WhatToKeepCachedArray;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImage;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImageResult;
 import com.facebook.log.FLog;
+import com.facebook.references.BorrowedReference;
 import com.facebook.references.CloseableReference;
+import com.facebook.references.Reaper;
 import com.facebook.references.ResourceReleaser;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,9 +39,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 import bolts.Continuation;
@@ -51,9 +60,21 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
 
     private static final AtomicInteger sTotalBitmaps = new AtomicInteger();
 
-    private static final int PREFETCH_FRAMES = 3;
+    /**
+     * 增量帧缓存最多可以使用的预算比例，剩下的留给解码好的帧
+     * The part of the budget the delta frame cache may use at most. The rest is left to the decoded
+     * frames.
+     */
+    private static final double DELTA_FRAME_CACHE_SHARE = 0.5;
 
     private final SerialExecutorService mExecutorService;
+
+    /**
+     * 当{@link AnimatedDrawableOptions#allowParallelDecoding}为true的时候，用来并行地预读关键帧序列的有界线程池
+     * Bounded executor used to prefetch runs of frames in parallel when
+     * {@link AnimatedDrawableOptions#allowParallelDecoding} is set.
+     */
+    private final ExecutorService mParallelExecutorService;
     private final AnimatedDrawableUtil mAnimatedDrawableUtil;
     private final ActivityManager mActivityManager;
     private final MonotonicClock mMonotonicClock;
@@ -63,7 +84,38 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
     private final ResourceReleaser<Bitmap> mResourceReleaserForBitmaps;
     private final double mMaximumKiloBytes;
 
-    private final double mApproxKiloBytesToHoldAllFrames;
+    /**
+     * 用ARGB_8888保存所有帧大约需要的内存
+     * Approximate memory needed to hold all frames in ARGB_8888.
+     */
+    private final double mApproxKiloBytesToHoldAllFramesArgb;
+
+    /**
+     * 根据测量到的渲染耗时动态调整需要预读的帧数
+     * Sizes the prefetch window from the measured render latency.
+     */
+    private final AdaptivePrefetchWindow mPrefetchWindow;
+
+    /**
+     * 所有backend共享的帧缓存预算
+     * The frame cache budget shared with all the other backends.
+     */
+    private final AnimatedFrameCacheManager mFrameCacheManager;
+    private final AnimatedFrameCacheManager.Client mFrameCacheClient;
+    private final KeyFrameRuns.KeyFrameChecker mKeyFrameChecker;
+
+    /**
+     * 超出内存预算的帧的第二级存储，所有backend共享
+     * The second-tier store for frames that don't fit in the memory budget, shared by all backends.
+     */
+    private final AnimatedFrameDiskStore mFrameDiskStore;
+
+    /**
+     * 增量压缩的所有帧的缓存，只有当{@link AnimatedDrawableOptions#allowDeltaFrameCache}为true的时候才创建
+     * Delta compressed cache of all the frames. Only created if
+     * {@link AnimatedDrawableOptions#allowDeltaFrameCache} is set.
+     */
+    private final AnimatedFrameDeltaCache mDeltaFrameCache;
 
     @GuardedBy("this")
     private final List<Bitmap> mFreeBitmaps;
@@ -80,20 +132,60 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
     @GuardedBy("ui-thread")
     private int mCurrentFrameIndex;
 
+    /**
+     * 新创建的bitmap的格式，当所有帧都被确认是不透明的之后会切换到RGB_565
+     * The config of new bitmaps. Switches to RGB_565 once every frame was found to be opaque.
+     */
+    @GuardedBy("this")
+    private Bitmap.Config mBitmapConfig = Bitmap.Config.ARGB_8888;
+
+    /**
+     * 哪些帧已经被确认是不透明的
+     * Which frames were already found to be opaque.
+     */
+    @GuardedBy("this")
+    private final boolean[] mFramesFoundOpaque;
+
+    @GuardedBy("this")
+    private int mNumFramesFoundOpaque;
+
+    /**
+     * 如果不允许使用RGB_565，或者发现了透明的像素，就是false
+     * False if RGB_565 isn't allowed or a frame with transparent pixels was found.
+     */
+    @GuardedBy("this")
+    private boolean mMayBeOpaque;
+
+    private volatile FrameReadyListener mFrameReadyListener;
+
+    @Nullable private volatile AnimatedDrawableMetrics mMetrics;
+
     public AnimatedDrawableCachingBackendImpl(
             SerialExecutorService executorService,
+            ExecutorService parallelExecutorService,
             ActivityManager activityManager,
             AnimatedDrawableUtil animatedDrawableUtil,
             MonotonicClock monotonicClock,
             AnimatedDrawableBackend animatedDrawableBackend,
-            AnimatedDrawableOptions options) {
+            AnimatedDrawableOptions options,
+            AnimatedFrameCacheManager frameCacheManager,
+            AnimatedFrameDiskStore frameDiskStore) {
         super(animatedDrawableBackend);
         mExecutorService = executorService;
+        mParallelExecutorService = parallelExecutorService;
         mActivityManager = activityManager;
         mAnimatedDrawableUtil = animatedDrawableUtil;
         mMonotonicClock = monotonicClock;
         mAnimatedDrawableBackend = animatedDrawableBackend;
         mAnimatedDrawableOptions = options;
+        mFrameCacheManager = frameCacheManager;
+        mFrameDiskStore = frameDiskStore;
+        mFrameCacheClient = new AnimatedFrameCacheManager.Client() {
+            @Override
+            public void evictFrame(int frameNumber, Bitmap bitmap) {
+                evictFrameInternal(frameNumber, bitmap);
+            }
+        };
         mMaximumKiloBytes = options.maximumBytes >= 0 ?
                 options.maximumBytes / ByteConstants.KB:
                 getDefaultMaxBytes(activityManager)/ ByteConstants.KB;
@@ -109,31 +201,32 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
                     public CloseableReference<Bitmap> getCachedBitmap(int frameNumber) {
                         return getCachedOrPredecodedFrame(frameNumber);
                     }
-                });
-        mResourceReleaserForBitmaps = new ResourceReleaser<Bitmap>() {
+                },
+                options.allowDirtyRectCompositing);
+        mKeyFrameChecker = new KeyFrameRuns.KeyFrameChecker() {
             @Override
-            public void release(Bitmap value) {
-                releaseBitmapInternal(value);
+            public boolean isKeyFrame(int frameNumber) {
+                return mAnimatedImageCompositor.isKeyFrame(frameNumber);
             }
         };
+        mResourceReleaserForBitmaps = new BitmapReleaser(this);
         mFreeBitmaps = new ArrayList<Bitmap>();
         mDecodesInFlight = new SparseArrayCompat<Task<Object>>(10);
         mCachedBitmaps = new SparseArrayCompat<CloseableReference<Bitmap>>(10);
         mBitmapsToKeepCached = new WhatToKeepCachedArray(mAnimatedDrawableBackend.getFrameCount());
-        mApproxKiloBytesToHoldAllFrames =
+        mApproxKiloBytesToHoldAllFramesArgb =
                 mAnimatedDrawableBackend.getRenderedWidth() *
                         mAnimatedDrawableBackend.getRenderedHeight() / ByteConstants.KB *
                         mAnimatedDrawableBackend.getFrameCount() * 4;
-    }
-
-    @Override
-    protected synchronized void finalize() throws Throwable {
-        super.finalize();
-        if (mCachedBitmaps.size() > 0) {
-            FLog.d(TAG, "Finalizing with rendered bitmaps");
-        }
-        sTotalBitmaps.addAndGet(-mFreeBitmaps.size());
-        mFreeBitmaps.clear();
+        mPrefetchWindow = new AdaptivePrefetchWindow();
+        mDeltaFrameCache = options.allowDeltaFrameCache ?
+                new AnimatedFrameDeltaCache(
+                        mAnimatedDrawableBackend.getFrameCount(),
+                        (int) (mMaximumKiloBytes * ByteConstants.KB * DELTA_FRAME_CACHE_SHARE)) :
+                null;
+        mFramesFoundOpaque = new boolean[mAnimatedDrawableBackend.getFrameCount()];
+        mMayBeOpaque = options.allowOpaqueRgb565 && coversWholeImage(mAnimatedDrawableBackend.getFrameInfo(0));
+        Reaper.register(this, new ForgetFreeBitmaps(mFreeBitmaps, mCachedBitmaps));
     }
 
     private Bitmap createNewBitmap() {
@@ -143,7 +236,7 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         return Bitmap.createBitmap(
                 mAnimatedDrawableBackend.getRenderedWidth(),
                 mAnimatedDrawableBackend.getRenderedHeight(),
-                Bitmap.Config.ARGB_8888);
+                mBitmapConfig);
     }
 
     @Override
@@ -160,11 +253,37 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         return result;
     }
 
+    @Override
+    public boolean borrowBitmapForFrame(int frameNumber, BorrowedReference<Bitmap> borrowed) {
+        mCurrentFrameIndex = frameNumber;
+        boolean borrowedFrame;
+        synchronized (this) {
+            mBitmapsToKeepCached.set(frameNumber, true);
+            borrowedFrame = borrowCachedOrPredecodedFrame(frameNumber, borrowed);
+            AnimatedDrawableMetrics metrics = mMetrics;
+            if (borrowedFrame) {
+                if (metrics != null) {
+                    metrics.recordCacheHit();
+                }
+                mFrameCacheManager.onFrameDrawn(mFrameCacheClient, frameNumber);
+            } else if (metrics != null) {
+                metrics.recordCacheMiss();
+            }
+        }
+        schedulePrefetches();
+        return borrowedFrame;
+    }
+
     @Override
     public CloseableReference<Bitmap> getPreviewBitmap() {
         return getAnimatedImageResult().getPreviewBitmap();
     }
 
+    @Override
+    public boolean borrowPreviewBitmap(BorrowedReference<Bitmap> borrowed) {
+        return getAnimatedImageResult().borrowPreviewBitmap(borrowed);
+    }
+
     @VisibleForTesting
     CloseableReference<Bitmap> getBitmapForFrameBlocking(int frameNumber) {
         mCurrentFrameIndex = frameNumber;
@@ -181,22 +300,86 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         }
         return new AnimatedDrawableCachingBackendImpl(
                 mExecutorService,
+                mParallelExecutorService,
                 mActivityManager,
                 mAnimatedDrawableUtil,
                 mMonotonicClock,
                 newBackend,
-                mAnimatedDrawableOptions);
+                mAnimatedDrawableOptions,
+                mFrameCacheManager,
+                mFrameDiskStore);
+    }
+
+    @Override
+    public AnimatedDrawableCachingBackend forNewImage(AnimatedImageResult animatedImageResult) {
+        AnimatedDrawableCachingBackendImpl newBackend = new AnimatedDrawableCachingBackendImpl(
+                mExecutorService,
+                mParallelExecutorService,
+                mActivityManager,
+                mAnimatedDrawableUtil,
+                mMonotonicClock,
+                mAnimatedDrawableBackend.forNewImage(animatedImageResult),
+                mAnimatedDrawableOptions,
+                mFrameCacheManager,
+                mFrameDiskStore);
+        newBackend.adoptCachedFrames(this);
+        return newBackend;
+    }
+
+    /**
+     * 接管另一个backend缓存的帧，它渲染的是同一个文件更少的数据解码出的图片。
+     * 一帧只依赖它之前的帧，所以这些帧和这个backend渲染出的一样，不需要重新渲染
+     * Takes over the frames cached by a backend of an image decoded from fewer bytes of the same
+     * file. A frame only depends on the frames before it, so they are the same as this backend
+     * would render and aren't rendered again.
+     */
+    private void adoptCachedFrames(AnimatedDrawableCachingBackendImpl previous) {
+        final SparseArrayCompat<CloseableReference<Bitmap>> adopted =
+                previous.cloneCachedFrames(Bitmap.Config.ARGB_8888);
+        synchronized (this) {
+            for (int i = 0; i < adopted.size(); i++) {
+                mBitmapsToKeepCached.set(adopted.keyAt(i), true);
+                mCachedBitmaps.put(adopted.keyAt(i), adopted.valueAt(i));
+            }
+        }
+        for (int i = 0; i < adopted.size(); i++) {
+            Bitmap bitmap = adopted.valueAt(i).get();
+            mFrameCacheManager.onFrameCached(
+                    mFrameCacheClient,
+                    adopted.keyAt(i),
+                    bitmap,
+                    mAnimatedDrawableUtil.getSizeOfBitmap(bitmap));
+        }
+    }
+
+    /**
+     * 拷贝指定格式的缓存的帧的引用，调用者需要关闭它们
+     * Clones the references to the cached frames of the given config. The caller has to close
+     * them.
+     */
+    private synchronized SparseArrayCompat<CloseableReference<Bitmap>> cloneCachedFrames(
+            Bitmap.Config config) {
+        SparseArrayCompat<CloseableReference<Bitmap>> frames =
+                new SparseArrayCompat<CloseableReference<Bitmap>>(mCachedBitmaps.size());
+        for (int i = 0; i < mCachedBitmaps.size(); i++) {
+            CloseableReference<Bitmap> bitmapReference = mCachedBitmaps.valueAt(i);
+            if (bitmapReference.get().getConfig() == config) {
+                frames.put(mCachedBitmaps.keyAt(i), bitmapReference.clone());
+            }
+        }
+        return frames;
     }
 
     @Override
     public synchronized void dropCaches() {
         mBitmapsToKeepCached.setAll(false);
         dropBitmapsThatShouldNotBeCached();
-        for (Bitmap freeBitmap : mFreeBitmaps) {
-            freeBitmap.recycle();
-            sTotalBitmaps.decrementAndGet();
+        recycleFreeBitmaps();
+        mAnimatedImageCompositor.dropCheckpoints();
+        if (mDeltaFrameCache != null) {
+            mDeltaFrameCache.clear();
         }
-        mFreeBitmaps.clear();
+        reportAuxiliaryBytes();
         mAnimatedDrawableBackend.dropCaches();
         FLog.v(TAG, "Total bitmaps: %d", sTotalBitmaps.get());
     }
@@ -213,16 +396,40 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
                 bytes += mAnimatedDrawableUtil.getSizeOfBitmap(bitmapReference.get());
             }
         }
+        bytes += mAnimatedImageCompositor.getCheckpointBytes();
+        if (mDeltaFrameCache != null) {
+            bytes += mDeltaFrameCache.getSizeInBytes();
+        }
         bytes += mAnimatedDrawableBackend.getMemoryUsage();
         return bytes;
     }
 
+    @Override
+    public void setFrameReadyListener(@Nullable FrameReadyListener listener) {
+        mFrameReadyListener = listener;
+    }
+
+    @Override
+    public void setMetrics(@Nullable AnimatedDrawableMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Override
+    public long getAverageRenderMs() {
+        return mPrefetchWindow.getAverageRenderMs();
+    }
+
+    @Override
+    public boolean isKeyFrame(int frameNumber) {
+        return mAnimatedImageCompositor.isKeyFrame(frameNumber);
+    }
+
     @Override
     public void appendDebugOptionString(StringBuilder sb) {
         if (mAnimatedDrawableOptions.forceKeepAllFramesInMemory) {
             sb.append("Pinned To Memory");
         } else {
-            if (mApproxKiloBytesToHoldAllFrames < mMaximumKiloBytes) {
+            if (getApproxKiloBytesToHoldAllFrames() < mMaximumKiloBytes) {
                 sb.append("within ");
             } else {
                 sb.append("exceeds ");
@@ -232,6 +439,25 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         if (shouldKeepAllFramesInMemory() && mAnimatedDrawableOptions.allowPrefetching) {
             sb.append(" MT");
         }
+        if (mAnimatedDrawableOptions.allowParallelDecoding) {
+            sb.append(" PD");
+        }
+        if (mAnimatedDrawableOptions.allowDirtyRectCompositing) {
+            sb.append(" DR");
+        }
+        if (isRgb565()) {
+            sb.append(" 565");
+        }
+        if (shouldUseDeltaFrameCache()) {
+            sb.append(mDeltaFrameCache.isComplete() ? " DC:all" : " DC");
+        }
+        if (shouldUseDiskFrameStore()) {
+            sb.append(" DS");
+        }
+        if (mAnimatedDrawableOptions.allowPrefetching) {
+            sb.append(" PF:");
+            sb.append(mPrefetchWindow.getCurrentWindow());
+        }
     }
 
     private CloseableReference<Bitmap> getBitmapForFrameInternal(
@@ -244,9 +470,17 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
             synchronized (this) {
                 mBitmapsToKeepCached.set(frameNumber, true);
                 CloseableReference<Bitmap> bitmapReference = getCachedOrPredecodedFrame(frameNumber);
+                AnimatedDrawableMetrics metrics = mMetrics;
                 if (bitmapReference != null) {
+                    if (metrics != null) {
+                        metrics.recordCacheHit();
+                    }
+                    mFrameCacheManager.onFrameDrawn(mFrameCacheClient, frameNumber);
                     return bitmapReference;
                 }
+                if (metrics != null) {
+                    metrics.recordCacheMiss();
+                }
             }
 
             if (forceImmediate) {
@@ -254,7 +488,7 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
                 renderedOnCallingThread = true;
                 CloseableReference<Bitmap> bitmapReference = obtainBitmapInternal();
                 try {
-                    mAnimatedImageCompositor.renderFrame(frameNumber, bitmapReference.get());
+                    renderOrReadFrame(frameNumber, bitmapReference.get());
                     maybeCacheRenderedBitmap(frameNumber, bitmapReference);
                     return bitmapReference.clone();
                 } finally {
@@ -308,6 +542,7 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
     private void copyAndCacheBitmapDuringRendering(int frameNumber, Bitmap sourceBitmap) {
         CloseableReference<Bitmap> destBitmapReference = obtainBitmapInternal();
         try {
+            mAnimatedImageCompositor.forgetBitmap(destBitmapReference.get());
             Canvas copyCanvas = new Canvas(destBitmapReference.get());
             copyCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.SRC);
             copyCanvas.drawBitmap(sourceBitmap, 0, 0, null);
@@ -341,16 +576,233 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         return CloseableReference.of(bitmap, mResourceReleaserForBitmaps);
     }
 
+    /**
+     * 合成指定的帧并将耗时记录到{@link #mPrefetchWindow}中
+     * Composites the frame into the bitmap and feeds the elapsed time to the prefetch window and the
+     * metrics.
+     *
+     * @param frameNumber the frame to render
+     * @param bitmap the bitmap to render into
+     */
+    private void renderFrameAndMeasure(int frameNumber, Bitmap bitmap) {
+        long startMs = mMonotonicClock.now();
+        long startNanos = System.nanoTime();
+        mAnimatedImageCompositor.renderFrame(frameNumber, bitmap);
+        mPrefetchWindow.onFrameRendered(mMonotonicClock.now() - startMs);
+        AnimatedDrawableMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.recordCompositeLatencyUs((System.nanoTime() - startNanos) / 1000);
+        }
+    }
+
+    /**
+     * 如果帧已经在{@link #mDeltaFrameCache}或者{@link #mFrameDiskStore}中，就直接从那里解码或者拷贝出来；
+     * 否则合成这一帧，并保存起来以便下一次循环使用
+     * Decodes the frame from {@link #mDeltaFrameCache} or copies it from {@link #mFrameDiskStore}
+     * if it's kept there. Otherwise composites the frame and keeps it in those so the next loop
+     * doesn't have to composite it again.
+     *
+     * @param frameNumber the frame to render
+     * @param bitmap the bitmap to render into
+     */
+    private void renderOrReadFrame(int frameNumber, Bitmap bitmap) {
+        long startNanos = System.nanoTime();
+        try {
+            boolean useDeltaFrameCache = shouldUseDeltaFrameCache();
+            boolean useDiskFrameStore = shouldUseDiskFrameStore();
+            if (useDeltaFrameCache && mDeltaFrameCache.get(frameNumber, bitmap)) {
+                mAnimatedImageCompositor.forgetBitmap(bitmap);
+                FLog.v(TAG, "Decoded frame %d from delta cache", frameNumber);
+                return;
+            }
+            AnimatedImage image = mAnimatedDrawableBackend.getAnimatedImageResult().getImage();
+            if (useDiskFrameStore && mFrameDiskStore.get(image, frameNumber, bitmap)) {
+                mAnimatedImageCompositor.forgetBitmap(bitmap);
+                FLog.v(TAG, "Read frame %d from disk store", frameNumber);
+            } else {
+                renderFrameAndMeasure(frameNumber, bitmap);
+                if (useDiskFrameStore) {
+                    mFrameDiskStore.put(image, frameNumber, bitmap);
+                }
+            }
+            if (useDeltaFrameCache) {
+                mDeltaFrameCache.put(
+                        frameNumber,
+                        bitmap,
+                        mAnimatedImageCompositor.isKeyFrame(frameNumber));
+            }
+            reportAuxiliaryBytes();
+        } finally {
+            AnimatedDrawableMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.recordDecodeLatencyUs((System.nanoTime() - startNanos) / 1000);
+            }
+        }
+    }
+
     synchronized void releaseBitmapInternal(Bitmap bitmap) {
+        if (bitmap.getConfig() != mBitmapConfig) {
+            // Rendered before switching to RGB_565.
+            bitmap.recycle();
+            sTotalBitmaps.decrementAndGet();
+            return;
+        }
         mFreeBitmaps.add(bitmap);
     }
 
+    /**
+     * 检查一个刚合成的帧是否是不透明的。合成的结果是确定的，所以当每一帧都被确认过是不透明的时候，
+     * 整个动画都是不透明的，就可以切换到RGB_565。只要有一帧包含透明像素就一直使用ARGB_8888
+     * Checks whether a frame that is about to be cached in ARGB_8888 is opaque. Compositing is
+     * deterministic, so once every frame was found opaque the whole animation is, and the backend
+     * switches to RGB_565. As soon as a frame with transparent pixels is found, the backend stays in
+     * ARGB_8888 for good.
+     * <p>
+     * Every frame that enters the cache is checked, whether it was rendered, copied from an
+     * intermediate result, pre-decoded, or read from the delta cache or the disk store.
+     *
+     * @param frameNumber the frame number
+     * @param bitmap the fully composited frame
+     */
+    private void maybeCheckOpacity(int frameNumber, Bitmap bitmap) {
+        synchronized (this) {
+            if (!mMayBeOpaque ||
+                    mFramesFoundOpaque[frameNumber] ||
+                    bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                return;
+            }
+        }
+        boolean opaque = mAnimatedDrawableUtil.isFullyOpaque(bitmap);
+        synchronized (this) {
+            if (!mMayBeOpaque || mFramesFoundOpaque[frameNumber]) {
+                return;
+            }
+            if (!opaque) {
+                FLog.v(TAG, "Frame %d has transparent pixels, staying in ARGB_8888", frameNumber);
+                mMayBeOpaque = false;
+                return;
+            }
+            mFramesFoundOpaque[frameNumber] = true;
+            mNumFramesFoundOpaque++;
+            if (mNumFramesFoundOpaque == mFramesFoundOpaque.length) {
+                switchToRgb565();
+            }
+        }
+    }
+
+    /**
+     * 切换到RGB_565。已经用ARGB_8888渲染的帧会被丢弃，让预读按新的格式重新渲染它们，以真正地节省内存
+     * Switches to RGB_565. Frames already rendered in ARGB_8888 are dropped so prefetching renders
+     * them again in the new config and the memory is actually saved.
+     */
+    private synchronized void switchToRgb565() {
+        FLog.v(TAG, "All frames are opaque, switching to RGB_565");
+        mBitmapConfig = Bitmap.Config.RGB_565;
+        mMayBeOpaque = false;
+        while (mCachedBitmaps.size() > 0) {
+            removeCachedBitmapAt(mCachedBitmaps.size() - 1);
+        }
+        recycleFreeBitmaps();
+        mAnimatedImageCompositor.dropCheckpoints();
+        if (mDeltaFrameCache != null) {
+            mDeltaFrameCache.clear();
+        }
+        reportAuxiliaryBytes();
+    }
+
+    /**
+     * 除了缓存的帧之外，这个backend使用的内存：合成检查点和增量帧缓存
+     * The memory this backend uses besides the cached frames: the compositing checkpoints and the
+     * delta frame cache.
+     */
+    private int getAuxiliaryBytes() {
+        int bytes = mAnimatedImageCompositor.getCheckpointBytes();
+        if (mDeltaFrameCache != null) {
+            bytes += mDeltaFrameCache.getSizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 把辅助内存报告给{@link #mFrameCacheManager}，让它们计入共享的预算
+     * Reports the auxiliary memory to the {@link #mFrameCacheManager} so it counts against the
+     * shared budget.
+     */
+    private void reportAuxiliaryBytes() {
+        mFrameCacheManager.setAuxiliaryBytes(mFrameCacheClient, getAuxiliaryBytes());
+    }
+
+    private synchronized boolean isRgb565() {
+        return mBitmapConfig == Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * 根据当前的bitmap格式计算保存所有帧大约需要的内存
+     * Computes the approximate memory needed to hold all frames in the current bitmap config.
+     */
+    private double getApproxKiloBytesToHoldAllFrames() {
+        return isRgb565() ?
+                mApproxKiloBytesToHoldAllFramesArgb / 2 :
+                mApproxKiloBytesToHoldAllFramesArgb;
+    }
+
+    /**
+     * 第一帧必须覆盖整个图像，否则没有被覆盖的地方是透明的
+     * The first frame has to cover the whole image, otherwise the parts it doesn't cover are
+     * transparent.
+     */
+    private boolean coversWholeImage(AnimatedDrawableFrameInfo frameInfo) {
+        return frameInfo.xOffset == 0 &&
+                frameInfo.yOffset == 0 &&
+                frameInfo.width >= mAnimatedDrawableBackend.getWidth() &&
+                frameInfo.height >= mAnimatedDrawableBackend.getHeight();
+    }
+
+    private synchronized void recycleFreeBitmaps() {
+        for (Bitmap freeBitmap : mFreeBitmaps) {
+            freeBitmap.recycle();
+            sTotalBitmaps.decrementAndGet();
+        }
+        mFreeBitmaps.clear();
+    }
+
+    /**
+     * 被{@link AnimatedFrameCacheManager}调用来淘汰一帧。这一帧已经从共享的预算中移除了，
+     * 所以这里只需要释放缓存，同时回收空闲的bitmap以真正地释放内存
+     * Called by the {@link AnimatedFrameCacheManager} to evict a frame. The frame was already taken
+     * out of the shared budget. The free bitmaps are recycled too as they would otherwise keep the
+     * memory of the evicted frame alive.
+     *
+     * @param frameNumber the frame to evict
+     * @param bitmap the bitmap the frame was cached with when it was picked for eviction
+     */
+    private synchronized void evictFrameInternal(int frameNumber, Bitmap bitmap) {
+        int index = mCachedBitmaps.indexOfKey(frameNumber);
+        if (index < 0) {
+            return;
+        }
+        CloseableReference<Bitmap> bitmapReference = mCachedBitmaps.valueAt(index);
+        if (bitmapReference.get() != bitmap) {
+            // The frame was cached again since it was picked for eviction.
+            return;
+        }
+        mCachedBitmaps.removeAt(index);
+        bitmapReference.close();
+        recycleFreeBitmaps();
+        FLog.v(TAG, "Evicted frame %d", frameNumber);
+    }
+
     private synchronized void schedulePrefetches() {
         AnimatedDrawableFrameInfo frameInfo = mAnimatedDrawableBackend.getFrameInfo(mCurrentFrameIndex);
         boolean keepOnePreceding = frameInfo.disposalMethod == AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_PREVIOUS;
 
         int startFrame = Math.max(0, mCurrentFrameIndex - (keepOnePreceding ? 1 : 0));
-        int numToPrefetch = mAnimatedDrawableOptions.allowPrefetching ? PREFETCH_FRAMES : 0;
+        int numToPrefetch = mAnimatedDrawableOptions.allowPrefetching ?
+                mPrefetchWindow.computeWindow(
+                        mAnimatedDrawableBackend,
+                        startFrame,
+                        getMaxFramesForBudget(keepOnePreceding)) :
+                0;
         numToPrefetch = Math.max(numToPrefetch, keepOnePreceding ? 1 : 0);
         int endFrame = (startFrame + numToPrefetch) % mAnimatedDrawableBackend.getFrameCount();
         cancelFuturesOutsideOfRange(startFrame, endFrame);
@@ -374,6 +826,36 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         } else {
             cancelFuturesOutsideOfRange(mCurrentFrameIndex, mCurrentFrameIndex);
         }
+        AnimatedDrawableMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.recordPrefetchQueueDepth(mDecodesInFlight.size());
+        }
+    }
+
+    /**
+     * 计算在{@link #mMaximumKiloBytes}的预算内还可以预读多少帧。
+     * 如果所有帧都可以保存在内存中，那么预算不会限制窗口
+     * Computes how many frames can be prefetched without exceeding {@link #mMaximumKiloBytes}.
+     * Besides the window itself we keep the preceding frame for DISPOSE_TO_PREVIOUS and the closest
+     * cached frame, so those are taken out of the budget first, as are the checkpoints and the
+     * delta frames. The delta frame cache is limited to {@link #DELTA_FRAME_CACHE_SHARE} of the
+     * budget, so it can't crowd out the decoded frames.
+     *
+     * @param keepOnePreceding whether the frame before the current one is kept as well
+     * @return the number of frames that fit in the budget
+     */
+    private int getMaxFramesForBudget(boolean keepOnePreceding) {
+        if (shouldKeepAllFramesInMemory()) {
+            return Integer.MAX_VALUE;
+        }
+        double kiloBytesPerFrame = getApproxKiloBytesToHoldAllFrames() /
+                mAnimatedDrawableBackend.getFrameCount();
+        if (kiloBytesPerFrame <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        double kiloBytesForFrames = mMaximumKiloBytes - getAuxiliaryBytes() / (double) ByteConstants.KB;
+        int framesInBudget = (int) (kiloBytesForFrames / kiloBytesPerFrame);
+        return framesInBudget - 1 - (keepOnePreceding ? 1 : 0);
     }
 
     private static int getDefaultMaxBytes(ActivityManager activityManager) {
@@ -390,10 +872,34 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
             // This overrides everything.
             return true;
         }
-        return mApproxKiloBytesToHoldAllFrames < mMaximumKiloBytes;
+        return getApproxKiloBytesToHoldAllFrames() < mMaximumKiloBytes;
+    }
+
+    /**
+     * 只有当帧无法全部以完整的bitmap保存在内存中的时候才使用差量缓存，否则差量编码只是白白耗费时间
+     * The delta cache is only used when the frames don't all fit in memory as full bitmaps.
+     * Otherwise encoding and applying the deltas would only cost time.
+     */
+    private boolean shouldUseDeltaFrameCache() {
+        return mDeltaFrameCache != null && !shouldKeepAllFramesInMemory();
+    }
+
+    /**
+     * 只有当帧无法全部保存在内存中的时候才使用磁盘存储，否则每帧只需要合成一次
+     * The disk store is only used when the frames don't all fit in memory. Otherwise every frame is
+     * composited just once anyway.
+     */
+    private boolean shouldUseDiskFrameStore() {
+        return mAnimatedDrawableOptions.allowDiskFrameStore &&
+                mFrameDiskStore != null &&
+                !shouldKeepAllFramesInMemory();
     }
 
     private synchronized void doPrefetch(int startFrame, int count) {
+        if (mAnimatedDrawableOptions.allowParallelDecoding) {
+            doParallelPrefetch(startFrame, count);
+            return;
+        }
         for (int i = 0; i < count; i++) {
             final int frameNumber = (startFrame + i) % mAnimatedDrawableBackend.getFrameCount();
             boolean hasCached = hasCachedOrPredecodedFrame(frameNumber);
@@ -420,6 +926,73 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         }
     }
 
+    /**
+     * 把预读窗口按关键帧切分成互相独立的序列，每个序列作为一个任务提交到{@link #mParallelExecutorService}。
+     * 不同的序列并行渲染，同一个序列中的帧依赖前一帧，所以在同一个任务中按顺序渲染。
+     * UI线程总是按照调度的帧号来获取帧，所以帧依然按顺序被绘制
+     * Splits the prefetch window into runs that each start at a key frame (or at the start of the
+     * window) and submits every run as one task to {@link #mParallelExecutorService}. Runs don't
+     * depend on each other so they render in parallel, while the frames of one run depend on each
+     * other and render in order within the task. The UI thread always asks for the scheduled frame
+     * number, so frames are still drawn in order no matter which run finishes first.
+     *
+     * @param startFrame the first frame of the window
+     * @param count the number of frames in the window
+     */
+    private synchronized void doParallelPrefetch(int startFrame, int count) {
+        int[] runStarts = new int[count];
+        int[] runLengths = new int[count];
+        int runs = KeyFrameRuns.split(
+                startFrame,
+                count,
+                mAnimatedDrawableBackend.getFrameCount(),
+                mKeyFrameChecker,
+                runStarts,
+                runLengths);
+        for (int i = 0; i < runs; i++) {
+            submitRun(runStarts[i], runLengths[i]);
+        }
+    }
+
+    private synchronized void submitRun(int runStart, int runLength) {
+        int frameCount = mAnimatedDrawableBackend.getFrameCount();
+        final int[] framesToRender = new int[runLength];
+        int numFramesToRender = 0;
+        for (int i = 0; i < runLength; i++) {
+            int frameNumber = (runStart + i) % frameCount;
+            if (!hasCachedOrPredecodedFrame(frameNumber) && mDecodesInFlight.get(frameNumber) == null) {
+                framesToRender[numFramesToRender++] = frameNumber;
+            }
+        }
+        if (numFramesToRender == 0) {
+            return;
+        }
+        final int numFrames = numFramesToRender;
+        final Task<Object> newFuture = Task.call(
+                new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        for (int i = 0; i < numFrames; i++) {
+                            runPrefetch(framesToRender[i]);
+                        }
+                        return null;
+                    }
+                }, mParallelExecutorService);
+        for (int i = 0; i < numFrames; i++) {
+            mDecodesInFlight.put(framesToRender[i], newFuture);
+        }
+        newFuture.continueWith(
+                new Continuation<Object, Object>() {
+                    @Override
+                    public Object then(Task<Object> task) throws Exception {
+                        for (int i = 0; i < numFrames; i++) {
+                            onFutureFinished(newFuture, framesToRender[i]);
+                        }
+                        return null;
+                    }
+                });
+    }
+
     /**
      * Renders a frame and caches it. This runs on the worker thread.
      *
@@ -445,7 +1018,7 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
             } else {
                 CloseableReference<Bitmap> bitmapReference = obtainBitmapInternal();
                 try {
-                    mAnimatedImageCompositor.renderFrame(frameNumber, bitmapReference.get());
+                    renderOrReadFrame(frameNumber, bitmapReference.get());
                     maybeCacheRenderedBitmap(frameNumber, bitmapReference);
                     FLog.v(TAG, "Prefetch rendered frame %d", frameNumber);
                 } finally {
@@ -491,29 +1064,81 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
             int frameNumber = mCachedBitmaps.keyAt(index);
             boolean keepCached = mBitmapsToKeepCached.get(frameNumber);
             if (!keepCached) {
-                CloseableReference<Bitmap> bitmapReference = mCachedBitmaps.valueAt(index);
-                mCachedBitmaps.removeAt(index);
-                bitmapReference.close();
+                removeCachedBitmapAt(index);
             } else {
                 index++;
             }
         }
     }
 
-    private synchronized void maybeCacheRenderedBitmap(
+    /**
+     * 如果需要的话缓存这一帧，并通知{@link #mFrameCacheManager}。
+     * 调用的时候不能持有锁，因为共享预算可能会淘汰其他backend的帧
+     * Caches the frame if it should be kept and reports it to {@link #mFrameCacheManager}. Must be
+     * called without holding the lock as the shared budget may evict frames of other backends.
+     */
+    private void maybeCacheRenderedBitmap(
+            int frameNumber,
+            CloseableReference<Bitmap> bitmapReference) {
+        // Checked before caching, as switching to RGB_565 drops the cached frames.
+        maybeCheckOpacity(frameNumber, bitmapReference.get());
+        if (cacheRenderedBitmap(frameNumber, bitmapReference)) {
+            Bitmap bitmap = bitmapReference.get();
+            mFrameCacheManager.onFrameCached(
+                    mFrameCacheClient,
+                    frameNumber,
+                    bitmap,
+                    mAnimatedDrawableUtil.getSizeOfBitmap(bitmap));
+            FrameReadyListener listener = mFrameReadyListener;
+            if (listener != null) {
+                listener.onFrameReady(frameNumber);
+            }
+        }
+    }
+
+    private synchronized boolean cacheRenderedBitmap(
             int frameNumber,
             CloseableReference<Bitmap> bitmapReference) {
         if (!mBitmapsToKeepCached.get(frameNumber)) {
-            return;
+            return false;
         }
 
         int existingIndex = mCachedBitmaps.indexOfKey(frameNumber);
         if (existingIndex >= 0) {
-            CloseableReference<Bitmap> oldReference = mCachedBitmaps.valueAt(existingIndex);
-            oldReference.close();
-            mCachedBitmaps.removeAt(existingIndex);
+            removeCachedBitmapAt(existingIndex);
         }
         mCachedBitmaps.put(frameNumber, bitmapReference.clone());
+        return true;
+    }
+
+    private synchronized void removeCachedBitmapAt(int index) {
+        int frameNumber = mCachedBitmaps.keyAt(index);
+        CloseableReference<Bitmap> bitmapReference = mCachedBitmaps.valueAt(index);
+        mCachedBitmaps.removeAt(index);
+        mFrameCacheManager.onFrameRemoved(mFrameCacheClient, frameNumber, bitmapReference.get());
+        bitmapReference.close();
+    }
+
+    /**
+     * 不新建对象地借用缓存的帧，没有的话借用预解码的帧
+     * Borrows the cached frame without allocating, or else the pre-decoded frame.
+     */
+    private synchronized boolean borrowCachedOrPredecodedFrame(
+            int frameNumber,
+            BorrowedReference<Bitmap> borrowed) {
+        CloseableReference<Bitmap> cached = mCachedBitmaps.get(frameNumber);
+        if (cached != null && cached.borrowInto(borrowed)) {
+            return true;
+        }
+        CloseableReference<Bitmap> preDecoded = mAnimatedDrawableBackend.getPreDecodedFrame(frameNumber);
+        if (preDecoded == null) {
+            return false;
+        }
+        try {
+            return preDecoded.borrowInto(borrowed);
+        } finally {
+            preDecoded.close();
+        }
     }
 
     private synchronized CloseableReference<Bitmap> getCachedOrPredecodedFrame(int frameNumber) {
@@ -547,4 +1172,60 @@ public class AnimatedDrawableCachingBackendImpl extends DelegatingAnimatedDrawab
         }
         return set;
     }
+
+    /**
+     * 把bitmap还给backend的空闲列表，只弱引用backend。帧的SharedReference会被Reaper上的cleanup引用着，
+     * 强引用backend的话，backend和它的FrameReadyListener指向的drawable就永远不会被回收
+     * Gives bitmaps back to the free list of the backend, which is only weakly referenced. The
+     * shared references of the frames are reachable from cleanups registered with the
+     * {@link Reaper}, so a strong reference would keep the backend, and the drawable behind its
+     * FrameReadyListener, from ever being collected. Bitmaps released after the backend was
+     * collected are recycled.
+     */
+    private static class BitmapReleaser implements ResourceReleaser<Bitmap> {
+
+        private final WeakReference<AnimatedDrawableCachingBackendImpl> mBackend;
+
+        private BitmapReleaser(AnimatedDrawableCachingBackendImpl backend) {
+            mBackend = new WeakReference<AnimatedDrawableCachingBackendImpl>(backend);
+        }
+
+        @Override
+        public void release(Bitmap value) {
+            AnimatedDrawableCachingBackendImpl backend = mBackend.get();
+            if (backend != null) {
+                backend.releaseBitmapInternal(value);
+            } else {
+                value.recycle();
+                sTotalBitmaps.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 被回收之后把空闲的bitmap从总数中减掉，不能引用backend本身。缓存的帧由它们自己的CloseableReference释放
+     * Takes the free bitmaps off the total once the backend was collected. Must not reference the
+     * backend itself. The cached frames are released through their own CloseableReferences.
+     */
+    private static class ForgetFreeBitmaps implements Reaper.Cleanup {
+
+        private final List<Bitmap> mFreeBitmaps;
+        private final SparseArrayCompat<CloseableReference<Bitmap>> mCachedBitmaps;
+
+        private ForgetFreeBitmaps(
+                List<Bitmap> freeBitmaps,
+                SparseArrayCompat<CloseableReference<Bitmap>> cachedBitmaps) {
+            mFreeBitmaps = freeBitmaps;
+            mCachedBitmaps = cachedBitmaps;
+        }
+
+        @Override
+        public void clean(boolean leaked) {
+            if (mCachedBitmaps.size() > 0) {
+                FLog.d(TAG, "Collected with rendered bitmaps");
+            }
+            sTotalBitmaps.addAndGet(-mFreeBitmaps.size());
+            mFreeBitmaps.clear();
+        }
+    }
 }
@@ -0,0 +1,408 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import android.app.ActivityManager;
+import android.graphics.Bitmap;
+import android.support.annotation.VisibleForTesting;
+
+import com.facebook.common.s.ByteConstants;
+import com.facebook.common.s.Preconditions;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.log.FLog;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 进程内所有{@link AnimatedDrawableCachingBackendImpl}共享的帧缓存预算。
+ * 每个backend在缓存、绘制、移除一帧的时候都会通知这个类，当所有backend缓存的帧的总大小超过预算的时候，
+ * 这个类会跨drawable地淘汰最久没有被绘制的帧。正在播放并且可见的drawable会得到更大份额的预算
+ * A frame cache budget shared by all the {@link AnimatedDrawableCachingBackendImpl}s of the
+ * process. Backends report every frame they cache, draw and drop. When the frames cached by all
+ * backends together exceed the budget, the least recently drawn frames are evicted, whichever
+ * drawable they belong to.
+ * <p>
+ * A backend that has drawn a frame within {@link #ACTIVE_TIMEOUT_MS} is considered visible and
+ * playing. Such backends get {@link #ACTIVE_SHARE_WEIGHT} times the share of an idle backend, and
+ * eviction first picks frames from backends that are over their share.
+ * <p>
+ * Eviction callbacks are always made without holding the lock of this class, so backends may call
+ * into the manager while holding their own lock, except for {@link #onFrameCached} which may evict
+ * frames of other backends and must be called without holding any backend lock.
+ * <p>
+ * Clients and bitmaps are only held weakly, so a drawable that is dropped without clearing its
+ * cache doesn't stay reachable from here. The bytes of such a client are forgotten once it has been
+ * garbage collected.
+ */
+@ThreadSafe
+public class AnimatedFrameCacheManager {
+
+    private static final Class<?> TAG = AnimatedFrameCacheManager.class;
+
+    /**
+     * 在这个时间内绘制过帧的backend被认为是可见并且正在播放的
+     * Backends that drew a frame within this time are considered visible and playing.
+     */
+    @VisibleForTesting
+    static final long ACTIVE_TIMEOUT_MS = 1000;
+
+    /**
+     * 活跃的backend相对于空闲的backend所能得到的预算倍数
+     * How many times the share of an idle backend an active backend gets.
+     */
+    @VisibleForTesting
+    static final int ACTIVE_SHARE_WEIGHT = 4;
+
+    /**
+     * 被管理的缓存的一方，一般是{@link AnimatedDrawableCachingBackendImpl}
+     * The owner of cached frames, typically an {@link AnimatedDrawableCachingBackendImpl}.
+     */
+    public interface Client {
+
+        /**
+         * 淘汰指定的帧。只有当缓存的bitmap依然是{@code bitmap}的时候才应该释放，
+         * 因为这一帧可能在此期间被重新缓存了
+         * Evicts the specified frame. The frame should only be dropped if it is still cached with
+         * the given bitmap as it may have been re-cached in the meantime.
+         *
+         * @param frameNumber the frame to evict
+         * @param bitmap the bitmap the frame was cached with when it was picked for eviction
+         */
+        void evictFrame(int frameNumber, Bitmap bitmap);
+    }
+
+    private final ReferenceQueue<Client> mCollectedClients = new ReferenceQueue<Client>();
+
+    private final MonotonicClock mMonotonicClock;
+    private final int mMaxBytes;
+
+    /**
+     * 按最近绘制顺序排列的所有缓存帧，最前面的是最久没有被绘制的
+     * All cached frames in least-recently-drawn order.
+     */
+    @GuardedBy("this")
+    private final LinkedHashMap<FrameKey, FrameEntry> mEntries;
+
+    @GuardedBy("this")
+    private final Map<Client, ClientState> mClients;
+
+    /**
+     * 缓存的帧加上不能淘汰的辅助字节（比如差分帧和检查点）的总大小
+     * The size of all cached frames plus the auxiliary bytes that can't be evicted, like delta
+     * frames and checkpoints.
+     */
+    @GuardedBy("this")
+    private int mTotalBytes;
+
+    public AnimatedFrameCacheManager(int maxBytes, MonotonicClock monotonicClock) {
+        Preconditions.checkArgument(maxBytes > 0);
+        mMaxBytes = maxBytes;
+        mMonotonicClock = Preconditions.checkNotNull(monotonicClock);
+        mEntries = new LinkedHashMap<FrameKey, FrameEntry>(16, 0.75f, true);
+        mClients = new WeakHashMap<Client, ClientState>();
+    }
+
+    /**
+     * 根据设备的内存等级计算默认的共享预算
+     * Computes the default shared budget from the memory class of the device.
+     *
+     * @param activityManager the activity manager
+     * @return the budget in bytes
+     */
+    public static int getDefaultMaxBytes(ActivityManager activityManager) {
+        int memory = activityManager.getMemoryClass();
+        return Math.max(4, memory / 8) * ByteConstants.MB;
+    }
+
+    /**
+     * 通知一帧被缓存了，如果超出了预算就淘汰别的帧。调用的时候不能持有任何backend的锁
+     * Reports that a frame was cached and evicts frames if the budget is now exceeded. Must not be
+     * called while holding the lock of any backend.
+     *
+     * @param client the owner of the frame
+     * @param frameNumber the frame number
+     * @param bitmap the cached bitmap
+     * @param sizeInBytes the size of the bitmap
+     */
+    public void onFrameCached(Client client, int frameNumber, Bitmap bitmap, int sizeInBytes) {
+        List<FrameEntry> evicted;
+        synchronized (this) {
+            expungeCollectedClientsLocked();
+            ClientState state = getOrCreateClientStateLocked(client);
+            FrameKey key = new FrameKey(state, frameNumber);
+            FrameEntry previous = mEntries.remove(key);
+            if (previous != null) {
+                removeEntryBytesLocked(previous);
+            }
+            state.bytes += sizeInBytes;
+            state.entryCount++;
+            state.lastDrawnMs = mMonotonicClock.now();
+            mTotalBytes += sizeInBytes;
+            mEntries.put(key, new FrameEntry(key, bitmap, sizeInBytes));
+            evicted = trimToBudgetLocked();
+        }
+        for (int i = 0; i < evicted.size(); i++) {
+            FrameEntry entry = evicted.get(i);
+            Client owner = entry.key.state.get();
+            Bitmap evictedBitmap = entry.bitmap.get();
+            // If either is gone there is nothing left to drop.
+            if (owner != null && evictedBitmap != null) {
+                owner.evictFrame(entry.key.frameNumber, evictedBitmap);
+            }
+        }
+    }
+
+    /**
+     * 通知一帧被绘制了，这会让它变成最近使用的帧
+     * Reports that a cached frame was handed out for drawing, making it the most recently used.
+     *
+     * @param client the owner of the frame
+     * @param frameNumber the frame number
+     */
+    public synchronized void onFrameDrawn(Client client, int frameNumber) {
+        ClientState state = mClients.get(client);
+        if (state == null) {
+            return;
+        }
+        state.lastDrawnMs = mMonotonicClock.now();
+        // Access order: the lookup moves the entry to the most recently used end.
+        mEntries.get(new FrameKey(state, frameNumber));
+    }
+
+    /**
+     * 通知一帧被移除了缓存，这一帧可能已经被淘汰过了
+     * Reports that a frame was dropped from the cache. The frame may already have been evicted.
+     *
+     * @param client the owner of the frame
+     * @param frameNumber the frame number
+     * @param bitmap the bitmap the frame was cached with
+     */
+    public synchronized void onFrameRemoved(Client client, int frameNumber, Bitmap bitmap) {
+        expungeCollectedClientsLocked();
+        ClientState state = mClients.get(client);
+        if (state == null) {
+            return;
+        }
+        FrameKey key = new FrameKey(state, frameNumber);
+        FrameEntry entry = mEntries.get(key);
+        if (entry != null && entry.bitmap.get() == bitmap) {
+            mEntries.remove(key);
+            removeEntryBytesLocked(entry);
+        }
+    }
+
+    /**
+     * 设置一个client不能被淘汰的辅助缓存的大小，比如差分帧和合成检查点。
+     * 它们计入总预算和这个client的份额，但只有帧会被淘汰，超出的部分在下一次{@link #onFrameCached}时处理。
+     * 可以在持有backend的锁的时候调用
+     * Sets the size of the auxiliary caches of a client that this class can't evict, like delta
+     * frames and compositing checkpoints. They count against the total budget and the share of the
+     * client, but only frames are evicted, the next time {@link #onFrameCached} is called. May be
+     * called while holding the lock of a backend.
+     *
+     * @param client the owner of the caches
+     * @param sizeInBytes the current size of all auxiliary caches of the client
+     */
+    public synchronized void setAuxiliaryBytes(Client client, int sizeInBytes) {
+        Preconditions.checkArgument(sizeInBytes >= 0);
+        expungeCollectedClientsLocked();
+        ClientState state = mClients.get(client);
+        if (state == null) {
+            if (sizeInBytes == 0) {
+                return;
+            }
+            state = getOrCreateClientStateLocked(client);
+        }
+        state.bytes += sizeInBytes - state.auxiliaryBytes;
+        mTotalBytes += sizeInBytes - state.auxiliaryBytes;
+        state.auxiliaryBytes = sizeInBytes;
+        maybeForgetClientLocked(client, state);
+    }
+
+    public synchronized int getTotalBytes() {
+        expungeCollectedClientsLocked();
+        return mTotalBytes;
+    }
+
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    @VisibleForTesting
+    synchronized int getBytesForClient(Client client) {
+        ClientState state = mClients.get(client);
+        return state == null ? 0 : state.bytes;
+    }
+
+    @GuardedBy("this")
+    private ClientState getOrCreateClientStateLocked(Client client) {
+        ClientState state = mClients.get(client);
+        if (state == null) {
+            state = new ClientState(client, mCollectedClients);
+            mClients.put(client, state);
+        }
+        return state;
+    }
+
+    /**
+     * 释放一帧的字节。client的状态只在它没有帧也没有辅助字节的时候才被移除，
+     * 所以{@link #mEntries}里的帧总能找到自己的状态
+     * Releases the bytes of a frame. The state of a client is only removed once it has neither
+     * frames nor auxiliary bytes left, so every frame in {@link #mEntries} can reach its state.
+     */
+    @GuardedBy("this")
+    private void removeEntryBytesLocked(FrameEntry entry) {
+        ClientState state = entry.key.state;
+        mTotalBytes -= entry.sizeInBytes;
+        state.bytes -= entry.sizeInBytes;
+        state.entryCount--;
+        Client client = state.get();
+        if (client != null) {
+            maybeForgetClientLocked(client, state);
+        }
+    }
+
+    @GuardedBy("this")
+    private void maybeForgetClientLocked(Client client, ClientState state) {
+        if (state.entryCount == 0 && state.auxiliaryBytes == 0) {
+            mClients.remove(client);
+        }
+    }
+
+    /**
+     * 忘掉已经被回收的client的帧和辅助字节
+     * Forgets the frames and auxiliary bytes of clients that have been garbage collected.
+     */
+    @GuardedBy("this")
+    private void expungeCollectedClientsLocked() {
+        if (mCollectedClients.poll() == null) {
+            return;
+        }
+        while (mCollectedClients.poll() != null) {
+            // Drain the queue, all collected clients are handled below.
+        }
+        Iterator<FrameEntry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            FrameEntry entry = iterator.next();
+            if (entry.key.state.get() == null) {
+                iterator.remove();
+            }
+        }
+        // The map has already dropped the collected states, so recount from the live ones.
+        mTotalBytes = 0;
+        for (ClientState state : mClients.values()) {
+            mTotalBytes += state.bytes;
+        }
+    }
+
+    /**
+     * 淘汰帧直到总大小回到预算之内。优先淘汰超过自己份额的backend中最久没有被绘制的帧
+     * Evicts frames until the total is within the budget. Prefers the least recently drawn frame of
+     * a backend that is over its share, falling back to the least recently drawn frame overall.
+     *
+     * @return the evicted entries whose owners still need to be told
+     */
+    @GuardedBy("this")
+    private List<FrameEntry> trimToBudgetLocked() {
+        List<FrameEntry> evicted = new ArrayList<FrameEntry>();
+        if (mTotalBytes <= mMaxBytes) {
+            return evicted;
+        }
+        long nowMs = mMonotonicClock.now();
+        while (mTotalBytes > mMaxBytes && !mEntries.isEmpty()) {
+            int totalWeight = 0;
+            for (ClientState state : mClients.values()) {
+                totalWeight += getWeight(state, nowMs);
+            }
+            // A client may have been collected since the last expunge.
+            totalWeight = Math.max(1, totalWeight);
+
+            FrameEntry victim = null;
+            Iterator<FrameEntry> iterator = mEntries.values().iterator();
+            while (iterator.hasNext()) {
+                FrameEntry entry = iterator.next();
+                if (victim == null) {
+                    victim = entry;
+                }
+                ClientState state = entry.key.state;
+                long shareBytes = (long) mMaxBytes * getWeight(state, nowMs) / totalWeight;
+                if (state.bytes > shareBytes) {
+                    victim = entry;
+                    break;
+                }
+            }
+            mEntries.remove(victim.key);
+            removeEntryBytesLocked(victim);
+            evicted.add(victim);
+        }
+        FLog.v(TAG, "Evicted %d frames, total bytes: %d", evicted.size(), mTotalBytes);
+        return evicted;
+    }
+
+    private static int getWeight(ClientState state, long nowMs) {
+        return nowMs - state.lastDrawnMs <= ACTIVE_TIMEOUT_MS ? ACTIVE_SHARE_WEIGHT : 1;
+    }
+
+    /**
+     * 一个client的记账信息，只弱引用client本身
+     * The bookkeeping of one client, referencing the client only weakly.
+     */
+    private static class ClientState extends WeakReference<Client> {
+        int bytes;
+        int auxiliaryBytes;
+        int entryCount;
+        long lastDrawnMs;
+
+        ClientState(Client client, ReferenceQueue<Client> queue) {
+            super(client, queue);
+        }
+    }
+
+    private static class FrameKey {
+        final ClientState state;
+        final int frameNumber;
+
+        FrameKey(ClientState state, int frameNumber) {
+            this.state = state;
+            this.frameNumber = frameNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FrameKey)) {
+                return false;
+            }
+            FrameKey other = (FrameKey) o;
+            return state == other.state && frameNumber == other.frameNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(state) * 31 + frameNumber;
+        }
+    }
+
+    private static class FrameEntry {
+        final FrameKey key;
+        final WeakReference<Bitmap> bitmap;
+        final int sizeInBytes;
+
+        FrameEntry(FrameKey key, Bitmap bitmap, int sizeInBytes) {
+            this.key = key;
+            this.bitmap = new WeakReference<Bitmap>(bitmap);
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import android.graphics.Bitmap;
+import android.support.annotation.VisibleForTesting;
+
+import com.facebook.common.s.Preconditions;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 一个用增量压缩保存动画所有帧的内存缓存。关键帧保存完整的像素，其他帧只保存相对于前一帧变化的像素的游程，
+ * 这样在同样的内存预算中可以完整地缓存更多的动画
+ * An in-memory cache that holds all the frames of an animation using delta compression. Key frames
+ * are kept as full pixel buffers. Every other frame is kept as the runs of pixels that changed
+ * since the previous frame, which for most animations is a small part of the frame. This lets far
+ * more animations stay fully cached within the same budget.
+ * <p>
+ * A delta is encoded as a sequence of {@code [skip, length, pixel * length]} runs over the raw
+ * pixel memory of the bitmap, so any config whose byte count is a multiple of 4 is supported and no
+ * color conversion takes place. A frame is decoded by applying the deltas since the closest key
+ * frame. The last decoded frame is kept, so decoding frames in order applies one delta per frame.
+ * <p>
+ * Frames can only be added as a delta if the previous frame is cached. Once the budget, which
+ * includes the last decoded frame, is exhausted no more frames are added.
+ */
+@ThreadSafe
+public class AnimatedFrameDeltaCache {
+
+    /**
+     * 两个关键帧之间最多有多少个增量帧，用来限制解码一个随机帧的耗时
+     * Maximum number of deltas between two key frames. Bounds the cost of decoding a random frame.
+     */
+    @VisibleForTesting
+    static final int MAX_DELTA_CHAIN = 16;
+
+    private final int mFrameCount;
+    private final int mMaxBytes;
+
+    /**
+     * 每一帧的编码，关键帧是完整的像素，其他的是增量；没有缓存的帧是null
+     * The encoded frames. Key frames hold the full pixels, other frames a delta. Null if not cached.
+     */
+    @GuardedBy("this")
+    private final int[][] mFrames;
+
+    @GuardedBy("this")
+    private final boolean[] mIsKeyFrame;
+
+    @GuardedBy("this")
+    private int mSizeInBytes;
+
+    @GuardedBy("this")
+    private int mPixelCount = -1;
+
+    @GuardedBy("this")
+    private Bitmap.Config mConfig;
+
+    /**
+     * 最后一次解码或者添加的帧的像素
+     * The pixels of the frame last decoded or added.
+     */
+    @GuardedBy("this")
+    private int[] mLastPixels;
+
+    @GuardedBy("this")
+    private int mLastFrame = -1;
+
+    public AnimatedFrameDeltaCache(int frameCount, int maxBytes) {
+        Preconditions.checkArgument(frameCount > 0);
+        mFrameCount = frameCount;
+        mMaxBytes = maxBytes;
+        mFrames = new int[frameCount][];
+        mIsKeyFrame = new boolean[frameCount];
+    }
+
+    /**
+     * 判断指定的帧是否被缓存了
+     * Checks whether the frame is cached.
+     *
+     * @param frameNumber the frame number
+     * @return whether the frame is cached
+     */
+    public synchronized boolean contains(int frameNumber) {
+        return mFrames[frameNumber] != null;
+    }
+
+    /**
+     * 缓存一帧。如果前一帧被缓存了，就保存为增量，否则只有当这是一个关键帧的时候才保存完整的像素
+     * Caches a frame. The frame is stored as a delta against the previous frame if that one is
+     * cached. Otherwise it's stored in full, but only if it is a key frame, as a full copy of any
+     * other frame would be wasted until its predecessors are cached.
+     *
+     * @param frameNumber the frame number
+     * @param bitmap the fully composited frame
+     * @param isKeyFrame whether the frame can be rendered without the frames before it
+     */
+    public synchronized void put(int frameNumber, Bitmap bitmap, boolean isKeyFrame) {
+        int byteCount = bitmap.getRowBytes() * bitmap.getHeight();
+        if (!canPutLocked(frameNumber, byteCount, bitmap.getConfig(), isKeyFrame)) {
+            return;
+        }
+        int[] pixels = new int[mPixelCount];
+        bitmap.copyPixelsToBuffer(IntBuffer.wrap(pixels));
+        putLocked(frameNumber, pixels);
+    }
+
+    /**
+     * 缓存一帧的原始像素，和{@link #put(int, Bitmap, boolean)}一样
+     * Caches the raw pixels of a frame, like {@link #put(int, Bitmap, boolean)}.
+     *
+     * @return whether the frame was cached
+     */
+    @VisibleForTesting
+    synchronized boolean put(int frameNumber, int[] pixels, Bitmap.Config config, boolean isKeyFrame) {
+        if (!canPutLocked(frameNumber, pixels.length * 4, config, isKeyFrame)) {
+            return false;
+        }
+        return putLocked(frameNumber, pixels.clone());
+    }
+
+    @GuardedBy("this")
+    private boolean canPutLocked(int frameNumber, int byteCount, Bitmap.Config config, boolean isKeyFrame) {
+        if (mFrames[frameNumber] != null || !isCompatibleLocked(byteCount, config)) {
+            return false;
+        }
+        // A full copy of a frame that isn't a key frame would be wasted until its predecessors
+        // are cached.
+        return isKeyFrame || (frameNumber > 0 && getPixelsLocked(frameNumber - 1) != null);
+    }
+
+    @GuardedBy("this")
+    private boolean putLocked(int frameNumber, int[] pixels) {
+        int[] previous = frameNumber > 0 ? getPixelsLocked(frameNumber - 1) : null;
+        int[] encoded = null;
+        boolean keyFrame = previous == null || getDeltaChainLocked(frameNumber - 1) >= MAX_DELTA_CHAIN;
+        if (!keyFrame) {
+            encoded = encodeDelta(previous, pixels);
+            // Not worth it if the delta is almost as large as the frame.
+            keyFrame = encoded == null;
+        }
+        if (keyFrame) {
+            encoded = pixels;
+        }
+        int size = encoded.length * 4;
+        // The last decoded frame is always kept as well.
+        if (mSizeInBytes + size + mPixelCount * 4 > mMaxBytes) {
+            return false;
+        }
+        mFrames[frameNumber] = encoded;
+        mIsKeyFrame[frameNumber] = keyFrame;
+        mSizeInBytes += size;
+        // Decoding applies deltas to the last pixels in place, so they must not alias a key frame.
+        mLastPixels = keyFrame ? pixels.clone() : pixels;
+        mLastFrame = frameNumber;
+        return true;
+    }
+
+    /**
+     * 解码一帧到bitmap中
+     * Decodes a frame into the bitmap.
+     *
+     * @param frameNumber the frame number
+     * @param bitmap the bitmap to decode into, it must have the size and config of the cached frames
+     * @return whether the frame was cached and decoded into the bitmap
+     */
+    public synchronized boolean get(int frameNumber, Bitmap bitmap) {
+        int byteCount = bitmap.getRowBytes() * bitmap.getHeight();
+        if (mFrames[frameNumber] == null || !isCompatibleLocked(byteCount, bitmap.getConfig())) {
+            return false;
+        }
+        int[] pixels = getPixelsLocked(frameNumber);
+        if (pixels == null) {
+            return false;
+        }
+        bitmap.copyPixelsFromBuffer(IntBuffer.wrap(pixels));
+        return true;
+    }
+
+    /**
+     * 解码一帧的原始像素，和{@link #get(int, Bitmap)}一样
+     * Decodes the raw pixels of a frame, like {@link #get(int, Bitmap)}.
+     *
+     * @return a copy of the pixels or null if the frame isn't cached
+     */
+    @VisibleForTesting
+    synchronized int[] get(int frameNumber, int pixelCount, Bitmap.Config config) {
+        if (mFrames[frameNumber] == null || !isCompatibleLocked(pixelCount * 4, config)) {
+            return null;
+        }
+        int[] pixels = getPixelsLocked(frameNumber);
+        return pixels != null ? pixels.clone() : null;
+    }
+
+    /**
+     * 判断是否所有帧都被缓存了
+     * Checks whether all frames are cached.
+     */
+    public synchronized boolean isComplete() {
+        for (int i = 0; i < mFrameCount; i++) {
+            if (mFrames[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取缓存的帧占用的字节数，包括最后一次解码的帧
+     * Gets the bytes used by the cached frames including the last decoded frame.
+     */
+    public synchronized int getSizeInBytes() {
+        return mSizeInBytes + (mLastPixels != null ? mLastPixels.length * 4 : 0);
+    }
+
+    /**
+     * 清空缓存。之后的帧可以用另一种大小和格式缓存，比如切换到RGB_565之后
+     * Drops all cached frames. Frames cached afterwards may have another size and config, e.g. after
+     * switching to RGB_565.
+     */
+    public synchronized void clear() {
+        Arrays.fill(mFrames, null);
+        Arrays.fill(mIsKeyFrame, false);
+        mSizeInBytes = 0;
+        mLastPixels = null;
+        mLastFrame = -1;
+        mPixelCount = -1;
+        mConfig = null;
+    }
+
+    /**
+     * 所有缓存的帧必须有同样的大小和格式，第一个被缓存的帧决定它们
+     * All cached frames must have the same size and config, which the first frame cached sets.
+     */
+    @GuardedBy("this")
+    private boolean isCompatibleLocked(int byteCount, Bitmap.Config config) {
+        if (mPixelCount < 0) {
+            if (byteCount % 4 != 0) {
+                return false;
+            }
+            mPixelCount = byteCount / 4;
+            mConfig = config;
+        }
+        return byteCount == mPixelCount * 4 && config == mConfig;
+    }
+
+    @GuardedBy("this")
+    private int getDeltaChainLocked(int frameNumber) {
+        int chain = 0;
+        while (frameNumber >= 0 && !mIsKeyFrame[frameNumber]) {
+            chain++;
+            frameNumber--;
+        }
+        return chain;
+    }
+
+    /**
+     * 获取指定的帧的像素，如果可以的话从最后解码的帧开始，否则从最近的关键帧开始。返回的数组不能被修改
+     * Gets the pixels of the frame, starting from the last decoded frame if possible and from the
+     * closest key frame otherwise. The returned array must not be modified.
+     *
+     * @return the pixels or null if the frame can't be decoded
+     */
+    @GuardedBy("this")
+    private int[] getPixelsLocked(int frameNumber) {
+        if (mFrames[frameNumber] == null) {
+            return null;
+        }
+        if (mLastFrame == frameNumber) {
+            return mLastPixels;
+        }
+        int start;
+        int[] pixels;
+        if (mLastFrame >= 0 && mLastFrame < frameNumber && !hasKeyFrameBetweenLocked(mLastFrame, frameNumber)) {
+            start = mLastFrame + 1;
+            pixels = mLastPixels;
+        } else {
+            int keyFrame = frameNumber;
+            while (keyFrame >= 0 && mFrames[keyFrame] != null && !mIsKeyFrame[keyFrame]) {
+                keyFrame--;
+            }
+            if (keyFrame < 0 || mFrames[keyFrame] == null) {
+                return null;
+            }
+            start = keyFrame + 1;
+            pixels = mFrames[keyFrame].clone();
+        }
+        for (int i = start; i <= frameNumber; i++) {
+            if (mFrames[i] == null) {
+                return null;
+            }
+            applyDelta(mFrames[i], pixels);
+        }
+        mLastPixels = pixels;
+        mLastFrame = frameNumber;
+        return pixels;
+    }
+
+    @GuardedBy("this")
+    private boolean hasKeyFrameBetweenLocked(int fromFrame, int toFrame) {
+        for (int i = fromFrame + 1; i <= toFrame; i++) {
+            if (mFrames[i] == null || mIsKeyFrame[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把当前帧编码为相对于前一帧的增量：一系列[跳过的像素数，变化的像素数，变化的像素]
+     * Encodes the frame as a delta against the previous frame: a sequence of
+     * {@code [skip, length, pixel * length]} runs.
+     *
+     * @return the delta or null if it wouldn't be smaller than half the frame
+     */
+    @VisibleForTesting
+    static int[] encodeDelta(int[] previous, int[] current) {
+        int maxLength = current.length / 2;
+        int[] delta = new int[Math.min(maxLength, 64)];
+        int length = 0;
+        int i = 0;
+        int skipStart = 0;
+        while (i < current.length) {
+            if (previous[i] == current[i]) {
+                i++;
+                continue;
+            }
+            int runStart = i;
+            while (i < current.length && previous[i] != current[i]) {
+                i++;
+            }
+            int runLength = i - runStart;
+            int needed = length + 2 + runLength;
+            if (needed > maxLength) {
+                return null;
+            }
+            if (needed > delta.length) {
+                delta = Arrays.copyOf(delta, Math.min(maxLength, Math.max(needed, delta.length * 2)));
+            }
+            delta[length++] = runStart - skipStart;
+            delta[length++] = runLength;
+            System.arraycopy(current, runStart, delta, length, runLength);
+            length += runLength;
+            skipStart = i;
+        }
+        return Arrays.copyOf(delta, length);
+    }
+
+    /**
+     * 把增量应用到前一帧的像素上
+     * Applies a delta to the pixels of the previous frame.
+     */
+    @VisibleForTesting
+    static void applyDelta(int[] delta, int[] pixels) {
+        int position = 0;
+        int i = 0;
+        while (i < delta.length) {
+            position += delta[i++];
+            int runLength = delta[i++];
+            System.arraycopy(delta, i, pixels, position, runLength);
+            i += runLength;
+            position += runLength;
+        }
+    }
+}
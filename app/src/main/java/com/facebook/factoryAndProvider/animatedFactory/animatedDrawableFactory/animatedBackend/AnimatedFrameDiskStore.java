@@ -0,0 +1,404 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import android.graphics.Bitmap;
+import android.support.annotation.VisibleForTesting;
+
+import com.facebook.common.s.ByteConstants;
+import com.facebook.common.s.Preconditions;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImage;
+import com.facebook.log.FLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 第二级的帧存储：把合成好的帧的原始像素写进应用缓存目录下的一个内存映射文件中。
+ * 当一个动画的帧超出了内存预算的时候，循环播放时可以从这里把帧拷贝回bitmap，而不需要重新合成。
+ * 同一个{@link AnimatedImage}的所有drawable共享存储的帧
+ * A second-tier store for composited frames. Frames are written as raw pixel blocks into a
+ * memory-mapped file in the app cache dir. When the frames of an animation exceed the in-memory
+ * budget, looping animations can copy frames straight from the mapping into a bitmap instead of
+ * compositing them again.
+ * <p>
+ * Frames are keyed by the {@link AnimatedImage} they belong to (held weakly), the rendered size and
+ * the frame number, so all the drawables of the same image share the stored frames. When the file
+ * is full, the least recently read frames are evicted until the new frame fits.
+ * <p>
+ * The mapping is created lazily on first write, so creating the store doesn't touch the disk. Each
+ * store maps its own temp file, which is deleted as soon as it is mapped: the stored frames are only
+ * meaningful to this store, and nothing is left behind when the process dies.
+ * <p>
+ * The lock only guards the index. Pixels are copied without holding it, so frames decoded in
+ * parallel are written and read concurrently. A block that is being copied is pinned, and its
+ * extent is only reused after the copy is done.
+ */
+@ThreadSafe
+public class AnimatedFrameDiskStore {
+
+    private static final Class<?> TAG = AnimatedFrameDiskStore.class;
+
+    /**
+     * 映射文件的默认大小
+     * Default size of the mapped file.
+     */
+    public static final int DEFAULT_MAX_BYTES = 32 * ByteConstants.MB;
+
+    private static final String FILE_PREFIX = "animated_frames";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final File mCacheDir;
+    private final int mMaxBytes;
+
+    @GuardedBy("this")
+    private final WeakHashMap<AnimatedImage, Integer> mImageIds;
+
+    @GuardedBy("this")
+    private int mNextImageId;
+
+    /**
+     * 按最近读取顺序排列的所有存储的帧，最前面的是最久没有被读取的
+     * All stored frames in least-recently-read order.
+     */
+    @GuardedBy("this")
+    private final LinkedHashMap<FrameKey, Block> mFrames;
+
+    /**
+     * 文件中空闲的区域，key是起始偏移，value是长度，相邻的区域会被合并
+     * Free extents of the file keyed by offset. Adjacent extents are merged.
+     */
+    @GuardedBy("this")
+    private final TreeMap<Integer, Integer> mFreeExtents;
+
+    @GuardedBy("this")
+    private MappedByteBuffer mMappedBuffer;
+
+    @GuardedBy("this")
+    private boolean mFailed;
+
+    public AnimatedFrameDiskStore(File cacheDir) {
+        this(cacheDir, DEFAULT_MAX_BYTES);
+    }
+
+    public AnimatedFrameDiskStore(File cacheDir, int maxBytes) {
+        Preconditions.checkArgument(maxBytes > 0);
+        mCacheDir = Preconditions.checkNotNull(cacheDir);
+        mMaxBytes = maxBytes;
+        mImageIds = new WeakHashMap<AnimatedImage, Integer>();
+        mFrames = new LinkedHashMap<FrameKey, Block>(16, 0.75f, true);
+        mFreeExtents = new TreeMap<Integer, Integer>();
+    }
+
+    /**
+     * 判断指定的帧是否已经被存储了
+     * Checks whether the frame is stored.
+     *
+     * @param image the image the frame belongs to
+     * @param frameNumber the frame number
+     * @param width the rendered width of the frame
+     * @param height the rendered height of the frame
+     * @return whether the frame is stored
+     */
+    public synchronized boolean contains(
+            AnimatedImage image,
+            int frameNumber,
+            int width,
+            int height) {
+        Integer imageId = mImageIds.get(image);
+        if (imageId == null) {
+            return false;
+        }
+        Block block = mFrames.get(new FrameKey(imageId, frameNumber, width, height));
+        return block != null && block.written;
+    }
+
+    /**
+     * 把一帧写进存储，如果空间不够就淘汰最久没有被读取的帧。如果这帧已经存储了或者无法存储就什么都不做
+     * Writes a frame to the store, evicting the least recently read frames if the file is full.
+     * Does nothing if the frame is already stored or can't be stored.
+     *
+     * @param image the image the frame belongs to
+     * @param frameNumber the frame number
+     * @param bitmap the fully composited frame
+     */
+    public void put(AnimatedImage image, int frameNumber, Bitmap bitmap) {
+        int sizeInBytes = bitmap.getRowBytes() * bitmap.getHeight();
+        Block block;
+        ByteBuffer buffer;
+        synchronized (this) {
+            if (sizeInBytes > mMaxBytes || !ensureMappedLocked()) {
+                return;
+            }
+            FrameKey key = new FrameKey(
+                    getImageIdLocked(image),
+                    frameNumber,
+                    bitmap.getWidth(),
+                    bitmap.getHeight());
+            Block existing = mFrames.get(key);
+            if (existing != null) {
+                if (existing.config == bitmap.getConfig()) {
+                    // Already stored, or being written by another thread.
+                    return;
+                }
+                // The frames of the image are rendered in another config now.
+                mFrames.remove(key);
+                evictLocked(existing);
+            }
+            int offset = allocateLocked(sizeInBytes);
+            while (offset < 0 && !mFrames.isEmpty()) {
+                Iterator<Block> iterator = mFrames.values().iterator();
+                Block eldest = iterator.next();
+                iterator.remove();
+                evictLocked(eldest);
+                offset = allocateLocked(sizeInBytes);
+            }
+            if (offset < 0) {
+                return;
+            }
+            block = new Block(offset, sizeInBytes, bitmap.getConfig());
+            // Pinned by this writer until the pixels are in place.
+            block.pins = 1;
+            mFrames.put(key, block);
+            buffer = sliceLocked(offset, sizeInBytes);
+        }
+        bitmap.copyPixelsToBuffer(buffer);
+        synchronized (this) {
+            block.written = true;
+            unpinLocked(block);
+        }
+    }
+
+    /**
+     * 把存储的帧直接从映射文件拷贝到bitmap中。bitmap必须和存储的帧大小、格式一致
+     * Copies a stored frame from the mapping into the bitmap. The bitmap must have the size and
+     * config the frame was stored with.
+     *
+     * @param image the image the frame belongs to
+     * @param frameNumber the frame number
+     * @param bitmap the bitmap to copy the frame into
+     * @return whether the frame was stored and copied into the bitmap
+     */
+    public boolean get(AnimatedImage image, int frameNumber, Bitmap bitmap) {
+        Block block;
+        ByteBuffer buffer;
+        synchronized (this) {
+            Integer imageId = mImageIds.get(image);
+            if (imageId == null || mMappedBuffer == null) {
+                return false;
+            }
+            block = mFrames.get(
+                    new FrameKey(imageId, frameNumber, bitmap.getWidth(), bitmap.getHeight()));
+            if (block == null ||
+                    !block.written ||
+                    block.config != bitmap.getConfig() ||
+                    block.sizeInBytes != bitmap.getRowBytes() * bitmap.getHeight()) {
+                return false;
+            }
+            block.pins++;
+            buffer = sliceLocked(block.offset, block.sizeInBytes);
+        }
+        try {
+            bitmap.copyPixelsFromBuffer(buffer);
+        } finally {
+            synchronized (this) {
+                unpinLocked(block);
+            }
+        }
+        return true;
+    }
+
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    @VisibleForTesting
+    synchronized int getFrameCount() {
+        return mFrames.size();
+    }
+
+    @GuardedBy("this")
+    private int getImageIdLocked(AnimatedImage image) {
+        Integer imageId = mImageIds.get(image);
+        if (imageId == null) {
+            // Ids are never reused, so frames of a collected image just age out of the store.
+            imageId = mNextImageId++;
+            mImageIds.put(image, imageId);
+        }
+        return imageId;
+    }
+
+    @GuardedBy("this")
+    private boolean ensureMappedLocked() {
+        if (mMappedBuffer != null) {
+            return true;
+        }
+        if (mFailed) {
+            return false;
+        }
+        File tempFile = null;
+        RandomAccessFile file = null;
+        try {
+            tempFile = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, mCacheDir);
+            file = new RandomAccessFile(tempFile, "rw");
+            file.setLength(mMaxBytes);
+            mMappedBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mMaxBytes);
+            mFreeExtents.put(0, mMaxBytes);
+            return true;
+        } catch (IOException e) {
+            FLog.w(TAG, e, "Failed to map a frame store in %s", mCacheDir);
+            mFailed = true;
+            return false;
+        } finally {
+            if (file != null) {
+                try {
+                    // The mapping stays valid after the file is closed.
+                    file.close();
+                } catch (IOException e) {
+                    FLog.w(TAG, e, "Failed to close %s", tempFile);
+                }
+            }
+            if (tempFile != null && !tempFile.delete()) {
+                // The mapping stays valid after the file is deleted.
+                FLog.w(TAG, "Failed to delete %s", tempFile);
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private ByteBuffer sliceLocked(int offset, int sizeInBytes) {
+        ByteBuffer buffer = mMappedBuffer.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + sizeInBytes);
+        return buffer.slice();
+    }
+
+    /**
+     * 把一块从索引中移除的区域释放掉，如果它正在被拷贝就等拷贝结束再释放
+     * Frees the extent of a block that was removed from the index, or defers it until the block is
+     * no longer being copied.
+     */
+    @GuardedBy("this")
+    private void evictLocked(Block block) {
+        block.evicted = true;
+        if (block.pins == 0) {
+            freeLocked(block.offset, block.sizeInBytes);
+        }
+    }
+
+    @GuardedBy("this")
+    private void unpinLocked(Block block) {
+        block.pins--;
+        if (block.pins == 0 && block.evicted) {
+            freeLocked(block.offset, block.sizeInBytes);
+        }
+    }
+
+    /**
+     * 首次适配地分配一块区域
+     * First-fit allocation of an extent.
+     *
+     * @return the offset of the extent or -1 if no free extent is large enough
+     */
+    @GuardedBy("this")
+    private int allocateLocked(int sizeInBytes) {
+        for (Map.Entry<Integer, Integer> extent : mFreeExtents.entrySet()) {
+            int offset = extent.getKey();
+            int length = extent.getValue();
+            if (length >= sizeInBytes) {
+                mFreeExtents.remove(offset);
+                if (length > sizeInBytes) {
+                    mFreeExtents.put(offset + sizeInBytes, length - sizeInBytes);
+                }
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    @GuardedBy("this")
+    private void freeLocked(int offset, int sizeInBytes) {
+        Map.Entry<Integer, Integer> previous = mFreeExtents.floorEntry(offset);
+        if (previous != null && previous.getKey() + previous.getValue() == offset) {
+            offset = previous.getKey();
+            sizeInBytes += previous.getValue();
+        }
+        Integer nextLength = mFreeExtents.get(offset + sizeInBytes);
+        if (nextLength != null) {
+            mFreeExtents.remove(offset + sizeInBytes);
+            sizeInBytes += nextLength;
+        }
+        mFreeExtents.put(offset, sizeInBytes);
+    }
+
+    private static class FrameKey {
+        final int imageId;
+        final int frameNumber;
+        final int width;
+        final int height;
+
+        FrameKey(int imageId, int frameNumber, int width, int height) {
+            this.imageId = imageId;
+            this.frameNumber = frameNumber;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FrameKey)) {
+                return false;
+            }
+            FrameKey other = (FrameKey) o;
+            return imageId == other.imageId &&
+                    frameNumber == other.frameNumber &&
+                    width == other.width &&
+                    height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = imageId;
+            result = 31 * result + frameNumber;
+            result = 31 * result + width;
+            return 31 * result + height;
+        }
+    }
+
+    private static class Block {
+        final int offset;
+        final int sizeInBytes;
+        final Bitmap.Config config;
+
+        // The fields below are guarded by the store.
+
+        /** Number of threads copying pixels from or into the block. */
+        int pins;
+
+        /** Whether the pixels are in place. */
+        boolean written;
+
+        /** Whether the block was removed from the index. */
+        boolean evicted;
+
+        Block(int offset, int sizeInBytes, Bitmap.Config config) {
+            this.offset = offset;
+            this.sizeInBytes = sizeInBytes;
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+/**
+ * 把预读窗口按关键帧切分成互相独立的序列，每个序列从一个关键帧或者窗口的开始处开始
+ * Splits a prefetch window into runs that each start at a key frame or at the start of the window.
+ * The frames of a run depend on each other, different runs don't.
+ */
+final class KeyFrameRuns {
+
+    /**
+     * 判断一帧是否是关键帧
+     * Tells whether a frame is a key frame.
+     */
+    interface KeyFrameChecker {
+        boolean isKeyFrame(int frameNumber);
+    }
+
+    private KeyFrameRuns() {
+    }
+
+    /**
+     * 切分窗口，窗口会在最后一帧之后回到第一帧
+     * Splits the window, which wraps around after the last frame.
+     *
+     * @param startFrame the first frame of the window
+     * @param count the number of frames in the window
+     * @param frameCount the number of frames of the animation
+     * @param keyFrameChecker tells which frames are key frames
+     * @param runStarts receives the first frame of each run, at least {@code count} long
+     * @param runLengths receives the number of frames of each run, at least {@code count} long
+     * @return the number of runs
+     */
+    static int split(
+            int startFrame,
+            int count,
+            int frameCount,
+            KeyFrameChecker keyFrameChecker,
+            int[] runStarts,
+            int[] runLengths) {
+        int runs = 0;
+        for (int i = 0; i < count; i++) {
+            int frameNumber = (startFrame + i) % frameCount;
+            if (i == 0 || keyFrameChecker.isKeyFrame(frameNumber)) {
+                runStarts[runs] = frameNumber;
+                runLengths[runs] = 0;
+                runs++;
+            }
+            runLengths[runs - 1]++;
+        }
+        return runs;
+    }
+}
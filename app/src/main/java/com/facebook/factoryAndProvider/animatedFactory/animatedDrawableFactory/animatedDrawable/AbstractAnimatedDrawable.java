@@ -19,16 +19,22 @@ import android.view.View;
 import android.widget.ImageView;
 
 import com.facebook.common.DrawableWithCaches;
+import com.facebook.common.s.Preconditions;
 import com.facebook.common.time.MonotonicClock;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableBackend;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableCachingBackend;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableDiagnostics;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.AnimatedDrawableMetrics;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.ProgressiveAnimatedImageDecoder;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImage;
+import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImageResult;
 import com.facebook.log.FLog;
-import com.facebook.references.CloseableReference;
+import com.facebook.references.BorrowedReference;
+import com.facebook.references.Reaper;
 
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
 
 /**
  * 一个渲染animated image的{@link Drawable}其中的格式的细节是对于。{@link AnimatedDrawableBackend}的抽象
@@ -61,18 +67,18 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
 
     private static final Class<?> TAG = AnimatedDrawable.class;
 
-    private static final long WATCH_DOG_TIMER_POLL_INTERVAL_MS = 2000;
     private static final long WATCH_DOG_TIMER_MIN_TIMEOUT_MS = 1000;
 
-    private static final int POLL_FOR_RENDERED_FRAME_MS = 5;
     private static final int NO_FRAME = -1;
 
-    private final ScheduledExecutorService mScheduledExecutorServiceForUiThread;
+    private final AnimatedFrameScheduler mFrameScheduler;
     private final AnimatedDrawableDiagnostics mAnimatedDrawableDiagnostics;
     private final MonotonicClock mMonotonicClock;
-    private final int mDurationMs;
-    private final int mFrameCount;
-    private final int mLoopCount;
+    //帧更多的图片被appendFrames之后会变
+    // Change when an image with more frames is appended.
+    private int mDurationMs;
+    private int mFrameCount;
+    private int mLoopCount;
 
     //用来在Canvas上面绘制的画笔
     // Paint used to draw on a Canvas
@@ -112,7 +118,12 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
 
     //最后一个被绘制的帧，与mLastDrawnFrameNumber一起使用
     // Bitmap for last drawn frame. Corresponds to mLastDrawnFrameNumber.
-    private CloseableReference<Bitmap> mLastDrawnFrame;
+    // Reused for every frame so drawing doesn't allocate a reference per frame.
+    private final BorrowedReference<Bitmap> mLastDrawnFrame = new BorrowedReference<Bitmap>();
+
+    //绘制预览帧时临时借用
+    // Borrows the preview bitmap while it's drawn.
+    private final BorrowedReference<Bitmap> mPreviewFrame = new BorrowedReference<Bitmap>();
 
     private boolean mWaitingForDraw;
     private long mLastInvalidateTimeMs = -1;
@@ -123,11 +134,17 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
     private float mSx = 1f;
     private float mSy = 1f;
     private boolean mApplyTransformation;
-    private boolean mInvalidateTaskScheduled;
     private long mNextFrameTaskMs = -1;
+    private boolean mUseSharedAnimationClock;
+    private FrameDropPolicy mFrameDropPolicy = FrameDropPolicies.STRICT;
+    private AnimatedDrawableMetrics mMetrics;
 
     private boolean mIsPaused = false;
 
+    //backend渲染好的帧的数量，用来发现在draw的过程中渲染好的帧
+    // Number of frames the backend reported rendered. Used to catch frames rendered during draw.
+    private final AtomicInteger mFramesReadyCount = new AtomicInteger();
+
     private final Runnable mStartTask = new Runnable() {
         @Override
         public void run() {
@@ -143,30 +160,44 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
         }
     };
 
-    private final Runnable mInvalidateTask = new Runnable() {
-        @Override
-        public void run() {
-            FLog.v(TAG, "(%s) Invalidate Task", mLogId);
-            mInvalidateTaskScheduled = false;
-            doInvalidateSelf();
-        }
-    };
+    private final AnimatedFrameScheduler.Client mFrameSchedulerClient =
+            new AnimatedFrameScheduler.Client() {
+                @Override
+                public void onFrameReady() {
+                    FLog.v(TAG, "(%s) Frame ready", mLogId);
+                    doInvalidateSelf();
+                }
 
-    private final Runnable mWatchdogTask = new Runnable() {
-        @Override
-        public void run() {
-            FLog.v(TAG, "(%s) Watchdog Task", mLogId);
-            doWatchdogCheck();
-        }
-    };
+                @Override
+                public boolean onWatchdogCheck() {
+                    FLog.v(TAG, "(%s) Watchdog check", mLogId);
+                    return doWatchdogCheck();
+                }
+
+                @Override
+                public void onNextFrame() {
+                    FLog.v(TAG, "(%s) Next Frame Task", mLogId);
+                    AbstractAnimatedDrawable.this.onNextFrame();
+                }
+            };
+
+    private final AnimatedDrawableCachingBackend.FrameReadyListener mFrameReadyListener =
+            new AnimatedDrawableCachingBackend.FrameReadyListener() {
+                @Override
+                public void onFrameReady(int frameNumber) {
+                    mFramesReadyCount.incrementAndGet();
+                    mFrameScheduler.notifyFrameReady(mFrameSchedulerClient);
+                }
+            };
 
     public AbstractAnimatedDrawable(
-            ScheduledExecutorService scheduledExecutorServiceForUiThread,
+            AnimatedFrameScheduler frameScheduler,
             AnimatedDrawableCachingBackend animatedDrawableBackend,
             AnimatedDrawableDiagnostics animatedDrawableDiagnostics,
             MonotonicClock monotonicClock) {
-        mScheduledExecutorServiceForUiThread = scheduledExecutorServiceForUiThread;
+        mFrameScheduler = frameScheduler;
         mAnimatedDrawableBackend = animatedDrawableBackend;
+        mAnimatedDrawableBackend.setFrameReadyListener(mFrameReadyListener);
         mAnimatedDrawableDiagnostics = animatedDrawableDiagnostics;
         mMonotonicClock = monotonicClock;
         mDurationMs = mAnimatedDrawableBackend.getDurationMs();
@@ -180,6 +211,8 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
         //当没有产生动画的时候，显示第一张预览图
         // Show last frame when not animating.
         resetToPreviewFrame();
+
+        Reaper.register(this, new ReleaseLastDrawnFrame(mLastDrawnFrame));
     }
 
     private void resetToPreviewFrame() {
@@ -189,24 +222,12 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
         mPendingRenderedFrameMonotonicNumber = NO_FRAME;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        if (mLastDrawnFrame != null) {
-            mLastDrawnFrame.close();
-            mLastDrawnFrame = null;
-        }
-    }
-
 
     @Override
     protected void onBoundsChange(Rect bounds) {
         super.onBoundsChange(bounds);
         mApplyTransformation = true;
-        if (mLastDrawnFrame != null) {
-            mLastDrawnFrame.close();
-            mLastDrawnFrame = null;
-        }
+        mLastDrawnFrame.release();
         mLastDrawnFrameNumber = -1;
         mLastDrawnFrameMonotonicNumber = -1;
         mAnimatedDrawableBackend.dropCaches();
@@ -228,8 +249,7 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
             }
 
             long nextFrameMs = mStartTimeMs + mAnimatedDrawableBackend.getDurationMsForFrame(0);
-            scheduleSelf(mNextFrameTask, nextFrameMs);
-            mNextFrameTaskMs = nextFrameMs;
+            scheduleNextFrameTask(nextFrameMs);
             doInvalidateSelf();
         } finally {
             mAnimatedDrawableDiagnostics.onStartMethodEnd();
@@ -284,23 +304,36 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
             long nextFrameMs = nowMs + durationMs;
             if (mNextFrameTaskMs == -1 || mNextFrameTaskMs > nextFrameMs) {
                 FLog.v(TAG, "(%s) Next frame (%d) in %d ms", mLogId, nextFrame, durationMs);
-                unscheduleSelf(mNextFrameTask); // Cancel any existing task.
-                scheduleSelf(mNextFrameTask, nextFrameMs);
-                mNextFrameTaskMs = nextFrameMs;
+                scheduleNextFrameTask(nextFrameMs);
             }
         }
     }
 
+    /**
+     * 调度下一帧，取消之前调度的
+     * Schedules the next frame, cancelling any existing task.
+     *
+     * @param nextFrameMs when the next frame is due
+     */
+    private void scheduleNextFrameTask(long nextFrameMs) {
+        if (mUseSharedAnimationClock) {
+            mFrameScheduler.scheduleNextFrame(mFrameSchedulerClient, nextFrameMs);
+        } else {
+            unscheduleSelf(mNextFrameTask);
+            scheduleSelf(mNextFrameTask, nextFrameMs);
+        }
+        mNextFrameTaskMs = nextFrameMs;
+    }
+
     @Override
     public void draw(Canvas canvas) {
         mAnimatedDrawableDiagnostics.onDrawMethodBegin();
+        long drawStartNanos = mMetrics != null ? System.nanoTime() : 0;
         try {
             mWaitingForDraw = false;
+            int framesReadyCount = mFramesReadyCount.get();
             if (mIsRunning && !mHaveWatchdogScheduled) {
-                mScheduledExecutorServiceForUiThread.schedule(
-                        mWatchdogTask,
-                        WATCH_DOG_TIMER_POLL_INTERVAL_MS,
-                        TimeUnit.MILLISECONDS);
+                mFrameScheduler.registerForWatchdog(mFrameSchedulerClient);
                 mHaveWatchdogScheduled = true;
             }
 
@@ -310,9 +343,7 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
                     AnimatedDrawableCachingBackend newBackend =
                             mAnimatedDrawableBackend.forNewBounds(mDstRect);
                     if (newBackend != mAnimatedDrawableBackend) {
-                        mAnimatedDrawableBackend.dropCaches();
-                        mAnimatedDrawableBackend = newBackend;
-                        mAnimatedDrawableDiagnostics.setBackend(newBackend);
+                        switchToBackend(newBackend);
                     }
                     mSx = (float) mDstRect.width() / mAnimatedDrawableBackend.getRenderedWidth();
                     mSy = (float) mDstRect.height() / mAnimatedDrawableBackend.getRenderedHeight();
@@ -330,6 +361,9 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
 
             // TODO(6169940) we overdraw if both pending frame is ready and current frame is ready.
             boolean didDrawFrame = false;
+            if (mPendingRenderedFrameNumber != NO_FRAME && mIsRunning) {
+                maybeSkipPendingFrame();
+            }
             if (mPendingRenderedFrameNumber != NO_FRAME) {
                 // We tried to render a frame and it wasn't yet ready. See if it's ready now.
                 boolean rendered =
@@ -342,7 +376,7 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
                 } else {
                     // Try again later.
                     FLog.v(TAG, "(%s) Trying again later for pending %d", mLogId, mPendingRenderedFrameNumber);
-                    scheduleInvalidatePoll();
+                    waitForFrame(framesReadyCount);
                 }
             }
 
@@ -365,12 +399,12 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
                     FLog.v(TAG, "(%s) Trying again later for current %d", mLogId, mScheduledFrameNumber);
                     mPendingRenderedFrameNumber = mScheduledFrameNumber;
                     mPendingRenderedFrameMonotonicNumber = mScheduledFrameMonotonicNumber;
-                    scheduleInvalidatePoll();
+                    waitForFrame(framesReadyCount);
                 }
             }
 
             if (!didDrawFrame) {
-                if (mLastDrawnFrame != null) {
+                if (mLastDrawnFrame.isBorrowed()) {
                     canvas.drawBitmap(mLastDrawnFrame.get(), 0f, 0f, mPaint);
                     didDrawFrame = true;
                     FLog.v(TAG, "(%s) Rendered last known frame %d", mLogId, mLastDrawnFrameNumber);
@@ -379,11 +413,9 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
 
             if (!didDrawFrame) {
                 // Last ditch effort, use preview bitmap.
-                CloseableReference<Bitmap> previewBitmapReference =
-                        mAnimatedDrawableBackend.getPreviewBitmap();
-                if (previewBitmapReference != null) {
-                    canvas.drawBitmap(previewBitmapReference.get(), 0f, 0f, mPaint);
-                    previewBitmapReference.close();
+                if (mAnimatedDrawableBackend.borrowPreviewBitmap(mPreviewFrame)) {
+                    canvas.drawBitmap(mPreviewFrame.get(), 0f, 0f, mPaint);
+                    mPreviewFrame.release();
                     FLog.v(TAG, "(%s) Rendered preview frame", mLogId);
                     didDrawFrame = true;
                 }
@@ -399,19 +431,54 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
             mAnimatedDrawableDiagnostics.drawDebugOverlay(canvas, mDstRect);
         } finally {
             mAnimatedDrawableDiagnostics.onDrawMethodEnd();
+            if (mMetrics != null) {
+                mMetrics.recordDrawTimeUs((System.nanoTime() - drawStartNanos) / 1000);
+                mMetrics.maybeDispatchSample(mAnimatedDrawableBackend, mMonotonicClock.now());
+            }
         }
     }
 
     /**
-     * 调用一个task来使drawable无效，
-     * Schedule a task to invalidate the drawable. Used to poll for a rendered frame.
+     * 如果动画落后了，让{@link #mFrameDropPolicy}决定是否跳过正在等待的帧
+     * If the animation fell behind the pending frame, lets {@link #mFrameDropPolicy} decide whether
+     * to skip ahead to a later frame. {@link FrameDropPolicies#STRICT} never skips, so the schedule
+     * isn't even computed for it.
      */
-    private void scheduleInvalidatePoll() {
-        if (mInvalidateTaskScheduled) {
+    private void maybeSkipPendingFrame() {
+        if (mFrameDropPolicy == FrameDropPolicies.STRICT) {
+            return;
+        }
+        computeAndScheduleNextFrame(false /* don't schedule yet */);
+        if (mScheduledFrameMonotonicNumber <= mPendingRenderedFrameMonotonicNumber) {
             return;
         }
-        mInvalidateTaskScheduled = true;
-        scheduleSelf(mInvalidateTask, POLL_FOR_RENDERED_FRAME_MS);
+        int frame = mFrameDropPolicy.getFrameToWaitFor(
+                mAnimatedDrawableBackend,
+                mPendingRenderedFrameMonotonicNumber,
+                mScheduledFrameMonotonicNumber);
+        if (mLoopCount != AnimatedImage.LOOP_COUNT_INFINITE) {
+            frame = Math.min(frame, mLoopCount * mFrameCount - 1);
+        }
+        if (frame > mPendingRenderedFrameMonotonicNumber) {
+            FLog.v(TAG, "(%s) Skipping from pending %d to %d",
+                    mLogId, mPendingRenderedFrameMonotonicNumber, frame);
+            mPendingRenderedFrameNumber = frame % mFrameCount;
+            mPendingRenderedFrameMonotonicNumber = frame;
+        }
+    }
+
+    /**
+     * 等待backend渲染好帧之后再重绘，而不是轮询
+     * Waits for the backend to report a rendered frame before invalidating, instead of polling.
+     *
+     * @param framesReadyCount the value of {@link #mFramesReadyCount} when the draw began
+     */
+    private void waitForFrame(int framesReadyCount) {
+        mFrameScheduler.waitForFrame(mFrameSchedulerClient);
+        if (mFramesReadyCount.get() != framesReadyCount) {
+            // A frame was rendered while we were drawing, before we started waiting for it.
+            mFrameScheduler.notifyFrameReady(mFrameSchedulerClient);
+        }
     }
 
 
@@ -428,13 +495,9 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
             Canvas canvas,
             int frameNumber,
             int frameMonotonicNumber) {
-        CloseableReference<Bitmap> bitmapReference =
-                mAnimatedDrawableBackend.getBitmapForFrame(frameNumber);
-        if (bitmapReference != null) {
-            canvas.drawBitmap(bitmapReference.get(), 0f, 0f, mPaint);
-            if (mLastDrawnFrame != null) {
-                mLastDrawnFrame.close();
-            }
+        // Borrowing releases the frame drawn before.
+        if (mAnimatedDrawableBackend.borrowBitmapForFrame(frameNumber, mLastDrawnFrame)) {
+            canvas.drawBitmap(mLastDrawnFrame.get(), 0f, 0f, mPaint);
 
             if (mIsRunning && frameMonotonicNumber > mLastDrawnFrameMonotonicNumber) {
                 int droppedFrames = frameMonotonicNumber - mLastDrawnFrameMonotonicNumber - 1;
@@ -444,7 +507,6 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
                     FLog.v(TAG, "(%s) Dropped %d frames", mLogId, droppedFrames);
                 }
             }
-            mLastDrawnFrame = bitmapReference;
             mLastDrawnFrameNumber = frameNumber;
             mLastDrawnFrameMonotonicNumber = frameMonotonicNumber;
             FLog.v(TAG, "(%s) Drew frame %d", mLogId, frameNumber);
@@ -459,11 +521,13 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
      * Checks to make sure we drop our caches if we haven't drawn in a while. There's no reliable
      * way for a Drawable to determine if it's still actively part of a View, so we use a heuristic
      * instead.
+     *
+     * @return whether the drawable should stay covered by the watchdog
      */
-    private void doWatchdogCheck() {
+    private boolean doWatchdogCheck() {
         mHaveWatchdogScheduled = false;
         if (!mIsRunning) {
-            return;
+            return false;
         }
         long now = mMonotonicClock.now();
 
@@ -480,13 +544,10 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
         if (hasNotDrawnWithinTimeout || hasNotAdvancedFrameWithinTimeout) {
             dropCaches();
             doInvalidateSelf();
-        } else {
-            mScheduledExecutorServiceForUiThread.schedule(
-                    mWatchdogTask,
-                    WATCH_DOG_TIMER_POLL_INTERVAL_MS,
-                    TimeUnit.MILLISECONDS);
-            mHaveWatchdogScheduled = true;
+            return false;
         }
+        mHaveWatchdogScheduled = true;
+        return true;
     }
 
     private void doInvalidateSelf() {
@@ -546,12 +607,58 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
         }
     }
 
+    /**
+     * 换成一个帧更多的图片，这个图片是从同一个文件更多的数据中解码出来的，比如
+     * {@link ProgressiveAnimatedImageDecoder}解码出的下一张图片。已经渲染好的帧会被保留，
+     * 动画从当前的位置继续播放
+     * Switches to an image with more frames decoded from more bytes of the same file, like the
+     * next image of a {@link ProgressiveAnimatedImageDecoder}. The frames rendered so far are kept
+     * and the animation goes on from where it is.
+     * <p>
+     * The drawable doesn't take ownership of either image. The image it showed before can be
+     * closed once this returns, since the cached frames were copied over, while the new one has
+     * to stay open as long as the drawable uses it.
+     *
+     * @param animatedImageResult the image with more frames, of the same size as the current one
+     */
+    public void appendFrames(AnimatedImageResult animatedImageResult) {
+        AnimatedImage image = animatedImageResult.getImage();
+        Preconditions.checkArgument(image.getFrameCount() >= mFrameCount);
+        Preconditions.checkArgument(image.getWidth() == mAnimatedDrawableBackend.getWidth() &&
+                image.getHeight() == mAnimatedDrawableBackend.getHeight());
+        final int timestampMs = mDurationMs > 0 && mIsRunning ?
+                (int) ((mMonotonicClock.now() - mStartTimeMs) % mDurationMs) :
+                0;
+        switchToBackend(mAnimatedDrawableBackend.forNewImage(animatedImageResult));
+        mDurationMs = mAnimatedDrawableBackend.getDurationMs();
+        mFrameCount = mAnimatedDrawableBackend.getFrameCount();
+        mLoopCount = mAnimatedDrawableBackend.getLoopCount();
+        if (mIsRunning) {
+            // The frames so far keep their timestamps, so continue at the same one. Counting the
+            // loops starts over.
+            mStartTimeMs = mMonotonicClock.now() - timestampMs;
+            mScheduledFrameMonotonicNumber = mScheduledFrameNumber;
+            mPendingRenderedFrameNumber = NO_FRAME;
+            mPendingRenderedFrameMonotonicNumber = NO_FRAME;
+            mLastDrawnFrameMonotonicNumber = -1;
+            computeAndScheduleNextFrame(true /* schedule next frame */);
+        }
+    }
+
+    private void switchToBackend(AnimatedDrawableCachingBackend newBackend) {
+        mAnimatedDrawableBackend.setFrameReadyListener(null);
+        mAnimatedDrawableBackend.dropCaches();
+        mAnimatedDrawableBackend = newBackend;
+        mAnimatedDrawableBackend.setFrameReadyListener(mFrameReadyListener);
+        mAnimatedDrawableBackend.setMetrics(mMetrics);
+        mAnimatedDrawableDiagnostics.setBackend(newBackend);
+    }
+
     @Override
     public void dropCaches() {
         FLog.v(TAG, "(%s) Dropping caches", mLogId);
-        if (mLastDrawnFrame != null) {
-            mLastDrawnFrame.close();
-            mLastDrawnFrame = null;
+        if (mLastDrawnFrame.isBorrowed()) {
+            mLastDrawnFrame.release();
             mLastDrawnFrameNumber = -1;
             mLastDrawnFrameMonotonicNumber = -1;
         }
@@ -567,7 +674,7 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
      * @return whether a previous call to {@link #draw} would have rendered a frame
      */
     public boolean didLastDrawRender() {
-        return mLastDrawnFrame != null;
+        return mLastDrawnFrame.isBorrowed();
     }
 
     @VisibleForTesting
@@ -625,6 +732,58 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
         mLogId = logId;
     }
 
+    /**
+     * 设置是否在{@link AnimatedFrameScheduler}共享的动画时钟上调度下一帧，而不是通过{@link #scheduleSelf}
+     * Sets whether the next frames are scheduled on the animation clock shared through the
+     * {@link AnimatedFrameScheduler} instead of with {@link #scheduleSelf}.
+     *
+     * @param useSharedAnimationClock whether to use the shared animation clock
+     */
+    public void setUseSharedAnimationClock(boolean useSharedAnimationClock) {
+        if (mUseSharedAnimationClock == useSharedAnimationClock) {
+            return;
+        }
+        if (mUseSharedAnimationClock) {
+            mFrameScheduler.cancelNextFrame(mFrameSchedulerClient);
+        } else {
+            unscheduleSelf(mNextFrameTask);
+        }
+        mUseSharedAnimationClock = useSharedAnimationClock;
+        if (mNextFrameTaskMs != -1) {
+            scheduleNextFrameTask(mNextFrameTaskMs);
+        }
+    }
+
+    /**
+     * 设置动画落后的时候跳过哪些帧
+     * Sets the policy deciding which frames to skip when the animation falls behind.
+     *
+     * @param frameDropPolicy the frame drop policy, see {@link FrameDropPolicies}
+     */
+    public void setFrameDropPolicy(FrameDropPolicy frameDropPolicy) {
+        mFrameDropPolicy = frameDropPolicy;
+    }
+
+    /**
+     * 设置记录这个drawable的性能指标的实例
+     * Sets the metrics this drawable and its backend record their performance in.
+     *
+     * @param metrics the metrics or null to stop recording
+     */
+    public void setMetrics(@Nullable AnimatedDrawableMetrics metrics) {
+        mMetrics = metrics;
+        mAnimatedDrawableBackend.setMetrics(metrics);
+    }
+
+    /**
+     * 获取这个drawable的性能指标，如果没有记录就返回null
+     * Gets the metrics of this drawable or null if they aren't recorded.
+     */
+    @Nullable
+    public AnimatedDrawableMetrics getMetrics() {
+        return mMetrics;
+    }
+
     @Override
     public int getIntrinsicWidth() {
         return mAnimatedDrawableBackend.getWidth();
@@ -651,4 +810,23 @@ public abstract class AbstractAnimatedDrawable extends Drawable implements Anima
     public int getOpacity() {
         return PixelFormat.TRANSLUCENT;
     }
+
+    /**
+     * 被回收之后释放最后绘制的帧，不能引用drawable本身
+     * Releases the last drawn frame once the drawable was collected. Must not reference the
+     * drawable itself.
+     */
+    private static class ReleaseLastDrawnFrame implements Reaper.Cleanup {
+
+        private final BorrowedReference<Bitmap> mLastDrawnFrame;
+
+        private ReleaseLastDrawnFrame(BorrowedReference<Bitmap> lastDrawnFrame) {
+            mLastDrawnFrame = lastDrawnFrame;
+        }
+
+        @Override
+        public void clean(boolean leaked) {
+            mLastDrawnFrame.release();
+        }
+    }
 }
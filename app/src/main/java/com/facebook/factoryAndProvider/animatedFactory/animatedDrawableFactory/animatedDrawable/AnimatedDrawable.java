@@ -17,8 +17,6 @@ import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.o
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImage;
 import com.facebook.common.time.MonotonicClock;
 
-import java.util.concurrent.ScheduledExecutorService;
-
 /**
  * 一个渲染animated image的{@link Drawable}其中的格式的细节是对于。{@link AnimatedDrawableBackend}的抽象
  * 这个drawable不仅能作为一个{@link Animatable}当客户端开始或者结束动画，还能通过调用{@link Drawable#setLevel}
@@ -33,11 +31,11 @@ import java.util.concurrent.ScheduledExecutorService;
 public class AnimatedDrawable extends AbstractAnimatedDrawable implements AnimatableDrawable {
 
     public AnimatedDrawable(
-            ScheduledExecutorService scheduledExecutorServiceForUiThread,
+            AnimatedFrameScheduler frameScheduler,
             AnimatedDrawableCachingBackend animatedDrawableBackend,
             AnimatedDrawableDiagnostics animatedDrawableDiagnostics,
             MonotonicClock monotonicClock) {
-        super(scheduledExecutorServiceForUiThread,
+        super(frameScheduler,
                 animatedDrawableBackend,
                 animatedDrawableDiagnostics,
                 monotonicClock);
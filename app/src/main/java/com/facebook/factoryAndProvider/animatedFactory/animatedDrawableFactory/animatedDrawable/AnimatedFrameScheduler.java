@@ -0,0 +1,457 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import com.facebook.common.s.Preconditions;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.log.FLog;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 所有动画共享的帧调度器。当一个drawable需要的帧还没有准备好的时候，它不再每5ms轮询一次，
+ * 而是在这里等待，backend渲染好帧之后通知调度器，调度器在下一个vsync的时候统一让等待的drawable重绘。
+ * 同时所有drawable共用一个看门狗任务
+ * A frame scheduler shared by all the animations. When the frame a drawable wants to draw isn't
+ * rendered yet, the drawable waits here instead of polling. The backends report rendered frames,
+ * and on the next vsync one tick invalidates all the drawables that were waiting for a frame that
+ * has since been rendered. A single watchdog task covers all the running drawables.
+ * <p>
+ * A waiting client that isn't notified within {@link #FALLBACK_POLL_MS} is invalidated anyway, so
+ * a frame that failed to render doesn't stall the animation.
+ * <p>
+ * Drawables can also opt in to the shared animation clock with {@link #scheduleNextFrame}. All the
+ * next-frame deadlines go into one priority queue and a single task wakes up for them. Deadlines
+ * within {@link #COALESCE_WINDOW_MS} of the earliest one are handled in the same wakeup, which
+ * happens at the latest of them, so no client is called before its deadline and no frame is late
+ * by more than the window.
+ * <p>
+ * {@link #waitForFrame}, {@link #registerForWatchdog} and the client callbacks run on the UI
+ * thread. {@link #notifyFrameReady} can be called from any thread.
+ * <p>
+ * Clients are only held weakly, so a drawable that is dropped while it waits or is scheduled
+ * doesn't stay reachable from here.
+ */
+@ThreadSafe
+public class AnimatedFrameScheduler {
+
+    private static final Class<?> TAG = AnimatedFrameScheduler.class;
+
+    /**
+     * 看门狗检查的间隔
+     * Interval of the watchdog checks.
+     */
+    private static final long WATCH_DOG_TIMER_POLL_INTERVAL_MS = 2000;
+
+    /**
+     * 等待了这么久还没有被通知的client也会被重绘
+     * Waiting clients that haven't been notified for this long are invalidated anyway.
+     */
+    private static final long FALLBACK_POLL_MS = 100;
+
+    /**
+     * 没有Choreographer的系统上tick之间的间隔
+     * Interval between ticks on platforms without a Choreographer.
+     */
+    private static final long FRAME_INTERVAL_MS = 16;
+
+    /**
+     * 相差在这个时间之内的下一帧会在同一次唤醒中处理
+     * Next-frame deadlines this close to the earliest one are handled in the same wakeup.
+     */
+    private static final long COALESCE_WINDOW_MS = 4;
+
+    /**
+     * 调度器的client，一般是一个drawable
+     * A client of the scheduler, typically a drawable. Called on the UI thread. The scheduler only
+     * holds clients weakly, so the owner has to keep a reference to its client.
+     */
+    public interface Client {
+
+        /**
+         * 等待的帧可能已经准备好了，client应该重绘
+         * The frame the client waits for may be ready now, the client should invalidate itself.
+         */
+        void onFrameReady();
+
+        /**
+         * 看门狗检查
+         * Watchdog check.
+         *
+         * @return whether the client should stay covered by the watchdog
+         */
+        boolean onWatchdogCheck();
+
+        /**
+         * 用{@link #scheduleNextFrame}调度的下一帧的时间到了
+         * The next frame scheduled with {@link #scheduleNextFrame} is due.
+         */
+        void onNextFrame();
+    }
+
+    private final ScheduledExecutorService mScheduledExecutorServiceForUiThread;
+    private final MonotonicClock mMonotonicClock;
+
+    /**
+     * 正在等待帧的client
+     * Clients waiting for a frame.
+     */
+    @GuardedBy("this")
+    private final Set<Client> mWaitingClients = newWeakSet();
+
+    /**
+     * 等待的帧已经准备好了，将在下一次tick的时候被通知的client
+     * Clients whose frame was reported ready, to be called back on the next tick.
+     */
+    @GuardedBy("this")
+    private final Set<Client> mReadyClients = newWeakSet();
+
+    @GuardedBy("this")
+    private boolean mTickRequested;
+
+    // The following are only accessed on the UI thread.
+    private final List<Client> mTickClients = new ArrayList<Client>();
+    private final Set<Client> mWatchdogClients = newWeakSet();
+    private final List<Client> mWatchdogCheckClients = new ArrayList<Client>();
+    private boolean mHaveWatchdogScheduled;
+    private boolean mHaveFallbackPollScheduled;
+
+    /**
+     * 在UI线程创建，但会在{@link #notifyFrameReady}中被任何线程读取
+     * Created on the UI thread but read by {@link #notifyFrameReady} on any thread.
+     */
+    private volatile Object mVsyncTicker;
+
+    /**
+     * 所有client的下一帧，按时间排序。被取消的会直接移除
+     * The next-frame deadlines of all clients, earliest first. Cancelled deadlines are removed
+     * right away.
+     */
+    private final TreeSet<Deadline> mDeadlines = new TreeSet<Deadline>();
+    private final Map<Client, Deadline> mClientDeadlines = new WeakHashMap<Client, Deadline>();
+    private long mNextDeadlineSequence;
+    private final List<Client> mDueClients = new ArrayList<Client>();
+    private ScheduledFuture<?> mClockWakeup;
+    private long mClockWakeupMs = -1;
+
+    private final Runnable mTickTask = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+
+    private final Runnable mFallbackPollTask = new Runnable() {
+        @Override
+        public void run() {
+            onFallbackPoll();
+        }
+    };
+
+    private final Runnable mClockTask = new Runnable() {
+        @Override
+        public void run() {
+            onClockWakeup();
+        }
+    };
+
+    private final Runnable mWatchdogTask = new Runnable() {
+        @Override
+        public void run() {
+            FLog.v(TAG, "Watchdog Task");
+            doWatchdogCheck();
+        }
+    };
+
+    public AnimatedFrameScheduler(
+            ScheduledExecutorService scheduledExecutorServiceForUiThread,
+            MonotonicClock monotonicClock) {
+        mScheduledExecutorServiceForUiThread =
+                Preconditions.checkNotNull(scheduledExecutorServiceForUiThread);
+        mMonotonicClock = Preconditions.checkNotNull(monotonicClock);
+    }
+
+    /**
+     * client需要的帧还没有准备好，在帧准备好之后的下一个vsync通知它。必须在UI线程调用
+     * The frame the client wants to draw isn't ready. The client is called back on the vsync after
+     * the frame is reported ready. Must be called on the UI thread.
+     *
+     * @param client the waiting client
+     */
+    public void waitForFrame(Client client) {
+        if (mVsyncTicker == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // The Choreographer belongs to the thread it is obtained on.
+            mVsyncTicker = new VsyncTicker(this);
+        }
+        synchronized (this) {
+            mWaitingClients.add(client);
+        }
+        if (!mHaveFallbackPollScheduled) {
+            mHaveFallbackPollScheduled = true;
+            mScheduledExecutorServiceForUiThread.schedule(
+                    mFallbackPollTask,
+                    FALLBACK_POLL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * backend渲染好了client的一帧。可以在任何线程调用
+     * A frame of the client was rendered. Can be called on any thread.
+     *
+     * @param client the client whose frame was rendered
+     */
+    public void notifyFrameReady(Client client) {
+        synchronized (this) {
+            if (!mWaitingClients.remove(client)) {
+                // Nobody waits for it, don't wake up the UI thread.
+                return;
+            }
+            mReadyClients.add(client);
+            if (mTickRequested) {
+                return;
+            }
+            mTickRequested = true;
+        }
+        requestTick();
+    }
+
+    /**
+     * 让看门狗检查这个client，直到{@link Client#onWatchdogCheck()}返回false。必须在UI线程调用
+     * Covers the client by the watchdog until {@link Client#onWatchdogCheck()} returns false. Must be
+     * called on the UI thread.
+     *
+     * @param client the client to check
+     */
+    public void registerForWatchdog(Client client) {
+        mWatchdogClients.add(client);
+        if (!mHaveWatchdogScheduled) {
+            mHaveWatchdogScheduled = true;
+            mScheduledExecutorServiceForUiThread.schedule(
+                    mWatchdogTask,
+                    WATCH_DOG_TIMER_POLL_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 在共享的动画时钟上调度client的下一帧，替换之前调度的。必须在UI线程调用
+     * Schedules the next frame of the client on the shared animation clock, replacing the one
+     * scheduled before. Must be called on the UI thread.
+     *
+     * @param client the client
+     * @param frameTimeMs when the next frame is due, in the time base of the {@link MonotonicClock}
+     */
+    public void scheduleNextFrame(Client client, long frameTimeMs) {
+        Deadline previous = mClientDeadlines.get(client);
+        if (previous != null) {
+            mDeadlines.remove(previous);
+        }
+        Deadline deadline = new Deadline(client, frameTimeMs, mNextDeadlineSequence++);
+        mClientDeadlines.put(client, deadline);
+        mDeadlines.add(deadline);
+        updateClockWakeup();
+    }
+
+    /**
+     * 取消client调度的下一帧。必须在UI线程调用
+     * Cancels the next frame scheduled for the client. Must be called on the UI thread.
+     *
+     * @param client the client
+     */
+    public void cancelNextFrame(Client client) {
+        Deadline deadline = mClientDeadlines.remove(client);
+        if (deadline != null) {
+            mDeadlines.remove(deadline);
+        }
+    }
+
+    private void onClockWakeup() {
+        mClockWakeup = null;
+        mClockWakeupMs = -1;
+        long nowMs = mMonotonicClock.now();
+        while (!mDeadlines.isEmpty() && mDeadlines.first().frameTimeMs <= nowMs) {
+            Deadline deadline = mDeadlines.pollFirst();
+            Client client = deadline.client.get();
+            if (client != null) {
+                mClientDeadlines.remove(client);
+                mDueClients.add(client);
+            }
+        }
+        // The clients usually schedule their following frame from here.
+        for (int i = 0; i < mDueClients.size(); i++) {
+            mDueClients.get(i).onNextFrame();
+        }
+        mDueClients.clear();
+        updateClockWakeup();
+    }
+
+    /**
+     * 确保时钟任务会在最早的下一帧合并窗口的最后一个时间点唤醒
+     * Makes sure the clock task wakes up at the end of the coalescing window of the earliest
+     * deadline.
+     */
+    private void updateClockWakeup() {
+        if (mDeadlines.isEmpty()) {
+            return;
+        }
+        long windowEndMs = mDeadlines.first().frameTimeMs + COALESCE_WINDOW_MS;
+        // Only the deadlines within the window are visited, in order.
+        long wakeupMs = mDeadlines.first().frameTimeMs;
+        for (Deadline deadline : mDeadlines) {
+            if (deadline.frameTimeMs > windowEndMs) {
+                break;
+            }
+            wakeupMs = deadline.frameTimeMs;
+        }
+        if (mClockWakeupMs == wakeupMs) {
+            return;
+        }
+        if (mClockWakeup != null) {
+            mClockWakeup.cancel(false);
+        }
+        mClockWakeupMs = wakeupMs;
+        mClockWakeup = mScheduledExecutorServiceForUiThread.schedule(
+                mClockTask,
+                Math.max(0, wakeupMs - mMonotonicClock.now()),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void requestTick() {
+        Object vsyncTicker = mVsyncTicker;
+        if (vsyncTicker != null) {
+            ((VsyncTicker) vsyncTicker).postFrameCallback();
+        } else {
+            mScheduledExecutorServiceForUiThread.schedule(
+                    mTickTask,
+                    FRAME_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void onTick() {
+        synchronized (this) {
+            mTickRequested = false;
+            mTickClients.addAll(mReadyClients);
+            mReadyClients.clear();
+        }
+        for (int i = 0; i < mTickClients.size(); i++) {
+            mTickClients.get(i).onFrameReady();
+        }
+        mTickClients.clear();
+    }
+
+    private void onFallbackPoll() {
+        mHaveFallbackPollScheduled = false;
+        boolean tick;
+        synchronized (this) {
+            if (mWaitingClients.isEmpty()) {
+                return;
+            }
+            FLog.v(TAG, "%d clients not notified in time", mWaitingClients.size());
+            mReadyClients.addAll(mWaitingClients);
+            mWaitingClients.clear();
+            tick = !mTickRequested;
+            mTickRequested = true;
+        }
+        if (tick) {
+            requestTick();
+        }
+    }
+
+    private void doWatchdogCheck() {
+        mHaveWatchdogScheduled = false;
+        mWatchdogCheckClients.addAll(mWatchdogClients);
+        for (int i = 0; i < mWatchdogCheckClients.size(); i++) {
+            Client client = mWatchdogCheckClients.get(i);
+            if (!client.onWatchdogCheck()) {
+                mWatchdogClients.remove(client);
+            }
+        }
+        mWatchdogCheckClients.clear();
+        if (!mWatchdogClients.isEmpty()) {
+            mHaveWatchdogScheduled = true;
+            mScheduledExecutorServiceForUiThread.schedule(
+                    mWatchdogTask,
+                    WATCH_DOG_TIMER_POLL_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Set<Client> newWeakSet() {
+        return Collections.newSetFromMap(new WeakHashMap<Client, Boolean>());
+    }
+
+    /**
+     * 一个client的下一帧。序号让同一时间的下一帧也能区分开
+     * The next frame of a client. The sequence number tells apart deadlines due at the same time.
+     */
+    private static class Deadline implements Comparable<Deadline> {
+        final WeakReference<Client> client;
+        final long frameTimeMs;
+        final long sequence;
+
+        Deadline(Client client, long frameTimeMs, long sequence) {
+            this.client = new WeakReference<Client>(client);
+            this.frameTimeMs = frameTimeMs;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            if (frameTimeMs != other.frameTimeMs) {
+                return frameTimeMs < other.frameTimeMs ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * 用Choreographer在vsync的时候tick，放在单独的类里面，这样在老的系统上不会加载Choreographer
+     * Ticks on vsync with the {@link Choreographer}. A separate class so older platforms never load
+     * the Choreographer classes.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class VsyncTicker implements Choreographer.FrameCallback {
+
+        private final AnimatedFrameScheduler mScheduler;
+        private final Choreographer mChoreographer;
+
+        VsyncTicker(AnimatedFrameScheduler scheduler) {
+            mScheduler = scheduler;
+            mChoreographer = Choreographer.getInstance();
+        }
+
+        /**
+         * Choreographer可以在任何线程post回调
+         * The Choreographer accepts callbacks from any thread.
+         */
+        void postFrameCallback() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduler.onTick();
+        }
+    }
+}
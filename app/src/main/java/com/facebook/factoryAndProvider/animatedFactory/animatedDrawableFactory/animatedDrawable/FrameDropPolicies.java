@@ -0,0 +1,88 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableCachingBackend;
+
+/**
+ * 内置的{@link FrameDropPolicy}
+ * The stock {@link FrameDropPolicy} implementations.
+ */
+public final class FrameDropPolicies {
+
+    /**
+     * 不跳过任何帧，即使落后了也按顺序等待每一帧渲染好
+     * Never skips a frame. The drawable waits for every frame in order even when falling behind.
+     */
+    public static final FrameDropPolicy STRICT = new FrameDropPolicy() {
+        @Override
+        public int getFrameToWaitFor(
+                AnimatedDrawableCachingBackend backend,
+                int pendingFrameMonotonicNumber,
+                int scheduledFrameMonotonicNumber) {
+            return pendingFrameMonotonicNumber;
+        }
+    };
+
+    /**
+     * 放弃过时的帧，等待渲染完成时应该显示的那一帧，以保持和时间同步
+     * Drops stale frames and waits for the frame that will be due once it is rendered, estimated
+     * from the recent render latency, to keep the animation in sync with the wall clock.
+     */
+    public static final FrameDropPolicy CATCH_UP = new FrameDropPolicy() {
+        @Override
+        public int getFrameToWaitFor(
+                AnimatedDrawableCachingBackend backend,
+                int pendingFrameMonotonicNumber,
+                int scheduledFrameMonotonicNumber) {
+            return getCatchUpFrame(backend, scheduledFrameMonotonicNumber);
+        }
+    };
+
+    /**
+     * 和{@link #CATCH_UP}一样，但是跳到之后的第一个关键帧，因为关键帧不需要前面的帧就可以渲染
+     * Like {@link #CATCH_UP} but skips ahead to the next key frame, as a key frame renders without
+     * compositing the frames before it. Falls back to {@link #CATCH_UP} if there is no key frame
+     * within one loop.
+     */
+    public static final FrameDropPolicy SKIP_TO_NEXT_KEY_FRAME = new FrameDropPolicy() {
+        @Override
+        public int getFrameToWaitFor(
+                AnimatedDrawableCachingBackend backend,
+                int pendingFrameMonotonicNumber,
+                int scheduledFrameMonotonicNumber) {
+            int catchUpFrame = getCatchUpFrame(backend, scheduledFrameMonotonicNumber);
+            int frameCount = backend.getFrameCount();
+            for (int i = 0; i < frameCount; i++) {
+                if (backend.isKeyFrame((catchUpFrame + i) % frameCount)) {
+                    return catchUpFrame + i;
+                }
+            }
+            return catchUpFrame;
+        }
+    };
+
+    private FrameDropPolicies() {
+    }
+
+    /**
+     * 从当前应该显示的帧开始向后累加帧的持续时间，直到覆盖了平均渲染耗时
+     * Walks forward from the scheduled frame summing up frame durations until they cover the
+     * average render latency.
+     */
+    private static int getCatchUpFrame(
+            AnimatedDrawableCachingBackend backend,
+            int scheduledFrameMonotonicNumber) {
+        long latencyMs = backend.getAverageRenderMs();
+        int frameCount = backend.getFrameCount();
+        int frame = scheduledFrameMonotonicNumber;
+        long coveredMs = backend.getDurationMsForFrame(frame % frameCount);
+        while (coveredMs < latencyMs && frame - scheduledFrameMonotonicNumber < frameCount) {
+            frame++;
+            coveredMs += backend.getDurationMsForFrame(frame % frameCount);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,34 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableCachingBackend;
+
+/**
+ * 当drawable等待的帧还没有渲染好，而动画的时间已经走到了后面的帧的时候，决定drawable接下来等待哪一帧。
+ * 等待的帧也就是backend接下来要预读的帧
+ * Decides which frame a running drawable waits for when the frame it is waiting for isn't rendered
+ * yet and the animation time has moved past it. The frame waited for is also the frame the backend
+ * prefetches next. Stock policies are in {@link FrameDropPolicies}.
+ * <p>
+ * Frames are identified by their monotonic number, {@code loop * frameCount + frameNumber}.
+ */
+public interface FrameDropPolicy {
+
+    /**
+     * 选择接下来等待的帧，只会在动画落后的时候调用
+     * Picks the frame to wait for. Only called while the animation is behind, i.e. the scheduled
+     * frame is later than the pending one.
+     *
+     * @param backend the backend rendering the frames
+     * @param pendingFrameMonotonicNumber the frame the drawable waits for
+     * @param scheduledFrameMonotonicNumber the frame due at the current animation time
+     * @return the monotonic number of the frame to wait for, not before the pending frame
+     */
+    int getFrameToWaitFor(
+            AnimatedDrawableCachingBackend backend,
+            int pendingFrameMonotonicNumber,
+            int scheduledFrameMonotonicNumber);
+}
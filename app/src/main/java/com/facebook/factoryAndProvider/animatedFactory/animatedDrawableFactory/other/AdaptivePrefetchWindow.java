@@ -0,0 +1,134 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other;
+
+/**
+ * Created by Administrator on 2017/3/29 0029.
+ */
+
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableBackend;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableCachingBackendImpl;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 根据实际测量的每帧渲染耗时、接下来几帧的持续时间以及内存预算，动态地计算需要预读的帧数
+ * Computes how many frames {@link AnimatedDrawableCachingBackendImpl} should prefetch ahead of the
+ * current frame. The window grows when frames take longer to render than the upcoming frames stay
+ * on screen and shrinks back when rendering is cheap. It is always capped by the number of frames
+ * that fit in the memory budget.
+ */
+@ThreadSafe
+public class AdaptivePrefetchWindow {
+
+    /**
+     * 还没有任何测量数据的时候使用的窗口大小
+     * Window size used before any render has been measured.
+     */
+    public static final int DEFAULT_PREFETCH_FRAMES = 3;
+
+    public static final int MIN_PREFETCH_FRAMES = 1;
+    public static final int MAX_PREFETCH_FRAMES = 10;
+
+    /**
+     * 预读的帧需要覆盖的时间是渲染耗时的多少倍，留出余量以应对渲染耗时的抖动
+     * How many render latencies the prefetched frames should cover on screen. Leaves headroom for
+     * jitter in the render time.
+     */
+    private static final int LOOKAHEAD_FACTOR = 2;
+
+    // Weight of the newest sample in the moving average, in 1/8ths.
+    private static final int NEW_SAMPLE_WEIGHT = 2;
+
+    private final int mMinFrames;
+    private final int mMaxFrames;
+
+    // -1 until the first render has been measured.
+    private long mAverageRenderMs = -1;
+    private int mCurrentWindow;
+
+    public AdaptivePrefetchWindow() {
+        this(MIN_PREFETCH_FRAMES, MAX_PREFETCH_FRAMES);
+    }
+
+    public AdaptivePrefetchWindow(int minFrames, int maxFrames) {
+        if (minFrames < 0 || maxFrames < minFrames) {
+            throw new IllegalArgumentException("invalid prefetch window bounds");
+        }
+        mMinFrames = minFrames;
+        mMaxFrames = maxFrames;
+        mCurrentWindow = Math.max(minFrames, Math.min(DEFAULT_PREFETCH_FRAMES, maxFrames));
+    }
+
+    /**
+     * 记录一次帧合成的耗时，这个方法在工作线程中调用
+     * Records how long it took to render (composite) one frame. Called from the worker thread.
+     *
+     * @param elapsedMs the time the render took in milliseconds
+     */
+    public synchronized void onFrameRendered(long elapsedMs) {
+        if (elapsedMs < 0) {
+            return;
+        }
+        if (mAverageRenderMs < 0) {
+            mAverageRenderMs = elapsedMs;
+        } else {
+            mAverageRenderMs =
+                    (mAverageRenderMs * (8 - NEW_SAMPLE_WEIGHT) + elapsedMs * NEW_SAMPLE_WEIGHT) / 8;
+        }
+    }
+
+    /**
+     * 重新计算窗口的大小：从startFrame开始向后累加帧的持续时间，直到覆盖了
+     * LOOKAHEAD_FACTOR倍的平均渲染耗时
+     * Recomputes the window. Walks forward from {@code startFrame} summing up frame durations until
+     * the frames cover {@link #LOOKAHEAD_FACTOR} times the average render latency, so short frames
+     * lead to a larger window than long ones.
+     *
+     * @param backend the backend providing the frame durations
+     * @param startFrame the first frame of the window
+     * @param maxFramesForBudget how many frames fit in the remaining memory budget
+     * @return the number of frames to prefetch
+     */
+    public synchronized int computeWindow(
+            AnimatedDrawableBackend backend,
+            int startFrame,
+            int maxFramesForBudget) {
+        int frameCount = backend.getFrameCount();
+        int upperBound = Math.min(mMaxFrames, Math.max(0, frameCount - 1));
+        upperBound = Math.min(upperBound, Math.max(mMinFrames, maxFramesForBudget));
+
+        int window;
+        if (mAverageRenderMs < 0) {
+            window = DEFAULT_PREFETCH_FRAMES;
+        } else {
+            long neededMs = mAverageRenderMs * LOOKAHEAD_FACTOR;
+            long coveredMs = 0;
+            window = 0;
+            while (window < upperBound) {
+                if (window >= mMinFrames && coveredMs >= neededMs) {
+                    break;
+                }
+                int frameNumber = (startFrame + window) % frameCount;
+                coveredMs += backend.getDurationMsForFrame(frameNumber);
+                window++;
+            }
+        }
+        mCurrentWindow = Math.max(Math.min(mMinFrames, upperBound), Math.min(window, upperBound));
+        return mCurrentWindow;
+    }
+
+    /**
+     * 获取最近一次计算得到的窗口大小
+     * Gets the window size computed by the last call to {@link #computeWindow}.
+     */
+    public synchronized int getCurrentWindow() {
+        return mCurrentWindow;
+    }
+
+    /**
+     * 获取平均的帧渲染耗时，如果还没有测量过就返回-1
+     * Gets the moving average of the frame render time or -1 if nothing was measured yet.
+     */
+    public synchronized long getAverageRenderMs() {
+        return mAverageRenderMs;
+    }
+}
@@ -63,7 +63,7 @@ public class AnimatedDrawableDiagnosticsImpl implements AnimatedDrawableDiagnost
     @Override
     public void onStartMethodEnd() {
         long elapsedMs = SystemClock.uptimeMillis() - mLastTimeStamp;
-        if (elapsedMs > 3) {
+        if (elapsedMs > 3 && FLog.isLoggable(FLog.VERBOSE)) {
             FLog.v(TAG, "onStart took %d", elapsedMs);
         }
     }
@@ -76,7 +76,7 @@ public class AnimatedDrawableDiagnosticsImpl implements AnimatedDrawableDiagnost
     @Override
     public void onNextFrameMethodEnd() {
         long elapsedMs = SystemClock.uptimeMillis() - mLastTimeStamp;
-        if (elapsedMs > 3) {
+        if (elapsedMs > 3 && FLog.isLoggable(FLog.VERBOSE)) {
             FLog.v(TAG, "onNextFrame took %d", elapsedMs);
         }
     }
@@ -84,7 +84,7 @@ public class AnimatedDrawableDiagnosticsImpl implements AnimatedDrawableDiagnost
     @Override
     public void incrementDroppedFrames(int droppedFrames) {
         mDroppedFramesStat.incrementStats(droppedFrames);
-        if (droppedFrames > 0) {
+        if (droppedFrames > 0 && FLog.isLoggable(FLog.VERBOSE)) {
             FLog.v(TAG, "Dropped %d frames", droppedFrames);
         }
     }
@@ -101,8 +101,11 @@ public class AnimatedDrawableDiagnosticsImpl implements AnimatedDrawableDiagnost
 
     @Override
     public void onDrawMethodEnd() {
-        long elapsedMs = SystemClock.uptimeMillis() - mLastTimeStamp;
-        FLog.v(TAG, "draw took %d", elapsedMs);
+        if (FLog.isLoggable(FLog.VERBOSE)) {
+            // Checked first so the elapsed time isn't boxed on every draw.
+            long elapsedMs = SystemClock.uptimeMillis() - mLastTimeStamp;
+            FLog.v(TAG, "draw took %d", elapsedMs);
+        }
     }
 
     public void drawDebugOverlay(Canvas canvas, Rect destRect) {
@@ -119,6 +122,12 @@ public class AnimatedDrawableDiagnosticsImpl implements AnimatedDrawableDiagnost
             sbTemp.setLength(0);
             sbTemp.append(percentage);
             sbTemp.append("%");
+            int p90Dropped = mDroppedFramesStat.getPercentile(10, 90);
+            if (p90Dropped > 0) {
+                sbTemp.append(" p90 drop ");
+                sbTemp.append(p90Dropped);
+                sbTemp.append("/s");
+            }
             canvas.drawText(sbTemp, 0, sbTemp.length(), x, y, mDebugTextPaint);
             x += mDebugTextPaint.measureText(sbTemp, 0, sbTemp.length());
             x += spacingBetweenTextPx;
@@ -0,0 +1,238 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other;
+
+/**
+ * Created by Administrator on 2017/3/29 0029.
+ */
+
+import com.facebook.common.Histogram;
+import com.facebook.common.s.Preconditions;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableCachingBackend;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatedDrawable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 动画的性能指标，用于线上的统计，不需要打开debug图层。每个drawable有一个实例，所有drawable的数据同时汇总到一个共享的实例中
+ * Performance metrics of animations for production telemetry, collected without the debug overlay.
+ * Each {@link AnimatedDrawable} has its own instance and everything recorded there is also recorded
+ * in the aggregate instance shared by all drawables of the factory.
+ * <p>
+ * Latencies are recorded in microseconds:
+ * <ul>
+ *   <li>decode: producing a frame in the backend, from the delta cache, the disk store or by
+ *   compositing it
+ *   <li>composite: compositing a frame from the image
+ *   <li>draw: the {@link AnimatedDrawable#draw} method
+ * </ul>
+ * Besides those there are the cache hits and misses of {@link AnimatedDrawableCachingBackend},
+ * the number of frames being prefetched after each request and the bytes held by the backend.
+ * <p>
+ * Recording never allocates or locks. A {@link Listener} set on the aggregate instance is called
+ * with the metrics of a drawable at most once per sample interval, on the UI thread while that
+ * drawable draws.
+ */
+@ThreadSafe
+public class AnimatedDrawableMetrics {
+
+    /**
+     * 定期接收指标的回调
+     * Receives the metrics periodically.
+     */
+    public interface Listener {
+
+        /**
+         * 在UI线程调用，实现应该尽快返回
+         * Called on the UI thread, implementations should return quickly.
+         *
+         * @param drawableMetrics the metrics of one drawable, see {@link #getAggregate()} for the
+         *    metrics of all drawables
+         */
+        void onMetricsSample(AnimatedDrawableMetrics drawableMetrics);
+    }
+
+    @Nullable private final AnimatedDrawableMetrics mAggregate;
+
+    private final Histogram mDecodeLatencyUs = new Histogram();
+    private final Histogram mCompositeLatencyUs = new Histogram();
+    private final Histogram mDrawTimeUs = new Histogram();
+    private final Histogram mPrefetchQueueDepth = new Histogram();
+    private final Histogram mBytesHeld = new Histogram();
+    private final AtomicLong mCacheHits = new AtomicLong();
+    private final AtomicLong mCacheMisses = new AtomicLong();
+
+    // Only used by the aggregate.
+    private volatile Listener mListener;
+    private volatile long mSampleIntervalMs;
+
+    // Only used by the drawable metrics, on the UI thread.
+    private long mLastSampleMs;
+
+    /**
+     * 创建一个汇总所有drawable的实例
+     * Creates the aggregate metrics of all drawables.
+     */
+    public AnimatedDrawableMetrics() {
+        mAggregate = null;
+    }
+
+    /**
+     * 创建一个drawable的实例
+     * Creates the metrics of one drawable.
+     *
+     * @param aggregate the aggregate metrics everything is recorded in as well
+     */
+    public AnimatedDrawableMetrics(AnimatedDrawableMetrics aggregate) {
+        Preconditions.checkArgument(aggregate.mAggregate == null);
+        mAggregate = aggregate;
+    }
+
+    public void recordDecodeLatencyUs(long latencyUs) {
+        mDecodeLatencyUs.record(latencyUs);
+        if (mAggregate != null) {
+            mAggregate.recordDecodeLatencyUs(latencyUs);
+        }
+    }
+
+    public void recordCompositeLatencyUs(long latencyUs) {
+        mCompositeLatencyUs.record(latencyUs);
+        if (mAggregate != null) {
+            mAggregate.recordCompositeLatencyUs(latencyUs);
+        }
+    }
+
+    public void recordDrawTimeUs(long drawTimeUs) {
+        mDrawTimeUs.record(drawTimeUs);
+        if (mAggregate != null) {
+            mAggregate.recordDrawTimeUs(drawTimeUs);
+        }
+    }
+
+    public void recordCacheHit() {
+        mCacheHits.incrementAndGet();
+        if (mAggregate != null) {
+            mAggregate.recordCacheHit();
+        }
+    }
+
+    public void recordCacheMiss() {
+        mCacheMisses.incrementAndGet();
+        if (mAggregate != null) {
+            mAggregate.recordCacheMiss();
+        }
+    }
+
+    public void recordPrefetchQueueDepth(int depth) {
+        mPrefetchQueueDepth.record(depth);
+        if (mAggregate != null) {
+            mAggregate.recordPrefetchQueueDepth(depth);
+        }
+    }
+
+    public void recordBytesHeld(int bytes) {
+        mBytesHeld.record(bytes);
+        if (mAggregate != null) {
+            mAggregate.recordBytesHeld(bytes);
+        }
+    }
+
+    /**
+     * 设置定期接收指标的回调，只能在汇总的实例上调用
+     * Sets the listener receiving the metrics periodically. Only valid on the aggregate metrics.
+     *
+     * @param listener the listener or null to stop sampling
+     * @param sampleIntervalMs the minimum interval between two samples of the same drawable
+     */
+    public void setListener(@Nullable Listener listener, long sampleIntervalMs) {
+        Preconditions.checkState(mAggregate == null);
+        Preconditions.checkArgument(sampleIntervalMs >= 0);
+        mSampleIntervalMs = sampleIntervalMs;
+        mListener = listener;
+    }
+
+    /**
+     * 如果距离上一次采样已经过了采样间隔，就记录backend占用的内存并通知回调。在UI线程调用
+     * If the sample interval elapsed since the last sample, records the bytes held by the backend
+     * and calls the listener. Called on the UI thread.
+     *
+     * @param backend the backend of the drawable
+     * @param nowMs the current time
+     */
+    public void maybeDispatchSample(AnimatedDrawableCachingBackend backend, long nowMs) {
+        if (mAggregate == null) {
+            return;
+        }
+        Listener listener = mAggregate.mListener;
+        if (listener == null || nowMs - mLastSampleMs < mAggregate.mSampleIntervalMs) {
+            return;
+        }
+        mLastSampleMs = nowMs;
+        recordBytesHeld(backend.getMemoryUsage());
+        listener.onMetricsSample(this);
+    }
+
+    /**
+     * 获取汇总的实例，如果这就是汇总的实例就返回null
+     * Gets the aggregate metrics or null if these are the aggregate metrics.
+     */
+    @Nullable
+    public AnimatedDrawableMetrics getAggregate() {
+        return mAggregate;
+    }
+
+    public Histogram getDecodeLatencyUs() {
+        return mDecodeLatencyUs;
+    }
+
+    public Histogram getCompositeLatencyUs() {
+        return mCompositeLatencyUs;
+    }
+
+    public Histogram getDrawTimeUs() {
+        return mDrawTimeUs;
+    }
+
+    public Histogram getPrefetchQueueDepth() {
+        return mPrefetchQueueDepth;
+    }
+
+    public Histogram getBytesHeld() {
+        return mBytesHeld;
+    }
+
+    public long getCacheHits() {
+        return mCacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return mCacheMisses.get();
+    }
+
+    /**
+     * 获取缓存命中率
+     * Gets the ratio of frame requests served from the cache.
+     *
+     * @return the hit ratio between 0 and 1, or 0 if no frames were requested
+     */
+    public float getCacheHitRatio() {
+        long hits = mCacheHits.get();
+        long total = hits + mCacheMisses.get();
+        return total > 0 ? (float) hits / total : 0f;
+    }
+
+    /**
+     * 清空所有指标，比如在每次上报之后
+     * Clears all metrics, for example after each report.
+     */
+    public void reset() {
+        mDecodeLatencyUs.reset();
+        mCompositeLatencyUs.reset();
+        mDrawTimeUs.reset();
+        mPrefetchQueueDepth.reset();
+        mBytesHeld.reset();
+        mCacheHits.set(0);
+        mCacheMisses.set(0);
+    }
+}
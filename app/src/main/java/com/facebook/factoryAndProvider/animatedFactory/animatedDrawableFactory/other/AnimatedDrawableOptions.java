@@ -5,6 +5,8 @@ package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.
  */
 
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatableDrawable;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.FrameDropPolicies;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.FrameDropPolicy;
 
 import javax.annotation.concurrent.Immutable;
 
@@ -33,6 +35,62 @@ public class AnimatedDrawableOptions {
      */
     public final boolean allowPrefetching;
 
+    /**
+     * 是否可以把互相独立的关键帧序列放到多个解码线程上并行地预读。
+     * 依赖前面帧的帧依然会在同一个线程上按顺序渲染
+     * Whether independent runs of frames, each starting at a key frame, can be prefetched in
+     * parallel on several decode threads. Frames that depend on earlier frames are still rendered
+     * in order on the same thread.
+     */
+    public final boolean allowParallelDecoding;
+
+    /**
+     * 是否使用dirty-rect合成：延续上一次合成的帧，只清除和混合变化的矩形
+     * Whether to composite with dirty rectangles, carrying the previously composited frame forward
+     * and only clearing and blending the rectangles that changed.
+     */
+    public final boolean allowDirtyRectCompositing;
+
+    /**
+     * 当帧超出了内存预算的时候，是否在预算内用增量压缩保存所有的帧：关键帧保存完整的像素，其他帧只保存和前一帧的差异
+     * Whether all the frames are kept in a delta compressed cache within the memory budget when
+     * they don't fit as bitmaps. Key frames are kept in full and other frames as the difference to
+     * the previous frame.
+     */
+    public final boolean allowDeltaFrameCache;
+
+    /**
+     * 当帧超出了内存预算的时候，是否把合成好的帧写到磁盘上的内存映射文件中，循环播放时从那里读回来而不是重新合成
+     * Whether composited frames that don't fit in the memory budget are written to a memory-mapped
+     * file on disk and read back from there on the next loop instead of being composited again.
+     */
+    public final boolean allowDiskFrameStore;
+
+    /**
+     * 对于完全不透明的动画，是否使用{@link android.graphics.Bitmap.Config#RGB_565}来合成和缓存帧，这样只需要一半的内存。
+     * 只有当所有的帧都被检查过是不透明的时候才会切换
+     * Whether fully opaque animations are composited and cached in
+     * {@link android.graphics.Bitmap.Config#RGB_565}, which takes half the memory. The backend only
+     * switches once every frame was checked to be opaque.
+     */
+    public final boolean allowOpaqueRgb565;
+
+    /**
+     * 是否在所有drawable共享的动画时钟上调度下一帧，而不是每个drawable各自调度。
+     * 时间相近的下一帧会被合并到同一次唤醒中一起重绘
+     * Whether the drawable schedules its next frames on the animation clock shared by all
+     * drawables instead of scheduling its own. Next frames due within a few milliseconds of each
+     * other are then invalidated together in a single wakeup.
+     */
+    public final boolean useSharedAnimationClock;
+
+    /**
+     * 动画落后的时候跳过哪些帧，默认是{@link FrameDropPolicies#STRICT}，不跳过任何帧
+     * Which frames to skip when the animation falls behind. Defaults to
+     * {@link FrameDropPolicies#STRICT}, which never skips a frame.
+     */
+    public final FrameDropPolicy frameDropPolicy;
+
     /**
      * backend可以使用的最大帧缓存字节，-1是默认
      * The maximum bytes that the backend can use to cache image frames in memory or -1
@@ -52,6 +110,13 @@ public class AnimatedDrawableOptions {
     public AnimatedDrawableOptions(AnimatedDrawableOptionsBuilder builder) {
         this.forceKeepAllFramesInMemory = builder.getForceKeepAllFramesInMemory();
         this.allowPrefetching = builder.getAllowPrefetching();
+        this.allowParallelDecoding = builder.getAllowParallelDecoding();
+        this.allowDiskFrameStore = builder.getAllowDiskFrameStore();
+        this.allowDeltaFrameCache = builder.getAllowDeltaFrameCache();
+        this.allowDirtyRectCompositing = builder.getAllowDirtyRectCompositing();
+        this.allowOpaqueRgb565 = builder.getAllowOpaqueRgb565();
+        this.useSharedAnimationClock = builder.getUseSharedAnimationClock();
+        this.frameDropPolicy = builder.getFrameDropPolicy();
         this.maximumBytes = builder.getMaximumBytes();
         this.enableDebugging = builder.getEnableDebugging();
     }
@@ -3,6 +3,11 @@ package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.
 /**
  * Created by Administrator on 2017/3/29 0029.
  */
+
+import com.facebook.common.s.Preconditions;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.FrameDropPolicies;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.FrameDropPolicy;
+
 /**
  * Builder for {@link AnimatedDrawableOptions}.
  */
@@ -10,6 +15,13 @@ public class AnimatedDrawableOptionsBuilder {
 
     private boolean mForceKeepAllFramesInMemory;
     private boolean mAllowPrefetching = true;
+    private boolean mAllowParallelDecoding;
+    private boolean mAllowDiskFrameStore;
+    private boolean mAllowDeltaFrameCache;
+    private boolean mAllowDirtyRectCompositing;
+    private boolean mAllowOpaqueRgb565;
+    private boolean mUseSharedAnimationClock;
+    private FrameDropPolicy mFrameDropPolicy = FrameDropPolicies.STRICT;
     private int mMaximumBytes = -1;
     private boolean mEnableDebugging;
 
@@ -54,6 +66,153 @@ public class AnimatedDrawableOptionsBuilder {
         return this;
     }
 
+    /**
+     * Gets whether independent runs of frames can be prefetched in parallel on several threads.
+     *
+     * @return whether the backend can decode independent runs of frames in parallel
+     */
+    public boolean getAllowParallelDecoding() {
+        return mAllowParallelDecoding;
+    }
+
+    /**
+     * Sets whether independent runs of frames can be prefetched in parallel on several threads.
+     * This only has an effect if prefetching is allowed.
+     *
+     * @param allowParallelDecoding whether the backend can decode independent runs of frames in
+     *     parallel
+     * @return this builder
+     */
+    public AnimatedDrawableOptionsBuilder setAllowParallelDecoding(boolean allowParallelDecoding) {
+        mAllowParallelDecoding = allowParallelDecoding;
+        return this;
+    }
+
+    /**
+     * Gets whether frames that don't fit in the memory budget as bitmaps are kept delta compressed.
+     *
+     * @return whether the backend can keep the frames in a delta compressed cache
+     */
+    public boolean getAllowDeltaFrameCache() {
+        return mAllowDeltaFrameCache;
+    }
+
+    /**
+     * Sets whether frames that don't fit in the memory budget as bitmaps are kept delta compressed.
+     *
+     * @param allowDeltaFrameCache whether the backend can keep the frames in a delta compressed
+     *     cache
+     * @return this builder
+     */
+    public AnimatedDrawableOptionsBuilder setAllowDeltaFrameCache(boolean allowDeltaFrameCache) {
+        mAllowDeltaFrameCache = allowDeltaFrameCache;
+        return this;
+    }
+
+    /**
+     * Gets whether frames that don't fit in the memory budget are kept in a frame store on disk.
+     *
+     * @return whether the backend can keep frames in a frame store on disk
+     */
+    public boolean getAllowDiskFrameStore() {
+        return mAllowDiskFrameStore;
+    }
+
+    /**
+     * Sets whether frames that don't fit in the memory budget are kept in a frame store on disk.
+     *
+     * @param allowDiskFrameStore whether the backend can keep frames in a frame store on disk
+     * @return this builder
+     */
+    public AnimatedDrawableOptionsBuilder setAllowDiskFrameStore(boolean allowDiskFrameStore) {
+        mAllowDiskFrameStore = allowDiskFrameStore;
+        return this;
+    }
+
+    /**
+     * Gets whether frames are composited by only clearing and blending the rectangles that changed
+     * since the frame previously composited into the same bitmap.
+     *
+     * @return whether to use dirty-rect compositing
+     */
+    public boolean getAllowDirtyRectCompositing() {
+        return mAllowDirtyRectCompositing;
+    }
+
+    /**
+     * Sets whether frames are composited by only clearing and blending the rectangles that changed
+     * since the frame previously composited into the same bitmap.
+     *
+     * @param allowDirtyRectCompositing whether to use dirty-rect compositing
+     * @return this builder
+     */
+    public AnimatedDrawableOptionsBuilder setAllowDirtyRectCompositing(
+            boolean allowDirtyRectCompositing) {
+        mAllowDirtyRectCompositing = allowDirtyRectCompositing;
+        return this;
+    }
+
+    /**
+     * Gets whether fully opaque animations are composited and cached in a 16-bit config.
+     *
+     * @return whether the backend can use RGB_565 for opaque animations
+     */
+    public boolean getAllowOpaqueRgb565() {
+        return mAllowOpaqueRgb565;
+    }
+
+    /**
+     * Sets whether fully opaque animations are composited and cached in a 16-bit config.
+     *
+     * @param allowOpaqueRgb565 whether the backend can use RGB_565 for opaque animations
+     * @return this builder
+     */
+    public AnimatedDrawableOptionsBuilder setAllowOpaqueRgb565(boolean allowOpaqueRgb565) {
+        mAllowOpaqueRgb565 = allowOpaqueRgb565;
+        return this;
+    }
+
+    /**
+     * Gets whether the drawable schedules its frames on the shared animation clock.
+     *
+     * @return whether the drawable schedules its frames on the shared animation clock
+     */
+    public boolean getUseSharedAnimationClock() {
+        return mUseSharedAnimationClock;
+    }
+
+    /**
+     * Sets whether the drawable schedules its frames on the shared animation clock.
+     *
+     * @param useSharedAnimationClock whether to use the shared animation clock
+     * @return this builder
+     */
+    public AnimatedDrawableOptionsBuilder setUseSharedAnimationClock(
+            boolean useSharedAnimationClock) {
+        mUseSharedAnimationClock = useSharedAnimationClock;
+        return this;
+    }
+
+    /**
+     * Gets the policy deciding which frames to skip when the animation falls behind.
+     *
+     * @return the frame drop policy
+     */
+    public FrameDropPolicy getFrameDropPolicy() {
+        return mFrameDropPolicy;
+    }
+
+    /**
+     * Sets the policy deciding which frames to skip when the animation falls behind.
+     *
+     * @param frameDropPolicy the frame drop policy, see {@link FrameDropPolicies}
+     * @return this builder
+     */
+    public AnimatedDrawableOptionsBuilder setFrameDropPolicy(FrameDropPolicy frameDropPolicy) {
+        mFrameDropPolicy = Preconditions.checkNotNull(frameDropPolicy);
+        return this;
+    }
+
     /**
      * Gets the maximum bytes that the backend can use to cache image frames in memory.
      *
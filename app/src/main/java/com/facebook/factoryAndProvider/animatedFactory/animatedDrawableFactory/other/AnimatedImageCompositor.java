@@ -10,12 +10,25 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.util.SparseArrayCompat;
 
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend.AnimatedDrawableBackend;
 import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AnimatedDrawableFrameInfo;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImage;
+import com.facebook.log.FLog;
 import com.facebook.references.CloseableReference;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.concurrent.GuardedBy;
+
 /**
  * 包含在一个{@link AnimatedImage}中，其用来提供帧合成的逻辑
  * 动画格式像是GIF和WebP支持inter-frame压缩算法，这个算法将前后帧混合在一起实现
@@ -25,9 +38,49 @@ import com.facebook.references.CloseableReference;
  * being blended on a previous frame in order to render the full frame. This class encapsulates
  * the behavior to be able to render any frame of the image. Designed to work with a cache
  * via a Callback.
+ * <p>
+ * While frames are composited, the compositor also builds a checkpoint index: every few frames it
+ * keeps a deflated snapshot of the canvas state. When a frame has to be rendered without a cached
+ * frame nearby (after a seek or after the caches were dropped), it starts from the closest
+ * checkpoint instead of going back to the last key frame. The distance between checkpoints is
+ * chosen from the measured cost of a blend step so a random access costs about
+ * {@link #TARGET_SEEK_NANOS}.
+ * <p>
+ * In dirty-rect mode the compositor remembers which frame it last composited into each bitmap. When
+ * it is asked to render a later frame into the same bitmap, it carries the previous frame forward
+ * and only clears and blends the rectangles of the frames in between, instead of clearing the whole
+ * bitmap and starting over. Callers that write into such a bitmap themselves must call
+ * {@link #forgetBitmap}.
  */
 public class AnimatedImageCompositor {
 
+    private static final Class<?> TAG = AnimatedImageCompositor.class;
+
+    /**
+     * 从检查点恢复一帧时，希望花在混合帧上的时间
+     * How long blending frames after restoring a checkpoint should take at most.
+     */
+    private static final long TARGET_SEEK_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    /**
+     * 还没有测量过混合耗时的时候，检查点之间的距离
+     * Distance between checkpoints before the blend cost was measured.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_CHECKPOINT_INTERVAL = 8;
+
+    private static final int MIN_CHECKPOINT_INTERVAL = 2;
+
+    /**
+     * 检查点压缩后最多占用的字节数，超过之后不再记录新的检查点
+     * Maximum bytes the compressed checkpoints may use. No new checkpoints are recorded beyond it.
+     */
+    @VisibleForTesting
+    static final int MAX_CHECKPOINT_BYTES = 2 * 1024 * 1024;
+
+    // Weight of the newest sample in the moving average, in 1/8ths.
+    private static final int NEW_SAMPLE_WEIGHT = 2;
+
     /**
      * 缓存的回调
      * Callback for caching.
@@ -65,16 +118,55 @@ public class AnimatedImageCompositor {
     private final AnimatedDrawableBackend mAnimatedDrawableBackend;
     private final Callback mCallback;
     private final Paint mTransparentFillPaint;
+    private final boolean mDirtyRectCompositing;
+
+    /**
+     * 每个bitmap中最后一次合成的帧，只在dirty-rect模式中使用
+     * The frame last composited into each bitmap. Only used in dirty-rect mode.
+     */
+    @GuardedBy("this")
+    private final WeakHashMap<Bitmap, Integer> mRenderedFrames;
+
+    /**
+     * 检查点，key是帧号，value是处理完这一帧之后画布的状态
+     * Checkpoints keyed by frame number. A checkpoint holds the canvas state after the frame was
+     * composited and disposed, i.e. the state the next frame is blended onto.
+     */
+    @GuardedBy("this")
+    private final SparseArrayCompat<Checkpoint> mCheckpoints;
+
+    @GuardedBy("this")
+    private int mCheckpointBytes;
+
+    // -1 until the first blend step has been measured.
+    @GuardedBy("this")
+    private long mAverageBlendNanos = -1;
 
     public AnimatedImageCompositor(
             AnimatedDrawableBackend animatedDrawableBackend,
             Callback callback) {
+        this(animatedDrawableBackend, callback, false);
+    }
+
+    /**
+     * @param animatedDrawableBackend the backend to render the frames with
+     * @param callback the callback for caching
+     * @param dirtyRectCompositing whether to carry the previous composited frame forward and only
+     *     clear and blend the rectangles that changed
+     */
+    public AnimatedImageCompositor(
+            AnimatedDrawableBackend animatedDrawableBackend,
+            Callback callback,
+            boolean dirtyRectCompositing) {
         mAnimatedDrawableBackend = animatedDrawableBackend;
         mCallback = callback;
+        mDirtyRectCompositing = dirtyRectCompositing;
+        mRenderedFrames = new WeakHashMap<Bitmap, Integer>();
         mTransparentFillPaint = new Paint();
         mTransparentFillPaint.setColor(Color.TRANSPARENT);
         mTransparentFillPaint.setStyle(Paint.Style.FILL);
         mTransparentFillPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        mCheckpoints = new SparseArrayCompat<Checkpoint>();
     }
 
     /**
@@ -86,16 +178,27 @@ public class AnimatedImageCompositor {
      */
     public void renderFrame(int frameNumber, Bitmap bitmap) {
         Canvas canvas = new Canvas(bitmap);
-        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.SRC);
+        int carriedFrame = mDirtyRectCompositing ? takeCarriedFrame(frameNumber, bitmap) : -1;
 
         //如果需要混合，那么准最近的帧和canvas
         // If blending is required, prepare the canvas with the nearest cached frame.
         int nextIndex;
-        if (!isKeyFrame(frameNumber)) {
+        if (carriedFrame >= 0) {
+            // The bitmap still holds an earlier frame. Dispose it and blend only what changed since.
+            AnimatedDrawableFrameInfo carriedFrameInfo =
+                    mAnimatedDrawableBackend.getFrameInfo(carriedFrame);
+            if (carriedFrameInfo.disposalMethod ==
+                    AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_BACKGROUND) {
+                disposeToBackground(canvas, carriedFrameInfo);
+            }
+            nextIndex = carriedFrame + 1;
+        } else if (!isKeyFrame(frameNumber)) {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.SRC);
             //混合是必须的，nextIndex的指针指向下一个
             // Blending is required. nextIndex points to the next index to render onto the canvas.
-            nextIndex = prepareCanvasWithClosestCachedFrame(frameNumber - 1, canvas);
+            nextIndex = prepareCanvasWithClosestCachedFrame(frameNumber - 1, canvas, bitmap);
         } else {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.SRC);
             // Blending isn't required. Start at the frame we're trying to render.
             nextIndex = frameNumber;
         }
@@ -111,11 +214,14 @@ public class AnimatedImageCompositor {
             if (frameInfo.blendOperation == AnimatedDrawableFrameInfo.BlendOperation.NO_BLEND) {
                 disposeToBackground(canvas, frameInfo);
             }
-            mAnimatedDrawableBackend.renderFrame(index, canvas);
+            renderFrameAndMeasure(index, canvas);
             mCallback.onIntermediateResult(index, bitmap);
             if (disposalMethod == AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_BACKGROUND) {
                 disposeToBackground(canvas, frameInfo);
             }
+            if (shouldRecordCheckpoint(index)) {
+                recordCheckpoint(index, bitmap, null);
+            }
         }
 
         AnimatedDrawableFrameInfo frameInfo = mAnimatedDrawableBackend.getFrameInfo(frameNumber);
@@ -123,7 +229,264 @@ public class AnimatedImageCompositor {
             disposeToBackground(canvas, frameInfo);
         }
         // Finally, we render the current frame. We don't dispose it.
+        renderFrameAndMeasure(frameNumber, canvas);
+
+        // The state after DISPOSE_TO_PREVIOUS isn't in the bitmap any more, so it can't be recorded.
+        if (frameInfo.disposalMethod != AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_PREVIOUS &&
+                shouldRecordCheckpoint(frameNumber)) {
+            recordCheckpoint(
+                    frameNumber,
+                    bitmap,
+                    frameInfo.disposalMethod == AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_BACKGROUND ?
+                            frameInfo :
+                            null);
+        }
+
+        if (mDirtyRectCompositing) {
+            synchronized (this) {
+                mRenderedFrames.put(bitmap, frameNumber);
+            }
+        }
+    }
+
+    /**
+     * 告诉合成器调用者自己修改了bitmap的像素，下次不能再从这个bitmap中延续之前的帧
+     * Tells the compositor that the caller changed the pixels of the bitmap, so the frame last
+     * composited into it can't be carried forward any more.
+     *
+     * @param bitmap the bitmap that was changed
+     */
+    public synchronized void forgetBitmap(Bitmap bitmap) {
+        mRenderedFrames.remove(bitmap);
+    }
+
+    /**
+     * 判断是否可以从bitmap中已经合成的帧开始渲染指定的帧。只有当只需要混合变化的矩形的面积小于整个bitmap时才值得这样做。
+     * 不管结果如何，bitmap都会被忘记，因为接下来它会被重新渲染
+     * Checks whether the frame can be rendered starting from the frame already composited into the
+     * bitmap. That's only worth it if the rectangles that have to be cleared and blended cover less
+     * than the whole bitmap. The bitmap is forgotten either way as it is about to be rendered into.
+     *
+     * @param frameNumber the frame to render
+     * @param bitmap the bitmap to render into
+     * @return the frame to carry forward or -1 to render from scratch
+     */
+    private int takeCarriedFrame(int frameNumber, Bitmap bitmap) {
+        Integer renderedFrame;
+        synchronized (this) {
+            renderedFrame = mRenderedFrames.remove(bitmap);
+        }
+        if (renderedFrame == null || renderedFrame >= frameNumber) {
+            return -1;
+        }
+        AnimatedDrawableFrameInfo renderedFrameInfo =
+                mAnimatedDrawableBackend.getFrameInfo(renderedFrame);
+        if (renderedFrameInfo.disposalMethod ==
+                AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_PREVIOUS) {
+            // The state to go back to isn't in the bitmap any more.
+            return -1;
+        }
+        long fullArea = (long) bitmap.getWidth() * bitmap.getHeight();
+        long dirtyArea = renderedFrameInfo.disposalMethod ==
+                AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_BACKGROUND ?
+                getArea(renderedFrameInfo) :
+                0;
+        for (int index = renderedFrame + 1; index <= frameNumber && dirtyArea < fullArea; index++) {
+            AnimatedDrawableFrameInfo frameInfo = mAnimatedDrawableBackend.getFrameInfo(index);
+            if (index < frameNumber &&
+                    frameInfo.disposalMethod == AnimatedDrawableFrameInfo.DisposalMethod.DISPOSE_TO_PREVIOUS) {
+                // Skipped while compositing.
+                continue;
+            }
+            dirtyArea += getArea(frameInfo);
+        }
+        return dirtyArea < fullArea ? renderedFrame : -1;
+    }
+
+    private static long getArea(AnimatedDrawableFrameInfo frameInfo) {
+        return (long) frameInfo.width * frameInfo.height;
+    }
+
+    /**
+     * 获取检查点占用的字节数
+     * Gets the number of bytes used by the compressed checkpoints.
+     *
+     * @return the number of bytes
+     */
+    public synchronized int getCheckpointBytes() {
+        return mCheckpointBytes;
+    }
+
+    /**
+     * 丢弃所有的检查点，例如当渲染的bitmap格式改变的时候
+     * Drops all checkpoints, e.g. when the config of the bitmaps rendered into changes.
+     */
+    public synchronized void dropCheckpoints() {
+        mCheckpoints.clear();
+        mCheckpointBytes = 0;
+    }
+
+    @VisibleForTesting
+    synchronized int getCheckpointCount() {
+        return mCheckpoints.size();
+    }
+
+    private void renderFrameAndMeasure(int frameNumber, Canvas canvas) {
+        long startNanos = System.nanoTime();
         mAnimatedDrawableBackend.renderFrame(frameNumber, canvas);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        synchronized (this) {
+            if (mAverageBlendNanos < 0) {
+                mAverageBlendNanos = elapsedNanos;
+            } else {
+                mAverageBlendNanos =
+                        (mAverageBlendNanos * (8 - NEW_SAMPLE_WEIGHT) + elapsedNanos * NEW_SAMPLE_WEIGHT) / 8;
+            }
+        }
+    }
+
+    /**
+     * 根据测量到的混合耗时计算检查点之间的距离，使得从最近的检查点恢复一帧大约花费{@link #TARGET_SEEK_NANOS}
+     * Computes the distance between checkpoints from the measured blend cost, so that restoring any
+     * frame from the closest checkpoint blends frames for about {@link #TARGET_SEEK_NANOS}.
+     */
+    @GuardedBy("this")
+    private int getCheckpointIntervalLocked() {
+        if (mAverageBlendNanos <= 0) {
+            return DEFAULT_CHECKPOINT_INTERVAL;
+        }
+        long interval = TARGET_SEEK_NANOS / mAverageBlendNanos;
+        return (int) Math.max(MIN_CHECKPOINT_INTERVAL, Math.min(interval, mAnimatedDrawableBackend.getFrameCount()));
+    }
+
+    /**
+     * 如果这一帧之前一个间隔之内都没有检查点，并且还有空间，那么就需要记录检查点。关键帧本身渲染很便宜，不需要检查点
+     * A checkpoint is recorded for a frame if there is none within one interval before it and the
+     * checkpoints are still within {@link #MAX_CHECKPOINT_BYTES}. Frames right before a key frame
+     * don't need one as the key frame can be rendered on its own.
+     */
+    private synchronized boolean shouldRecordCheckpoint(int frameNumber) {
+        if (mCheckpointBytes >= MAX_CHECKPOINT_BYTES ||
+                frameNumber + 1 >= mAnimatedDrawableBackend.getFrameCount() ||
+                isKeyFrame(frameNumber + 1)) {
+            return false;
+        }
+        int interval = getCheckpointIntervalLocked();
+        for (int index = frameNumber; index > frameNumber - interval && index >= 0; index--) {
+            if (mCheckpoints.get(index) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 压缩并记录画布在这一帧处理完之后的状态
+     * Compresses and records the canvas state after the frame was composited and disposed.
+     *
+     * @param frameNumber the frame that was just composited
+     * @param bitmap the bitmap holding the composited frame
+     * @param disposeToBackground the frame info if the frame still needs to be disposed to
+     *     background in the recorded state, null otherwise
+     */
+    private void recordCheckpoint(
+            int frameNumber,
+            Bitmap bitmap,
+            AnimatedDrawableFrameInfo disposeToBackground) {
+        ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(pixels);
+        if (disposeToBackground != null) {
+            clearRect(pixels.array(), bitmap, disposeToBackground);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] data;
+        try {
+            deflater.setInput(pixels.array());
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(pixels.capacity() / 8);
+            byte[] chunk = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                out.write(chunk, 0, length);
+            }
+            data = out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+
+        synchronized (this) {
+            if (mCheckpoints.get(frameNumber) != null ||
+                    mCheckpointBytes + data.length > MAX_CHECKPOINT_BYTES) {
+                return;
+            }
+            mCheckpoints.put(
+                    frameNumber,
+                    new Checkpoint(data, pixels.capacity(), bitmap.getConfig()));
+            mCheckpointBytes += data.length;
+        }
+        FLog.v(TAG, "Recorded checkpoint for frame %d (%d bytes)", frameNumber, data.length);
+    }
+
+    /**
+     * 把检查点直接解压到bitmap中
+     * Inflates the checkpoint of the frame straight into the bitmap.
+     *
+     * @return whether the bitmap now holds the state after the frame
+     */
+    private boolean restoreCheckpoint(int frameNumber, Bitmap bitmap) {
+        Checkpoint checkpoint;
+        synchronized (this) {
+            checkpoint = mCheckpoints.get(frameNumber);
+        }
+        if (checkpoint == null ||
+                checkpoint.config != bitmap.getConfig() ||
+                checkpoint.byteCount != bitmap.getRowBytes() * bitmap.getHeight()) {
+            return false;
+        }
+        byte[] pixels = new byte[checkpoint.byteCount];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(checkpoint.data);
+            int length = 0;
+            while (length < pixels.length && !inflater.finished()) {
+                int inflated = inflater.inflate(pixels, length, pixels.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != pixels.length) {
+                return false;
+            }
+        } catch (DataFormatException e) {
+            FLog.w(TAG, e, "Failed to restore checkpoint for frame %d", frameNumber);
+            return false;
+        } finally {
+            inflater.end();
+        }
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+        return true;
+    }
+
+    /**
+     * 在像素数据中把帧覆盖的区域清成透明，相当于对拷贝做{@link #disposeToBackground}
+     * Clears the area covered by the frame to transparent in the pixel copy, the equivalent of
+     * {@link #disposeToBackground} on the copy.
+     */
+    private static void clearRect(byte[] pixels, Bitmap bitmap, AnimatedDrawableFrameInfo frameInfo) {
+        int rowBytes = bitmap.getRowBytes();
+        int bytesPerPixel = rowBytes / bitmap.getWidth();
+        int left = Math.max(0, frameInfo.xOffset);
+        int top = Math.max(0, frameInfo.yOffset);
+        int right = Math.min(bitmap.getWidth(), frameInfo.xOffset + frameInfo.width);
+        int bottom = Math.min(bitmap.getHeight(), frameInfo.yOffset + frameInfo.height);
+        for (int y = top; y < bottom; y++) {
+            int rowStart = y * rowBytes;
+            for (int i = rowStart + left * bytesPerPixel; i < rowStart + right * bytesPerPixel; i++) {
+                pixels[i] = 0;
+            }
+        }
     }
 
     /**
@@ -158,9 +521,13 @@ public class AnimatedImageCompositor {
      *
      * @param previousFrameNumber the frame number that is ones less than the one we're rendering
      * @param canvas the canvas to prepare
+     * @param bitmap the bitmap backing the canvas, checkpoints are restored straight into it
      * @return the index of the the next frame to process
      */
-    private int prepareCanvasWithClosestCachedFrame(int previousFrameNumber, Canvas canvas) {
+    private int prepareCanvasWithClosestCachedFrame(
+            int previousFrameNumber,
+            Canvas canvas,
+            Bitmap bitmap) {
         for (int index = previousFrameNumber; index >= 0; index--) {
             FrameNeededResult neededResult = isFrameNeededForRendering(index);
             switch (neededResult) {
@@ -180,6 +547,8 @@ public class AnimatedImageCompositor {
                     } else {
                         if (isKeyFrame(index)) {
                             return index;
+                        } else if (restoreCheckpoint(index, bitmap)) {
+                            return index + 1;
                         } else {
                             // Keep going.
                             break;
@@ -190,6 +559,8 @@ public class AnimatedImageCompositor {
                 case ABORT:
                     return index;
                 case SKIP:
+                    // No checkpoints are recorded for DISPOSE_TO_PREVIOUS frames. Keep going.
+                    break;
                 default:
                     // Keep going.
             }
@@ -239,7 +610,15 @@ public class AnimatedImageCompositor {
         }
     }
 
-    private boolean isKeyFrame(int index) {
+    /**
+     * 判断指定的帧是否是关键帧，关键帧不依赖前面的任何帧就可以渲染
+     * Returns whether the specified frame is a key frame, i.e. it can be rendered without any of
+     * the frames before it.
+     *
+     * @param index the frame to check
+     * @return whether the frame is a key frame
+     */
+    public boolean isKeyFrame(int index) {
         if (index == 0) {
             return true;
         }
@@ -252,6 +631,18 @@ public class AnimatedImageCompositor {
                     && isFullFrame(prevFrameInfo);
     }
 
+    private static class Checkpoint {
+        final byte[] data;
+        final int byteCount;
+        final Bitmap.Config config;
+
+        Checkpoint(byte[] data, int byteCount, Bitmap.Config config) {
+            this.data = data;
+            this.byteCount = byteCount;
+            this.config = config;
+        }
+    }
+
     private boolean isFullFrame(AnimatedDrawableFrameInfo frameInfo) {
         return frameInfo.xOffset == 0 &&
                 frameInfo.yOffset == 0 &&
@@ -0,0 +1,242 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.image.imageFormat.DefaultImageFormats;
+import com.facebook.image.imageFormat.ImageFormat;
+import com.facebook.imagepipeline.memory.PooledByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 在数据还没有全部到达的时候，扫描GIF或者动态WebP的结构，找出已经完整的帧
+ * Scans the structure of a GIF or an animated WebP while its bytes are still arriving, to find
+ * the frames that are complete.
+ * <p>
+ * Only the container is parsed, nothing is decoded. GIF blocks and their sub-block chains, and
+ * WebP RIFF chunks, are walked from where the previous call stopped, so each byte is looked at
+ * about once however often {@link #parseMoreData} is called. A GIF frame is complete after the
+ * terminator of its image data, a WebP frame after its ANMF chunk.
+ */
+@NotThreadSafe
+class AnimatedFrameScanner {
+
+    private static final int GIF_HEADER_SIZE = 13;
+    private static final int GIF_EXTENSION = 0x21;
+    private static final int GIF_IMAGE_DESCRIPTOR = 0x2C;
+    private static final int GIF_IMAGE_DESCRIPTOR_SIZE = 10;
+    static final int GIF_TRAILER = 0x3B;
+
+    static final int RIFF_HEADER_SIZE = 12;
+    private static final int RIFF_CHUNK_HEADER_SIZE = 8;
+
+    private final boolean mIsGif;
+
+    /**
+     * 下一个还没有解析的块或chunk的开始位置，-1表示还没有解析文件头
+     * Start of the next block or chunk to parse, -1 until the header was parsed.
+     */
+    private int mOffset = -1;
+
+    /**
+     * 正在跳过的GIF子块链中下一个子块的位置，不在子块链中的时候是-1
+     * Position of the next sub-block of the GIF sub-block chain being skipped, or -1.
+     */
+    private int mSubBlockOffset = -1;
+    private boolean mSubBlocksEndFrame;
+
+    private int mRiffEnd;
+    private int mFrameCount;
+    private int mFramesEndOffset;
+    private boolean mEndReached;
+    private boolean mInvalid;
+
+    /**
+     * @param imageFormat {@link DefaultImageFormats#GIF} or {@link DefaultImageFormats#WEBP_ANIMATED}
+     */
+    AnimatedFrameScanner(ImageFormat imageFormat) {
+        if (imageFormat == DefaultImageFormats.GIF) {
+            mIsGif = true;
+        } else if (imageFormat == DefaultImageFormats.WEBP_ANIMATED) {
+            mIsGif = false;
+        } else {
+            throw new IllegalArgumentException("Not an animated format: " + imageFormat);
+        }
+    }
+
+    /**
+     * 继续扫描新到达的数据
+     * Scans the bytes that arrived since the previous call.
+     *
+     * @param buffer all the bytes received so far
+     * @return true if more frames are complete now
+     */
+    boolean parseMoreData(PooledByteBuffer buffer) {
+        if (mInvalid || mEndReached) {
+            return false;
+        }
+        final int framesBefore = mFrameCount;
+        if (mIsGif) {
+            parseGif(buffer, buffer.size());
+        } else {
+            parseWebP(buffer, buffer.size());
+        }
+        return mFrameCount > framesBefore;
+    }
+
+    boolean isGif() {
+        return mIsGif;
+    }
+
+    /**
+     * 已经完整的帧数
+     * Number of frames complete so far.
+     */
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 最后一个完整的帧之后的位置
+     * Offset right after the last complete frame.
+     */
+    int getFramesEndOffset() {
+        return mFramesEndOffset;
+    }
+
+    /**
+     * 是否已经扫描到了文件末尾
+     * Whether the end of the image was reached.
+     */
+    boolean isEndReached() {
+        return mEndReached;
+    }
+
+    /**
+     * 数据不是期望的格式，之后的数据不会再扫描
+     * Whether the bytes turned out not to be of the expected format. No more bytes are scanned
+     * then.
+     */
+    boolean isInvalid() {
+        return mInvalid;
+    }
+
+    private void parseGif(PooledByteBuffer buffer, int size) {
+        if (mOffset < 0) {
+            if (size < GIF_HEADER_SIZE) {
+                return;
+            }
+            if (buffer.read(0) != 'G' || buffer.read(1) != 'I' || buffer.read(2) != 'F') {
+                mInvalid = true;
+                return;
+            }
+            mOffset = GIF_HEADER_SIZE + getGifColorTableSize(buffer.read(10));
+        }
+        while (true) {
+            if (mSubBlockOffset >= 0) {
+                // Each sub-block starts with its length, a zero length ends the chain.
+                while (mSubBlockOffset < size) {
+                    final int length = buffer.read(mSubBlockOffset) & 0xFF;
+                    if (length == 0) {
+                        break;
+                    }
+                    mSubBlockOffset += 1 + length;
+                }
+                if (mSubBlockOffset >= size) {
+                    return;
+                }
+                mOffset = mSubBlockOffset + 1;
+                mSubBlockOffset = -1;
+                if (mSubBlocksEndFrame) {
+                    mFrameCount++;
+                    mFramesEndOffset = mOffset;
+                }
+            }
+            if (mOffset >= size) {
+                return;
+            }
+            switch (buffer.read(mOffset) & 0xFF) {
+                case GIF_EXTENSION:
+                    // introducer and label
+                    if (mOffset + 2 > size) {
+                        return;
+                    }
+                    mSubBlockOffset = mOffset + 2;
+                    mSubBlocksEndFrame = false;
+                    break;
+                case GIF_IMAGE_DESCRIPTOR:
+                    // descriptor, local color table and the LZW minimum code size
+                    if (mOffset + GIF_IMAGE_DESCRIPTOR_SIZE > size) {
+                        return;
+                    }
+                    final int imageData = mOffset + GIF_IMAGE_DESCRIPTOR_SIZE +
+                            getGifColorTableSize(buffer.read(mOffset + 9)) + 1;
+                    if (imageData > size) {
+                        return;
+                    }
+                    mSubBlockOffset = imageData;
+                    mSubBlocksEndFrame = true;
+                    break;
+                case GIF_TRAILER:
+                    mEndReached = true;
+                    return;
+                default:
+                    mInvalid = true;
+                    return;
+            }
+        }
+    }
+
+    private static int getGifColorTableSize(byte packedFields) {
+        return (packedFields & 0x80) != 0 ? 3 << ((packedFields & 0x07) + 1) : 0;
+    }
+
+    private void parseWebP(PooledByteBuffer buffer, int size) {
+        if (mOffset < 0) {
+            if (size < RIFF_HEADER_SIZE) {
+                return;
+            }
+            if (!matches(buffer, 0, "RIFF") || !matches(buffer, 8, "WEBP")) {
+                mInvalid = true;
+                return;
+            }
+            mRiffEnd = (int) Math.min(Integer.MAX_VALUE, 8 + readLittleEndianInt(buffer, 4));
+            mOffset = RIFF_HEADER_SIZE;
+        }
+        while (mOffset + RIFF_CHUNK_HEADER_SIZE <= size) {
+            final long chunkSize = readLittleEndianInt(buffer, mOffset + 4);
+            // Chunks are padded to an even size.
+            final long chunkEnd = mOffset + RIFF_CHUNK_HEADER_SIZE + chunkSize + (chunkSize & 1);
+            if (chunkEnd > size) {
+                return;
+            }
+            if (matches(buffer, mOffset, "ANMF")) {
+                mFrameCount++;
+                mFramesEndOffset = (int) chunkEnd;
+            }
+            mOffset = (int) chunkEnd;
+            if (mOffset >= mRiffEnd) {
+                mEndReached = true;
+                return;
+            }
+        }
+    }
+
+    private static boolean matches(PooledByteBuffer buffer, int offset, String fourCc) {
+        for (int i = 0; i < 4; i++) {
+            if (buffer.read(offset + i) != fourCc.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long readLittleEndianInt(PooledByteBuffer buffer, int offset) {
+        return (buffer.read(offset) & 0xFFL) |
+                (buffer.read(offset + 1) & 0xFFL) << 8 |
+                (buffer.read(offset + 2) & 0xFFL) << 16 |
+                (buffer.read(offset + 3) & 0xFFL) << 24;
+    }
+}
@@ -31,6 +31,7 @@ import com.facebook.imagepipeline.memory.NativePooledByteBuffer;
 import com.facebook.imagepipeline.memory.PooledByteBuffer;
 import com.facebook.references.CloseableReference;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -104,7 +105,7 @@ public class AnimatedImageFactoryImpl implements AnimatedImageFactory {
         Preconditions.checkNotNull(bytesRef);
         try {
             final PooledByteBuffer input = bytesRef.get();
-            AnimatedImage gifImage = sGifAnimatedImageDecoder.decode(input.getNativePtr(), input.size());
+            AnimatedImage gifImage = decode(sGifAnimatedImageDecoder, input);
 
             return getCloseableImage(options, gifImage, bitmapConfig);
         } finally {
@@ -136,15 +137,28 @@ public class AnimatedImageFactoryImpl implements AnimatedImageFactory {
         Preconditions.checkNotNull(bytesRef);
         try {
             final PooledByteBuffer input = bytesRef.get();
-            AnimatedImage webPImage = sWebpAnimatedImageDecoder.decode(
-                    input.getNativePtr(),
-                    input.size());
+            AnimatedImage webPImage = decode(sWebpAnimatedImageDecoder, input);
             return getCloseableImage(options, webPImage, bitmapConfig);
         } finally {
             CloseableReference.closeSafely(bytesRef);
         }
     }
 
+    /**
+     * 有本地指针的话从它解码；否则从直接buffer解码，映射到内存中的文件只能这样解码
+     * Decodes from the native pointer where there is one. Otherwise decodes from a direct view of
+     * the buffer, which is the only way to decode mapped files, see
+     * {@link PooledByteBuffer#hasNativePtr()}.
+     */
+    private static AnimatedImage decode(AnimatedImageDecoder decoder, PooledByteBuffer input) {
+        if (input.hasNativePtr()) {
+            return decoder.decode(input.getNativePtr(), input.size());
+        }
+        ByteBuffer byteBuffer = input.getByteBuffer();
+        Preconditions.checkState(byteBuffer != null && byteBuffer.isDirect());
+        return decoder.decode(byteBuffer);
+    }
+
     /**
      * 1.判断是否将动画当成静态图片，如果是调用{@link #createPreviewBitmap}然后return一个{@link CloseableStaticBitmap}
      * 2.根据{@link ImageDecodeOptions#decodeAllFrames}判断释是否解码动画的所有帧，如果是调用{@link #decodeAllFrames}创建一个List<CloseableReference<Bitmap>>
@@ -0,0 +1,269 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import android.graphics.Bitmap;
+
+import com.facebook.common.PooledByteBufferInputStream;
+import com.facebook.common.s.PooledByteStreams;
+import com.facebook.common.stream.PooledByteBufferOutputStream;
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedDrawable.AbstractAnimatedDrawable;
+import com.facebook.image.CloseableImage;
+import com.facebook.image.EncodedImage;
+import com.facebook.image.imageDecode.ImageDecodeOptions;
+import com.facebook.image.imageFormat.DefaultImageFormats;
+import com.facebook.image.imageFormat.ImageFormat;
+import com.facebook.imagepipeline.memory.NativeMemoryChunk;
+import com.facebook.imagepipeline.memory.NativePooledByteBuffer;
+import com.facebook.imagepipeline.memory.PooledByteBuffer;
+import com.facebook.log.FLog;
+import com.facebook.pool.NativeMemoryChunkPool;
+import com.facebook.references.CloseableReference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 在数据还在到达的时候就解码GIF或动态WebP，这样第一帧显示的时间不再依赖文件的总大小
+ * Decodes a GIF or an animated WebP while its bytes are still arriving, so the time to the first
+ * frame no longer depends on the size of the whole file.
+ * <p>
+ * The native decoders only take whole images, so intermediate images are decoded from a prefix
+ * made into a valid image: the complete frames found by {@link AnimatedFrameScanner} followed by
+ * a GIF trailer, or with the RIFF size of a WebP cut down to them. Each intermediate image has
+ * more frames than the one before; pass it to {@link AbstractAnimatedDrawable#appendFrames} to
+ * show them without losing the frames already rendered.
+ * <p>
+ * The prefix is kept in one chunk of native memory. Only the bytes of the frames completed since
+ * the previous intermediate image are copied into it, and the trailer or the RIFF size is patched
+ * in place. The native decoders copy the bytes they are created from, so the chunk can be
+ * patched again for the next image.
+ * <p>
+ * An intermediate image is decoded once the number of complete frames doubled, so all
+ * intermediate decodes together cost about as much as decoding the whole image twice.
+ */
+@NotThreadSafe
+public class ProgressiveAnimatedImageDecoder implements Closeable {
+
+    private static final Class<?> TAG = ProgressiveAnimatedImageDecoder.class;
+
+    private final AnimatedImageFactory mAnimatedImageFactory;
+    private final NativeMemoryChunkPool mNativeMemoryChunkPool;
+    private final PooledByteStreams mPooledByteStreams;
+    private final ImageDecodeOptions mOptions;
+    private final Bitmap.Config mBitmapConfig;
+    private final AnimatedFrameScanner mScanner;
+
+    /**
+     * 已经完整的帧的数据，后面是补上的GIF结束符。WebP的RIFF大小已经改成了这些帧的大小
+     * The bytes of the complete frames, followed by the patched in GIF trailer. The RIFF size of a
+     * WebP is patched to match them.
+     */
+    @Nullable private CloseableReference<NativeMemoryChunk> mPrefixRef;
+
+    /**
+     * {@link #mPrefixRef}中从输入拷贝过来的字节数
+     * Number of bytes of {@link #mPrefixRef} copied from the input.
+     */
+    private int mPrefixSize;
+
+    private int mDecodedFrameCount;
+    private boolean mIntermediateFailed;
+
+    /**
+     * @param imageFormat {@link DefaultImageFormats#GIF} or {@link DefaultImageFormats#WEBP_ANIMATED}
+     */
+    public ProgressiveAnimatedImageDecoder(
+            AnimatedImageFactory animatedImageFactory,
+            NativeMemoryChunkPool nativeMemoryChunkPool,
+            PooledByteStreams pooledByteStreams,
+            ImageFormat imageFormat,
+            ImageDecodeOptions options,
+            Bitmap.Config bitmapConfig) {
+        mAnimatedImageFactory = animatedImageFactory;
+        mNativeMemoryChunkPool = nativeMemoryChunkPool;
+        mPooledByteStreams = pooledByteStreams;
+        mOptions = options;
+        mBitmapConfig = bitmapConfig;
+        mScanner = new AnimatedFrameScanner(imageFormat);
+    }
+
+    /**
+     * 新的数据写入stream之后调用
+     * Called after more bytes were written to the stream.
+     *
+     * @param outputStream the stream holding all bytes received so far
+     * @return an image with more frames than the one returned before, which the caller has to
+     *    close, or null if there's nothing new to show yet
+     */
+    @Nullable
+    public CloseableImage onNewData(PooledByteBufferOutputStream outputStream) {
+        if (mIntermediateFailed) {
+            return null;
+        }
+        final PooledByteBuffer buffer = outputStream.toByteBuffer();
+        try {
+            if (!mScanner.parseMoreData(buffer) || mScanner.isEndReached()) {
+                // The whole image is decoded by onLastData.
+                return null;
+            }
+            final int frameCount = mScanner.getFrameCount();
+            if (frameCount < Math.max(1, mDecodedFrameCount * 2)) {
+                return null;
+            }
+            CloseableImage image = decode(makePrefix(buffer));
+            mDecodedFrameCount = frameCount;
+            return image;
+        } catch (IOException | RuntimeException e) {
+            // Leave it to the final decode.
+            FLog.w(TAG, e, "Intermediate decode failed");
+            mIntermediateFailed = true;
+            close();
+            return null;
+        } finally {
+            buffer.close();
+        }
+    }
+
+    /**
+     * 所有数据都写入stream之后调用，解码整个图片
+     * Called once all bytes were written to the stream. Decodes the whole image.
+     *
+     * @param outputStream the stream holding all bytes
+     * @return the image, which the caller has to close
+     */
+    public CloseableImage onLastData(PooledByteBufferOutputStream outputStream) {
+        close();
+        return decode(outputStream.toByteBuffer());
+    }
+
+    /**
+     * 释放保存已经完整的帧的内存，{@link #onLastData}会调用它，没有调用onLastData就放弃的话需要调用
+     * Releases the memory holding the complete frames. Called by {@link #onLastData}, call it when
+     * giving up before that.
+     */
+    @Override
+    public void close() {
+        CloseableReference.closeSafely(mPrefixRef);
+        mPrefixRef = null;
+        mPrefixSize = 0;
+    }
+
+    /**
+     * 上一次解码出的图片的帧数，随着数据到达而增长
+     * Number of frames of the image decoded last. Grows as bytes arrive.
+     */
+    public int getDecodedFrameCount() {
+        return mDecodedFrameCount;
+    }
+
+    /**
+     * Decodes the buffer and closes it.
+     */
+    private CloseableImage decode(PooledByteBuffer buffer) {
+        final CloseableReference<PooledByteBuffer> bufferRef = CloseableReference.of(buffer);
+        final EncodedImage encodedImage = new EncodedImage(bufferRef);
+        try {
+            return mScanner.isGif() ?
+                    mAnimatedImageFactory.decodeGif(encodedImage, mOptions, mBitmapConfig) :
+                    mAnimatedImageFactory.decodeWebP(encodedImage, mOptions, mBitmapConfig);
+        } finally {
+            EncodedImage.closeSafely(encodedImage);
+            CloseableReference.closeSafely(bufferRef);
+        }
+    }
+
+    /**
+     * 把新完整的帧拷贝到前缀中，并把它变成一个合法的图片
+     * Copies the frames completed since the previous call into the prefix and makes it a valid
+     * image.
+     *
+     * @return a buffer over the prefix, which the caller has to close
+     */
+    private PooledByteBuffer makePrefix(PooledByteBuffer buffer) throws IOException {
+        final int framesEnd = mScanner.getFramesEndOffset();
+        final int prefixSize = mScanner.isGif() ? framesEnd + 1 : framesEnd;
+        ensurePrefixCapacity(prefixSize);
+        final NativeMemoryChunk prefix = mPrefixRef.get();
+        if (framesEnd > mPrefixSize) {
+            final InputStream inputStream = new PooledByteBufferInputStream(buffer);
+            inputStream.skip(mPrefixSize);
+            mPooledByteStreams.copy(
+                    inputStream,
+                    new ChunkOutputStream(prefix, mPrefixSize),
+                    framesEnd - mPrefixSize);
+            mPrefixSize = framesEnd;
+        }
+        if (mScanner.isGif()) {
+            // Overwritten by the next frames.
+            prefix.write(framesEnd, new byte[] {AnimatedFrameScanner.GIF_TRAILER}, 0, 1);
+        } else {
+            // The size of the rest of the file after "RIFF" and the size itself.
+            final int riffSize = framesEnd - 8;
+            prefix.write(
+                    4,
+                    new byte[] {
+                            (byte) riffSize,
+                            (byte) (riffSize >> 8),
+                            (byte) (riffSize >> 16),
+                            (byte) (riffSize >> 24)},
+                    0,
+                    4);
+        }
+        return new NativePooledByteBuffer(mPrefixRef, prefixSize);
+    }
+
+    /**
+     * 前缀的内存不够的时候，换一块至少两倍大的内存
+     * Moves the prefix to a chunk at least twice as large when it doesn't fit any more.
+     */
+    private void ensurePrefixCapacity(int size) {
+        if (mPrefixRef != null && mPrefixRef.get().getSize() >= size) {
+            return;
+        }
+        final int capacity = mPrefixRef == null ?
+                size :
+                Math.max(size, mPrefixRef.get().getSize() * 2);
+        final CloseableReference<NativeMemoryChunk> newPrefixRef =
+                CloseableReference.of(mNativeMemoryChunkPool.get(capacity), mNativeMemoryChunkPool);
+        if (mPrefixRef != null) {
+            if (mPrefixSize > 0) {
+                mPrefixRef.get().copy(0, newPrefixRef.get(), 0, mPrefixSize);
+            }
+            mPrefixRef.close();
+        }
+        mPrefixRef = newPrefixRef;
+    }
+
+    /**
+     * 从指定的位置开始写入一块本地内存
+     * Writes into a chunk of native memory from the given offset on.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+
+        private final NativeMemoryChunk mChunk;
+        private int mOffset;
+
+        private ChunkOutputStream(NativeMemoryChunk chunk, int offset) {
+            mChunk = chunk;
+            mOffset = offset;
+        }
+
+        @Override
+        public void write(int oneByte) {
+            write(new byte[] {(byte) oneByte}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) {
+            mOffset += mChunk.write(mOffset, buffer, offset, count);
+        }
+    }
+}
@@ -7,6 +7,7 @@ package com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.ani
 import android.graphics.Bitmap;
 
 import com.facebook.common.s.Preconditions;
+import com.facebook.references.BorrowedReference;
 import com.facebook.references.CloseableReference;
 
 import java.util.List;
@@ -118,6 +119,16 @@ public class AnimatedImageResult {
         return CloseableReference.cloneOrNull(mPreviewBitmap);
     }
 
+    /**
+     * Like {@link #getPreviewBitmap()} but borrows the preview bitmap into a reusable holder.
+     *
+     * @param borrowed the holder to borrow into
+     * @return false if there is no preview bitmap set, the holder is left untouched then
+     */
+    public synchronized boolean borrowPreviewBitmap(BorrowedReference<Bitmap> borrowed) {
+        return mPreviewBitmap != null && mPreviewBitmap.borrowInto(borrowed);
+    }
+
     /**
      * Disposes the result, which releases the reference to any bitmaps.
      */
@@ -7,17 +7,18 @@ package com.facebook.image;
 import com.facebook.image.imageInfo.ImageInfo;
 import com.facebook.image.imageInfo.ImmutableQualityInfo;
 import com.facebook.image.imageInfo.QualityInfo;
-import com.facebook.log.FLog;
 
 import java.io.Closeable;
 
 /**
  * 一个简单的image包装类，实现了{@link Closeable}
  * A simple wrapper around an image that implements {@link Closeable}
+ * <p>
+ * 没有finalizer，资源都在CloseableReference中，泄漏的话由{@link com.facebook.references.Reaper}释放
+ * There is no finalizer. The resources are held by CloseableReferences, which the
+ * {@link com.facebook.references.Reaper} releases if an image leaks.
  */
 public abstract class CloseableImage implements Closeable, ImageInfo {
-    private static final String TAG = "CloseableImage";
-
     /**
      * @return size in bytes of the bitmap(s)
      */
@@ -57,24 +58,4 @@ public abstract class CloseableImage implements Closeable, ImageInfo {
     public boolean isStateful() {
         return false;
     }
-
-    /**
-     * Ensures that the underlying resources are always properly released.
-     */
-    @Override
-    protected void finalize() throws Throwable {
-        if (isClosed()) {
-            return;
-        }
-        FLog.w(
-                TAG,
-                "finalize: %s %x still open.",
-                this.getClass().getSimpleName(),
-                System.identityHashCode(this));
-        try {
-            close();
-        } finally {
-            super.finalize();
-        }
-    }
 }
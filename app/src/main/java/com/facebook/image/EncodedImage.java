@@ -15,8 +15,8 @@ import com.facebook.common.util.JfifUtil;
 import com.facebook.common.util.WebpUtil;
 import com.facebook.image.imageFormat.DefaultImageFormats;
 import com.facebook.image.imageFormat.ImageFormat;
-import com.facebook.image.imageFormat.ImageFormatChecker;
 import com.facebook.imagepipeline.memory.PooledByteBuffer;
+import com.facebook.pool.ByteArrayPool;
 import com.facebook.references.CloseableReference;
 import com.facebook.references.SharedReference;
 
@@ -51,6 +51,7 @@ public class EncodedImage implements Closeable {
     public static final int UNKNOWN_WIDTH = -1;
     public static final int UNKNOWN_HEIGHT = -1;
     public static final int UNKNOWN_STREAM_SIZE = -1;
+    public static final int UNKNOWN_FRAME_COUNT = ImageMetadataProber.UNKNOWN_FRAME_COUNT;
 
     public static final int DEFAULT_SAMPLE_SIZE = 1;
 
@@ -67,6 +68,8 @@ public class EncodedImage implements Closeable {
     private int mHeight = UNKNOWN_HEIGHT;
     private int mSampleSize = DEFAULT_SAMPLE_SIZE;
     private int mStreamSize = UNKNOWN_STREAM_SIZE;
+    private int mFrameCount = UNKNOWN_FRAME_COUNT;
+    private boolean mAnimated;
     private @Nullable
     CacheKey mEncodedCacheKey;
 
@@ -212,6 +215,20 @@ public class EncodedImage implements Closeable {
         this.mStreamSize = streamSize;
     }
 
+    /**
+     * Sets the number of frames
+     */
+    public void setFrameCount(int frameCount) {
+        this.mFrameCount = frameCount;
+    }
+
+    /**
+     * Sets whether the image is animated
+     */
+    public void setAnimated(boolean animated) {
+        this.mAnimated = animated;
+    }
+
     /**
      * Sets the key related to this image for encoded caches
      * @param encodedCacheKey
@@ -260,6 +277,22 @@ public class EncodedImage implements Closeable {
         return mSampleSize;
     }
 
+    /**
+     * Only valid if the image format is GIF or WebP.
+     * @return the number of frames if known, else -1. It's not known if the end of the image is
+     * not within the header {@link #parseMetaData} reads.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return true if the image is a GIF or WebP with more than one frame.
+     */
+    public boolean isAnimated() {
+        return mAnimated;
+    }
+
     /**
      * Gets the key to use when storing this image in encoded caches
      * @return the encoded cache key
@@ -305,22 +338,36 @@ public class EncodedImage implements Closeable {
     /**
      * 设置编码image的元数据
      * Sets the encoded image meta data.
+     *
+     * <p>The header is read once by {@link ImageMetadataProber}. The stream is only read again
+     * for what isn't within the header.
+     *
+     * @param byteArrayPool the pool the header is read into, may be null
      */
-    public void parseMetaData() {
-        final ImageFormat imageFormat = ImageFormatChecker.getImageFormat_WrapIOException(
-                getInputStream());
+    public void parseMetaData(@Nullable ByteArrayPool byteArrayPool) {
+        final ImageMetadataProber prober =
+                ImageMetadataProber.probe(getInputStream(), byteArrayPool);
+        final ImageFormat imageFormat = prober.getImageFormat();
         mImageFormat = imageFormat;
-        // BitmapUtil.decodeDimensions has a bug where it will return 100x100 for some WebPs even though
-        // those are not its actual dimensions
+        mFrameCount = prober.getFrameCount();
+        mAnimated = prober.isAnimated();
         final Pair<Integer, Integer> dimensions;
-        if (DefaultImageFormats.isWebpFormat(imageFormat)) {
+        if (prober.hasDimensions()) {
+            mWidth = prober.getWidth();
+            mHeight = prober.getHeight();
+            dimensions = new Pair<>(mWidth, mHeight);
+        } else if (DefaultImageFormats.isWebpFormat(imageFormat)) {
+            // BitmapUtil.decodeDimensions has a bug where it will return 100x100 for some WebPs even
+            // though those are not its actual dimensions
             dimensions = readWebPImageSize();
         } else {
             dimensions = readImageSize();
         }
         if (imageFormat == DefaultImageFormats.JPEG && mRotationAngle == UNKNOWN_ROTATION_ANGLE) {
             // Load the JPEG rotation angle only if we have the dimensions
-            if (dimensions != null) {
+            if (prober.getRotationAngle() != UNKNOWN_ROTATION_ANGLE) {
+                mRotationAngle = prober.getRotationAngle();
+            } else if (dimensions != null) {
                 mRotationAngle = JfifUtil.getAutoRotateAngleFromOrientation(
                         JfifUtil.getOrientation(getInputStream()));
             }
@@ -379,6 +426,8 @@ public class EncodedImage implements Closeable {
         mRotationAngle = encodedImage.getRotationAngle();
         mSampleSize = encodedImage.getSampleSize();
         mStreamSize = encodedImage.getSize();
+        mFrameCount = encodedImage.getFrameCount();
+        mAnimated = encodedImage.isAnimated();
         mEncodedCacheKey = encodedImage.getEncodedCacheKey();
     }
 
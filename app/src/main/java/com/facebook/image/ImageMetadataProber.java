@@ -0,0 +1,410 @@
+package com.facebook.image;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.common.s.ByteConstants;
+import com.facebook.common.s.ByteStreams;
+import com.facebook.common.s.Closeables;
+import com.facebook.common.util.JfifUtil;
+import com.facebook.image.imageFormat.DefaultImageFormats;
+import com.facebook.image.imageFormat.ImageFormat;
+import com.facebook.image.imageFormat.ImageFormatChecker;
+import com.facebook.pool.ByteArrayPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nullable;
+
+/**
+ * 只读一次图片开头的几KB，从中得到格式、宽高、旋转角度、是否是动图和帧数，不需要解码
+ * Reads the first few KB of an image once and gets its format, width, height, rotation angle,
+ * whether it's animated and its frame count from them, without decoding anything.
+ * <p>
+ * Before, the format checker, {@link com.facebook.common.util.WebpUtil},
+ * {@link JfifUtil} and a bounds-only decode each opened the image and read its header again.
+ * Whatever isn't within the first {@link #PROBE_SIZE} bytes is left unknown, for example the
+ * size of a JPEG whose EXIF thumbnail is larger than that, or the frame count of a GIF whose
+ * trailer isn't reached, and callers fall back to reading the stream for it.
+ * <p>
+ * Frame counts are counted from the GIF blocks and WebP ANMF chunks in the header. The animation
+ * flag of a WebP comes from its VP8X chunk, a GIF is animated if it has a NETSCAPE2.0 loop
+ * extension or more than one frame.
+ */
+public final class ImageMetadataProber {
+
+    public static final int UNKNOWN_FRAME_COUNT = -1;
+
+    /**
+     * 读取的文件头的长度
+     * The number of bytes read from the start of the image.
+     */
+    public static final int PROBE_SIZE = 16 * ByteConstants.KB;
+
+    private static final int PNG_IHDR_END = 24;
+
+    private static final int BMP_INFO_HEADER_OFFSET = 14;
+    private static final int BMP_CORE_HEADER_SIZE = 12;
+
+    private static final int GIF_HEADER_SIZE = 13;
+    private static final int GIF_EXTENSION = 0x21;
+    private static final int GIF_APPLICATION_EXTENSION = 0xFF;
+    private static final int GIF_IMAGE_DESCRIPTOR = 0x2C;
+    private static final int GIF_IMAGE_DESCRIPTOR_SIZE = 10;
+    private static final int GIF_TRAILER = 0x3B;
+
+    private static final int RIFF_HEADER_SIZE = 12;
+    private static final int RIFF_CHUNK_HEADER_SIZE = 8;
+    private static final int VP8X_ANIMATION_FLAG = 0x02;
+
+    private final ImageFormat mImageFormat;
+    private int mWidth = EncodedImage.UNKNOWN_WIDTH;
+    private int mHeight = EncodedImage.UNKNOWN_HEIGHT;
+    private int mRotationAngle = EncodedImage.UNKNOWN_ROTATION_ANGLE;
+    private int mFrameCount = UNKNOWN_FRAME_COUNT;
+    private boolean mAnimated;
+
+    /**
+     * 解析已经读出来的文件头
+     * Parses header bytes that were already read.
+     *
+     * @param header the first bytes of the image
+     * @param headerSize the number of valid bytes in header
+     */
+    public ImageMetadataProber(byte[] header, int headerSize) {
+        mImageFormat = ImageFormatChecker.getInstance().determineImageFormat(header, headerSize);
+        if (mImageFormat == DefaultImageFormats.JPEG) {
+            parseJpeg(header, headerSize);
+        } else if (mImageFormat == DefaultImageFormats.PNG) {
+            parsePng(header, headerSize);
+        } else if (mImageFormat == DefaultImageFormats.GIF) {
+            parseGif(header, headerSize);
+        } else if (mImageFormat == DefaultImageFormats.BMP) {
+            parseBmp(header, headerSize);
+        } else if (DefaultImageFormats.isWebpFormat(mImageFormat)) {
+            parseWebP(header, headerSize);
+        }
+        if (mImageFormat != DefaultImageFormats.JPEG && mImageFormat != ImageFormat.UNKNOWN) {
+            mRotationAngle = 0;
+        }
+    }
+
+    /**
+     * 读取并解析文件头，之后关闭stream
+     * Reads the header from the stream and parses it. The stream is closed.
+     *
+     * @param inputStream the stream of the image, may be null
+     * @param byteArrayPool the pool to borrow the header buffer from, a new array is allocated
+     *    if it's null
+     * @return the result, with everything unknown if the stream is null or can't be read
+     */
+    public static ImageMetadataProber probe(
+            @Nullable InputStream inputStream,
+            @Nullable ByteArrayPool byteArrayPool) {
+        final byte[] header = byteArrayPool != null ?
+                byteArrayPool.get(PROBE_SIZE) :
+                new byte[PROBE_SIZE];
+        try {
+            int headerSize = 0;
+            if (inputStream != null) {
+                try {
+                    headerSize = ByteStreams.read(inputStream, header, 0, PROBE_SIZE);
+                } catch (IOException ioe) {
+                    headerSize = 0;
+                } finally {
+                    Closeables.closeQuietly(inputStream);
+                }
+            }
+            // Everything is parsed in the constructor, nothing keeps the header afterwards.
+            return new ImageMetadataProber(header, headerSize);
+        } finally {
+            if (byteArrayPool != null) {
+                byteArrayPool.release(header);
+            }
+        }
+    }
+
+    /**
+     * Returns the image format, or ImageFormat.UNKNOWN.
+     */
+    public ImageFormat getImageFormat() {
+        return mImageFormat;
+    }
+
+    /**
+     * @return width if found in the header, else -1.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return height if found in the header, else -1.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Whether both width and height were found in the header.
+     */
+    public boolean hasDimensions() {
+        return mWidth > 0 && mHeight > 0;
+    }
+
+    /**
+     * @return the rotation angle, or -1 if the EXIF data of a JPEG isn't within the header.
+     */
+    public int getRotationAngle() {
+        return mRotationAngle;
+    }
+
+    /**
+     * @return the number of frames, or -1 if the end of a GIF or animated WebP isn't within the
+     *    header.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Whether the image is a GIF or WebP with more than one frame.
+     */
+    public boolean isAnimated() {
+        return mAnimated;
+    }
+
+    /**
+     * Walks the markers up to the start of the scan. The size is in the SOFn segment, the
+     * rotation in the first APP1 segment, like {@link JfifUtil#getOrientation(InputStream)} reads
+     * it. The rotation is only taken if that segment lies within the header in full.
+     */
+    private void parseJpeg(byte[] header, int headerSize) {
+        boolean orientationKnown = false;
+        int offset = 2;
+        while (offset + 4 <= headerSize) {
+            if ((header[offset] & 0xFF) != JfifUtil.MARKER_FIRST_BYTE) {
+                return;
+            }
+            final int marker = header[offset + 1] & 0xFF;
+            if (marker == JfifUtil.MARKER_FIRST_BYTE) {
+                // fill byte
+                offset++;
+                continue;
+            }
+            if (marker == JfifUtil.MARKER_SOI || marker == JfifUtil.MARKER_TEM) {
+                offset += 2;
+                continue;
+            }
+            if (marker == JfifUtil.MARKER_SOS || marker == JfifUtil.MARKER_EOI) {
+                // Metadata doesn't come after these, so there's no APP1.
+                orientationKnown = true;
+                break;
+            }
+            final int segmentEnd = offset + 2 + readBigEndianShort(header, offset + 2);
+            if (isSOFn(marker) && offset + 9 <= headerSize) {
+                mHeight = readBigEndianShort(header, offset + 5);
+                mWidth = readBigEndianShort(header, offset + 7);
+            } else if (marker == JfifUtil.MARKER_APP1 && !orientationKnown) {
+                if (segmentEnd > headerSize) {
+                    break;
+                }
+                orientationKnown = true;
+            }
+            if (orientationKnown && hasDimensions()) {
+                break;
+            }
+            offset = segmentEnd;
+        }
+        if (orientationKnown && hasDimensions()) {
+            mRotationAngle = JfifUtil.getAutoRotateAngleFromOrientation(
+                    JfifUtil.getOrientation(new ByteArrayInputStream(header, 0, headerSize)));
+        }
+        mFrameCount = 1;
+    }
+
+    private static boolean isSOFn(int marker) {
+        // There are no SOF4, SOF8, SOF12
+        return marker >= 0xC0 && marker <= 0xCF &&
+                marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private void parsePng(byte[] header, int headerSize) {
+        if (headerSize < PNG_IHDR_END) {
+            return;
+        }
+        mWidth = readBigEndianInt(header, 16);
+        mHeight = readBigEndianInt(header, 20);
+        mFrameCount = 1;
+    }
+
+    private void parseBmp(byte[] header, int headerSize) {
+        if (headerSize < BMP_INFO_HEADER_OFFSET + 4) {
+            return;
+        }
+        if (readLittleEndianInt(header, BMP_INFO_HEADER_OFFSET) == BMP_CORE_HEADER_SIZE) {
+            if (headerSize < 22) {
+                return;
+            }
+            mWidth = readLittleEndianShort(header, 18);
+            mHeight = readLittleEndianShort(header, 20);
+        } else {
+            if (headerSize < 26) {
+                return;
+            }
+            mWidth = readLittleEndianInt(header, 18);
+            // Negative for images stored top-down
+            mHeight = Math.abs(readLittleEndianInt(header, 22));
+        }
+        mFrameCount = 1;
+    }
+
+    private void parseGif(byte[] header, int headerSize) {
+        if (headerSize < GIF_HEADER_SIZE) {
+            return;
+        }
+        mWidth = readLittleEndianShort(header, 6);
+        mHeight = readLittleEndianShort(header, 8);
+        int frameCount = 0;
+        int offset = GIF_HEADER_SIZE + getGifColorTableSize(header[10]);
+        while (offset < headerSize) {
+            final int block = header[offset] & 0xFF;
+            if (block == GIF_TRAILER) {
+                mFrameCount = frameCount;
+                break;
+            } else if (block == GIF_EXTENSION) {
+                if (offset + 2 > headerSize) {
+                    break;
+                }
+                if ((header[offset + 1] & 0xFF) == GIF_APPLICATION_EXTENSION &&
+                        matches(header, headerSize, offset + 3, "NETSCAPE2.0")) {
+                    mAnimated = true;
+                }
+                offset = skipGifSubBlocks(header, headerSize, offset + 2);
+            } else if (block == GIF_IMAGE_DESCRIPTOR) {
+                if (offset + GIF_IMAGE_DESCRIPTOR_SIZE > headerSize) {
+                    break;
+                }
+                // descriptor, local color table and the LZW minimum code size
+                offset = skipGifSubBlocks(header, headerSize, offset + GIF_IMAGE_DESCRIPTOR_SIZE +
+                        getGifColorTableSize(header[offset + 9]) + 1);
+                frameCount++;
+            } else {
+                break;
+            }
+        }
+        mAnimated |= frameCount > 1;
+    }
+
+    /**
+     * @return the offset after the terminator of the sub-block chain, or headerSize if it isn't
+     *    within the header
+     */
+    private static int skipGifSubBlocks(byte[] header, int headerSize, int offset) {
+        while (offset < headerSize) {
+            final int length = header[offset] & 0xFF;
+            if (length == 0) {
+                return offset + 1;
+            }
+            offset += 1 + length;
+        }
+        return headerSize;
+    }
+
+    private static int getGifColorTableSize(byte packedFields) {
+        return (packedFields & 0x80) != 0 ? 3 << ((packedFields & 0x07) + 1) : 0;
+    }
+
+    private void parseWebP(byte[] header, int headerSize) {
+        final int chunkData = RIFF_HEADER_SIZE + RIFF_CHUNK_HEADER_SIZE;
+        if (headerSize < chunkData + 5) {
+            return;
+        }
+        final boolean headerComplete = headerSize >= chunkData + 10;
+        if (matches(header, headerSize, RIFF_HEADER_SIZE, "VP8 ") && headerComplete) {
+            // frame tag, then the start code 9D 01 2A
+            if ((header[chunkData + 3] & 0xFF) != 0x9D ||
+                    (header[chunkData + 4] & 0xFF) != 0x01 ||
+                    (header[chunkData + 5] & 0xFF) != 0x2A) {
+                return;
+            }
+            // 14 bits each, the upper 2 are the upscaling
+            mWidth = readLittleEndianShort(header, chunkData + 6) & 0x3FFF;
+            mHeight = readLittleEndianShort(header, chunkData + 8) & 0x3FFF;
+            mFrameCount = 1;
+        } else if (matches(header, headerSize, RIFF_HEADER_SIZE, "VP8L")) {
+            if ((header[chunkData] & 0xFF) != 0x2F) {
+                return;
+            }
+            // 14 bits each, minus one
+            final int bits = readLittleEndianInt(header, chunkData + 1);
+            mWidth = (bits & 0x3FFF) + 1;
+            mHeight = ((bits >> 14) & 0x3FFF) + 1;
+            mFrameCount = 1;
+        } else if (matches(header, headerSize, RIFF_HEADER_SIZE, "VP8X") && headerComplete) {
+            // flags, 3 reserved bytes, then the canvas size minus one in 3 bytes each
+            mWidth = readLittleEndianInt24(header, chunkData + 4) + 1;
+            mHeight = readLittleEndianInt24(header, chunkData + 7) + 1;
+            if ((header[chunkData] & VP8X_ANIMATION_FLAG) == 0) {
+                mFrameCount = 1;
+                return;
+            }
+            countAnimationFrames(header, headerSize);
+        }
+    }
+
+    private void countAnimationFrames(byte[] header, int headerSize) {
+        final long riffEnd = 8 + (readLittleEndianInt(header, 4) & 0xFFFFFFFFL);
+        int frameCount = 0;
+        long offset = RIFF_HEADER_SIZE;
+        while (offset + RIFF_CHUNK_HEADER_SIZE <= headerSize) {
+            if (matches(header, headerSize, (int) offset, "ANMF")) {
+                frameCount++;
+            }
+            final long chunkSize = readLittleEndianInt(header, (int) offset + 4) & 0xFFFFFFFFL;
+            // Chunks are padded to an even size.
+            offset += RIFF_CHUNK_HEADER_SIZE + chunkSize + (chunkSize & 1);
+            if (offset >= riffEnd) {
+                mFrameCount = frameCount;
+                break;
+            }
+        }
+        // The flag is set for every animation, even one with a single frame.
+        mAnimated = mFrameCount != 1;
+    }
+
+    private static boolean matches(byte[] header, int headerSize, int offset, String ascii) {
+        if (offset + ascii.length() > headerSize) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (header[offset + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readBigEndianShort(byte[] header, int offset) {
+        return (header[offset] & 0xFF) << 8 | (header[offset + 1] & 0xFF);
+    }
+
+    private static int readBigEndianInt(byte[] header, int offset) {
+        return readBigEndianShort(header, offset) << 16 | readBigEndianShort(header, offset + 2);
+    }
+
+    private static int readLittleEndianShort(byte[] header, int offset) {
+        return (header[offset] & 0xFF) | (header[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readLittleEndianInt24(byte[] header, int offset) {
+        return readLittleEndianShort(header, offset) | (header[offset + 2] & 0xFF) << 16;
+    }
+
+    private static int readLittleEndianInt(byte[] header, int offset) {
+        return readLittleEndianShort(header, offset) | readLittleEndianShort(header, offset + 2) << 16;
+    }
+}
@@ -4,6 +4,8 @@ import com.facebook.animated.gif.GifImage;
 import com.facebook.animated.webp.WebPImage;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.animatedImage.AnimatedImage;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Administrator on 2017/3/28 0028.
  */
@@ -20,4 +22,12 @@ public interface AnimatedImageDecoder {
      * @return The AnimatedImage allocation
      */
     AnimatedImage decode(long nativePtr, int sizeInBytes);
+
+    /**
+     * 从一个直接buffer中解码，例如映射到内存中的文件
+     * Factory method to create the AnimatedImage from a direct buffer, such as a mapped file
+     * @param byteBuffer the direct buffer holding the data from 0 to its capacity
+     * @return The AnimatedImage allocation
+     */
+    AnimatedImage decode(ByteBuffer byteBuffer);
 }
@@ -7,6 +7,8 @@ package com.facebook.image.imageDecode;
 import android.graphics.Bitmap;
 
 import com.facebook.common.s.Closeables;
+import com.facebook.common.stream.LimitedInputStream;
+import com.facebook.common.stream.PooledByteBufferOutputStream;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.AnimatedImageFactory;
 import com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory.AnimatedImageFactoryImpl;
 import com.facebook.image.CloseableImage;
@@ -14,12 +16,17 @@ import com.facebook.image.CloseableStaticBitmap;
 import com.facebook.image.EncodedImage;
 import com.facebook.image.imageFormat.DefaultImageFormats;
 import com.facebook.image.imageFormat.ImageFormat;
-import com.facebook.image.imageFormat.ImageFormatChecker;
 import com.facebook.image.imageInfo.ImmutableQualityInfo;
 import com.facebook.image.imageInfo.QualityInfo;
+import com.facebook.imagepipeline.memory.PooledByteBuffer;
+import com.facebook.imagepipeline.nativecode.JpegTranscoder;
+import com.facebook.log.FLog;
 import com.facebook.platformDecoder.PlatformDecoder;
+import com.facebook.pool.ByteArrayPool;
+import com.facebook.pool.poolFactory.PooledByteBufferFactory;
 import com.facebook.references.CloseableReference;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
 
@@ -44,6 +51,14 @@ import javax.annotation.Nullable;
  */
 public class DefaultImageDecoder implements ImageDecoder {
 
+    private static final Class<?> TAG = DefaultImageDecoder.class;
+
+    /**
+     * 缩小JPEG时重新编码的质量
+     * Quality of JPEGs encoded again when they are scaled down.
+     */
+    private static final int JPEG_TRANSCODE_QUALITY = 85;
+
     /**
      * 解码Gif和Webp的对象，默认的实现是{@link AnimatedImageFactoryImpl}
      */
@@ -80,6 +95,22 @@ public class DefaultImageDecoder implements ImageDecoder {
     @Nullable
     private final Map<ImageFormat, ImageDecoder> mCustomDecoders;
 
+    /**
+     * 用于储存缩小后的JPEG，为null的话JPEG只会用sample size缩小
+     * Holds JPEGs scaled down by {@link JpegTranscoder}. If null, JPEGs are only shrunk by the
+     * sample size.
+     */
+    @Nullable
+    private final PooledByteBufferFactory mPooledByteBufferFactory;
+
+    /**
+     * 读取文件头时借用的字节数组的池子，为null的话每次都新建一个数组
+     * Lends the buffer {@link EncodedImage#parseMetaData} reads the header into. If null, a new
+     * array is allocated every time.
+     */
+    @Nullable
+    private final ByteArrayPool mByteArrayPool;
+
     public DefaultImageDecoder(
             final AnimatedImageFactory animatedImageFactory,
             final PlatformDecoder platformDecoder,
@@ -92,16 +123,43 @@ public class DefaultImageDecoder implements ImageDecoder {
             final PlatformDecoder platformDecoder,
             final Bitmap.Config bitmapConfig,
             @Nullable Map<ImageFormat, ImageDecoder> customDecoders) {
+        this(animatedImageFactory, platformDecoder, bitmapConfig, customDecoders, null);
+    }
+
+    public DefaultImageDecoder(
+            final AnimatedImageFactory animatedImageFactory,
+            final PlatformDecoder platformDecoder,
+            final Bitmap.Config bitmapConfig,
+            @Nullable Map<ImageFormat, ImageDecoder> customDecoders,
+            @Nullable PooledByteBufferFactory pooledByteBufferFactory) {
+        this(
+                animatedImageFactory,
+                platformDecoder,
+                bitmapConfig,
+                customDecoders,
+                pooledByteBufferFactory,
+                null);
+    }
+
+    public DefaultImageDecoder(
+            final AnimatedImageFactory animatedImageFactory,
+            final PlatformDecoder platformDecoder,
+            final Bitmap.Config bitmapConfig,
+            @Nullable Map<ImageFormat, ImageDecoder> customDecoders,
+            @Nullable PooledByteBufferFactory pooledByteBufferFactory,
+            @Nullable ByteArrayPool byteArrayPool) {
         mAnimatedImageFactory = animatedImageFactory;
         mBitmapConfig = bitmapConfig;
         mPlatformDecoder = platformDecoder;
         mCustomDecoders = customDecoders;
+        mPooledByteBufferFactory = pooledByteBufferFactory;
+        mByteArrayPool = byteArrayPool;
     }
 
     /**
      * 一般是调用了{@link ImageDecoder#decode}之后，这个方法就被调用了。
      * 1.如果传入参数options，中有使用者定义的解码器，那么就使用用户定义的解码器，然后直接返回
-     * 2.使用ImageFormatChecker检测传入的EncodedImage的资源格式
+     * 2.如果传入的EncodedImage的格式未知，使用{@link EncodedImage#parseMetaData}读取格式和宽高
      * 3.如果本类中的{@link #mCustomDecoders}之前就被使用者设置了，那么就用其进行解码
      * 4.最后调用{@link #mDefaultDecoder}的decode()方法。
      *
@@ -123,9 +181,9 @@ public class DefaultImageDecoder implements ImageDecoder {
         }
         ImageFormat imageFormat = encodedImage.getImageFormat();
         if (imageFormat == null || imageFormat == ImageFormat.UNKNOWN) {
-            imageFormat = ImageFormatChecker.getImageFormat_WrapIOException(
-                    encodedImage.getInputStream());
-            encodedImage.setImageFormat(imageFormat);
+            // Reads the size too, so the platform decoder doesn't need to decode the bounds.
+            encodedImage.parseMetaData(mByteArrayPool);
+            imageFormat = encodedImage.getImageFormat();
         }
         if (mCustomDecoders != null) {
             ImageDecoder decoder = mCustomDecoders.get(imageFormat);
@@ -173,15 +231,21 @@ public class DefaultImageDecoder implements ImageDecoder {
     public CloseableStaticBitmap decodeStaticImage(
             final EncodedImage encodedImage,
             ImageDecodeOptions options) {
-        CloseableReference<Bitmap> bitmapReference =
-                mPlatformDecoder.decodeFromEncodedImage(encodedImage, options.bitmapConfig);
+        final EncodedImage resizedImage = cloneWithSampleSizeForResize(encodedImage, options);
+        final EncodedImage imageToDecode = resizedImage != null ? resizedImage : encodedImage;
         try {
-            return new CloseableStaticBitmap(
-                    bitmapReference,
-                    ImmutableQualityInfo.FULL_QUALITY,
-                    encodedImage.getRotationAngle());
+            CloseableReference<Bitmap> bitmapReference =
+                    mPlatformDecoder.decodeFromEncodedImage(imageToDecode, options.bitmapConfig);
+            try {
+                return new CloseableStaticBitmap(
+                        bitmapReference,
+                        ImmutableQualityInfo.FULL_QUALITY,
+                        imageToDecode.getRotationAngle());
+            } finally {
+                bitmapReference.close();
+            }
         } finally {
-            bitmapReference.close();
+            EncodedImage.closeSafely(resizedImage);
         }
     }
 
@@ -199,15 +263,37 @@ public class DefaultImageDecoder implements ImageDecoder {
             int length,
             QualityInfo qualityInfo,
             ImageDecodeOptions options) {
-        CloseableReference<Bitmap> bitmapReference =
-                mPlatformDecoder.decodeJPEGFromEncodedImage(encodedImage, options.bitmapConfig, length);
+        final EncodedImage resizedImage = cloneWithSampleSizeForResize(encodedImage, options);
+        final EncodedImage imageToDecode = resizedImage != null ? resizedImage : encodedImage;
         try {
-            return new CloseableStaticBitmap(
-                    bitmapReference,
-                    qualityInfo,
-                    encodedImage.getRotationAngle());
+            final CloseableReference<Bitmap> bitmapReference;
+            final EncodedImage transcodedImage =
+                    transcodeJpegIfCheaper(imageToDecode, length, options);
+            if (transcodedImage != null) {
+                try {
+                    bitmapReference = mPlatformDecoder.decodeJPEGFromEncodedImage(
+                            transcodedImage,
+                            options.bitmapConfig,
+                            transcodedImage.getSize());
+                } finally {
+                    transcodedImage.close();
+                }
+            } else {
+                bitmapReference = mPlatformDecoder.decodeJPEGFromEncodedImage(
+                        imageToDecode,
+                        options.bitmapConfig,
+                        length);
+            }
+            try {
+                return new CloseableStaticBitmap(
+                        bitmapReference,
+                        qualityInfo,
+                        imageToDecode.getRotationAngle());
+            } finally {
+                bitmapReference.close();
+            }
         } finally {
-            bitmapReference.close();
+            EncodedImage.closeSafely(resizedImage);
         }
     }
 
@@ -226,4 +312,91 @@ public class DefaultImageDecoder implements ImageDecoder {
             final ImageDecodeOptions options) {
         return mAnimatedImageFactory.decodeWebP(encodedImage, options, mBitmapConfig);
     }
+
+    /**
+     * 如果设置了{@link ImageDecodeOptions#resizeOptions}，克隆一份设置了sample size的image，
+     * 传入的image不会被修改
+     * Clones the image with the sample size to decode with if
+     * {@link ImageDecodeOptions#resizeOptions} are set. The size of the clone is parsed first if
+     * it isn't known yet. The image passed in is left as it is, since the caller may still cache
+     * or decode it at another size.
+     *
+     * @return the clone, which the caller has to close, or null to decode the image as it is
+     */
+    @Nullable
+    private EncodedImage cloneWithSampleSizeForResize(
+            EncodedImage encodedImage,
+            ImageDecodeOptions options) {
+        if (options.resizeOptions == null) {
+            return null;
+        }
+        final EncodedImage resizedImage = encodedImage.cloneOrNull();
+        if (resizedImage == null) {
+            return null;
+        }
+        if (resizedImage.getWidth() <= 0 || resizedImage.getHeight() <= 0) {
+            resizedImage.parseMetaData(mByteArrayPool);
+        }
+        resizedImage.setSampleSize(
+                DownsampleUtil.determineSampleSize(options.resizeOptions, resizedImage));
+        return resizedImage;
+    }
+
+    /**
+     * 只有{@link JpegTranscoder}缩小后的图片比用sample size解码出的小得多时，才转码一个完整的JPEG
+     * Scales a complete JPEG down with {@link JpegTranscoder} only if that's cheaper than
+     * decoding it with the sample size, see {@link DownsampleUtil#shouldTranscode}. The sample
+     * size only halves, so a JPEG that has to cover 9/16 of its size would otherwise be decoded
+     * at full size, but transcoding is lossy and costs a decode and an encode of its own.
+     *
+     * @return the scaled JPEG, which the caller has to close, or null to decode the original
+     */
+    @Nullable
+    private EncodedImage transcodeJpegIfCheaper(
+            EncodedImage encodedImage,
+            int length,
+            ImageDecodeOptions options) {
+        if (options.resizeOptions == null || mPooledByteBufferFactory == null) {
+            return null;
+        }
+        final int scaleNumerator =
+                DownsampleUtil.determineScaleNumerator(options.resizeOptions, encodedImage);
+        if (!DownsampleUtil.shouldTranscode(scaleNumerator, encodedImage.getSampleSize()) ||
+                !encodedImage.isCompleteAt(length)) {
+            return null;
+        }
+        InputStream inputStream = encodedImage.getInputStream();
+        if (inputStream == null) {
+            return null;
+        }
+        if (encodedImage.getSize() > length) {
+            inputStream = new LimitedInputStream(inputStream, length);
+        }
+        final PooledByteBufferOutputStream outputStream =
+                mPooledByteBufferFactory.newOutputStream();
+        CloseableReference<PooledByteBuffer> bytesRef = null;
+        try {
+            JpegTranscoder.transcodeJpeg(
+                    inputStream,
+                    outputStream,
+                    0,
+                    scaleNumerator,
+                    JPEG_TRANSCODE_QUALITY);
+            bytesRef = CloseableReference.of(outputStream.toByteBuffer());
+            final EncodedImage transcodedImage = new EncodedImage(bytesRef);
+            transcodedImage.copyMetaDataFrom(encodedImage);
+            transcodedImage.setWidth(DownsampleUtil.scale(encodedImage.getWidth(), scaleNumerator));
+            transcodedImage.setHeight(
+                    DownsampleUtil.scale(encodedImage.getHeight(), scaleNumerator));
+            transcodedImage.setSampleSize(EncodedImage.DEFAULT_SAMPLE_SIZE);
+            return transcodedImage;
+        } catch (IOException ioe) {
+            FLog.w(TAG, ioe, "Could not scale the JPEG down, decoding it with a sample size");
+            return null;
+        } finally {
+            CloseableReference.closeSafely(bytesRef);
+            Closeables.closeQuietly(inputStream);
+            outputStream.close();
+        }
+    }
 }
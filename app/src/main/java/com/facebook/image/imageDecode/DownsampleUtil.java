@@ -0,0 +1,128 @@
+package com.facebook.image.imageDecode;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.image.EncodedImage;
+import com.facebook.imagepipeline.nativecode.JpegTranscoder;
+
+/**
+ * 根据{@link ResizeOptions}决定解码时缩小多少
+ * Decides how much to shrink an image while decoding it, given {@link ResizeOptions}.
+ * <p>
+ * The image has to keep covering the target after it was rotated, so for 90 and 270 degrees the
+ * target width is compared with the image height and the other way round. An image whose size
+ * isn't known yet is never shrunk.
+ */
+public final class DownsampleUtil {
+
+    /**
+     * 用sample size解码出的图片至少要有转码后的几倍像素，才值得转码
+     * How many times the pixels of the transcoded image the bitmap decoded with the sample size
+     * needs to have for transcoding to be worth it.
+     */
+    private static final int MIN_TRANSCODE_PIXEL_RATIO = 2;
+
+    private DownsampleUtil() {
+    }
+
+    /**
+     * 得到最大的2的幂的inSampleSize，使解码后的图片仍然覆盖目标大小
+     * Gets the largest power of two {@code inSampleSize} with which the decoded image still covers
+     * the target.
+     *
+     * @param resizeOptions the target size
+     * @param encodedImage the image, with its width and height parsed
+     * @return the sample size, {@link EncodedImage#DEFAULT_SAMPLE_SIZE} if it can't be shrunk
+     */
+    public static int determineSampleSize(ResizeOptions resizeOptions, EncodedImage encodedImage) {
+        final int width = getWidthAfterRotation(encodedImage);
+        final int height = getHeightAfterRotation(encodedImage);
+        int sampleSize = EncodedImage.DEFAULT_SAMPLE_SIZE;
+        if (width <= 0 || height <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= resizeOptions.width &&
+                height / (sampleSize * 2) >= resizeOptions.height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 得到{@link JpegTranscoder}能用的最小的缩放分子，使缩放后的图片仍然覆盖目标大小
+     * Gets the smallest scale numerator {@link JpegTranscoder} takes with which the scaled image
+     * still covers the target.
+     *
+     * @param resizeOptions the target size
+     * @param encodedImage the image, with its width and height parsed
+     * @return the numerator over {@link JpegTranscoder#SCALE_DENOMINATOR}, which is the
+     *    denominator itself if it can't be scaled down
+     */
+    public static int determineScaleNumerator(
+            ResizeOptions resizeOptions,
+            EncodedImage encodedImage) {
+        final int width = getWidthAfterRotation(encodedImage);
+        final int height = getHeightAfterRotation(encodedImage);
+        if (width <= 0 || height <= 0) {
+            return JpegTranscoder.SCALE_DENOMINATOR;
+        }
+        for (int numerator = JpegTranscoder.MIN_SCALE_NUMERATOR;
+             numerator < JpegTranscoder.SCALE_DENOMINATOR;
+             numerator++) {
+            if (scale(width, numerator) >= resizeOptions.width &&
+                    scale(height, numerator) >= resizeOptions.height) {
+                return numerator;
+            }
+        }
+        return JpegTranscoder.SCALE_DENOMINATOR;
+    }
+
+    /**
+     * 转码成缩放分子对应的大小是否比用sample size解码出的图片小
+     * Whether transcoding with the scale numerator gives a smaller image than decoding with the
+     * sample size does.
+     */
+    public static boolean isTranscodingSmaller(int scaleNumerator, int sampleSize) {
+        return scaleNumerator * sampleSize < JpegTranscoder.SCALE_DENOMINATOR;
+    }
+
+    /**
+     * 是否值得转码，而不是只在解码时用sample size
+     * Whether transcoding is worth it over only decoding with the sample size.
+     * <p>
+     * The sample size is applied by the decoder itself, while transcoding decodes the whole JPEG
+     * and encodes it again with loss. That only pays off when the bitmap the sample size gives
+     * has at least {@link #MIN_TRANSCODE_PIXEL_RATIO} times the pixels of the transcoded one.
+     */
+    public static boolean shouldTranscode(int scaleNumerator, int sampleSize) {
+        if (!isTranscodingSmaller(scaleNumerator, sampleSize)) {
+            return false;
+        }
+        final int scaledSide = scaleNumerator * sampleSize;
+        return MIN_TRANSCODE_PIXEL_RATIO * scaledSide * scaledSide <=
+                JpegTranscoder.SCALE_DENOMINATOR * JpegTranscoder.SCALE_DENOMINATOR;
+    }
+
+    /**
+     * The size of a side after scaling it by scaleNumerator / 8, rounded up like libjpeg does.
+     */
+    public static int scale(int size, int scaleNumerator) {
+        return (size * scaleNumerator + JpegTranscoder.SCALE_DENOMINATOR - 1) /
+                JpegTranscoder.SCALE_DENOMINATOR;
+    }
+
+    private static int getWidthAfterRotation(EncodedImage encodedImage) {
+        return isRotatedSideways(encodedImage) ? encodedImage.getHeight() : encodedImage.getWidth();
+    }
+
+    private static int getHeightAfterRotation(EncodedImage encodedImage) {
+        return isRotatedSideways(encodedImage) ? encodedImage.getWidth() : encodedImage.getHeight();
+    }
+
+    private static boolean isRotatedSideways(EncodedImage encodedImage) {
+        final int rotationAngle = encodedImage.getRotationAngle();
+        return rotationAngle == 90 || rotationAngle == 270;
+    }
+}
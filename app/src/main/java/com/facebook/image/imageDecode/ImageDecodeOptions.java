@@ -61,6 +61,14 @@ public class ImageDecodeOptions {
      */
     public final Bitmap.Config bitmapConfig;
 
+    /**
+     * 静态image解码后需要覆盖的大小，null的话按原大小解码
+     * Static images are decoded only as large as needed to cover this size. Null to decode them at
+     * full size.
+     */
+    public final @Nullable
+    ResizeOptions resizeOptions;
+
     /**
      * 自定义的解码器
      * Custom image decoder override.
@@ -75,6 +83,7 @@ public class ImageDecodeOptions {
         this.decodeAllFrames = b.getDecodeAllFrames();
         this.forceStaticImage = b.getForceStaticImage();
         this.bitmapConfig = b.getBitmapConfig();
+        this.resizeOptions = b.getResizeOptions();
         this.customImageDecoder = b.getCustomImageDecoder();
     }
 
@@ -109,6 +118,8 @@ public class ImageDecodeOptions {
         if (decodeAllFrames != that.decodeAllFrames) return false;
         if (forceStaticImage != that.forceStaticImage) return false;
         if (bitmapConfig != that.bitmapConfig) return false;
+        if (resizeOptions != null ? !resizeOptions.equals(that.resizeOptions) :
+                that.resizeOptions != null) return false;
         if (customImageDecoder != that.customImageDecoder) return false;
         return true;
     }
@@ -121,6 +132,7 @@ public class ImageDecodeOptions {
         result = 31 * result + (decodeAllFrames ? 1 : 0);
         result = 31 * result + (forceStaticImage ? 1 : 0);
         result = 31 * result + bitmapConfig.ordinal();
+        result = 31 * result + (resizeOptions != null ? resizeOptions.hashCode() : 0);
         result = 31 * result + (customImageDecoder != null ? customImageDecoder.hashCode() : 0);
         return result;
     }
@@ -129,13 +141,14 @@ public class ImageDecodeOptions {
     public String toString() {
         return String.format(
                 (Locale) null,
-                "%d-%b-%b-%b-%b-%s-%s",
+                "%d-%b-%b-%b-%b-%s-%s-%s",
                 minDecodeIntervalMs,
                 decodePreviewFrame,
                 useLastFrameForPreview,
                 decodeAllFrames,
                 forceStaticImage,
                 bitmapConfig.name(),
+                resizeOptions,
                 customImageDecoder);
     }
 }
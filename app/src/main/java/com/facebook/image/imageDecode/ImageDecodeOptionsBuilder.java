@@ -21,6 +21,8 @@ public class ImageDecodeOptionsBuilder {
     private boolean mForceStaticImage;
     private Bitmap.Config mBitmapConfig = Bitmap.Config.ARGB_8888;
     private @Nullable
+    ResizeOptions mResizeOptions;
+    private @Nullable
     ImageDecoder mCustomImageDecoder;
 
     public ImageDecodeOptionsBuilder() {
@@ -38,6 +40,7 @@ public class ImageDecodeOptionsBuilder {
         mDecodeAllFrames = options.decodeAllFrames;
         mForceStaticImage = options.forceStaticImage;
         mBitmapConfig = options.bitmapConfig;
+        mResizeOptions = options.resizeOptions;
         return this;
     }
 
@@ -189,6 +192,27 @@ public class ImageDecodeOptionsBuilder {
         mBitmapConfig = bitmapConfig;
     }
 
+    /**
+     * Sets the size static images need to cover, so they can be decoded smaller than their full size.
+     *
+     * @param resizeOptions the target size, or null to decode at full size
+     * @return this builder
+     */
+    public ImageDecodeOptionsBuilder setResizeOptions(@Nullable ResizeOptions resizeOptions) {
+        mResizeOptions = resizeOptions;
+        return this;
+    }
+
+    /**
+     * Gets the size static images need to cover.
+     *
+     * @return the target size, or null to decode at full size
+     */
+    @Nullable
+    public ResizeOptions getResizeOptions() {
+        return mResizeOptions;
+    }
+
     /**
      * Builds the immutable {@link ImageDecodeOptions} instance.
      *
@@ -0,0 +1,54 @@
+package com.facebook.image.imageDecode;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.common.s.Preconditions;
+
+import java.util.Locale;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * 解码出的图片需要覆盖的大小，一般是显示它的view的大小
+ * The size a decoded image needs to cover, usually the size of the view that shows it.
+ * <p>
+ * Static images are decoded as small as possible while still covering both the width and the
+ * height, see {@link DownsampleUtil}. Animated images are decoded at full size.
+ */
+@Immutable
+public class ResizeOptions {
+
+    /* target width (in pixels) */
+    public final int width;
+
+    /* target height (in pixels) */
+    public final int height;
+
+    public ResizeOptions(int width, int height) {
+        Preconditions.checkArgument(width > 0);
+        Preconditions.checkArgument(height > 0);
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ResizeOptions that = (ResizeOptions) o;
+        return width == that.width && height == that.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
+
+    @Override
+    public String toString() {
+        return String.format((Locale) null, "%dx%d", width, height);
+    }
+}
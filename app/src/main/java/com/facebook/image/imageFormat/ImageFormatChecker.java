@@ -45,7 +45,19 @@ public class ImageFormatChecker {
         Preconditions.checkNotNull(is);
         final byte[] imageHeaderBytes = new byte[mMaxHeaderLength];
         final int headerSize = readHeaderFromStream(mMaxHeaderLength, is, imageHeaderBytes);
+        return determineImageFormat(imageHeaderBytes, headerSize);
+    }
 
+    /**
+     * 用已经读出来的文件头检测格式，文件头比{@link #getMaxHeaderLength()}短的话可能检测不出来
+     * Determines the format from header bytes that were already read. The format may not be
+     * recognized if fewer than {@link #getMaxHeaderLength()} bytes are given.
+     * @param imageHeaderBytes the first bytes of the image
+     * @param headerSize the number of valid bytes in imageHeaderBytes
+     * @return ImageFormat matching the header or UNKNOWN if no type is suitable
+     */
+    public ImageFormat determineImageFormat(final byte[] imageHeaderBytes, final int headerSize) {
+        Preconditions.checkNotNull(imageHeaderBytes);
         if (mCustomImageFormatCheckers != null) {
             for (ImageFormat.FormatChecker formatChecker : mCustomImageFormatCheckers) {
                 ImageFormat format = formatChecker.determineFormat(imageHeaderBytes, headerSize);
@@ -61,6 +73,13 @@ public class ImageFormatChecker {
         return format;
     }
 
+    /**
+     * Returns the number of header bytes needed to recognize every format
+     */
+    public int getMaxHeaderLength() {
+        return mMaxHeaderLength;
+    }
+
     private void updateMaxHeaderLength() {
         mMaxHeaderLength = mDefaultFormatChecker.getHeaderSize();
         if (mCustomImageFormatCheckers != null) {
@@ -0,0 +1,78 @@
+package com.facebook.imagepipeline.memory;
+
+/**
+ * Created by heshixiyang on 2017/3/30.
+ */
+
+import android.os.Build;
+
+import com.facebook.log.FLog;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+/**
+ * 不拷贝地把一块本地内存包装成直接{@link ByteBuffer}
+ * Wraps native memory into a direct {@link ByteBuffer} without copying.
+ * <p>
+ * There's no public API for this outside of JNI, and the native libraries we ship don't export
+ * NewDirectByteBuffer. So this uses the constructor JNI itself uses, {@code
+ * DirectByteBuffer(long address, int capacity)}, which exists since Android N. Android P puts it
+ * on the list of hidden APIs apps must not reach by reflection, so it's only looked up below P.
+ * Where it isn't used {@link #wrap} returns null and callers fall back to copying.
+ */
+final class DirectByteBuffers {
+
+    private static final Class<?> TAG = DirectByteBuffers.class;
+
+    //Android P的版本号，编译用的SDK里还没有Build.VERSION_CODES.P
+    // Android P, not in Build.VERSION_CODES of the SDK we compile against yet.
+    private static final int ANDROID_P = 28;
+
+    @Nullable private static final Constructor<?> sDirectByteBufferConstructor =
+            getDirectByteBufferConstructor();
+
+    private DirectByteBuffers() {
+    }
+
+    /**
+     * 包装一块本地内存，返回的buffer只在这块内存没有释放的时候可用
+     * Wraps native memory. The buffer may only be read while the memory isn't freed.
+     *
+     * @param address the address of the memory
+     * @param capacity the size of the memory in bytes
+     * @return a read-only direct buffer over the memory, or null if not supported
+     */
+    @Nullable
+    static ByteBuffer wrap(long address, int capacity) {
+        if (sDirectByteBufferConstructor == null) {
+            return null;
+        }
+        try {
+            return ((ByteBuffer) sDirectByteBufferConstructor.newInstance(address, capacity))
+                    .asReadOnlyBuffer();
+        } catch (Exception e) {
+            FLog.w(TAG, e, "Could not wrap native memory");
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Constructor<?> getDirectByteBufferConstructor() {
+        if (Build.VERSION.SDK_INT >= ANDROID_P) {
+            // Hidden API, blocked for apps from P on.
+            return null;
+        }
+        try {
+            Constructor<?> constructor = Class.forName("java.nio.DirectByteBuffer")
+                    .getDeclaredConstructor(long.class, int.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (Exception e) {
+            FLog.i(TAG, "Direct byte buffer views not supported, reads will copy");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.facebook.imagepipeline.memory;
+
+/**
+ * Created by heshixiyang on 2017/3/30.
+ */
+
+import com.facebook.common.s.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 实现了{@link PooledByteBuffer}，数据是一个映射到内存中的文件
+ * An implementation of {@link PooledByteBuffer} over a file mapped into memory.
+ * <p>
+ * The file is paged in lazily as it's read and never copied onto the java heap or into a
+ * {@link NativeMemoryChunk}, which matters for large local GIF and WebP files. Nothing is pooled:
+ * closing drops the mapping, which is unmapped once it's garbage collected, as the platform
+ * offers no way to unmap it explicitly.
+ * <p>
+ * The mapped memory has no address that can be read without copying, so
+ * {@link #hasNativePtr()} is false. Native decoders read {@link #getByteBuffer()} instead.
+ */
+@ThreadSafe
+public class MappedPooledByteBuffer implements PooledByteBuffer {
+
+    private final int mSize;
+
+    @GuardedBy("this")
+    @Nullable private MappedByteBuffer mBuffer;
+
+    /**
+     * @param buffer the mapped file, read from 0 to its limit
+     */
+    public MappedPooledByteBuffer(MappedByteBuffer buffer) {
+        mBuffer = Preconditions.checkNotNull(buffer);
+        mSize = buffer.limit();
+    }
+
+    @Override
+    public synchronized int size() {
+        ensureValid();
+        return mSize;
+    }
+
+    @Override
+    public synchronized byte read(int offset) {
+        ensureValid();
+        Preconditions.checkArgument(offset >= 0);
+        Preconditions.checkArgument(offset < mSize);
+        return mBuffer.get(offset);
+    }
+
+    @Override
+    public synchronized void read(int offset, byte[] buffer, int bufferOffset, int length) {
+        ensureValid();
+        Preconditions.checkArgument(offset >= 0 && length >= 0);
+        Preconditions.checkArgument(offset + length <= mSize);
+        ByteBuffer source = mBuffer.duplicate();
+        source.position(offset);
+        source.get(buffer, bufferOffset, length);
+    }
+
+    /**
+     * @return false, read {@link #getByteBuffer()} instead
+     */
+    @Override
+    public boolean hasNativePtr() {
+        return false;
+    }
+
+    /**
+     * @return 0, mapped files have no native pointer
+     */
+    @Override
+    public long getNativePtr() {
+        return 0;
+    }
+
+    @Override
+    public synchronized ByteBuffer getByteBuffer() {
+        ensureValid();
+        return mBuffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized boolean isClosed() {
+        return mBuffer == null;
+    }
+
+    /**
+     * Drops the mapping. It's unmapped once garbage collected.
+     * Note: It is not an error to close an already closed bytebuffer
+     */
+    @Override
+    public synchronized void close() {
+        mBuffer = null;
+    }
+
+    /**
+     * Validates that the bytebuffer instance is valid (aka not closed)
+     * @throws ClosedException
+     */
+    private synchronized void ensureValid() {
+        if (isClosed()) {
+            throw new ClosedException();
+        }
+    }
+}
@@ -10,8 +10,12 @@ import android.util.Log;
 import com.facebook.common.DoNotStrip;
 import com.facebook.common.nativeLoader.ImagePipelineNativeLoader;
 import com.facebook.common.s.Preconditions;
+import com.facebook.references.Reaper;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
 
 /**
  * 包装一个本地的内存块
@@ -47,11 +51,23 @@ public class NativeMemoryChunk implements Closeable {
      */
     private boolean mClosed;
 
+    /**
+     * Frees the memory, either on close or on the {@link Reaper} if this chunk leaked
+     */
+    private final @Nullable Reaper.Cleanable mCleanable;
+
+    /**
+     * Lazily created view of the whole chunk, kept because chunks are pooled and reused
+     * @GuardedBy("this")
+     */
+    private @Nullable ByteBuffer mByteBuffer;
+
     public NativeMemoryChunk(final int size) {
         Preconditions.checkArgument(size > 0);
         mSize = size;
         mNativePtr = nativeAllocate(mSize);
         mClosed = false;
+        mCleanable = Reaper.register(this, new NativeFree(mNativePtr));
     }
 
     @VisibleForTesting
@@ -59,6 +75,7 @@ public class NativeMemoryChunk implements Closeable {
         mSize = 0;
         mNativePtr = 0;
         mClosed = true;
+        mCleanable = null;
     }
 
     /**
@@ -67,7 +84,8 @@ public class NativeMemoryChunk implements Closeable {
     public synchronized void close() {
         if (!mClosed) {
             mClosed = true;
-            nativeFree(mNativePtr);
+            mByteBuffer = null;
+            mCleanable.clean();
         }
     }
 
@@ -202,6 +220,27 @@ public class NativeMemoryChunk implements Closeable {
         return mNativePtr;
     }
 
+    /**
+     * 返回一个不拷贝的只读视图，只在这个chunk没有关闭的时候可以读
+     * Gets a read-only view of the whole chunk that reads the native memory without copying.
+     * The view may only be read while this chunk isn't closed, so keep the reference to the chunk
+     * open while reading and don't hold on to the view.
+     *
+     * @return a new direct buffer positioned at 0, or null if views aren't supported on this
+     *     platform, read with {@link #read(int, byte[], int, int)} then
+     */
+    public synchronized @Nullable ByteBuffer getByteBuffer() {
+        Preconditions.checkState(!isClosed());
+        if (mByteBuffer == null) {
+            mByteBuffer = DirectByteBuffers.wrap(mNativePtr, mSize);
+            if (mByteBuffer == null) {
+                return null;
+            }
+        }
+        // Each caller gets its own position and limit.
+        return mByteBuffer.duplicate();
+    }
+
     /**
      * This does actual copy. It should be called only when we hold locks on both this and
      * other objects
@@ -218,26 +257,26 @@ public class NativeMemoryChunk implements Closeable {
     }
 
     /**
-     * A finalizer, just in case. Just delegates to {@link #close()}
-     * @throws Throwable
+     * Frees the native memory of a chunk. Doesn't reference the chunk so it can be run by the
+     * {@link Reaper} after the chunk was collected
      */
-    @Override
-    protected void finalize() throws Throwable {
-        if (isClosed()) {
-            return;
+    private static class NativeFree implements Reaper.Cleanup {
+
+        private final long mNativePtr;
+
+        private NativeFree(long nativePtr) {
+            mNativePtr = nativePtr;
         }
 
-        Log.w(
-                TAG,
-                "finalize: Chunk " +
-                        Integer.toHexString(System.identityHashCode(this)) +
-                        " still active. Underlying address = " +
-                        Long.toHexString(mNativePtr));
-        // do the actual clearing
-        try {
-            close();
-        } finally {
-            super.finalize();
+        @Override
+        public void clean(boolean leaked) {
+            if (leaked) {
+                Log.w(
+                        TAG,
+                        "GCed without closing: Chunk still active. Underlying address = " +
+                                Long.toHexString(mNativePtr));
+            }
+            nativeFree(mNativePtr);
         }
     }
 
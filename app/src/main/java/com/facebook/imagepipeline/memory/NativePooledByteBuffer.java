@@ -9,6 +9,9 @@ import android.support.annotation.VisibleForTesting;
 import com.facebook.references.CloseableReference;
 import com.facebook.common.s.Preconditions;
 
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -61,12 +64,29 @@ public class NativePooledByteBuffer implements PooledByteBuffer {
         mBufRef.get().read(offset, buffer, bufferOffset, length);
     }
 
+    @Override
+    public boolean hasNativePtr() {
+        return true;
+    }
+
     @Override
     public synchronized long getNativePtr() {
         ensureValid();
         return mBufRef.get().getNativePtr();
     }
 
+    @Override
+    public synchronized @Nullable ByteBuffer getByteBuffer() {
+        ensureValid();
+        ByteBuffer byteBuffer = mBufRef.get().getByteBuffer();
+        if (byteBuffer == null) {
+            return null;
+        }
+        // The chunk may be larger than the bytes written to it.
+        byteBuffer.limit(mSize);
+        return byteBuffer.slice();
+    }
+
     /**
      * Check if this bytebuffer is already closed
      * @return true if this bytebuffer is closed.
@@ -5,6 +5,9 @@ package com.facebook.imagepipeline.memory;
  */
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
 
 /**
  * 一个池子化的抽象字节缓冲区，代表一个不可变的字节序列，该序列被储存在java堆
@@ -41,10 +44,36 @@ public interface PooledByteBuffer extends Closeable {
     void read(int offset, byte[] buffer, int bufferOffset, int length);
 
     /**
-     * @return pointer to native memory backing this buffer
+     * 这些字节是否在一块有本地指针的内存中，映射到内存中的文件就没有
+     * Whether the bytes live in native memory with a pointer to it. The bytes of a mapped file
+     * don't, read {@link #getByteBuffer()} then.
+     * @return true if {@link #getNativePtr()} may be called
+     */
+    boolean hasNativePtr();
+
+    /**
+     * 只有{@link #hasNativePtr()}返回true的时候才能调用
+     * Only valid if {@link #hasNativePtr()} returns true.
+     * @return pointer to native memory backing this buffer, 0 if there is none
      */
     long getNativePtr();
 
+    /**
+     * 获取一个不拷贝的只读视图，只在这个buffer没有关闭的时候可以读。实现类在自己的锁里关闭，
+     * 所以视图不能比持有它的引用活得更久的读者要在这个buffer的锁里检查{@link #isClosed()}再读
+     * Gets a read-only view of the bytes that doesn't copy them, for header parsers and NIO
+     * consumers. The view may only be read while this buffer isn't closed: keep the
+     * CloseableReference owning it open while reading and don't hold on to the view.
+     * Implementations close while holding their own lock, so readers that can't keep the view
+     * from outliving the reference synchronize on this buffer and check {@link #isClosed()}
+     * around each read.
+     *
+     * @return a new buffer positioned at 0 with the size of this buffer as limit, or null if
+     *     views aren't supported, read with {@link #read(int, byte[], int, int)} then
+     */
+    @Nullable
+    ByteBuffer getByteBuffer();
+
     /**
      * 关闭这个PooledByteBuffer并且释放所有正在使用的资源
      * Close this PooledByteBuffer and release all underlying resources
@@ -170,11 +170,18 @@ public class ArtDecoder implements PlatformDecoder {
         final BitmapFactory.Options options = new BitmapFactory.Options();
         // Sample size should ONLY be different than 1 when downsampling is enabled in the pipeline
         options.inSampleSize = encodedImage.getSampleSize();
-        options.inJustDecodeBounds = true;
-        // fill outWidth and outHeight
-        BitmapFactory.decodeStream(encodedImage.getInputStream(), null, options);
-        if (options.outWidth == -1 || options.outHeight == -1) {
-            throw new IllegalArgumentException();
+        if (encodedImage.getWidth() > 0 && encodedImage.getHeight() > 0) {
+            // The size was read from the header already, so skip decoding the bounds. Rounding up
+            // never asks the pool for a bitmap too small for what the sampled decode produces.
+            options.outWidth = divideRoundingUp(encodedImage.getWidth(), options.inSampleSize);
+            options.outHeight = divideRoundingUp(encodedImage.getHeight(), options.inSampleSize);
+        } else {
+            options.inJustDecodeBounds = true;
+            // fill outWidth and outHeight
+            BitmapFactory.decodeStream(encodedImage.getInputStream(), null, options);
+            if (options.outWidth == -1 || options.outHeight == -1) {
+                throw new IllegalArgumentException();
+            }
         }
 
         options.inJustDecodeBounds = false;
@@ -184,4 +191,8 @@ public class ArtDecoder implements PlatformDecoder {
 
         return options;
     }
+
+    private static int divideRoundingUp(int size, int sampleSize) {
+        return sampleSize > 1 ? (size + sampleSize - 1) / sampleSize : size;
+    }
 }
@@ -23,7 +23,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -116,7 +119,27 @@ import javax.annotation.concurrent.NotThreadSafe;
  *   cap, in that it will not cause an exception on get; it simply controls the release path.
  *   If the BucketSizes parameter is null, then the pool will dynamically create buckets on demand.
  *   </li>
+ *   <li> {@link PoolParams#adaptiveRetuneInterval}
+ *   If set, the pool records the requested sizes and every so many gets re-derives its bucket
+ *   sizes and lengths from them, see {@link #retuneBuckets()}. The bucket sizes are then only the
+ *   initial ones, {@link #getBucketSizes()} returns the current ones. </li>
  * </ul>
+ * <p>
+ * Concurrent mode
+ * By default every get and release holds the pool monitor for the whole call. If
+ * {@link PoolParams#concurrent} is set, the pool runs in concurrent mode instead:
+ * <ul>
+ *   <li>each bucket is guarded by its own monitor, and buckets are looked up in an immutable
+ *   snapshot without locking</li>
+ *   <li>the used and free sizes are kept in a single atomic word, so a check against the soft cap
+ *   and the update it guards are one compare-and-set</li>
+ *   <li>the in-use set is striped by identity hash code</li>
+ *   <li>the pool monitor is only taken to allocate (hard cap check and trimming) and to trim</li>
+ * </ul>
+ * The free bytes are always updated together with the free list of the bucket, while holding the
+ * bucket monitor, so trimming never misses a value that is counted as free. Every update keeps
+ * the invariant of {@link #ensurePoolSizeInvariant()}. Buckets are never removed in concurrent
+ * mode; trimming to nothing empties them in place.
  */
 public abstract class BasePool<V> implements Pool<V> {
     private final Class<?> TAG = this.getClass();
@@ -169,8 +192,70 @@ public abstract class BasePool<V> implements Pool<V> {
     @GuardedBy("this")
     final Counter mFree;
 
+    /**
+     * 并发模式下正在使用的V的set被分成多少份，必须是2的幂
+     * Number of stripes of the in-use set in concurrent mode. Must be a power of two.
+     */
+    private static final int IN_USE_STRIPES = 16;
+
+    /**
+     * 是否使用并发模式
+     * Whether the pool runs in concurrent mode
+     */
+    private final boolean mConcurrent;
+
+    /**
+     * 并发模式下已使用的字节数（高32位）和空闲的字节数（低32位），放在一起可以用一次CAS同时更新
+     * Used bytes (high 32 bits) and free bytes (low 32 bits) in concurrent mode, packed so both are
+     * updated with one compare-and-set
+     */
+    private final AtomicLong mSizes;
+
+    /**
+     * 上一次检查时池是否超过了软上限
+     * Whether the pool was over the soft cap when last checked.
+     */
+    private final AtomicBoolean mSoftCapExceeded = new AtomicBoolean();
+
+    /**
+     * 并发模式下正在使用的V，按identity hash分成多个set，每个set用自己的锁
+     * The values in use in concurrent mode, striped by identity hash code. Each stripe is guarded
+     * by its own monitor. Null in the default mode.
+     */
+    private final Set<V>[] mInUseStripes;
+
+    /**
+     * 并发模式下buckets的不可变拷贝，每次添加bucket的时候重新发布，这样查找bucket不需要加锁
+     * Immutable copy of the buckets in concurrent mode, republished whenever a bucket is added so
+     * buckets can be looked up without locking
+     */
+    private volatile SparseArray<Bucket<V>> mBucketsSnapshot;
+
     private final PoolStatsTracker mPoolStatsTracker;
 
+    /**
+     * 当前的桶的大小和最大长度，自适应模式下会改变
+     * The current bucket sizes and lengths. Start as {@link PoolParams#bucketSizes} and are
+     * re-derived from the requested sizes in adaptive mode.
+     */
+    @GuardedBy("this")
+    private SparseIntArray mBucketSizes;
+
+    /**
+     * 自适应模式下记录请求的大小，否则是null
+     * Records the requested sizes in adaptive mode, null otherwise.
+     */
+    @Nullable private final BucketSizeTuner mBucketSizeTuner;
+
+    /**
+     * 自适应模式下没有桶的正在使用的V的数量，按桶的大小记录
+     * In adaptive mode, the number of values in use without a bucket, by bucketed size. Every
+     * value in use is counted exactly once, either in its bucket or here, so the counts survive
+     * a retune that drops a bucket and a later one that adds it back.
+     */
+    @GuardedBy("this")
+    private final SparseIntArray mInUseCountsWithoutBucket = new SparseIntArray();
+
     /**
      * Creates a new instance of the pool.
      * @param poolParams pool parameters
@@ -184,6 +269,15 @@ public abstract class BasePool<V> implements Pool<V> {
         mPoolParams = Preconditions.checkNotNull(poolParams);
         mPoolStatsTracker = Preconditions.checkNotNull(poolStatsTracker);
 
+        mConcurrent = mPoolParams.concurrent;
+        mSizes = new AtomicLong();
+        mInUseStripes = mConcurrent ? BasePool.<V>newInUseStripes() : null;
+
+        mBucketSizes = mPoolParams.bucketSizes;
+        mBucketSizeTuner = mPoolParams.adaptiveRetuneInterval > 0 ?
+                new BucketSizeTuner(mPoolParams.adaptiveRetuneInterval) :
+                null;
+
         // initialize the buckets
         mBuckets = new SparseArray<Bucket<V>>();
         initBuckets(new SparseIntArray(0));
@@ -217,6 +311,12 @@ public abstract class BasePool<V> implements Pool<V> {
      * @throws InvalidSizeException
      */
     public V get(int size) {
+        if (mConcurrent) {
+            return getConcurrently(size);
+        }
+        if (mBucketSizeTuner != null && mBucketSizeTuner.recordRequest(size)) {
+            retuneBuckets();
+        }
         ensurePoolSizeInvariant();
 
         int bucketedSize = getBucketedSize(size);
@@ -225,31 +325,37 @@ public abstract class BasePool<V> implements Pool<V> {
         synchronized (this) {
             Bucket<V> bucket = getBucket(bucketedSize);
 
-            if (bucket != null) {
-                //从桶中找到一个我们可以重用的V
-                // find an existing value that we can reuse
-                V value = bucket.get();
-                if (value != null) {
-                    Preconditions.checkState(mInUseValues.add(value));
-                    //如果可能我们可以获取一个比我们需求更大的V
-                    // It is possible that we got a 'larger' value than we asked for.
-                    // lets recompute size in bytes here
-                    bucketedSize = getBucketedSizeForValue(value);
-                    sizeInBytes = getSizeInBytes(bucketedSize);
-                    mUsed.increment(sizeInBytes);
-                    mFree.decrement(sizeInBytes);
-                    mPoolStatsTracker.onValueReuse(sizeInBytes);
-                    logStats();
-                    if (FLog.isLoggable(FLog.VERBOSE)) {
-                        FLog.v(
-                                TAG,
-                                "get (reuse) (object, size) = (%x, %s)",
-                                System.identityHashCode(value),
-                                bucketedSize);
-                    }
-                    return value;
+            //从桶中找到一个我们可以重用的V，如果没有就试试子类允许的更大的桶
+            // find an existing value that we can reuse, in the bucket of the size or else in the
+            // larger buckets the subclass allows
+            V value = bucket != null ? bucket.get() : null;
+            for (int largerSize = getNextLargerBucketedSize(bucketedSize, bucketedSize);
+                    value == null && largerSize > 0;
+                    largerSize = getNextLargerBucketedSize(bucketedSize, largerSize)) {
+                final Bucket<V> largerBucket = mBuckets.get(largerSize);
+                if (largerBucket != null) {
+                    value = largerBucket.get();
+                }
+            }
+            if (value != null) {
+                Preconditions.checkState(mInUseValues.add(value));
+                //如果可能我们可以获取一个比我们需求更大的V
+                // It is possible that we got a 'larger' value than we asked for.
+                // lets recompute size in bytes here
+                bucketedSize = getBucketedSizeForValue(value);
+                sizeInBytes = getSizeInBytes(bucketedSize);
+                mUsed.increment(sizeInBytes);
+                mFree.decrement(sizeInBytes);
+                mPoolStatsTracker.onValueReuse(sizeInBytes);
+                logStats();
+                if (FLog.isLoggable(FLog.VERBOSE)) {
+                    FLog.v(
+                            TAG,
+                            "get (reuse) (object, size) = (%x, %s)",
+                            System.identityHashCode(value),
+                            bucketedSize);
                 }
-                // fall through
+                return value;
             }
             //这里是桶中已经没有多余的空V了，这里在检查我们是否还能去内存中分配一个我们需要的V
             // check to see if we can allocate a value of the given size without exceeding the hard cap
@@ -266,6 +372,8 @@ public abstract class BasePool<V> implements Pool<V> {
             mUsed.increment(sizeInBytes);
             if (bucket != null) {
                 bucket.incrementInUseCount();
+            } else {
+                adjustInUseCountWithoutBucket(bucketedSize, 1);
             }
         }
 
@@ -286,6 +394,8 @@ public abstract class BasePool<V> implements Pool<V> {
                 Bucket<V> bucket = getBucket(bucketedSize);
                 if (bucket != null) {
                     bucket.decrementInUseCount();
+                } else {
+                    adjustInUseCountWithoutBucket(bucketedSize, -1);
                 }
             }
             Throwables.propagateIfPossible(e);
@@ -333,6 +443,10 @@ public abstract class BasePool<V> implements Pool<V> {
     @Override
     public void release(V value) {
         Preconditions.checkNotNull(value);
+        if (mConcurrent) {
+            releaseConcurrently(value);
+            return;
+        }
 
         final int bucketedSize = getBucketedSizeForValue(value);
         final int sizeInBytes = getSizeInBytes(bucketedSize);
@@ -364,6 +478,8 @@ public abstract class BasePool<V> implements Pool<V> {
                         !isReusable(value)) {
                     if (bucket != null) {
                         bucket.decrementInUseCount();
+                    } else {
+                        adjustInUseCountWithoutBucket(bucketedSize, -1);
                     }
 
                     if (FLog.isLoggable(FLog.VERBOSE)) {
@@ -449,11 +565,36 @@ public abstract class BasePool<V> implements Pool<V> {
     /**
      * Pool的参数集合可能会改变，子类可以覆盖这个更新状态
      * The pool parameters may have changed. Subclasses can override this to update any state they
-     * were maintaining
+     * were maintaining, such as a copy of {@link #getBucketSizes()}
      */
     protected void onParamsChanged() {
     }
 
+    /**
+     * 获取当前的桶的大小和最大长度，自适应模式下和{@link PoolParams#bucketSizes}不同
+     * Gets the current bucket sizes and lengths. These differ from {@link PoolParams#bucketSizes}
+     * once the buckets of an adaptive pool were re-derived. Must not be modified.
+     * @return the bucket sizes and lengths, or null if buckets are created on demand
+     */
+    @Nullable
+    protected synchronized SparseIntArray getBucketSizes() {
+        return mBucketSizes;
+    }
+
+    /**
+     * 如果请求的大小对应的桶中没有空闲的V，{@link #get(int)}接着会按顺序尝试这个方法返回的更大的桶，
+     * 子类可以覆盖这个方法，用更大的V来满足请求
+     * When the bucket of the requested size has no free value, {@link #get(int)} goes on with the
+     * larger buckets returned by this method, in order. Subclasses whose values can serve smaller
+     * requests can override this. The default only tries the bucket of the requested size.
+     * @param requestedBucketedSize the bucketed size of the request
+     * @param bucketedSize the bucketed size tried last
+     * @return the next larger bucketed size to try, or -1 to allocate a new value
+     */
+    protected int getNextLargerBucketedSize(int requestedBucketedSize, int bucketedSize) {
+        return -1;
+    }
+
     /**
      * 可以判断某个V是否可以重用
      * Determines if the supplied value is 'reusable'.
@@ -473,8 +614,15 @@ public abstract class BasePool<V> implements Pool<V> {
      * Ensure pool size invariants.
      * The pool must either be below the soft-cap OR it must have no free values left
      */
-    private synchronized void ensurePoolSizeInvariant() {
-        Preconditions.checkState(!isMaxSizeSoftCapExceeded() || mFree.mNumBytes == 0);
+    private void ensurePoolSizeInvariant() {
+        if (mConcurrent) {
+            final long sizes = mSizes.get();
+            Preconditions.checkState(!isMaxSizeSoftCapExceeded(sizes) || freeBytes(sizes) == 0);
+            return;
+        }
+        synchronized (this) {
+            Preconditions.checkState(!isMaxSizeSoftCapExceeded() || mFree.mNumBytes == 0);
+        }
     }
 
     /**
@@ -490,7 +638,7 @@ public abstract class BasePool<V> implements Pool<V> {
         mBuckets.clear();
 
         // create the new buckets
-        final SparseIntArray bucketSizes = mPoolParams.bucketSizes;
+        final SparseIntArray bucketSizes = mBucketSizes;
         if (bucketSizes != null) {
             for (int i = 0; i < bucketSizes.size(); ++i) {
                 final int bucketSize = bucketSizes.keyAt(i);
@@ -507,6 +655,96 @@ public abstract class BasePool<V> implements Pool<V> {
         } else {
             mAllowNewBuckets = true;
         }
+        if (mConcurrent) {
+            publishBucketsSnapshot();
+        }
+    }
+
+    /**
+     * 自适应模式下根据请求的大小重新计算桶，保留正在使用的V的计数和仍然存在的桶中的空闲V
+     * Re-derives the buckets from the requested sizes in adaptive mode. Goes through the same
+     * path as {@link #trimToNothing()}, the buckets are re-initialized with their in-use counts
+     * and {@link #onParamsChanged()} is called, but the free values of the buckets that are kept
+     * stay in the pool as long as the new max length allows. Values in use from a bucket that is
+     * dropped are freed on release, as for any value without a bucket. Their count moves to
+     * {@link #mInUseCountsWithoutBucket} and back into the bucket if a later retune adds it again,
+     * and so does the count of values allocated without a bucket.
+     */
+    @VisibleForTesting
+    void retuneBuckets() {
+        final List<V> valuesToFree = new ArrayList<>();
+        synchronized (this) {
+            final SparseIntArray bucketSizes =
+                    mBucketSizeTuner.deriveBucketSizes(this, mPoolParams, mBucketSizes);
+            if (bucketSizes == null) {
+                return;
+            }
+            if (FLog.isLoggable(FLog.VERBOSE)) {
+                FLog.v(TAG, "retuneBuckets: %s -> %s", mBucketSizes, bucketSizes);
+            }
+
+            final SparseArray<Bucket<V>> oldBuckets = mBuckets.clone();
+            final SparseIntArray inUseCounts = mInUseCountsWithoutBucket.clone();
+            for (int i = 0; i < oldBuckets.size(); ++i) {
+                final int bucketedSize = oldBuckets.keyAt(i);
+                inUseCounts.put(
+                        bucketedSize,
+                        inUseCounts.get(bucketedSize, 0) + oldBuckets.valueAt(i).getInUseCount());
+            }
+
+            mBucketSizes = bucketSizes;
+            initBuckets(inUseCounts);
+
+            // whatever has no bucket now stays counted here until it's released
+            mInUseCountsWithoutBucket.clear();
+            for (int i = 0; i < inUseCounts.size(); ++i) {
+                if (mBuckets.get(inUseCounts.keyAt(i)) == null && inUseCounts.valueAt(i) > 0) {
+                    mInUseCountsWithoutBucket.put(inUseCounts.keyAt(i), inUseCounts.valueAt(i));
+                }
+            }
+
+            // move the free values over to the buckets that are kept, free the rest
+            for (int i = 0; i < oldBuckets.size(); ++i) {
+                final Bucket<V> oldBucket = oldBuckets.valueAt(i);
+                final Bucket<V> newBucket = mBuckets.get(oldBuckets.keyAt(i));
+                while (oldBucket.getFreeListSize() > 0) {
+                    final V value = oldBucket.pop();
+                    if (newBucket != null && !newBucket.isMaxLengthExceeded() && value != null) {
+                        newBucket.addToFreeList(value);
+                        continue;
+                    }
+                    if (value != null) {
+                        valuesToFree.add(value);
+                    }
+                    mFree.decrement(oldBucket.mItemSize);
+                }
+            }
+            logStats();
+        }
+
+        onParamsChanged();
+
+        for (int i = 0; i < valuesToFree.size(); ++i) {
+            free(valuesToFree.get(i));
+        }
+    }
+
+    /**
+     * 自适应模式下调整没有桶的正在使用的V的数量
+     * Adjusts the in-use count of values without a bucket in adaptive mode. Without retunes a
+     * value that had no bucket never gets one, so nothing needs counting.
+     */
+    @GuardedBy("this")
+    private void adjustInUseCountWithoutBucket(int bucketedSize, int delta) {
+        if (mBucketSizeTuner == null) {
+            return;
+        }
+        final int inUseCount = mInUseCountsWithoutBucket.get(bucketedSize, 0) + delta;
+        if (inUseCount > 0) {
+            mInUseCountsWithoutBucket.put(bucketedSize, inUseCount);
+        } else {
+            mInUseCountsWithoutBucket.delete(bucketedSize);
+        }
     }
 
     /**
@@ -517,6 +755,10 @@ public abstract class BasePool<V> implements Pool<V> {
      */
     @VisibleForTesting
     void trimToNothing() {
+        if (mConcurrent) {
+            trimToNothingConcurrently();
+            return;
+        }
         final List<Bucket<V>> bucketsToTrim = new ArrayList<>(mBuckets.size());
         final SparseIntArray inUseCounts = new SparseIntArray();
 
@@ -587,6 +829,10 @@ public abstract class BasePool<V> implements Pool<V> {
      */
     @VisibleForTesting
     synchronized void trimToSize(int targetSize) {
+        if (mConcurrent) {
+            trimToSizeConcurrently(targetSize);
+            return;
+        }
         // find how much we need to free
         int bytesToFree = Math.min(mUsed.mNumBytes + mFree.mNumBytes - targetSize, mFree.mNumBytes);
         if (bytesToFree <= 0) {
@@ -638,20 +884,32 @@ public abstract class BasePool<V> implements Pool<V> {
      * @return the freelist for the bucket
      */
     @VisibleForTesting
-    synchronized Bucket<V> getBucket(int bucketedSize) {
-        // get an existing bucket
-        Bucket<V> bucket = mBuckets.get(bucketedSize);
-        if (bucket != null || !mAllowNewBuckets) {
-            return bucket;
+    Bucket<V> getBucket(int bucketedSize) {
+        if (mConcurrent) {
+            // lock-free lookup, only creating a bucket needs the pool monitor
+            Bucket<V> bucket = mBucketsSnapshot.get(bucketedSize);
+            if (bucket != null || !mAllowNewBuckets) {
+                return bucket;
+            }
         }
+        synchronized (this) {
+            // get an existing bucket
+            Bucket<V> bucket = mBuckets.get(bucketedSize);
+            if (bucket != null || !mAllowNewBuckets) {
+                return bucket;
+            }
 
-        // create a new bucket
-        if (FLog.isLoggable(FLog.VERBOSE)) {
-            FLog.v(TAG, "creating new bucket %s", bucketedSize);
+            // create a new bucket
+            if (FLog.isLoggable(FLog.VERBOSE)) {
+                FLog.v(TAG, "creating new bucket %s", bucketedSize);
+            }
+            Bucket<V> newBucket = newBucket(bucketedSize);
+            mBuckets.put(bucketedSize, newBucket);
+            if (mConcurrent) {
+                publishBucketsSnapshot();
+            }
+            return newBucket;
         }
-        Bucket<V> newBucket = newBucket(bucketedSize);
-        mBuckets.put(bucketedSize, newBucket);
-        return newBucket;
     }
 
     Bucket<V> newBucket(int bucketedSize) {
@@ -667,11 +925,12 @@ public abstract class BasePool<V> implements Pool<V> {
      */
     @VisibleForTesting
     synchronized boolean isMaxSizeSoftCapExceeded() {
+        if (mConcurrent) {
+            return isMaxSizeSoftCapExceeded(mSizes.get());
+        }
         final boolean isMaxSizeSoftCapExceeded =
                 (mUsed.mNumBytes + mFree.mNumBytes) > mPoolParams.maxSizeSoftCap;
-        if (isMaxSizeSoftCapExceeded) {
-            mPoolStatsTracker.onSoftCapReached();
-        }
+        onSoftCapChecked(isMaxSizeSoftCapExceeded);
         return isMaxSizeSoftCapExceeded;
     }
 
@@ -717,6 +976,17 @@ public abstract class BasePool<V> implements Pool<V> {
     @SuppressLint("InvalidAccessToGuardedField")
     private void logStats() {
         if (FLog.isLoggable(FLog.VERBOSE)) {
+            if (mConcurrent) {
+                final long sizes = mSizes.get();
+                FLog.v(
+                        TAG,
+                        "Used = (%d, %d); Free = (%d, %d)",
+                        getInUseCountConcurrently(),
+                        usedBytes(sizes),
+                        getFreeCountConcurrently(),
+                        freeBytes(sizes));
+                return;
+            }
             FLog.v(
                     TAG,
                     "Used = (%d, %d); Free = (%d, %d)",
@@ -742,14 +1012,440 @@ public abstract class BasePool<V> implements Pool<V> {
 
         stats.put(PoolStatsTracker.SOFT_CAP, mPoolParams.maxSizeSoftCap);
         stats.put(PoolStatsTracker.HARD_CAP, mPoolParams.maxSizeHardCap);
-        stats.put(PoolStatsTracker.USED_COUNT, mUsed.mCount);
-        stats.put(PoolStatsTracker.USED_BYTES, mUsed.mNumBytes);
-        stats.put(PoolStatsTracker.FREE_COUNT, mFree.mCount);
-        stats.put(PoolStatsTracker.FREE_BYTES, mFree.mNumBytes);
+        if (mConcurrent) {
+            final long sizes = mSizes.get();
+            stats.put(PoolStatsTracker.USED_COUNT, getInUseCountConcurrently());
+            stats.put(PoolStatsTracker.USED_BYTES, usedBytes(sizes));
+            stats.put(PoolStatsTracker.FREE_COUNT, getFreeCountConcurrently());
+            stats.put(PoolStatsTracker.FREE_BYTES, freeBytes(sizes));
+        } else {
+            stats.put(PoolStatsTracker.USED_COUNT, mUsed.mCount);
+            stats.put(PoolStatsTracker.USED_BYTES, mUsed.mNumBytes);
+            stats.put(PoolStatsTracker.FREE_COUNT, mFree.mCount);
+            stats.put(PoolStatsTracker.FREE_BYTES, mFree.mNumBytes);
+        }
 
         return stats;
     }
 
+    /**
+     * 并发模式下的get，重用V的时候只锁住对应的bucket
+     * Concurrent mode version of {@link #get(int)}. Reusing a value only locks its bucket, the pool
+     * monitor is only taken when a value has to be allocated.
+     */
+    private V getConcurrently(int size) {
+        ensurePoolSizeInvariant();
+
+        int bucketedSize = getBucketedSize(size);
+        final Bucket<V> bucket = getBucket(bucketedSize);
+
+        // the bucket of the size first, then the larger buckets the subclass allows
+        V reusedValue = bucket != null ? popFreeValueConcurrently(bucket) : null;
+        for (int largerSize = getNextLargerBucketedSize(bucketedSize, bucketedSize);
+                reusedValue == null && largerSize > 0;
+                largerSize = getNextLargerBucketedSize(bucketedSize, largerSize)) {
+            final Bucket<V> largerBucket = mBucketsSnapshot.get(largerSize);
+            if (largerBucket != null) {
+                reusedValue = popFreeValueConcurrently(largerBucket);
+            }
+        }
+        if (reusedValue != null) {
+            // It is possible that we got a 'larger' value than we asked for.
+            final int reusedBucketedSize = getBucketedSizeForValue(reusedValue);
+            addInUseValue(reusedValue);
+            mPoolStatsTracker.onValueReuse(getSizeInBytes(reusedBucketedSize));
+            logStats();
+            if (FLog.isLoggable(FLog.VERBOSE)) {
+                FLog.v(
+                        TAG,
+                        "get (reuse) (object, size) = (%x, %s)",
+                        System.identityHashCode(reusedValue),
+                        reusedBucketedSize);
+            }
+            return reusedValue;
+        }
+
+        final int sizeInBytes = getSizeInBytes(bucketedSize);
+        reserveConcurrently(sizeInBytes);
+        if (bucket != null) {
+            synchronized (bucket) {
+                bucket.incrementInUseCount();
+            }
+        }
+
+        V value = null;
+        try {
+            value = alloc(bucketedSize);
+        } catch (Throwable e) {
+            // undo the reservation
+            updateSizes(-sizeInBytes, 0, false);
+            if (bucket != null) {
+                synchronized (bucket) {
+                    bucket.decrementInUseCount();
+                }
+            }
+            Throwables.propagateIfPossible(e);
+        }
+
+        addInUseValue(value);
+        mPoolStatsTracker.onAlloc(sizeInBytes);
+        logStats();
+        if (FLog.isLoggable(FLog.VERBOSE)) {
+            FLog.v(
+                    TAG,
+                    "get (alloc) (object, size) = (%x, %s)",
+                    System.identityHashCode(value),
+                    bucketedSize);
+        }
+        return value;
+    }
+
+    /**
+     * 并发模式下从bucket中取出一个空闲的V，并把它的大小从空闲移到已使用
+     * Takes a free value from the bucket in concurrent mode and moves its bytes from free to used.
+     * @return the value or null if the free list of the bucket is empty
+     */
+    @Nullable
+    private V popFreeValueConcurrently(Bucket<V> bucket) {
+        synchronized (bucket) {
+            final V value = bucket.get();
+            if (value != null) {
+                final int sizeInBytes = getSizeInBytes(getBucketedSizeForValue(value));
+                updateSizes(sizeInBytes, -sizeInBytes, false);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 并发模式下的release，只锁住对应的bucket
+     * Concurrent mode version of {@link #release(Object)}. Only locks the bucket of the value.
+     */
+    private void releaseConcurrently(V value) {
+        final int bucketedSize = getBucketedSizeForValue(value);
+        final int sizeInBytes = getSizeInBytes(bucketedSize);
+        if (!removeInUseValue(value)) {
+            // This value was not 'known' to the pool (i.e.) allocated via the pool.
+            FLog.e(
+                    TAG,
+                    "release (free, value unrecognized) (object, size) = (%x, %s)",
+                    System.identityHashCode(value),
+                    bucketedSize);
+            free(value);
+            mPoolStatsTracker.onFree(sizeInBytes);
+            logStats();
+            return;
+        }
+
+        final Bucket<V> bucket = getBucket(bucketedSize);
+        if (bucket != null) {
+            boolean reused = false;
+            synchronized (bucket) {
+                // The soft cap check and the move from used to free are one atomic update, and the
+                // value is on the free list before the bucket is unlocked.
+                if (!bucket.isMaxLengthExceeded() &&
+                        isReusable(value) &&
+                        updateSizes(-sizeInBytes, sizeInBytes, true)) {
+                    bucket.release(value);
+                    reused = true;
+                } else {
+                    bucket.decrementInUseCount();
+                }
+            }
+            if (reused) {
+                mPoolStatsTracker.onValueRelease(sizeInBytes);
+                if (FLog.isLoggable(FLog.VERBOSE)) {
+                    FLog.v(
+                            TAG,
+                            "release (reuse) (object, size) = (%x, %s)",
+                            System.identityHashCode(value),
+                            bucketedSize);
+                }
+                logStats();
+                return;
+            }
+        }
+
+        if (FLog.isLoggable(FLog.VERBOSE)) {
+            FLog.v(
+                    TAG,
+                    "release (free) (object, size) = (%x, %s)",
+                    System.identityHashCode(value),
+                    bucketedSize);
+        }
+        free(value);
+        updateSizes(-sizeInBytes, 0, false);
+        mPoolStatsTracker.onFree(sizeInBytes);
+        logStats();
+    }
+
+    /**
+     * 并发模式下为即将分配的V预留空间，和{@link #canAllocate(int)}一样会先尝试裁剪，
+     * 但是检查和更新是一次原子操作
+     * Reserves the bytes of a value about to be allocated in concurrent mode. Like
+     * {@link #canAllocate(int)} it first trims the free portion of the pool if needed, but the
+     * checks are made against the exact sizes that are then updated, so a concurrent release can't
+     * refill the free lists in between.
+     * @param sizeInBytes the size (in bytes) of the value to allocate
+     * @throws PoolSizeViolationException if the value would take the pool over the hard cap
+     */
+    private synchronized void reserveConcurrently(int sizeInBytes) {
+        final int hardCap = mPoolParams.maxSizeHardCap;
+        final int softCap = mPoolParams.maxSizeSoftCap;
+        while (true) {
+            long sizes = mSizes.get();
+            if (sizeInBytes > hardCap - usedBytes(sizes)) {
+                mPoolStatsTracker.onHardCapReached();
+                throw new PoolSizeViolationException(
+                        hardCap,
+                        usedBytes(sizes),
+                        freeBytes(sizes),
+                        sizeInBytes);
+            }
+            if (sizeInBytes > softCap - (usedBytes(sizes) + freeBytes(sizes))) {
+                trimToSize(softCap - sizeInBytes);
+                sizes = mSizes.get();
+                if (sizeInBytes > softCap - (usedBytes(sizes) + freeBytes(sizes)) &&
+                        freeBytes(sizes) > 0) {
+                    // a release refilled the free lists while trimming
+                    continue;
+                }
+            }
+            if (sizeInBytes > hardCap - (usedBytes(sizes) + freeBytes(sizes))) {
+                mPoolStatsTracker.onHardCapReached();
+                throw new PoolSizeViolationException(
+                        hardCap,
+                        usedBytes(sizes),
+                        freeBytes(sizes),
+                        sizeInBytes);
+            }
+            // fails if a release moved a value to a free list since the checks, retry then
+            if (mSizes.compareAndSet(
+                    sizes,
+                    packSizes(usedBytes(sizes) + sizeInBytes, freeBytes(sizes)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 并发模式下的{@link #trimToSize(int)}，必须持有Pool的锁
+     * Concurrent mode version of {@link #trimToSize(int)}. Must be called with the pool monitor held,
+     * which serializes trims. The values are freed after their buckets are unlocked.
+     */
+    @GuardedBy("this")
+    private void trimToSizeConcurrently(int targetSize) {
+        final long sizes = mSizes.get();
+        int bytesToFree = Math.min(
+                usedBytes(sizes) + freeBytes(sizes) - targetSize,
+                freeBytes(sizes));
+        if (bytesToFree <= 0) {
+            return;
+        }
+        if (FLog.isLoggable(FLog.VERBOSE)) {
+            FLog.v(
+                    TAG,
+                    "trimToSize: TargetSize = %d; Initial Size = %d; Bytes to free = %d",
+                    targetSize,
+                    usedBytes(sizes) + freeBytes(sizes),
+                    bytesToFree);
+        }
+        logStats();
+
+        // from the smallest to the largest bucket, see trimToSize
+        final SparseArray<Bucket<V>> buckets = mBucketsSnapshot;
+        final List<V> valuesToFree = new ArrayList<>();
+        for (int i = 0; i < buckets.size() && bytesToFree > 0; ++i) {
+            bytesToFree -= popFreeValues(buckets.valueAt(i), bytesToFree, valuesToFree);
+        }
+        for (int i = 0; i < valuesToFree.size(); ++i) {
+            free(valuesToFree.get(i));
+        }
+
+        logStats();
+        if (FLog.isLoggable(FLog.VERBOSE)) {
+            final long finalSizes = mSizes.get();
+            FLog.v(
+                    TAG,
+                    "trimToSize: TargetSize = %d; Final Size = %d",
+                    targetSize,
+                    usedBytes(finalSizes) + freeBytes(finalSizes));
+        }
+    }
+
+    /**
+     * 并发模式下的{@link #trimToNothing()}，就地清空所有的bucket
+     * Concurrent mode version of {@link #trimToNothing()}. Empties the buckets in place, as a get or
+     * release may still hold on to a bucket it looked up.
+     */
+    private void trimToNothingConcurrently() {
+        final List<V> valuesToFree = new ArrayList<>();
+        synchronized (this) {
+            final SparseArray<Bucket<V>> buckets = mBucketsSnapshot;
+            for (int i = 0; i < buckets.size(); ++i) {
+                popFreeValues(buckets.valueAt(i), Integer.MAX_VALUE, valuesToFree);
+            }
+            logStats();
+        }
+
+        // the pool parameters 'may' have changed.
+        onParamsChanged();
+
+        for (int i = 0; i < valuesToFree.size(); ++i) {
+            free(valuesToFree.get(i));
+        }
+    }
+
+    /**
+     * 从bucket的空闲列表中取出V，直到取出了指定的字节数或者列表空了
+     * Pops values off the free list of the bucket until the given number of bytes is reached or the
+     * free list is empty, and removes them from the free bytes.
+     * @return the number of bytes popped
+     */
+    private int popFreeValues(Bucket<V> bucket, int maxBytes, List<V> values) {
+        int bytesPopped = 0;
+        synchronized (bucket) {
+            while (bytesPopped < maxBytes && bucket.getFreeListSize() > 0) {
+                V value = bucket.pop();
+                // a value of a soft reference bucket may have been collected, its bytes are
+                // gone all the same
+                if (value != null) {
+                    values.add(value);
+                }
+                updateSizes(0, -bucket.mItemSize, false);
+                bytesPopped += bucket.mItemSize;
+            }
+        }
+        return bytesPopped;
+    }
+
+    /**
+     * 原子地更新已使用和空闲的字节数
+     * Atomically adds the deltas to the used and free bytes.
+     * @param onlyBelowSoftCap skip the update if the pool exceeds its soft cap
+     * @return whether the sizes were updated
+     */
+    private boolean updateSizes(int usedDelta, int freeDelta, boolean onlyBelowSoftCap) {
+        while (true) {
+            final long sizes = mSizes.get();
+            final int usedBytes = usedBytes(sizes) + usedDelta;
+            final int freeBytes = freeBytes(sizes) + freeDelta;
+            if (usedBytes < 0 || freeBytes < 0) {
+                FLog.wtf(
+                        TAG,
+                        "Unexpected size update (%d, %d). Current sizes = (%d, %d)",
+                        usedDelta,
+                        freeDelta,
+                        usedBytes(sizes),
+                        freeBytes(sizes));
+                return false;
+            }
+            if (onlyBelowSoftCap && isMaxSizeSoftCapExceeded(sizes)) {
+                return false;
+            }
+            if (mSizes.compareAndSet(sizes, packSizes(usedBytes, freeBytes))) {
+                return true;
+            }
+        }
+    }
+
+    private boolean isMaxSizeSoftCapExceeded(long sizes) {
+        final boolean isMaxSizeSoftCapExceeded =
+                usedBytes(sizes) + freeBytes(sizes) > mPoolParams.maxSizeSoftCap;
+        onSoftCapChecked(isMaxSizeSoftCapExceeded);
+        return isMaxSizeSoftCapExceeded;
+    }
+
+    /**
+     * 只有当池从软上限之下变成超过软上限的时候才通知{@link #mPoolStatsTracker}，
+     * 这样不变量检查之类的重复检查不会被重复统计
+     * Tells the {@link #mPoolStatsTracker} only when the pool goes over the soft cap, so repeated
+     * checks such as the invariant checks don't count the same excess again.
+     */
+    private void onSoftCapChecked(boolean isMaxSizeSoftCapExceeded) {
+        if (mSoftCapExceeded.getAndSet(isMaxSizeSoftCapExceeded) != isMaxSizeSoftCapExceeded &&
+                isMaxSizeSoftCapExceeded) {
+            mPoolStatsTracker.onSoftCapReached();
+        }
+    }
+
+    private void addInUseValue(V value) {
+        final Set<V> stripe = getInUseStripe(value);
+        synchronized (stripe) {
+            Preconditions.checkState(stripe.add(value));
+        }
+    }
+
+    private boolean removeInUseValue(V value) {
+        final Set<V> stripe = getInUseStripe(value);
+        synchronized (stripe) {
+            return stripe.remove(value);
+        }
+    }
+
+    /**
+     * 并发模式下的计数只用于统计，所以只在需要的时候计算，而不是在每次get/release的时候更新
+     * The counts are only used for stats in concurrent mode, so they are computed on demand rather
+     * than updated on every get and release.
+     */
+    private int getInUseCountConcurrently() {
+        int count = 0;
+        for (Set<V> stripe : mInUseStripes) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    private int getFreeCountConcurrently() {
+        final SparseArray<Bucket<V>> buckets = mBucketsSnapshot;
+        int count = 0;
+        for (int i = 0; i < buckets.size(); ++i) {
+            final Bucket<V> bucket = buckets.valueAt(i);
+            synchronized (bucket) {
+                count += bucket.getFreeListSize();
+            }
+        }
+        return count;
+    }
+
+    private Set<V> getInUseStripe(V value) {
+        int hash = System.identityHashCode(value);
+        hash ^= hash >>> 16;
+        return mInUseStripes[hash & (IN_USE_STRIPES - 1)];
+    }
+
+    @GuardedBy("this")
+    private void publishBucketsSnapshot() {
+        final SparseArray<Bucket<V>> snapshot = new SparseArray<Bucket<V>>(mBuckets.size());
+        for (int i = 0; i < mBuckets.size(); ++i) {
+            snapshot.put(mBuckets.keyAt(i), mBuckets.valueAt(i));
+        }
+        mBucketsSnapshot = snapshot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Set<V>[] newInUseStripes() {
+        final Set<V>[] stripes = new Set[IN_USE_STRIPES];
+        for (int i = 0; i < IN_USE_STRIPES; ++i) {
+            stripes[i] = Sets.newIdentityHashSet();
+        }
+        return stripes;
+    }
+
+    private static long packSizes(int usedBytes, int freeBytes) {
+        return ((long) usedBytes << 32) | (freeBytes & 0xffffffffL);
+    }
+
+    private static int usedBytes(long sizes) {
+        return (int) (sizes >>> 32);
+    }
+
+    private static int freeBytes(long sizes) {
+        return (int) sizes;
+    }
+
     /**
      * A simple 'counter' that keeps track of the number of items (mCount) as well as the byte
      * mCount for the number of items
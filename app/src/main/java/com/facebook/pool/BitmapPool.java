@@ -9,6 +9,8 @@ import android.graphics.Bitmap;
 
 import com.facebook.common.s.Preconditions;
 import com.facebook.common.util.BitmapUtil;
+import com.facebook.imagepipeline.nativecode.Bitmaps;
+import com.facebook.pool.poolParams.DefaultBitmapPoolParams;
 import com.facebook.pool.poolParams.PoolParams;
 import com.facebook.pool.poolUtil.PoolStatsTracker;
 import com.facebook.trimmable.MemoryTrimmableRegistry;
@@ -31,6 +33,22 @@ import javax.annotation.concurrent.ThreadSafe;
 @TargetApi(21)
 public class BitmapPool extends BasePool<Bitmap> {
 
+    /**
+     * 按大小类分桶时，一个请求最多可以用大几个类的bitmap来满足，4个类就是最多大一倍
+     * How many classes larger a bitmap may be than the request it serves when bucketing by size
+     * classes. Four classes is at most twice the requested size.
+     */
+    private static final int MAX_LARGER_SIZE_CLASSES = 4;
+
+    /**
+     * 按大小类分桶时最小的类，更小的类的大小可能不是每像素字节数的整数倍
+     * The smallest size class when bucketing by size classes. Smaller classes may not be a
+     * multiple of the bytes per pixel.
+     */
+    private static final int MIN_SIZE_CLASS = 16;
+
+    private final boolean mUseSizeClasses;
+
     /**
      * Creates an instance of a bitmap pool.
      * @param memoryTrimmableRegistry the memory manager to register with
@@ -40,10 +58,53 @@ public class BitmapPool extends BasePool<Bitmap> {
             MemoryTrimmableRegistry memoryTrimmableRegistry,
             PoolParams poolParams,
             PoolStatsTracker poolStatsTracker) {
+        this(memoryTrimmableRegistry, poolParams, poolStatsTracker, false);
+    }
+
+    /**
+     * 创建一个bitmap pool，可以选择按大小类而不是确切的字节数来分桶
+     * Creates an instance of a bitmap pool, optionally bucketing bitmaps by size classes.
+     * <p>
+     * By default bitmaps are bucketed by their exact size in bytes, so a bitmap can only be reused
+     * for a request of the same size. With size classes, requests are rounded up to
+     * {@link SizeClasses} and bitmaps are bucketed by the largest class their allocation covers.
+     * A request is served with a free bitmap of its class or else of one of the next
+     * {@link #MAX_LARGER_SIZE_CLASSES} classes, the smallest one first, which then has to be
+     * reconfigured to the requested dimensions, see {@link #get(int, int, Bitmap.Config)}. Frames
+     * of animations whose size changes from frame to frame then mostly hit the pool.
+     * @param memoryTrimmableRegistry the memory manager to register with
+     * @param poolParams pool parameters, see {@link DefaultBitmapPoolParams#getForSizeClasses()}
+     * @param useSizeClasses whether to bucket by size classes
+     */
+    public BitmapPool(
+            MemoryTrimmableRegistry memoryTrimmableRegistry,
+            PoolParams poolParams,
+            PoolStatsTracker poolStatsTracker,
+            boolean useSizeClasses) {
         super(memoryTrimmableRegistry, poolParams, poolStatsTracker);
+        mUseSizeClasses = useSizeClasses;
         initialize();
     }
 
+    /**
+     * 获取一个可以容纳指定宽高和配置的bitmap，并重新配置成这个宽高和配置
+     * Gets a bitmap large enough for the given dimensions and config, and reconfigures it to them.
+     * @param width the width of the bitmap
+     * @param height the height of the bitmap
+     * @param bitmapConfig the config of the bitmap
+     * @return a bitmap of the given dimensions and config, from the pool if possible
+     */
+    public Bitmap get(int width, int height, Bitmap.Config bitmapConfig) {
+        final Bitmap bitmap = get(BitmapUtil.getSizeInByteForBitmap(width, height, bitmapConfig));
+        try {
+            Bitmaps.reconfigureBitmap(bitmap, width, height, bitmapConfig);
+        } catch (RuntimeException e) {
+            release(bitmap);
+            throw e;
+        }
+        return bitmap;
+    }
+
     /**
      * 分配一个bitmap，该bitmap为size大小
      * 因为配置的大小事不可知的，所以大小事实际的大小
@@ -79,6 +140,9 @@ public class BitmapPool extends BasePool<Bitmap> {
      */
     @Override
     protected int getBucketedSize(int requestSize) {
+        if (mUseSizeClasses && requestSize > 0) {
+            return SizeClasses.roundUp(Math.max(requestSize, MIN_SIZE_CLASS));
+        }
         return requestSize;
     }
 
@@ -92,7 +156,30 @@ public class BitmapPool extends BasePool<Bitmap> {
     @Override
     protected int getBucketedSizeForValue(Bitmap value) {
         Preconditions.checkNotNull(value);
-        return value.getAllocationByteCount();
+        final int allocationByteCount = value.getAllocationByteCount();
+        if (mUseSizeClasses) {
+            // the largest class the bitmap can serve every request of
+            return SizeClasses.roundDown(allocationByteCount);
+        }
+        return allocationByteCount;
+    }
+
+    /**
+     * 按大小类分桶时，依次尝试之后的几个更大的类
+     * When bucketing by size classes, tries the next few larger classes.
+     */
+    @Override
+    protected int getNextLargerBucketedSize(int requestedBucketedSize, int bucketedSize) {
+        if (!mUseSizeClasses) {
+            return -1;
+        }
+        final int requestedClass = SizeClasses.getClassIndex(requestedBucketedSize);
+        final int nextClass = SizeClasses.getClassIndex(bucketedSize) + 1;
+        if (nextClass - requestedClass > MAX_LARGER_SIZE_CLASSES ||
+                nextClass >= SizeClasses.CLASSES) {
+            return -1;
+        }
+        return SizeClasses.getClassSize(nextClass);
     }
 
     /**
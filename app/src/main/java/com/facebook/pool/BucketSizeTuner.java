@@ -0,0 +1,139 @@
+package com.facebook.pool;
+
+/**
+ * Created by heshixiyang on 2017/3/16.
+ */
+
+import android.util.SparseIntArray;
+
+import com.facebook.pool.poolParams.PoolParams;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 自适应模式下{@link BasePool}用来记录请求大小的分布，并据此重新计算桶的大小和最大长度
+ * Used by a {@link BasePool} in adaptive mode, see {@link PoolParams#adaptiveRetuneInterval}.
+ * Records the distribution of the requested sizes and derives bucket sizes and max lengths from
+ * it.
+ * <p>
+ * Requested sizes are rounded up to {@link SizeClasses}, so a request never wastes more than a
+ * quarter of its bucket. The classes that got at least
+ * {@link #MIN_SHARE_PERCENT} percent of the requests become buckets, at most
+ * {@link #MAX_BUCKETS} of them. The max length of each bucket is its share of the requests applied
+ * to the soft cap of the pool, so the free values of all buckets roughly fit in the soft cap.
+ * <p>
+ * Counts are halved on each derivation, so old traffic fades out but a short burst doesn't throw
+ * away the whole history. Recording is an atomic increment and never allocates.
+ * <p>
+ * Only makes sense for pools that round requests up to their bucket sizes and whose logical sizes
+ * are bucketed sizes, like the byte array and native memory chunk pools.
+ */
+@ThreadSafe
+class BucketSizeTuner {
+
+    private static final int MAX_BUCKETS = 16;
+    private static final int MIN_SHARE_PERCENT = 1;
+
+    private final int mRetuneInterval;
+    private final AtomicIntegerArray mRequestCounts = new AtomicIntegerArray(SizeClasses.CLASSES);
+    private final AtomicInteger mRequestsSinceRetune = new AtomicInteger();
+
+    /**
+     * @param retuneInterval number of requests between two derivations
+     */
+    BucketSizeTuner(int retuneInterval) {
+        mRetuneInterval = retuneInterval;
+    }
+
+    /**
+     * 记录一次请求
+     * Records a request.
+     *
+     * @param size the requested size
+     * @return true for exactly one of the requests each retune interval, the caller should then
+     *    derive the new bucket sizes
+     */
+    boolean recordRequest(int size) {
+        if (size <= 0) {
+            // rejected by the pool anyway
+            return false;
+        }
+        mRequestCounts.incrementAndGet(SizeClasses.getClassIndex(size));
+        int requests = mRequestsSinceRetune.incrementAndGet();
+        return requests >= mRetuneInterval && mRequestsSinceRetune.compareAndSet(requests, 0);
+    }
+
+    /**
+     * 根据记录的请求计算新的桶的大小和最大长度，并将计数减半
+     * Derives bucket sizes and max lengths from the recorded requests and halves the counts.
+     *
+     * @param pool the pool, to get the size in bytes of a bucket
+     * @param poolParams the params of the pool
+     * @param currentBucketSizes the bucket sizes the pool uses now
+     * @return the new bucket sizes and max lengths, or null to keep the current ones
+     */
+    @Nullable
+    SparseIntArray deriveBucketSizes(
+            BasePool<?> pool,
+            PoolParams poolParams,
+            SparseIntArray currentBucketSizes) {
+        final int[] counts = new int[SizeClasses.CLASSES];
+        long total = 0;
+        for (int i = 0; i < SizeClasses.CLASSES; i++) {
+            counts[i] = mRequestCounts.get(i);
+            mRequestCounts.addAndGet(i, -(counts[i] / 2));
+            total += counts[i];
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        final SparseIntArray bucketSizes = new SparseIntArray();
+        for (int n = 0; n < MAX_BUCKETS; n++) {
+            // the most requested class left
+            int classIndex = -1;
+            for (int i = 0; i < SizeClasses.CLASSES; i++) {
+                if (counts[i] > 0 && (classIndex < 0 || counts[i] > counts[classIndex])) {
+                    classIndex = i;
+                }
+            }
+            if (classIndex < 0 || counts[classIndex] * 100L < total * MIN_SHARE_PERCENT) {
+                break;
+            }
+            final int count = counts[classIndex];
+            counts[classIndex] = 0;
+
+            final int classSize = SizeClasses.getClassSize(classIndex);
+            if (classSize > poolParams.maxBucketSize) {
+                continue;
+            }
+            final int bucketSize = Math.max(classSize, poolParams.minBucketSize);
+            final long shareOfSoftCap = (long) poolParams.maxSizeSoftCap * count / total;
+            final int maxLength =
+                    (int) Math.max(1, shareOfSoftCap / pool.getSizeInBytes(bucketSize));
+            // classes below the min bucket size end up in the same bucket
+            bucketSizes.put(bucketSize, bucketSizes.get(bucketSize, 0) + maxLength);
+        }
+
+        if (bucketSizes.size() == 0 || equal(bucketSizes, currentBucketSizes)) {
+            return null;
+        }
+        return bucketSizes;
+    }
+
+    private static boolean equal(SparseIntArray a, SparseIntArray b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.keyAt(i) != b.keyAt(i) || a.valueAt(i) != b.valueAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
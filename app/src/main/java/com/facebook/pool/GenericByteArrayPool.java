@@ -27,7 +27,7 @@ import javax.annotation.concurrent.ThreadSafe;
  */
 @ThreadSafe
 public class GenericByteArrayPool extends BasePool<byte[]> implements ByteArrayPool {
-    private final int[] mBucketSizes;
+    private volatile int[] mBucketSizes;
 
     /**
      * Creates a new instance of the GenericByteArrayPool class
@@ -40,14 +40,28 @@ public class GenericByteArrayPool extends BasePool<byte[]> implements ByteArrayP
             PoolParams poolParams,
             PoolStatsTracker poolStatsTracker) {
         super(memoryTrimmableRegistry, poolParams, poolStatsTracker);
-        final SparseIntArray bucketSizes = poolParams.bucketSizes;
-        mBucketSizes = new int[bucketSizes.size()];
-        for (int i = 0; i < bucketSizes.size(); ++i) {
-            mBucketSizes[i] = bucketSizes.keyAt(i);
-        }
+        mBucketSizes = getBucketSizeKeys();
         initialize();
     }
 
+    /**
+     * 自适应模式下桶的大小可能改变了
+     * The bucket sizes may have been re-derived in adaptive mode.
+     */
+    @Override
+    protected void onParamsChanged() {
+        mBucketSizes = getBucketSizeKeys();
+    }
+
+    private int[] getBucketSizeKeys() {
+        final SparseIntArray bucketSizes = getBucketSizes();
+        final int[] keys = new int[bucketSizes.size()];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = bucketSizes.keyAt(i);
+        }
+        return keys;
+    }
+
     /**
      * Gets the smallest buffer size supported by the pool
      * @return the smallest buffer size supported by the pool
@@ -20,7 +20,7 @@ import javax.annotation.concurrent.ThreadSafe;
  */
 @ThreadSafe
 public class NativeMemoryChunkPool extends BasePool<NativeMemoryChunk> {
-    private final int[] mBucketSizes;
+    private volatile int[] mBucketSizes;
 
     /**
      * Creates a new instance of the NativeMemoryChunkPool class
@@ -33,14 +33,28 @@ public class NativeMemoryChunkPool extends BasePool<NativeMemoryChunk> {
             PoolParams poolParams,
             PoolStatsTracker nativeMemoryChunkPoolStatsTracker) {
         super(memoryTrimmableRegistry, poolParams, nativeMemoryChunkPoolStatsTracker);
-        SparseIntArray bucketSizes = poolParams.bucketSizes;
-        mBucketSizes = new int[bucketSizes.size()];
-        for (int i = 0; i < mBucketSizes.length; ++i) {
-            mBucketSizes[i] = bucketSizes.keyAt(i);
-        }
+        mBucketSizes = getBucketSizeKeys();
         initialize();
     }
 
+    /**
+     * 自适应模式下桶的大小可能改变了
+     * The bucket sizes may have been re-derived in adaptive mode.
+     */
+    @Override
+    protected void onParamsChanged() {
+        mBucketSizes = getBucketSizeKeys();
+    }
+
+    private int[] getBucketSizeKeys() {
+        final SparseIntArray bucketSizes = getBucketSizes();
+        final int[] keys = new int[bucketSizes.size()];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = bucketSizes.keyAt(i);
+        }
+        return keys;
+    }
+
     /**
      * Gets the smallest size supported by the pool
      * @return the smallest size supported by the pool
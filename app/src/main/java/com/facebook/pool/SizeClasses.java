@@ -0,0 +1,75 @@
+package com.facebook.pool;
+
+/**
+ * Created by heshixiyang on 2017/3/16.
+ */
+
+/**
+ * 把大小分成若干类，每个2的幂之间分成4类，所以向上取整最多浪费四分之一
+ * Splits sizes into classes, four per power of two, so rounding a size up to its class never
+ * wastes more than a quarter. Sizes up to {@link #MAX_EXACT_SIZE} are a class of their own.
+ * <p>
+ * Used by {@link BucketSizeTuner} to derive bucket sizes and by {@link BitmapPool} to bucket
+ * bitmaps by capacity.
+ */
+final class SizeClasses {
+
+    static final int MAX_EXACT_SIZE = 8;
+    private static final int SUB_CLASSES = 4;
+
+    /**
+     * 类的数量，覆盖所有正的int
+     * Number of classes, covering all positive ints.
+     */
+    static final int CLASSES = MAX_EXACT_SIZE + 1 + (31 - 3) * SUB_CLASSES;
+
+    private SizeClasses() {
+    }
+
+    /**
+     * 获取一个类中最大的大小
+     * Gets the largest size of a class.
+     */
+    static int getClassSize(int classIndex) {
+        if (classIndex <= MAX_EXACT_SIZE) {
+            return classIndex;
+        }
+        final int j = classIndex - MAX_EXACT_SIZE - 1;
+        final int exponent = 3 + j / SUB_CLASSES;
+        final long size = (long) (SUB_CLASSES + 1 + j % SUB_CLASSES) << (exponent - 2);
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 获取一个大小向上取整后所在的类
+     * Gets the class a positive size rounds up to.
+     */
+    static int getClassIndex(int size) {
+        if (size <= MAX_EXACT_SIZE) {
+            return size;
+        }
+        // 2^exponent < size <= 2^(exponent + 1), the classes of that range are a quarter apart
+        final int exponent = 31 - Integer.numberOfLeadingZeros(size - 1);
+        final int shift = exponent - 2;
+        final long steps = (((long) size - 1) >> shift) + 1;
+        return MAX_EXACT_SIZE + 1 + (exponent - 3) * SUB_CLASSES + (int) (steps - SUB_CLASSES - 1);
+    }
+
+    /**
+     * 向上取整到最小的不小于size的类的大小
+     * Rounds a positive size up to the smallest class size not below it.
+     */
+    static int roundUp(int size) {
+        return getClassSize(getClassIndex(size));
+    }
+
+    /**
+     * 向下取整到最大的不超过size的类的大小
+     * Rounds a positive size down to the largest class size not above it.
+     */
+    static int roundDown(int size) {
+        final int classIndex = getClassIndex(size);
+        final int classSize = getClassSize(classIndex);
+        return classSize > size ? getClassSize(classIndex - 1) : classSize;
+    }
+}
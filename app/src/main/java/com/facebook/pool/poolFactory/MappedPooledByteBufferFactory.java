@@ -0,0 +1,123 @@
+package com.facebook.pool.poolFactory;
+
+/**
+ * Created by heshixiyang on 2017/3/17.
+ */
+
+import com.facebook.common.s.Preconditions;
+import com.facebook.common.stream.PooledByteBufferOutputStream;
+import com.facebook.imagepipeline.memory.MappedPooledByteBuffer;
+import com.facebook.imagepipeline.memory.PooledByteBuffer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 把本地文件映射到内存中而不是拷贝进来的{@link PooledByteBufferFactory}，其他的请求交给另一个工厂
+ * A {@link PooledByteBufferFactory} that maps local files into memory instead of copying them,
+ * see {@link MappedPooledByteBuffer}. Everything else is handed to another factory.
+ * <p>
+ * Files are mapped when read through {@link #newByteBuffer(File)} or when the stream passed to
+ * {@link #newByteBuffer(InputStream)} is a {@link FileInputStream}, so callers that read local
+ * files don't need to change. Files smaller than the min mapped size are copied as before, as
+ * mapping them costs more than it saves.
+ */
+@ThreadSafe
+public class MappedPooledByteBufferFactory implements PooledByteBufferFactory {
+
+    private final PooledByteBufferFactory mDelegate;
+    private final int mMinMappedSize;
+
+    /**
+     * @param delegate the factory for everything that isn't mapped
+     * @param minMappedSize files smaller than this are copied by the delegate
+     */
+    public MappedPooledByteBufferFactory(PooledByteBufferFactory delegate, int minMappedSize) {
+        mDelegate = Preconditions.checkNotNull(delegate);
+        mMinMappedSize = minMappedSize;
+    }
+
+    /**
+     * 映射整个文件，太小的话交给另一个工厂拷贝
+     * Maps a whole file, or has the delegate copy it if it's small.
+     *
+     * @param file the file to read
+     * @return an instance of PooledByteBuffer
+     * @throws IOException
+     */
+    public PooledByteBuffer newByteBuffer(File file) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            return newByteBuffer(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Override
+    public PooledByteBuffer newByteBuffer(int size) {
+        return mDelegate.newByteBuffer(size);
+    }
+
+    /**
+     * Maps the rest of the file if the stream is a {@link FileInputStream}, otherwise reads in
+     * the entire contents of the input stream through the delegate
+     */
+    @Override
+    public PooledByteBuffer newByteBuffer(InputStream inputStream) throws IOException {
+        PooledByteBuffer mapped = maybeMap(inputStream);
+        return mapped != null ? mapped : mDelegate.newByteBuffer(inputStream);
+    }
+
+    @Override
+    public PooledByteBuffer newByteBuffer(byte[] bytes) {
+        return mDelegate.newByteBuffer(bytes);
+    }
+
+    @Override
+    public PooledByteBuffer newByteBuffer(InputStream inputStream, int initialCapacity)
+            throws IOException {
+        PooledByteBuffer mapped = maybeMap(inputStream);
+        return mapped != null ? mapped : mDelegate.newByteBuffer(inputStream, initialCapacity);
+    }
+
+    @Override
+    public PooledByteBufferOutputStream newOutputStream() {
+        return mDelegate.newOutputStream();
+    }
+
+    @Override
+    public PooledByteBufferOutputStream newOutputStream(int initialCapacity) {
+        return mDelegate.newOutputStream(initialCapacity);
+    }
+
+    /**
+     * Maps the file from the current position of the stream to its end, and moves the stream to
+     * the end as if it was read
+     * @return the mapped file, or null if the stream isn't a file or the rest is too small or too
+     *   large to be mapped
+     */
+    @Nullable
+    private PooledByteBuffer maybeMap(InputStream inputStream) throws IOException {
+        if (!(inputStream instanceof FileInputStream)) {
+            return null;
+        }
+        FileChannel channel = ((FileInputStream) inputStream).getChannel();
+        long position = channel.position();
+        long size = channel.size() - position;
+        if (size <= 0 || size < mMinMappedSize || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        // The mapping stays valid after the channel is closed.
+        PooledByteBuffer mapped = new MappedPooledByteBuffer(
+                channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+        channel.position(position + size);
+        return mapped;
+    }
+}
@@ -5,6 +5,7 @@ package com.facebook.pool.poolFactory;
  */
 
 import com.facebook.common.s.Preconditions;
+import com.facebook.pool.BitmapPool;
 import com.facebook.pool.poolParams.DefaultBitmapPoolParams;
 import com.facebook.pool.poolParams.DefaultByteArrayPoolParams;
 import com.facebook.pool.poolParams.DefaultFlexByteArrayPoolParams;
@@ -26,9 +27,17 @@ public class PoolConfig {
 
     // There are a lot of parameters in this class. Please follow strict alphabetical order.
 
+    /**
+     * 不映射文件，都拷贝到本地内存中
+     * Don't map files, copy them all into native memory.
+     */
+    public static final int NO_MAPPED_FILES = -1;
+
     private final PoolParams mBitmapPoolParams;
     private final PoolStatsTracker mBitmapPoolStatsTracker;
+    private final boolean mBitmapPoolUseSizeClasses;
     private final PoolParams mFlexByteArrayPoolParams;
+    private final int mMappedFileMinSize;
     private final MemoryTrimmableRegistry mMemoryTrimmableRegistry;
     private final PoolParams mNativeMemoryChunkPoolParams;
     private final PoolStatsTracker mNativeMemoryChunkPoolStatsTracker;
@@ -36,10 +45,15 @@ public class PoolConfig {
     private final PoolStatsTracker mSmallByteArrayPoolStatsTracker;
 
     private PoolConfig(Builder builder) {
-        mBitmapPoolParams =
-                builder.mBitmapPoolParams == null ?
-                        DefaultBitmapPoolParams.get() :
-                        builder.mBitmapPoolParams;
+        mBitmapPoolUseSizeClasses = builder.mBitmapPoolUseSizeClasses;
+        mMappedFileMinSize = builder.mMappedFileMinSize;
+        if (builder.mBitmapPoolParams != null) {
+            mBitmapPoolParams = builder.mBitmapPoolParams;
+        } else {
+            mBitmapPoolParams = mBitmapPoolUseSizeClasses ?
+                    DefaultBitmapPoolParams.getForSizeClasses() :
+                    DefaultBitmapPoolParams.get();
+        }
         mBitmapPoolStatsTracker =
                 builder.mBitmapPoolStatsTracker == null ?
                         NoOpPoolStatsTracker.getInstance() :
@@ -78,6 +92,23 @@ public class PoolConfig {
         return mBitmapPoolStatsTracker;
     }
 
+    /**
+     * 是否按大小类对bitmap分桶，见{@link BitmapPool}
+     * Whether the bitmap pool buckets bitmaps by size classes, see {@link BitmapPool}.
+     */
+    public boolean getBitmapPoolUseSizeClasses() {
+        return mBitmapPoolUseSizeClasses;
+    }
+
+    /**
+     * 不小于这个大小的本地文件会被映射到内存中，见{@link MappedPooledByteBufferFactory}
+     * Local files at least this large are mapped into memory, see
+     * {@link MappedPooledByteBufferFactory}. {@link #NO_MAPPED_FILES} if no files are mapped.
+     */
+    public int getMappedFileMinSize() {
+        return mMappedFileMinSize;
+    }
+
     public MemoryTrimmableRegistry getMemoryTrimmableRegistry() {
         return mMemoryTrimmableRegistry;
     }
@@ -110,7 +141,9 @@ public class PoolConfig {
 
         private PoolParams mBitmapPoolParams;
         private PoolStatsTracker mBitmapPoolStatsTracker;
+        private boolean mBitmapPoolUseSizeClasses;
         private PoolParams mFlexByteArrayPoolParams;
+        private int mMappedFileMinSize = NO_MAPPED_FILES;
         private MemoryTrimmableRegistry mMemoryTrimmableRegistry;
         private PoolParams mNativeMemoryChunkPoolParams;
         private PoolStatsTracker mNativeMemoryChunkPoolStatsTracker;
@@ -131,11 +164,33 @@ public class PoolConfig {
             return this;
         }
 
+        /**
+         * 按大小类对bitmap分桶，这样不同尺寸的bitmap也可以重用。没有设置参数的话使用
+         * {@link DefaultBitmapPoolParams#getForSizeClasses()}
+         * Buckets bitmaps by size classes, so bitmaps are reused across dimensions. Unless bitmap
+         * pool params are set, {@link DefaultBitmapPoolParams#getForSizeClasses()} are used.
+         */
+        public Builder setBitmapPoolUseSizeClasses(boolean bitmapPoolUseSizeClasses) {
+            mBitmapPoolUseSizeClasses = bitmapPoolUseSizeClasses;
+            return this;
+        }
+
         public Builder setFlexByteArrayPoolParams(PoolParams flexByteArrayPoolParams) {
             mFlexByteArrayPoolParams = flexByteArrayPoolParams;
             return this;
         }
 
+        /**
+         * 把不小于这个大小的本地文件映射到内存中而不是拷贝到本地内存中
+         * Maps local files at least this large into memory instead of copying them into native
+         * memory, see {@link MappedPooledByteBufferFactory}. Pass {@link #NO_MAPPED_FILES} to
+         * copy all files, the default.
+         */
+        public Builder setMappedFileMinSize(int mappedFileMinSize) {
+            mMappedFileMinSize = mappedFileMinSize;
+            return this;
+        }
+
         public Builder setMemoryTrimmableRegistry(MemoryTrimmableRegistry memoryTrimmableRegistry) {
             mMemoryTrimmableRegistry = memoryTrimmableRegistry;
             return this;
@@ -40,7 +40,8 @@ public class PoolFactory {
             mBitmapPool = new BitmapPool(
                     mConfig.getMemoryTrimmableRegistry(),
                     mConfig.getBitmapPoolParams(),
-                    mConfig.getBitmapPoolStatsTracker());
+                    mConfig.getBitmapPoolStatsTracker(),
+                    mConfig.getBitmapPoolUseSizeClasses());
         }
         return mBitmapPool;
     }
@@ -73,6 +74,11 @@ public class PoolFactory {
             mPooledByteBufferFactory = new NativePooledByteBufferFactory(
                     getNativeMemoryChunkPool(),
                     getPooledByteStreams());
+            if (mConfig.getMappedFileMinSize() != PoolConfig.NO_MAPPED_FILES) {
+                mPooledByteBufferFactory = new MappedPooledByteBufferFactory(
+                        mPooledByteBufferFactory,
+                        mConfig.getMappedFileMinSize());
+            }
         }
         return mPooledByteBufferFactory;
     }
@@ -49,4 +49,19 @@ public class DefaultBitmapPoolParams {
                 DEFAULT_BUCKETS
         );
     }
+
+    /**
+     * 按大小类分桶的{@link BitmapPool}的参数，保留一部分空闲的bitmap，桶按需创建
+     * Pool parameters for a {@link BitmapPool} bucketing by size classes. Unlike the default, free
+     * bitmaps are kept up to an eighth of the hard cap, and a bucket is created for each size class
+     * on demand.
+     */
+    public static PoolParams getForSizeClasses() {
+        final int maxSizeHardCap = getMaxSizeHardCap();
+        return new PoolParams(
+                maxSizeHardCap / 8,
+                maxSizeHardCap,
+                null
+        );
+    }
 }
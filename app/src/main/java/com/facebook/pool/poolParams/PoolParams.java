@@ -42,6 +42,17 @@ import javax.annotation.Nullable;
  * This represents the maximum size of the buckets in the pool. This restricts all buckets to only
  * accept elements smaller or equal to this size. If this size is exceeded, an exception will be
  * thrown.
+ * <p>
+ * {@link #concurrent}
+ * Whether the pool runs in concurrent mode. In this mode get and release only lock the bucket
+ * they touch and keep the used and free sizes in atomic counters, instead of holding the pool
+ * monitor for the whole call. Useful for pools hit by many threads at once.
+ * <p>
+ * {@link #adaptiveRetuneInterval}
+ * The number of gets after which an adaptive pool re-derives its bucket sizes and max lengths
+ * from the sizes requested so far. {@link #bucketSizes} are then only the initial buckets. Zero
+ * keeps the bucket sizes fixed. Only supported for pools with bucket sizes that don't run in
+ * concurrent mode.
  */
 public class PoolParams {
     /** If maxNumThreads is set to this level, the pool doesn't actually care what it is */
@@ -59,6 +70,19 @@ public class PoolParams {
      */
     public final int maxNumThreads;
 
+    /**
+     * 是否使用并发模式，见{@link BasePool}
+     * Whether the pool runs in concurrent mode, see {@link BasePool}.
+     */
+    public final boolean concurrent;
+
+    /**
+     * 自适应模式下每隔多少次get重新计算桶的大小，0表示桶的大小固定
+     * Number of gets between two re-derivations of the bucket sizes in adaptive mode, 0 to keep
+     * the bucket sizes fixed.
+     */
+    public final int adaptiveRetuneInterval;
+
     /**
      * Set up pool params
      * @param maxSize soft-cap and hard-cap on size of the pool
@@ -94,12 +118,79 @@ public class PoolParams {
             int minBucketSize,
             int maxBucketSize,
             int maxNumThreads) {
+        this(
+                maxSizeSoftCap,
+                maxSizeHardCap,
+                bucketSizes,
+                minBucketSize,
+                maxBucketSize,
+                maxNumThreads,
+                false);
+    }
+
+    /**
+     * Set up pool params
+     * @param maxSizeSoftCap soft cap on max size of the pool
+     * @param maxSizeHardCap hard cap on max size of the pool
+     * @param bucketSizes (optional) bucket sizes and lengths for the pool
+     * @param minBucketSize min bucket size for the pool
+     * @param maxBucketSize max bucket size for the pool
+     * @param maxNumThreads the maximum number of threads in th epool, or -1 if the pool doesn't care
+     * @param concurrent whether the pool runs in concurrent mode
+     */
+    public PoolParams(
+            int maxSizeSoftCap,
+            int maxSizeHardCap,
+            @Nullable SparseIntArray bucketSizes,
+            int minBucketSize,
+            int maxBucketSize,
+            int maxNumThreads,
+            boolean concurrent) {
+        this(
+                maxSizeSoftCap,
+                maxSizeHardCap,
+                bucketSizes,
+                minBucketSize,
+                maxBucketSize,
+                maxNumThreads,
+                concurrent,
+                0);
+    }
+
+    /**
+     * Set up pool params
+     * @param maxSizeSoftCap soft cap on max size of the pool
+     * @param maxSizeHardCap hard cap on max size of the pool
+     * @param bucketSizes (optional) bucket sizes and lengths for the pool
+     * @param minBucketSize min bucket size for the pool
+     * @param maxBucketSize max bucket size for the pool
+     * @param maxNumThreads the maximum number of threads in th epool, or -1 if the pool doesn't care
+     * @param concurrent whether the pool runs in concurrent mode
+     * @param adaptiveRetuneInterval number of gets between two re-derivations of the bucket sizes,
+     *    or 0 to keep the bucket sizes fixed
+     */
+    public PoolParams(
+            int maxSizeSoftCap,
+            int maxSizeHardCap,
+            @Nullable SparseIntArray bucketSizes,
+            int minBucketSize,
+            int maxBucketSize,
+            int maxNumThreads,
+            boolean concurrent,
+            int adaptiveRetuneInterval) {
         Preconditions.checkState(maxSizeSoftCap >= 0 && maxSizeHardCap >= maxSizeSoftCap);
+        Preconditions.checkState(adaptiveRetuneInterval >= 0);
+        // concurrent mode never replaces buckets, and without bucket sizes buckets are created on
+        // demand anyway
+        Preconditions.checkState(
+                adaptiveRetuneInterval == 0 || (!concurrent && bucketSizes != null));
         this.maxSizeSoftCap = maxSizeSoftCap;
         this.maxSizeHardCap = maxSizeHardCap;
         this.bucketSizes = bucketSizes;
         this.minBucketSize = minBucketSize;
         this.maxBucketSize = maxBucketSize;
         this.maxNumThreads = maxNumThreads;
+        this.concurrent = concurrent;
+        this.adaptiveRetuneInterval = adaptiveRetuneInterval;
     }
 }
@@ -0,0 +1,446 @@
+package com.facebook.pool.poolUtil;
+
+/**
+ * Created by heshixiyang on 2017/3/31.
+ */
+
+import android.support.annotation.VisibleForTesting;
+
+import com.facebook.common.RollingStat;
+import com.facebook.common.time.MonotonicClock;
+import com.facebook.log.FLog;
+import com.facebook.pool.BasePool;
+import com.facebook.pool.poolParams.DefaultBitmapPoolParams;
+import com.facebook.pool.poolParams.DefaultNativeMemoryChunkPoolParams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 一个真正统计池的使用情况的{@link PoolStatsTracker}，用来根据线上数据调整
+ * {@link DefaultBitmapPoolParams}和{@link DefaultNativeMemoryChunkPoolParams}中桶的大小
+ * A {@link PoolStatsTracker} that counts how a pool is used, so bucket sizes such as those of
+ * {@link DefaultBitmapPoolParams} and {@link DefaultNativeMemoryChunkPoolParams} can be tuned from
+ * production data.
+ * <p>
+ * Per bucket it counts values reused, allocated, released back to the pool and freed, which gives
+ * the reuse ratio of each bucket. Across the pool it counts the bytes allocated and reused, the
+ * allocation rate, how often the pool went over the soft cap and how often the hard cap was hit.
+ * <p>
+ * The hooks are called by the pool on every get and release, possibly from several threads at
+ * once, so they only do atomic increments. The per-bucket counters are looked up in a sorted
+ * copy-on-write array, so once every bucket size was seen the hooks don't lock or allocate.
+ * At most {@link #MAX_TRACKED_SIZES} sizes get counters of their own. A pool that buckets by
+ * exact size, like the default {@link com.facebook.pool.BitmapPool}, may see many more, and
+ * those are counted together in an overflow bucket, so the array stays small and stops being
+ * copied. Read the counters with {@link #getSnapshot()} or {@link #schedulePeriodicDump}.
+ */
+@ThreadSafe
+public class CountingPoolStatsTracker implements PoolStatsTracker {
+
+    private static final Class<?> TAG = CountingPoolStatsTracker.class;
+
+    /**
+     * 计算分配速率的时间窗口
+     * Window the allocation rate is computed over.
+     */
+    private static final int ALLOCATION_RATE_WINDOW_SECONDS = 10;
+
+    /**
+     * 最多为多少个大小单独计数，之后出现的大小都计入溢出桶
+     * The number of sizes that get counters of their own. Sizes seen after that are counted in
+     * the overflow bucket.
+     */
+    @VisibleForTesting
+    static final int MAX_TRACKED_SIZES = 64;
+
+    private final String mName;
+
+    @Nullable private volatile BasePool<?> mBasePool;
+
+    /**
+     * 按大小排序的每个桶的计数器，只会被整体替换
+     * The counters of each bucket sorted by size. Only ever replaced as a whole.
+     */
+    private volatile BucketCounters[] mBuckets = new BucketCounters[0];
+
+    /**
+     * 超过{@link #MAX_TRACKED_SIZES}之后的大小的计数器
+     * The counters of the sizes seen after {@link #MAX_TRACKED_SIZES} others were.
+     */
+    private final BucketCounters mOverflow = new BucketCounters(0);
+
+    private final AtomicLong mBytesAllocated = new AtomicLong();
+    private final AtomicLong mBytesReused = new AtomicLong();
+    private final AtomicLong mSoftCapHits = new AtomicLong();
+    private final AtomicLong mHardCapHits = new AtomicLong();
+    private final RollingStat mAllocations;
+
+    @GuardedBy("this")
+    @Nullable private ScheduledFuture<?> mPeriodicDump;
+
+    /**
+     * @param name the name of the pool, used in the dumps
+     */
+    public CountingPoolStatsTracker(String name) {
+        mName = name;
+        mAllocations = new RollingStat();
+    }
+
+    @VisibleForTesting
+    CountingPoolStatsTracker(String name, MonotonicClock clock) {
+        mName = name;
+        mAllocations = new RollingStat(clock);
+    }
+
+    @Override
+    public void setBasePool(BasePool basePool) {
+        mBasePool = basePool;
+    }
+
+    @Override
+    public void onValueReuse(int bucketedSize) {
+        getBucketCounters(bucketedSize).reused.incrementAndGet();
+        mBytesReused.addAndGet(bucketedSize);
+    }
+
+    @Override
+    public void onSoftCapReached() {
+        mSoftCapHits.incrementAndGet();
+    }
+
+    @Override
+    public void onHardCapReached() {
+        mHardCapHits.incrementAndGet();
+    }
+
+    @Override
+    public void onAlloc(int size) {
+        getBucketCounters(size).allocated.incrementAndGet();
+        mBytesAllocated.addAndGet(size);
+        mAllocations.incrementStats(1);
+    }
+
+    @Override
+    public void onFree(int sizeInBytes) {
+        getBucketCounters(sizeInBytes).freed.incrementAndGet();
+    }
+
+    @Override
+    public void onValueRelease(int sizeInBytes) {
+        getBucketCounters(sizeInBytes).released.incrementAndGet();
+    }
+
+    /**
+     * 获取当前所有计数器的快照
+     * Takes a snapshot of all the counters.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        BucketCounters[] buckets = mBuckets;
+        List<BucketSnapshot> bucketSnapshots = new ArrayList<BucketSnapshot>(buckets.length);
+        for (BucketCounters bucket : buckets) {
+            bucketSnapshots.add(new BucketSnapshot(
+                    bucket.size,
+                    bucket.reused.get(),
+                    bucket.allocated.get(),
+                    bucket.released.get(),
+                    bucket.freed.get()));
+        }
+        BasePool<?> basePool = mBasePool;
+        return new Snapshot(
+                mName,
+                Collections.unmodifiableList(bucketSnapshots),
+                new BucketSnapshot(
+                        mOverflow.size,
+                        mOverflow.reused.get(),
+                        mOverflow.allocated.get(),
+                        mOverflow.released.get(),
+                        mOverflow.freed.get()),
+                mBytesAllocated.get(),
+                mBytesReused.get(),
+                mSoftCapHits.get(),
+                mHardCapHits.get(),
+                (float) mAllocations.getSum(ALLOCATION_RATE_WINDOW_SECONDS) /
+                        ALLOCATION_RATE_WINDOW_SECONDS,
+                basePool != null ? basePool.getStats() : null);
+    }
+
+    /**
+     * 定期地把快照交给listener，如果listener是null就打印到日志中。之前安排的定期输出会被取消
+     * Periodically hands a snapshot to the listener, or logs it if the listener is null. Cancels
+     * the periodic dump scheduled before.
+     *
+     * @param executorService the executor to take the snapshots on
+     * @param periodMs the period in ms
+     * @param listener the listener or null to log the snapshots
+     */
+    public synchronized void schedulePeriodicDump(
+            ScheduledExecutorService executorService,
+            long periodMs,
+            @Nullable final SnapshotListener listener) {
+        cancelPeriodicDump();
+        mPeriodicDump = executorService.scheduleAtFixedRate(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Snapshot snapshot = getSnapshot();
+                        if (listener != null) {
+                            listener.onSnapshot(snapshot);
+                        } else {
+                            FLog.i(TAG, "%s", snapshot);
+                        }
+                    }
+                },
+                periodMs,
+                periodMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 取消定期输出
+     * Cancels the periodic dump.
+     */
+    public synchronized void cancelPeriodicDump() {
+        if (mPeriodicDump != null) {
+            mPeriodicDump.cancel(false);
+            mPeriodicDump = null;
+        }
+    }
+
+    private BucketCounters getBucketCounters(int size) {
+        BucketCounters[] buckets = mBuckets;
+        int index = findBucket(buckets, size);
+        if (index >= 0) {
+            return buckets[index];
+        }
+        return addBucketCounters(size);
+    }
+
+    private synchronized BucketCounters addBucketCounters(int size) {
+        BucketCounters[] buckets = mBuckets;
+        int index = findBucket(buckets, size);
+        if (index >= 0) {
+            // Added by another thread in the meantime.
+            return buckets[index];
+        }
+        if (buckets.length >= MAX_TRACKED_SIZES) {
+            return mOverflow;
+        }
+        int insertionPoint = -index - 1;
+        BucketCounters[] newBuckets = new BucketCounters[buckets.length + 1];
+        System.arraycopy(buckets, 0, newBuckets, 0, insertionPoint);
+        BucketCounters bucket = new BucketCounters(size);
+        newBuckets[insertionPoint] = bucket;
+        System.arraycopy(
+                buckets,
+                insertionPoint,
+                newBuckets,
+                insertionPoint + 1,
+                buckets.length - insertionPoint);
+        mBuckets = newBuckets;
+        return bucket;
+    }
+
+    /**
+     * 二分查找，和{@link java.util.Arrays#binarySearch}的返回值一样
+     * Binary search returning the same as {@link java.util.Arrays#binarySearch}.
+     */
+    private static int findBucket(BucketCounters[] buckets, int size) {
+        int low = 0;
+        int high = buckets.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midSize = buckets[mid].size;
+            if (midSize < size) {
+                low = mid + 1;
+            } else if (midSize > size) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 接收定期输出的快照
+     * Receives the periodic snapshots.
+     */
+    public interface SnapshotListener {
+        void onSnapshot(Snapshot snapshot);
+    }
+
+    private static class BucketCounters {
+        final int size;
+        final AtomicLong reused = new AtomicLong();
+        final AtomicLong allocated = new AtomicLong();
+        final AtomicLong released = new AtomicLong();
+        final AtomicLong freed = new AtomicLong();
+
+        BucketCounters(int size) {
+            this.size = size;
+        }
+    }
+
+    /**
+     * 一个桶的计数器的快照
+     * Snapshot of the counters of one bucket.
+     */
+    @Immutable
+    public static class BucketSnapshot {
+
+        /**
+         * 桶的大小，单位是字节
+         * The size of the values of the bucket in bytes.
+         */
+        public final int size;
+
+        /**
+         * 从池中重用的值的个数
+         * Number of values reused from the pool.
+         */
+        public final long reused;
+
+        /**
+         * 因为池中没有空闲的值而新分配的值的个数
+         * Number of values allocated as no free value was in the pool.
+         */
+        public final long allocated;
+
+        /**
+         * 被放回池中的值的个数
+         * Number of values released back to the pool.
+         */
+        public final long released;
+
+        /**
+         * 被释放而没有放回池中的值的个数
+         * Number of values freed instead of being kept in the pool.
+         */
+        public final long freed;
+
+        BucketSnapshot(int size, long reused, long allocated, long released, long freed) {
+            this.size = size;
+            this.reused = reused;
+            this.allocated = allocated;
+            this.released = released;
+            this.freed = freed;
+        }
+
+        /**
+         * 获取请求被重用的值满足的比例
+         * Gets the ratio of requests served with a reused value.
+         *
+         * @return the ratio between 0 and 1, or 0 if nothing was requested
+         */
+        public float getReuseRatio() {
+            long requests = reused + allocated;
+            return requests > 0 ? (float) reused / requests : 0f;
+        }
+
+        @Override
+        public String toString() {
+            return size + ": reused=" + reused + " allocated=" + allocated +
+                    " released=" + released + " freed=" + freed +
+                    " reuseRatio=" + getReuseRatio();
+        }
+    }
+
+    /**
+     * 一个池的所有计数器的快照
+     * Snapshot of all the counters of a pool.
+     */
+    @Immutable
+    public static class Snapshot {
+
+        public final String name;
+
+        /**
+         * 按大小排序的每个桶的计数器
+         * The counters of each bucket, sorted by size.
+         */
+        public final List<BucketSnapshot> buckets;
+
+        /**
+         * 没有单独计数的大小加在一起的计数器，大小是0
+         * The counters of all the sizes that have none of their own added up, with a size of 0.
+         */
+        public final BucketSnapshot overflow;
+
+        public final long bytesAllocated;
+        public final long bytesReused;
+
+        /**
+         * 池从软上限之下变成超过软上限的次数
+         * Number of times the pool went over the soft cap.
+         */
+        public final long softCapHits;
+
+        public final long hardCapHits;
+
+        /**
+         * 最近10秒的平均每秒分配次数
+         * Allocations per second over the last 10 seconds.
+         */
+        public final float allocationsPerSecond;
+
+        /**
+         * {@link BasePool#getStats()}的结果，如果还没有关联池就是null
+         * The result of {@link BasePool#getStats()} or null if no pool was set yet.
+         */
+        @Nullable public final Map<String, Integer> poolStats;
+
+        Snapshot(
+                String name,
+                List<BucketSnapshot> buckets,
+                BucketSnapshot overflow,
+                long bytesAllocated,
+                long bytesReused,
+                long softCapHits,
+                long hardCapHits,
+                float allocationsPerSecond,
+                @Nullable Map<String, Integer> poolStats) {
+            this.name = name;
+            this.buckets = buckets;
+            this.overflow = overflow;
+            this.bytesAllocated = bytesAllocated;
+            this.bytesReused = bytesReused;
+            this.softCapHits = softCapHits;
+            this.hardCapHits = hardCapHits;
+            this.allocationsPerSecond = allocationsPerSecond;
+            this.poolStats = poolStats;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(name)
+                    .append(": bytesAllocated=").append(bytesAllocated)
+                    .append(" bytesReused=").append(bytesReused)
+                    .append(" softCapHits=").append(softCapHits)
+                    .append(" hardCapHits=").append(hardCapHits)
+                    .append(" allocationsPerSecond=").append(allocationsPerSecond)
+                    .append(" pool=").append(poolStats);
+            for (BucketSnapshot bucket : buckets) {
+                sb.append("\n  ").append(bucket);
+            }
+            if (overflow.reused + overflow.allocated + overflow.released + overflow.freed > 0) {
+                sb.append("\n  overflow ").append(overflow);
+            }
+            return sb.toString();
+        }
+    }
+}
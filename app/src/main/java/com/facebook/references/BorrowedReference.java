@@ -0,0 +1,73 @@
+package com.facebook.references;
+
+/**
+ * Created by heshixiyang on 2017/3/12.
+ */
+
+import com.facebook.common.s.Preconditions;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 一个可重用的持有者，持有一个{@link SharedReference}的引用。
+ * 和{@link CloseableReference}一样会让引用计数加一，但是同一个持有者可以反复借用不同的值，不会每次都新建对象
+ * A reusable holder of a reference to a {@link SharedReference}. Keeps the reference count bumped
+ * up like a {@link CloseableReference} does, but the same holder can borrow one value after the
+ * other without allocating, which matters on paths that run once per frame.
+ * <p>
+ * Fill it with {@link CloseableReference#borrowInto}. Borrowing a new value releases the previous
+ * one, {@link #release()} releases the current one. The holder has to be released when it's no
+ * longer needed, just like a CloseableReference has to be closed.
+ */
+@NotThreadSafe
+public class BorrowedReference<T> {
+
+    @Nullable private SharedReference<T> mSharedReference;
+    @Nullable private T mValue;
+
+    /**
+     * 当前是否借用了一个值
+     * Whether a value is currently borrowed.
+     */
+    public boolean isBorrowed() {
+        return mSharedReference != null;
+    }
+
+    /**
+     * 返回借用的值，如果没有借用的话抛出IllegalStateException
+     * Returns the borrowed value. Throws IllegalStateException if nothing is borrowed.
+     */
+    public T get() {
+        Preconditions.checkState(isBorrowed());
+        return mValue;
+    }
+
+    /**
+     * 释放借用的值，引用计数减一。没有借用的话什么都不做
+     * Releases the borrowed value, decrementing its reference count. Does nothing if nothing is
+     * borrowed.
+     */
+    public void release() {
+        final SharedReference<T> sharedReference = mSharedReference;
+        mSharedReference = null;
+        mValue = null;
+        if (sharedReference != null) {
+            sharedReference.deleteReference();
+        }
+    }
+
+    /**
+     * 借用一个值，调用者已经让它的引用计数加一了。之前借用的值会被释放
+     * Borrows a value whose reference count the caller already bumped up. Releases the value
+     * borrowed before.
+     */
+    void set(SharedReference<T> sharedReference, T value) {
+        final SharedReference<T> previous = mSharedReference;
+        mSharedReference = sharedReference;
+        mValue = value;
+        if (previous != null) {
+            previous.deleteReference();
+        }
+    }
+}
@@ -8,17 +8,16 @@ import android.support.annotation.VisibleForTesting;
 
 import com.facebook.common.s.Closeables;
 import com.facebook.common.s.Preconditions;
+import com.facebook.log.FLog;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.lang.ref.PhantomReference;
-import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.GuardedBy;
 
 /**
  * 一个智能指针，就像java的类一样
@@ -64,9 +63,9 @@ import javax.annotation.concurrent.GuardedBy;
  *
  * 对于任意的Closeable，最后可能都要try-finally来保证close被调用
  * <p>As with any Closeable, try-finally semantics may be needed to ensure that close is called.
- * 不依赖finalizer
- * <p>Do not rely upon the finalizer; the purpose of this class is for expensive resources to
- * be released without waiting for the garbage collector. The finalizer will log an error if
+ * 不依赖{@link Reaper}
+ * <p>Do not rely upon the {@link Reaper}; the purpose of this class is for expensive resources to
+ * be released without waiting for the garbage collector. The reaper will log an error if
  * the close method has not been called.
  *
  * 我的理解：基于SharedReference的智能指针，在调用of()的时候创建一个对象并创建一个SharedReference。在clone()和cloneOrNull()的时候
@@ -93,30 +92,33 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
 
     private static volatile @Nullable UnclosedReferenceListener sUnclosedReferenceListener;
 
-    protected @Nullable Throwable mRelevantTrace;
+    @SuppressWarnings("unchecked")
+    private static final AtomicIntegerFieldUpdater<CloseableReference<?>> CLOSED_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(
+                    (Class<CloseableReference<?>>) (Class<?>) CloseableReference.class,
+                    "mClosed");
 
-    @GuardedBy("this")
-    protected boolean mIsClosed = false;
+    //非0表示已经关闭，用CAS设置，这样get、clone和close都不需要加锁
+    // Non-zero once closed. Set with a compare-and-set so get, clone and close don't lock.
+    private volatile int mClosed;
 
     protected final SharedReference<T> mSharedReference;
 
-    private static volatile boolean sUseFinalizers = true;
+    //新建的引用是否被Reaper跟踪，默认关闭，只在debug版本中和SharedReference的存活对象map一起打开
+    private static volatile boolean sUseFinalizers = false;
 
     /**
-     * 调用者必须保证sharedReference的引用数量不会降到0以下，这样该引用在运行期才是有效的。
-     * 这个构造器只由两个of()方法调用
-     * The caller should guarantee that reference count of sharedReference is not decreased to zero,
-     * so that the reference is valid during execution of this method.
+     * 接管调用者已经在sharedReference上加好的一个引用，这里不再增加引用计数。
+     * 这个构造器只由cloneOrNull()调用
+     * Takes over a reference the caller already added to sharedReference, so the reference count
+     * isn't incremented again here.
      */
     private CloseableReference(SharedReference<T> sharedReference) {
         mSharedReference = Preconditions.checkNotNull(sharedReference);
-        sharedReference.addReference();
-        mRelevantTrace = getTraceOrNull();
     }
     //这个构造器只由两个of()方法调用
     private CloseableReference(T t, ResourceReleaser<T> resourceReleaser) {
         mSharedReference = new SharedReference<T>(t, resourceReleaser);
-        mRelevantTrace = getTraceOrNull();
     }
 
     /**
@@ -153,9 +155,9 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
             @Nullable T t,
             ResourceReleaser<T> resourceReleaser) {
         if (sUseFinalizers) {
-            return new CloseableReferenceWithFinalizer<T>(t, resourceReleaser);
+            return new CloseableReferenceWithReaper<T>(t, resourceReleaser);
         } else {
-            return new CloseableReferenceWithoutFinalizer<T>(t, resourceReleaser);
+            return new CloseableReferenceWithoutTracking<T>(t, resourceReleaser);
         }
     }
 
@@ -170,23 +172,36 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
      */
     @Override
     public void close() {
-        synchronized (this) {
-            if (mIsClosed) {
-                return;
-            }
-            mIsClosed = true;
+        if (!CLOSED_UPDATER.compareAndSet(this, 0, 1)) {
+            return;
         }
 
+        releaseReference();
+    }
+
+    /**
+     * 关闭之后调用一次，放弃对Value的引用
+     * Called once when closed to drop the reference to the value.
+     */
+    protected void releaseReference() {
         mSharedReference.deleteReference();
     }
 
+    /**
+     * 记录和未关闭的引用一起报告的调用栈，只有被跟踪的引用才需要
+     * Keeps the trace reported along with the reference if it's never closed. Only tracked
+     * references need it.
+     */
+    protected void setRelevantTrace(@Nullable Throwable relevantTrace) {
+    }
+
     /**
      * 如果没有关闭，返回Value
      * Returns the underlying Closeable if this reference is not closed yet.
      * Otherwise IllegalStateException is thrown.
      */
-    public synchronized T get() {
-        Preconditions.checkState(!mIsClosed);
+    public T get() {
+        Preconditions.checkState(mClosed == 0);
         return mSharedReference.get();
     }
 
@@ -196,27 +211,47 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
      * ref-count is incremented.
      */
     @Override
-    public synchronized CloseableReference<T> clone() {
-        mRelevantTrace = getTraceOrNull();
-        Preconditions.checkState(isValid());
-        return makeCloseableReference();
+    public CloseableReference<T> clone() {
+        CloseableReference<T> clone = cloneOrNull();
+        Preconditions.checkState(clone != null);
+        return clone;
     }
 
     //同上不过可能会返回null
-    public synchronized CloseableReference<T> cloneOrNull() {
-        mRelevantTrace = getTraceOrNull();
-        if (isValid()) {
-            return makeCloseableReference();
+    public CloseableReference<T> cloneOrNull() {
+        setRelevantTrace(getTraceOrNull());
+        // Without a lock another thread may close the last reference meanwhile, so the count is
+        // taken with tryAddReference and handed over to the clone as is.
+        if (!isValid() || !mSharedReference.tryAddReference()) {
+            return null;
         }
-        return null;
+        return makeCloseableReference();
     }
 
-    //clone()和cloneOrNull()的具体实现
+    /**
+     * 和cloneOrNull()一样多持有一个引用，但是放进一个可重用的{@link BorrowedReference}中而不是新建对象。
+     * 之前借的引用会在新的引用拿到之后被释放
+     * Like cloneOrNull() takes another reference to the value, but puts it into a reusable
+     * {@link BorrowedReference} instead of allocating a new CloseableReference. The reference
+     * borrowed before is released once the new one is taken.
+     *
+     * @param borrowed the holder to borrow into
+     * @return false if this reference is closed, the holder is left untouched then
+     */
+    public boolean borrowInto(BorrowedReference<T> borrowed) {
+        if (!isValid() || !mSharedReference.tryAddReference()) {
+            return false;
+        }
+        borrowed.set(mSharedReference, mSharedReference.get());
+        return true;
+    }
+
+    //clone()和cloneOrNull()的具体实现，新的引用接管调用者已经加上的引用计数
     private CloseableReference<T> makeCloseableReference() {
         if (sUseFinalizers) {
-            return new CloseableReferenceWithFinalizer<T>(mSharedReference);
+            return new CloseableReferenceWithReaper<T>(mSharedReference);
         }
-        return new CloseableReferenceWithoutFinalizer<T>(mSharedReference);
+        return new CloseableReferenceWithoutTracking<T>(mSharedReference);
     }
 
     /**
@@ -224,8 +259,8 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
      * Checks if this closable-reference is valid i.e. is not closed.
      * @return true if the closeable reference is valid
      */
-    public synchronized boolean isValid() {
-        return !mIsClosed;
+    public boolean isValid() {
+        return mClosed == 0;
     }
 
     /**
@@ -247,7 +282,7 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
      * @see #setUnclosedReferenceListener(UnclosedReferenceListener)
      */
     public void setUnclosedRelevantTrance(Throwable relevantTrance) {
-        mRelevantTrace = relevantTrance;
+        setRelevantTrace(relevantTrance);
     }
 
     /**
@@ -257,7 +292,7 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
      * <p><b>DO NOT USE in application code.</b>
      */
     @VisibleForTesting
-    public synchronized SharedReference<T> getUnderlyingReferenceTestOnly() {
+    public SharedReference<T> getUnderlyingReferenceTestOnly() {
         return mSharedReference;
     }
 
@@ -266,7 +301,7 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
      * Method used for tracking Closeables pointed by CloseableReference.
      * Use only for debugging and logging.
      */
-    public synchronized int getValueHash() {
+    public int getValueHash() {
         return isValid() ? System.identityHashCode(mSharedReference.get()) : 0;
     }
 
@@ -347,6 +382,16 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
         sUnclosedReferenceListener = unclosedReferenceListener;
     }
 
+    /**
+     * 选择新建的引用是否被{@link Reaper}跟踪。不跟踪的话，没有关闭就被回收的引用永远不会释放它的Value
+     * Chooses whether new references are tracked by the {@link Reaper}. Tracking allocates a
+     * phantom reference and takes a reaper lock for every of() and clone(), so it is off by
+     * default and meant for debug builds, set with the same switch as
+     * {@link SharedReference#setTrackLiveObjects}. Untracked references that get collected without
+     * being closed never release their value, and the {@link UnclosedReferenceListener} isn't told
+     * about them.
+     * @param useFinalizers whether to track new references, false by default
+     */
     public static void setUseFinalizers(boolean useFinalizers) {
         sUseFinalizers = useFinalizers;
     }
@@ -359,153 +404,95 @@ public abstract class CloseableReference<T> implements Cloneable, Closeable {
     }
 
     public interface UnclosedReferenceListener {
-        void onUnclosedReferenceFinalized(CloseableReference<?> ref, Throwable relevantTrace);
-    }
-
-    private static class CloseableReferenceWithoutFinalizer<T> extends CloseableReference<T> {
-
-        private static class Destructor extends PhantomReference<CloseableReference> {
-
-            @GuardedBy("Destructor.class")
-            private static Destructor sHead;
 
-            private final SharedReference mSharedReference;
-
-            @GuardedBy("Destructor.class")
-            private Destructor next;
-            @GuardedBy("Destructor.class")
-            private Destructor previous;
-            @GuardedBy("this")
-            private boolean destroyed;
-
-            public Destructor(
-                    CloseableReference referent,
-                    ReferenceQueue<? super CloseableReference> referenceQueue) {
-                super(referent, referenceQueue);
-                mSharedReference = referent.mSharedReference;
-
-                synchronized (Destructor.class) {
-                    if (sHead != null) {
-                        sHead.next = this;
-                        previous = sHead;
-                    }
-                    sHead = this;
-                }
-            }
-
-            public synchronized boolean isDestroyed() {
-                return destroyed;
-            }
-
-            public void destroy(boolean correctly) {
-                synchronized (this) {
-                    if (destroyed) {
-                        return;
-                    }
-                    destroyed = true;
-                }
-
-                synchronized (Destructor.class) {
-                    if (previous != null) {
-                        previous.next = next;
-                    }
-                    if (next != null) {
-                        next.previous = previous;
-                    } else {
-                        sHead = previous;
-                    }
-                }
-
-                if (!correctly) {
-//                    FLog.w(
-//                            TAG,
-//                            "GCed without closing: %x %x (type = %s)",
-//                            System.identityHashCode(this),
-//                            System.identityHashCode(mSharedReference),
-//                            mSharedReference.get().getClass().getSimpleName());
-                }
-                mSharedReference.deleteReference();
-            }
-        }
-
-        private static final ReferenceQueue<CloseableReference> REF_QUEUE = new ReferenceQueue<>();
+        /**
+         * 引用已经被回收了，所以只能拿到它的SharedReference
+         * The reference itself is already collected, so only its SharedReference is passed.
+         */
+        void onUnclosedReferenceFinalized(
+                SharedReference<?> sharedReference,
+                @Nullable Throwable relevantTrace);
+    }
 
-        static {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    for (;;) {
-                        try {
-                            final Destructor ref = (Destructor) REF_QUEUE.remove();
-                            ref.destroy(false);
-                        } catch (InterruptedException e) {
-                            // Continue. This thread should never be terminated.
-                        }
-                    }
-                }
-            }, "CloseableReferenceDestructorThread").start();
-        }
+    /**
+     * 被{@link Reaper}跟踪的引用，如果没有关闭就被回收了，会报告并释放引用
+     * A reference tracked by the {@link Reaper}. If it's collected without being closed, the leak
+     * is reported and its reference to the value is dropped.
+     */
+    private static class CloseableReferenceWithReaper<T> extends CloseableReference<T> {
 
-        private final Destructor mDestructor;
+        private final LeakReporter mLeakReporter;
+        private final Reaper.Cleanable mCleanable;
 
-        private CloseableReferenceWithoutFinalizer(SharedReference<T> sharedReference) {
+        private CloseableReferenceWithReaper(SharedReference<T> sharedReference) {
             super(sharedReference);
-            mDestructor = new Destructor(this, REF_QUEUE);
+            mLeakReporter = new LeakReporter(sharedReference, getTraceOrNull());
+            mCleanable = Reaper.register(this, mLeakReporter);
         }
 
-        private CloseableReferenceWithoutFinalizer(T t, ResourceReleaser<T> resourceReleaser) {
+        private CloseableReferenceWithReaper(T t, ResourceReleaser<T> resourceReleaser) {
             super(t, resourceReleaser);
-            mDestructor = new Destructor(this, REF_QUEUE);
+            mLeakReporter = new LeakReporter(mSharedReference, getTraceOrNull());
+            mCleanable = Reaper.register(this, mLeakReporter);
         }
 
         @Override
-        public void close() {
-            mDestructor.destroy(true);
+        protected void setRelevantTrace(@Nullable Throwable relevantTrace) {
+            mLeakReporter.mRelevantTrace = relevantTrace;
         }
 
         @Override
-        public boolean isValid() {
-            return !mDestructor.isDestroyed();
+        protected void releaseReference() {
+            mCleanable.clean();
         }
     }
 
-    private static class CloseableReferenceWithFinalizer<T> extends CloseableReference<T> {
+    /**
+     * 不被跟踪的引用，如果没有关闭就被回收了，Value永远不会被释放
+     * A reference nobody tracks. If it's collected without being closed, the value is never
+     * released.
+     */
+    private static class CloseableReferenceWithoutTracking<T> extends CloseableReference<T> {
 
-        private CloseableReferenceWithFinalizer(SharedReference<T> sharedReference) {
+        private CloseableReferenceWithoutTracking(SharedReference<T> sharedReference) {
             super(sharedReference);
         }
 
-        private CloseableReferenceWithFinalizer(T t, ResourceReleaser<T> resourceReleaser) {
+        private CloseableReferenceWithoutTracking(T t, ResourceReleaser<T> resourceReleaser) {
             super(t, resourceReleaser);
         }
+    }
 
-        @Override
-        protected void finalize() throws Throwable {
-            try {
-                // We put synchronized here so that lint doesn't warn about accessing mIsClosed, which is
-                // guarded by this. Lint isn't aware of finalize semantics.
-                synchronized (this) {
-                    if (mIsClosed) {
-                        return;
-                    }
-                }
+    /**
+     * 在Reaper上释放引用，不能引用CloseableReference本身
+     * Drops the reference on behalf of a {@link CloseableReferenceWithReaper}. Must not reference
+     * the CloseableReference itself.
+     */
+    private static class LeakReporter implements Reaper.Cleanup {
+
+        private final SharedReference<?> mSharedReference;
+        private volatile @Nullable Throwable mRelevantTrace;
 
+        private LeakReporter(SharedReference<?> sharedReference, @Nullable Throwable relevantTrace) {
+            mSharedReference = sharedReference;
+            mRelevantTrace = relevantTrace;
+        }
+
+        @Override
+        public void clean(boolean leaked) {
+            if (leaked) {
                 UnclosedReferenceListener listener = sUnclosedReferenceListener;
                 if (listener != null) {
-                    listener.onUnclosedReferenceFinalized(this, mRelevantTrace);
+                    listener.onUnclosedReferenceFinalized(mSharedReference, mRelevantTrace);
                 } else {
-//                    FLog.w(
-//                            TAG,
-//                            "Finalized without closing: %x %x (type = %s)",
-//                            System.identityHashCode(this),
-//                            System.identityHashCode(mSharedReference),
-//                            mSharedReference.get().getClass().getSimpleName());
+                    FLog.w(
+                            TAG,
+                            "GCed without closing: %x (type = %s)",
+                            System.identityHashCode(mSharedReference),
+                            mSharedReference.get().getClass().getSimpleName());
                 }
-
-                close();
-            } finally {
-                super.finalize();
             }
+            mSharedReference.deleteReference();
         }
     }
 }
@@ -0,0 +1,188 @@
+package com.facebook.references;
+
+/**
+ * Created by heshixiyang on 2017/3/12.
+ */
+
+import com.facebook.log.FLog;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * 用一个{@link PhantomReference}队列代替finalize()来释放资源，所有类型共享一个线程
+ * Releases resources of objects that got garbage collected, in place of overriding finalize().
+ * One thread serves all types.
+ * <p>
+ * Finalizers slow down allocation and garbage collection, and whatever a finalizable object
+ * references stays alive for one more collection. Instead, an object registers a {@link Cleanup}
+ * with {@link #register}. The cleanup runs exactly once: either when the owner releases its
+ * resources itself with {@link Cleanable#clean()}, or on the reaper thread once the object was
+ * collected, which means it leaked.
+ * <p>
+ * The cleanup must not reference the object it cleans up after, otherwise the object never
+ * becomes phantom reachable. Give it the native pointers and references it needs instead.
+ */
+@ThreadSafe
+public final class Reaper {
+
+    private static final Class<?> TAG = Reaper.class;
+
+    private static final ReferenceQueue<Object> REF_QUEUE = new ReferenceQueue<Object>();
+
+    /**
+     * 分段的数量，必须是2的幂
+     * Number of stripes, must be a power of two.
+     */
+    private static final int STRIPE_COUNT = 16;
+
+    /**
+     * 已注册而还没有清理的，在这里强引用着，否则它们自己会先被回收。按注册的线程分成几段，
+     * 每段有自己的锁，这样每次创建和关闭CloseableReference时不会都争同一个全局锁
+     * The registered cleanables not cleaned yet. They are referenced from here, otherwise they
+     * would get collected before their referents. Split into stripes by the registering thread,
+     * each with its own lock, so creating and closing CloseableReferences doesn't contend on one
+     * global lock.
+     */
+    private static final Stripe[] sStripes = new Stripe[STRIPE_COUNT];
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            sStripes[i] = new Stripe();
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (;;) {
+                    try {
+                        ((Cleanable) REF_QUEUE.remove()).clean(true);
+                    } catch (InterruptedException e) {
+                        // Continue. This thread should never be terminated.
+                    } catch (RuntimeException e) {
+                        FLog.e(TAG, e, "Cleanup failed");
+                    }
+                }
+            }
+        }, "ReaperThread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private Reaper() {
+    }
+
+    /**
+     * 注册一个对象，被回收的时候执行cleanup
+     * Registers an object to run the cleanup for once it's collected.
+     *
+     * @param referent the object
+     * @param cleanup the cleanup, must not reference the object
+     * @return the cleanable to run the cleanup with when the resources are released normally
+     */
+    public static Cleanable register(Object referent, Cleanup cleanup) {
+        return new Cleanable(referent, cleanup);
+    }
+
+    private static Stripe getStripeForCurrentThread() {
+        return sStripes[(int) Thread.currentThread().getId() & (STRIPE_COUNT - 1)];
+    }
+
+    /**
+     * 一段已注册的cleanable组成的双向链表，由它自己作为锁
+     * A doubly linked list of registered cleanables, guarded by itself.
+     */
+    private static final class Stripe {
+
+        @GuardedBy("this")
+        private Cleanable mHead;
+    }
+
+    /**
+     * 释放一个对象的资源
+     * Releases the resources of an object.
+     */
+    public interface Cleanup {
+
+        /**
+         * 释放资源，只会被调用一次
+         * Releases the resources. Called exactly once.
+         *
+         * @param leaked true if called on the reaper thread because the object was collected
+         *    without releasing its resources, false if called by {@link Cleanable#clean()}
+         */
+        void clean(boolean leaked);
+    }
+
+    /**
+     * 一个注册了的对象的句柄
+     * Handle to a registered object.
+     */
+    public static final class Cleanable extends PhantomReference<Object> {
+
+        private static final AtomicIntegerFieldUpdater<Cleanable> CLEANED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Cleanable.class, "mCleaned");
+
+        private final Cleanup mCleanup;
+        private final Stripe mStripe;
+        private volatile int mCleaned;
+
+        @GuardedBy("mStripe")
+        private Cleanable mNext;
+        @GuardedBy("mStripe")
+        private Cleanable mPrevious;
+
+        private Cleanable(Object referent, Cleanup cleanup) {
+            super(referent, REF_QUEUE);
+            mCleanup = cleanup;
+            mStripe = getStripeForCurrentThread();
+            synchronized (mStripe) {
+                mNext = mStripe.mHead;
+                if (mNext != null) {
+                    mNext.mPrevious = this;
+                }
+                mStripe.mHead = this;
+            }
+        }
+
+        /**
+         * 立刻执行cleanup，之后再调用什么都不做
+         * Runs the cleanup now. Does nothing if it already ran.
+         */
+        public void clean() {
+            clean(false);
+        }
+
+        /**
+         * cleanup是否已经执行了
+         * Whether the cleanup already ran.
+         */
+        public boolean isCleaned() {
+            return mCleaned != 0;
+        }
+
+        private void clean(boolean leaked) {
+            if (!CLEANED_UPDATER.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            synchronized (mStripe) {
+                if (mPrevious != null) {
+                    mPrevious.mNext = mNext;
+                } else {
+                    mStripe.mHead = mNext;
+                }
+                if (mNext != null) {
+                    mNext.mPrevious = mPrevious;
+                }
+                mNext = null;
+                mPrevious = null;
+            }
+            // No need to be enqueued any more.
+            clear();
+            mCleanup.clean(leaked);
+        }
+    }
+}
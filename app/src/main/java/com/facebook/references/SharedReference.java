@@ -11,6 +11,7 @@ import com.facebook.log.FLog;
 
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -32,6 +33,10 @@ import javax.annotation.concurrent.GuardedBy;
  * Despite the extra (and clunky) method calls, this is still worthwhile in many cases to avoid
  * the overhead of garbage collection.
  * <p>
+ * 引用计数用CAS更新，增加和减少引用都不加锁
+ * The reference count is updated with compare-and-set, so adding and deleting references never
+ * locks. See {@link #setTrackLiveObjects(boolean)} for the global map of live objects.
+ * <p>
  * 这里有一些笨重的规则
  * 1.如果一个方法返回了一个SharedReference，他必须要保证reference的数量最少大于1
  * 在SharedReference被调用的情况下必须提前设置好count为1
@@ -130,13 +135,24 @@ public class SharedReference<T> {
     // Keeps references to all live objects so finalization of those Objects always happens after
     // SharedReference first disposes of it. Note, this does not prevent CloseableReference's from
     // being finalized when the reference is no longer reachable.
+    // Only used while sTrackLiveObjects is set.
     @GuardedBy("itself")
     private static final Map<Object, Integer> sLiveObjects = new IdentityHashMap<>();
 
-    @GuardedBy("this")
-    private T mValue;
-    @GuardedBy("this")
-    private int mRefCount;
+    //是否使用sLiveObjects，默认关闭，只在debug版本中打开，省掉每次创建和释放时的全局锁
+    private static volatile boolean sTrackLiveObjects = false;
+
+    @SuppressWarnings("unchecked")
+    private static final AtomicIntegerFieldUpdater<SharedReference<?>> REF_COUNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(
+                    (Class<SharedReference<?>>) (Class<?>) SharedReference.class,
+                    "mRefCount");
+
+    private volatile T mValue;
+    private volatile int mRefCount;
+
+    //创建时是否加入了sLiveObjects，释放时要对应地移除
+    private final boolean mTracked;
 
     private final ResourceReleaser<T> mResourceReleaser;
 
@@ -152,7 +168,22 @@ public class SharedReference<T> {
         mValue = Preconditions.checkNotNull(value);
         mResourceReleaser = Preconditions.checkNotNull(resourceReleaser);
         mRefCount = 1;
-        addLiveReference(value);
+        mTracked = sTrackLiveObjects;
+        if (mTracked) {
+            addLiveReference(value);
+        }
+    }
+
+    /**
+     * 设置是否在全局的map中记录所有存活的对象。这个map只用于调试，每次创建和释放都要获取全局的锁，
+     * 所以默认关闭，只在debug版本中打开。只影响之后创建的SharedReference
+     * Sets whether all live objects are kept in a global map. The map only helps debugging and
+     * takes a global lock whenever a shared reference is created or disposed of, so it is off by
+     * default and meant for debug builds only. Only affects shared references created afterwards.
+     * @param trackLiveObjects whether to track live objects, false by default
+     */
+    public static void setTrackLiveObjects(boolean trackLiveObjects) {
+        sTrackLiveObjects = trackLiveObjects;
     }
 
     /**
@@ -200,7 +231,7 @@ public class SharedReference<T> {
      * Get the current referenced value. Null if there's no value.
      * @return the referenced value
      */
-    public synchronized T get() {
+    public T get() {
         return mValue;
     }
 
@@ -209,7 +240,7 @@ public class SharedReference<T> {
      * Checks if this shared-reference is valid i.e. its reference count is greater than zero.
      * @return true if shared reference is valid
      */
-    public synchronized boolean isValid() {
+    public boolean isValid() {
         return mRefCount > 0;
     }
 
@@ -227,9 +258,27 @@ public class SharedReference<T> {
      * Bump up the reference count for the shared reference
      * Note: The reference must be valid (aka not null) at this point
      */
-    public synchronized void addReference() {
-        ensureValid();
-        mRefCount++;
+    public void addReference() {
+        if (!tryAddReference()) {
+            throw new NullReferenceException();
+        }
+    }
+
+    /**
+     * 如果还可用的话，将引用计数加一。不加锁
+     * Bumps up the reference count unless it already dropped to zero. Doesn't lock.
+     * @return whether the reference count was bumped up
+     */
+    public boolean tryAddReference() {
+        while (true) {
+            final int refCount = mRefCount;
+            if (refCount <= 0) {
+                return false;
+            }
+            if (REF_COUNT_UPDATER.compareAndSet(this, refCount, refCount + 1)) {
+                return true;
+            }
+        }
     }
 
     /**
@@ -239,37 +288,29 @@ public class SharedReference<T> {
      */
     public void deleteReference() {
         if (decreaseRefCount() == 0) {
-            T deleted;
-            synchronized (this) {
-                deleted = mValue;
-                mValue = null;
-            }
+            final T deleted = mValue;
+            mValue = null;
             mResourceReleaser.release(deleted);
-            removeLiveReference(deleted);
+            if (mTracked) {
+                removeLiveReference(deleted);
+            }
         }
     }
 
     /**
      * 将引用计数减一。
      * Decrements reference count for the shared reference. Returns value of mRefCount after
-     * decrementing
-     */
-    private synchronized int decreaseRefCount() {
-        ensureValid();
-        Preconditions.checkArgument(mRefCount > 0);
-
-        mRefCount--;
-        return mRefCount;
-    }
-
-    /**
-     * 判断该SharedReference是否可用，不可用就抛出异常
-     * Assert that there is a valid referenced value. Throw a NullReferenceException otherwise
-     * @throws NullReferenceException, if the reference is invalid (i.e.) the underlying value is null
+     * decrementing. Only the caller that takes the count to zero sees zero.
      */
-    private void ensureValid() {
-        if (!isValid(this)) {
-            throw new NullReferenceException();
+    private int decreaseRefCount() {
+        while (true) {
+            final int refCount = mRefCount;
+            if (refCount <= 0) {
+                throw new NullReferenceException();
+            }
+            if (REF_COUNT_UPDATER.compareAndSet(this, refCount, refCount - 1)) {
+                return refCount - 1;
+            }
         }
     }
 
@@ -277,7 +318,7 @@ public class SharedReference<T> {
      * A test-only method to get the ref count
      * DO NOT USE in regular code
      */
-    public synchronized int getRefCountTestOnly() {
+    public int getRefCountTestOnly() {
         return mRefCount;
     }
 
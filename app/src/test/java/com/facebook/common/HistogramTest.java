@@ -0,0 +1,108 @@
+package com.facebook.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link Histogram}.
+ */
+public class HistogramTest {
+
+    @Test
+    public void testEmpty() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        assertEquals(0, histogram.getPercentile(25));
+        assertEquals(1, histogram.getPercentile(50));
+        assertEquals(3, histogram.getPercentile(100));
+        assertEquals(6, histogram.getSum());
+        assertEquals(1, histogram.getMean());
+    }
+
+    @Test
+    public void testNegativeValuesAreRecordedAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testPercentilesWithinBucketError() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertWithinBucketError(5000, histogram.getPercentile(50));
+        assertWithinBucketError(9000, histogram.getPercentile(90));
+        assertWithinBucketError(9900, histogram.getPercentile(99));
+        // Capped at the maximum recorded value.
+        assertEquals(10000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testLargeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public void testReset() {
+        Histogram histogram = new Histogram();
+        histogram.record(100);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        final int threads = 4;
+        final int valuesPerThread = 100000;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int value = 0; value < valuesPerThread; value++) {
+                        histogram.record(value);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * valuesPerThread, histogram.getCount());
+        assertEquals((long) threads * valuesPerThread * (valuesPerThread - 1) / 2, histogram.getSum());
+        assertEquals(valuesPerThread - 1, histogram.getMax());
+    }
+
+    private static void assertWithinBucketError(long expected, long actual) {
+        assertTrue(
+                "expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 5 / 4);
+    }
+}
@@ -0,0 +1,100 @@
+package com.facebook.common;
+
+import com.facebook.imagepipeline.memory.PooledByteBuffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reads of {@link PooledByteBufferInputStream} through the view of the buffer.
+ */
+public class PooledByteBufferInputStreamTest {
+
+    private static final byte[] BYTES = new byte[] {1, 2, 3, (byte) 0xFF};
+
+    @Test
+    public void testReadsThroughView() {
+        PooledByteBufferInputStream stream =
+                new PooledByteBufferInputStream(new FakePooledByteBuffer(BYTES));
+        assertEquals(1, stream.read());
+        byte[] buffer = new byte[8];
+        assertEquals(3, stream.read(buffer, 0, buffer.length));
+        assertEquals(2, buffer[0]);
+        assertEquals(3, buffer[1]);
+        assertEquals((byte) 0xFF, buffer[2]);
+        assertEquals(-1, stream.read());
+    }
+
+    @Test(expected = PooledByteBuffer.ClosedException.class)
+    public void testReadAfterCloseThrows() {
+        FakePooledByteBuffer pooledByteBuffer = new FakePooledByteBuffer(BYTES);
+        PooledByteBufferInputStream stream = new PooledByteBufferInputStream(pooledByteBuffer);
+        pooledByteBuffer.close();
+        stream.read();
+    }
+
+    @Test(expected = PooledByteBuffer.ClosedException.class)
+    public void testBulkReadAfterCloseThrows() {
+        FakePooledByteBuffer pooledByteBuffer = new FakePooledByteBuffer(BYTES);
+        PooledByteBufferInputStream stream = new PooledByteBufferInputStream(pooledByteBuffer);
+        assertEquals(1, stream.read());
+        pooledByteBuffer.close();
+        stream.read(new byte[8], 0, 8);
+    }
+
+    /**
+     * Keeps reporting its size once closed, like a buffer closed by another thread between the
+     * {@code available()} check of the stream and its read of the view.
+     */
+    private static class FakePooledByteBuffer implements PooledByteBuffer {
+        private final byte[] mBytes;
+        private boolean mClosed;
+
+        FakePooledByteBuffer(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        @Override
+        public synchronized int size() {
+            return mBytes.length;
+        }
+
+        @Override
+        public byte read(int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void read(int offset, byte[] buffer, int bufferOffset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNativePtr() {
+            return false;
+        }
+
+        @Override
+        public long getNativePtr() {
+            return 0;
+        }
+
+        @Override
+        public synchronized ByteBuffer getByteBuffer() {
+            return ByteBuffer.wrap(mBytes).asReadOnlyBuffer();
+        }
+
+        @Override
+        public synchronized void close() {
+            mClosed = true;
+        }
+
+        @Override
+        public synchronized boolean isClosed() {
+            return mClosed;
+        }
+    }
+}
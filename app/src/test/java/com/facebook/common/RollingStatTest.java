@@ -0,0 +1,104 @@
+package com.facebook.common;
+
+import com.facebook.common.time.MonotonicClock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link RollingStat}.
+ */
+public class RollingStatTest {
+
+    @Test
+    public void testCurrentSecondIsNotCounted() {
+        FakeClock clock = new FakeClock();
+        RollingStat stat = new RollingStat(clock);
+        stat.incrementStats(5);
+        assertEquals(0, stat.getSum(1));
+        clock.advanceSeconds(1);
+        assertEquals(5, stat.getSum(1));
+    }
+
+    @Test
+    public void testSumOverWindow() {
+        FakeClock clock = new FakeClock();
+        RollingStat stat = new RollingStat(clock);
+        for (int second = 1; second <= 10; second++) {
+            stat.incrementStats(second);
+            clock.advanceSeconds(1);
+        }
+        assertEquals(10, stat.getSum(1));
+        assertEquals(10 + 9 + 8, stat.getSum(3));
+        assertEquals(55, stat.getSum(10));
+        assertEquals(55, stat.getSum(60));
+    }
+
+    @Test
+    public void testOldSecondsExpire() {
+        FakeClock clock = new FakeClock();
+        RollingStat stat = new RollingStat(clock);
+        stat.incrementStats(7);
+        // The slot of that second is reused a full window later.
+        clock.advanceSeconds(60);
+        stat.incrementStats(1);
+        clock.advanceSeconds(1);
+        assertEquals(1, stat.getSum(60));
+    }
+
+    @Test
+    public void testPercentile() {
+        FakeClock clock = new FakeClock();
+        RollingStat stat = new RollingStat(clock);
+        for (int second = 1; second <= 10; second++) {
+            stat.incrementStats(second * 10);
+            clock.advanceSeconds(1);
+        }
+        assertEquals(0, stat.getPercentile(0, 50));
+        assertEquals(10, stat.getPercentile(10, 0));
+        assertEquals(50, stat.getPercentile(10, 50));
+        assertEquals(90, stat.getPercentile(10, 90));
+        assertEquals(100, stat.getPercentile(10, 100));
+        // Seconds without any increments count as 0.
+        assertEquals(0, stat.getPercentile(20, 50));
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws InterruptedException {
+        FakeClock clock = new FakeClock();
+        final RollingStat stat = new RollingStat(clock);
+        final int threads = 4;
+        final int incrementsPerThread = 250000;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < incrementsPerThread; j++) {
+                        stat.incrementStats(1);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        clock.advanceSeconds(1);
+        assertEquals(threads * incrementsPerThread, stat.getSum(1));
+    }
+
+    private static class FakeClock implements MonotonicClock {
+        private volatile long mNowMs = 1000;
+
+        void advanceSeconds(int seconds) {
+            mNowMs += seconds * 1000L;
+        }
+
+        @Override
+        public long now() {
+            return mNowMs;
+        }
+    }
+}
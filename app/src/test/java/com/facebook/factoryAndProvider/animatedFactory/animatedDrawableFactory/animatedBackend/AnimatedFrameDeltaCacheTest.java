@@ -0,0 +1,136 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AnimatedFrameDeltaCache} and its delta codec.
+ */
+public class AnimatedFrameDeltaCacheTest {
+
+    @Test
+    public void testEncodeDeltaOfIdenticalFramesIsEmpty() {
+        int[] frame = newFrame(64, 7);
+        int[] delta = AnimatedFrameDeltaCache.encodeDelta(frame, frame.clone());
+        assertNotNull(delta);
+        assertEquals(0, delta.length);
+    }
+
+    @Test
+    public void testEncodeDeltaRuns() {
+        int[] previous = newFrame(16, 0);
+        int[] current = previous.clone();
+        current[2] = 1;
+        current[3] = 2;
+        current[10] = 3;
+        int[] delta = AnimatedFrameDeltaCache.encodeDelta(previous, current);
+        // [skip 2, 2 pixels], [skip 6 after the first run, 1 pixel]
+        assertArrayEquals(new int[] {2, 2, 1, 2, 6, 1, 3}, delta);
+    }
+
+    @Test
+    public void testEncodeDeltaGivesUpWhenTooLarge() {
+        int[] previous = newFrame(32, 0);
+        int[] current = newFrame(32, 1);
+        assertNull(AnimatedFrameDeltaCache.encodeDelta(previous, current));
+    }
+
+    @Test
+    public void testApplyDeltaRestoresFrame() {
+        int[] previous = newFrame(1000, 0);
+        int[] current = previous.clone();
+        for (int i = 0; i < current.length; i += 37) {
+            current[i] = i;
+        }
+        current[current.length - 1] = 42;
+        int[] delta = AnimatedFrameDeltaCache.encodeDelta(previous, current);
+        assertNotNull(delta);
+
+        int[] decoded = previous.clone();
+        AnimatedFrameDeltaCache.applyDelta(delta, decoded);
+        assertArrayEquals(current, decoded);
+    }
+
+    @Test
+    public void testApplyDeltaGrowsBuffer() {
+        // More runs than the initial capacity of the delta buffer.
+        int[] previous = newFrame(4096, 0);
+        int[] current = previous.clone();
+        for (int i = 0; i < current.length; i += 8) {
+            current[i] = -1;
+        }
+        int[] delta = AnimatedFrameDeltaCache.encodeDelta(previous, current);
+        assertNotNull(delta);
+
+        int[] decoded = previous.clone();
+        AnimatedFrameDeltaCache.applyDelta(delta, decoded);
+        assertArrayEquals(current, decoded);
+    }
+
+    @Test
+    public void testPutAndGetFramesAsDeltas() {
+        AnimatedFrameDeltaCache cache = new AnimatedFrameDeltaCache(3, 1024 * 1024);
+        int[] frame0 = newFrame(256, 0);
+        int[] frame1 = frame0.clone();
+        frame1[5] = 5;
+        int[] frame2 = frame1.clone();
+        frame2[200] = 200;
+
+        assertTrue(cache.put(0, frame0, Bitmap.Config.ARGB_8888, true));
+        assertTrue(cache.put(1, frame1, Bitmap.Config.ARGB_8888, false));
+        assertTrue(cache.put(2, frame2, Bitmap.Config.ARGB_8888, false));
+        assertTrue(cache.isComplete());
+
+        // Out of order, so frame 1 is decoded from the key frame again.
+        assertArrayEquals(frame2, cache.get(2, 256, Bitmap.Config.ARGB_8888));
+        assertArrayEquals(frame0, cache.get(0, 256, Bitmap.Config.ARGB_8888));
+        assertArrayEquals(frame1, cache.get(1, 256, Bitmap.Config.ARGB_8888));
+        // One key frame, two small deltas and the last decoded frame.
+        assertTrue(cache.getSizeInBytes() < 3 * 256 * 4);
+    }
+
+    @Test
+    public void testDoesNotCacheFrameWithoutPredecessor() {
+        AnimatedFrameDeltaCache cache = new AnimatedFrameDeltaCache(3, 1024 * 1024);
+        assertFalse(cache.put(1, newFrame(16, 1), Bitmap.Config.ARGB_8888, false));
+        assertFalse(cache.contains(1));
+    }
+
+    @Test
+    public void testStaysWithinBudget() {
+        // Room for one key frame plus the last decoded frame only.
+        AnimatedFrameDeltaCache cache = new AnimatedFrameDeltaCache(2, 2 * 16 * 4);
+        assertTrue(cache.put(0, newFrame(16, 0), Bitmap.Config.ARGB_8888, true));
+        assertFalse(cache.put(1, newFrame(16, 1), Bitmap.Config.ARGB_8888, true));
+        assertTrue(cache.getSizeInBytes() <= 2 * 16 * 4);
+    }
+
+    @Test
+    public void testRejectsOtherConfigUntilCleared() {
+        AnimatedFrameDeltaCache cache = new AnimatedFrameDeltaCache(2, 1024 * 1024);
+        assertTrue(cache.put(0, newFrame(16, 0), Bitmap.Config.ARGB_8888, true));
+
+        // RGB_565 frames have half the bytes of the ARGB_8888 frames cached so far.
+        int[] rgb565Frame = newFrame(8, 3);
+        assertFalse(cache.put(1, rgb565Frame, Bitmap.Config.RGB_565, true));
+        assertNull(cache.get(0, 8, Bitmap.Config.RGB_565));
+
+        // Switching to RGB_565 clears the cache, after which the new config must be accepted.
+        cache.clear();
+        assertEquals(0, cache.getSizeInBytes());
+        assertTrue(cache.put(0, rgb565Frame, Bitmap.Config.RGB_565, true));
+        assertArrayEquals(rgb565Frame, cache.get(0, 8, Bitmap.Config.RGB_565));
+        assertNull(cache.get(0, 16, Bitmap.Config.ARGB_8888));
+    }
+
+    private static int[] newFrame(int pixelCount, int color) {
+        int[] pixels = new int[pixelCount];
+        Arrays.fill(pixels, color);
+        return pixels;
+    }
+}
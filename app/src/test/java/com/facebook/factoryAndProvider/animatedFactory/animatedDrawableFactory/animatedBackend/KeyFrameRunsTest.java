@@ -0,0 +1,74 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.animatedBackend;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link KeyFrameRuns}.
+ */
+public class KeyFrameRunsTest {
+
+    @Test
+    public void testSplitsAtKeyFrames() {
+        // Key frames at 0, 3 and 7 in an animation of 10 frames.
+        KeyFrameRuns.KeyFrameChecker checker = keyFrames(10, 0, 3, 7);
+        int[] runStarts = new int[10];
+        int[] runLengths = new int[10];
+        int runs = KeyFrameRuns.split(0, 10, 10, checker, runStarts, runLengths);
+        assertEquals(3, runs);
+        assertArrayEquals(new int[] {0, 3, 7}, Arrays.copyOf(runStarts, runs));
+        assertArrayEquals(new int[] {3, 4, 3}, Arrays.copyOf(runLengths, runs));
+    }
+
+    @Test
+    public void testFirstRunStartsAtWindowStart() {
+        KeyFrameRuns.KeyFrameChecker checker = keyFrames(10, 0, 5);
+        int[] runStarts = new int[4];
+        int[] runLengths = new int[4];
+        int runs = KeyFrameRuns.split(2, 4, 10, checker, runStarts, runLengths);
+        assertEquals(2, runs);
+        assertArrayEquals(new int[] {2, 5}, Arrays.copyOf(runStarts, runs));
+        assertArrayEquals(new int[] {3, 1}, Arrays.copyOf(runLengths, runs));
+    }
+
+    @Test
+    public void testWrapsAroundToTheFirstFrame() {
+        KeyFrameRuns.KeyFrameChecker checker = keyFrames(6, 0);
+        int[] runStarts = new int[4];
+        int[] runLengths = new int[4];
+        int runs = KeyFrameRuns.split(4, 4, 6, checker, runStarts, runLengths);
+        assertEquals(2, runs);
+        assertArrayEquals(new int[] {4, 0}, Arrays.copyOf(runStarts, runs));
+        assertArrayEquals(new int[] {2, 2}, Arrays.copyOf(runLengths, runs));
+    }
+
+    @Test
+    public void testEveryFrameAKeyFrame() {
+        KeyFrameRuns.KeyFrameChecker checker = keyFrames(4, 0, 1, 2, 3);
+        int[] runStarts = new int[4];
+        int[] runLengths = new int[4];
+        assertEquals(4, KeyFrameRuns.split(0, 4, 4, checker, runStarts, runLengths));
+        assertArrayEquals(new int[] {1, 1, 1, 1}, runLengths);
+    }
+
+    @Test
+    public void testEmptyWindow() {
+        assertEquals(0, KeyFrameRuns.split(0, 0, 4, keyFrames(4, 0), new int[0], new int[0]));
+    }
+
+    private static KeyFrameRuns.KeyFrameChecker keyFrames(int frameCount, int... keyFrames) {
+        final boolean[] isKeyFrame = new boolean[frameCount];
+        for (int keyFrame : keyFrames) {
+            isKeyFrame[keyFrame] = true;
+        }
+        return new KeyFrameRuns.KeyFrameChecker() {
+            @Override
+            public boolean isKeyFrame(int frameNumber) {
+                return isKeyFrame[frameNumber];
+            }
+        };
+    }
+}
@@ -0,0 +1,232 @@
+package com.facebook.factoryAndProvider.animatedFactory.animatedImageFactory;
+
+import com.facebook.image.imageFormat.DefaultImageFormats;
+import com.facebook.imagepipeline.memory.PooledByteBuffer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AnimatedFrameScanner}.
+ */
+public class AnimatedFrameScannerTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsStaticFormat() {
+        new AnimatedFrameScanner(DefaultImageFormats.JPEG);
+    }
+
+    @Test
+    public void testGifWholeFile() {
+        byte[] gif = newGif(false);
+        AnimatedFrameScanner scanner = new AnimatedFrameScanner(DefaultImageFormats.GIF);
+        assertTrue(scanner.parseMoreData(new ByteArrayPooledByteBuffer(gif, gif.length)));
+        assertEquals(2, scanner.getFrameCount());
+        // Everything but the trailer.
+        assertEquals(gif.length - 1, scanner.getFramesEndOffset());
+        assertTrue(scanner.isEndReached());
+        assertFalse(scanner.isInvalid());
+    }
+
+    @Test
+    public void testGifByteByByte() {
+        byte[] gif = newGif(false);
+        AnimatedFrameScanner scanner = new AnimatedFrameScanner(DefaultImageFormats.GIF);
+        int framesSeen = 0;
+        for (int size = 1; size <= gif.length; size++) {
+            boolean moreFrames = scanner.parseMoreData(new ByteArrayPooledByteBuffer(gif, size));
+            if (moreFrames) {
+                framesSeen++;
+                assertEquals(framesSeen, scanner.getFrameCount());
+                // A frame is complete right after the terminator of its image data.
+                assertEquals(size, scanner.getFramesEndOffset());
+                assertEquals(0, gif[size - 1]);
+            }
+            assertEquals(size == gif.length, scanner.isEndReached());
+        }
+        assertEquals(2, framesSeen);
+    }
+
+    @Test
+    public void testGifWithColorTables() {
+        byte[] gif = newGif(true);
+        AnimatedFrameScanner scanner = new AnimatedFrameScanner(DefaultImageFormats.GIF);
+        scanner.parseMoreData(new ByteArrayPooledByteBuffer(gif, gif.length));
+        assertEquals(2, scanner.getFrameCount());
+        assertEquals(gif.length - 1, scanner.getFramesEndOffset());
+        assertTrue(scanner.isEndReached());
+    }
+
+    @Test
+    public void testNotAGif() {
+        byte[] png = new byte[] {(byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        AnimatedFrameScanner scanner = new AnimatedFrameScanner(DefaultImageFormats.GIF);
+        assertFalse(scanner.parseMoreData(new ByteArrayPooledByteBuffer(png, png.length)));
+        assertTrue(scanner.isInvalid());
+        assertFalse(scanner.parseMoreData(new ByteArrayPooledByteBuffer(png, png.length)));
+    }
+
+    @Test
+    public void testWebPWholeFile() {
+        byte[] webp = newWebP();
+        AnimatedFrameScanner scanner = new AnimatedFrameScanner(DefaultImageFormats.WEBP_ANIMATED);
+        assertTrue(scanner.parseMoreData(new ByteArrayPooledByteBuffer(webp, webp.length)));
+        assertEquals(2, scanner.getFrameCount());
+        assertEquals(webp.length, scanner.getFramesEndOffset());
+        assertTrue(scanner.isEndReached());
+        assertFalse(scanner.isInvalid());
+    }
+
+    @Test
+    public void testWebPByteByByte() {
+        byte[] webp = newWebP();
+        // RIFF header, VP8X and ANIM chunks, then the first ANMF chunk padded to an even size.
+        int firstFrameEnd = 12 + 18 + 14 + 14;
+        AnimatedFrameScanner scanner = new AnimatedFrameScanner(DefaultImageFormats.WEBP_ANIMATED);
+        for (int size = 1; size <= webp.length; size++) {
+            boolean moreFrames = scanner.parseMoreData(new ByteArrayPooledByteBuffer(webp, size));
+            assertEquals(size == firstFrameEnd || size == webp.length, moreFrames);
+            if (size >= firstFrameEnd && size < webp.length) {
+                assertEquals(1, scanner.getFrameCount());
+                assertEquals(firstFrameEnd, scanner.getFramesEndOffset());
+            }
+            assertEquals(size == webp.length, scanner.isEndReached());
+        }
+        assertEquals(2, scanner.getFrameCount());
+    }
+
+    @Test
+    public void testNotAWebP() {
+        byte[] riff = "RIFF\u0004\u0000\u0000\u0000WAVE".getBytes();
+        AnimatedFrameScanner scanner = new AnimatedFrameScanner(DefaultImageFormats.WEBP_ANIMATED);
+        assertFalse(scanner.parseMoreData(new ByteArrayPooledByteBuffer(riff, riff.length)));
+        assertTrue(scanner.isInvalid());
+    }
+
+    /**
+     * A GIF with a graphic control extension and two frames, each with two data sub-blocks.
+     */
+    private static byte[] newGif(boolean withColorTables) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAscii(out, "GIF89a");
+        // Logical screen descriptor: 2x2, a global color table of 2 entries if asked for.
+        writeBytes(out, 2, 0, 2, 0, withColorTables ? 0x80 : 0, 0, 0);
+        if (withColorTables) {
+            writeBytes(out, new byte[6]);
+        }
+        for (int frame = 0; frame < 2; frame++) {
+            // Graphic control extension.
+            writeBytes(out, 0x21, 0xF9, 4, 0, 10, 0, 0, 0);
+            // Image descriptor, a local color table of 4 entries if asked for.
+            writeBytes(out, 0x2C, 0, 0, 0, 0, 2, 0, 2, 0, withColorTables ? 0x81 : 0);
+            if (withColorTables) {
+                writeBytes(out, new byte[12]);
+            }
+            // LZW minimum code size, two sub-blocks and the terminator.
+            writeBytes(out, 2, 2, 0x4C, 0x01, 1, 0x05, 0);
+        }
+        writeBytes(out, 0x3B);
+        return out.toByteArray();
+    }
+
+    /**
+     * An animated WebP with two frames, the first of an odd size.
+     */
+    private static byte[] newWebP() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeAscii(body, "WEBP");
+        writeChunk(body, "VP8X", 10);
+        writeChunk(body, "ANIM", 6);
+        writeChunk(body, "ANMF", 5);
+        writeChunk(body, "ANMF", 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAscii(out, "RIFF");
+        writeLittleEndianInt(out, body.size());
+        writeBytes(out, body.toByteArray());
+        return out.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String fourCc, int size) {
+        writeAscii(out, fourCc);
+        writeLittleEndianInt(out, size);
+        writeBytes(out, new byte[size + (size & 1)]);
+    }
+
+    private static void writeLittleEndianInt(ByteArrayOutputStream out, int value) {
+        writeBytes(out, value, value >> 8, value >> 16, value >> 24);
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        writeBytes(out, text.getBytes());
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * The first bytes of an array, as if only they had arrived so far.
+     */
+    private static class ByteArrayPooledByteBuffer implements PooledByteBuffer {
+
+        private final byte[] mBytes;
+        private final int mSize;
+
+        private ByteArrayPooledByteBuffer(byte[] bytes, int size) {
+            mBytes = bytes;
+            mSize = size;
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public byte read(int offset) {
+            if (offset >= mSize) {
+                throw new ArrayIndexOutOfBoundsException(offset);
+            }
+            return mBytes[offset];
+        }
+
+        @Override
+        public void read(int offset, byte[] buffer, int bufferOffset, int length) {
+            System.arraycopy(mBytes, offset, buffer, bufferOffset, length);
+        }
+
+        @Override
+        public boolean hasNativePtr() {
+            return false;
+        }
+
+        @Override
+        public long getNativePtr() {
+            return 0;
+        }
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.facebook.image;
+
+import com.facebook.image.imageFormat.DefaultImageFormats;
+import com.facebook.image.imageFormat.ImageFormat;
+import com.facebook.pool.ByteArrayPool;
+import com.facebook.trimmable.MemoryTrimType;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ImageMetadataProber}.
+ */
+public class ImageMetadataProberTest {
+
+    @Test
+    public void testJpeg() {
+        byte[] jpeg = newJpeg(false);
+        ImageMetadataProber prober = new ImageMetadataProber(jpeg, jpeg.length);
+        assertEquals(DefaultImageFormats.JPEG, prober.getImageFormat());
+        assertEquals(640, prober.getWidth());
+        assertEquals(480, prober.getHeight());
+        // No APP1 before the scan, so the image isn't rotated.
+        assertEquals(0, prober.getRotationAngle());
+        assertEquals(1, prober.getFrameCount());
+        assertFalse(prober.isAnimated());
+    }
+
+    @Test
+    public void testJpegWithExifOrientation() {
+        byte[] jpeg = newJpeg(true);
+        ImageMetadataProber prober = new ImageMetadataProber(jpeg, jpeg.length);
+        assertEquals(640, prober.getWidth());
+        assertEquals(480, prober.getHeight());
+        assertEquals(90, prober.getRotationAngle());
+    }
+
+    @Test
+    public void testJpegCutBeforeSize() {
+        byte[] jpeg = newJpeg(true);
+        // Ends within the APP1 segment.
+        ImageMetadataProber prober = new ImageMetadataProber(jpeg, 12);
+        assertEquals(DefaultImageFormats.JPEG, prober.getImageFormat());
+        assertFalse(prober.hasDimensions());
+        assertEquals(EncodedImage.UNKNOWN_ROTATION_ANGLE, prober.getRotationAngle());
+    }
+
+    @Test
+    public void testPng() {
+        byte[] png = newPng();
+        ImageMetadataProber prober = new ImageMetadataProber(png, png.length);
+        assertEquals(DefaultImageFormats.PNG, prober.getImageFormat());
+        assertEquals(300, prober.getWidth());
+        assertEquals(70000, prober.getHeight());
+        assertEquals(0, prober.getRotationAngle());
+        assertEquals(1, prober.getFrameCount());
+        assertFalse(prober.isAnimated());
+    }
+
+    @Test
+    public void testPngCutBeforeIhdr() {
+        byte[] png = newPng();
+        ImageMetadataProber prober = new ImageMetadataProber(png, 20);
+        assertEquals(DefaultImageFormats.PNG, prober.getImageFormat());
+        assertFalse(prober.hasDimensions());
+        assertEquals(ImageMetadataProber.UNKNOWN_FRAME_COUNT, prober.getFrameCount());
+    }
+
+    @Test
+    public void testAnimatedGif() {
+        byte[] gif = newGif(true, 2);
+        ImageMetadataProber prober = new ImageMetadataProber(gif, gif.length);
+        assertEquals(DefaultImageFormats.GIF, prober.getImageFormat());
+        assertEquals(258, prober.getWidth());
+        assertEquals(2, prober.getHeight());
+        assertEquals(2, prober.getFrameCount());
+        assertTrue(prober.isAnimated());
+    }
+
+    @Test
+    public void testGifWithOneFrameAndLoopExtension() {
+        byte[] gif = newGif(true, 1);
+        ImageMetadataProber prober = new ImageMetadataProber(gif, gif.length);
+        assertEquals(1, prober.getFrameCount());
+        assertTrue(prober.isAnimated());
+    }
+
+    @Test
+    public void testStaticGif() {
+        byte[] gif = newGif(false, 1);
+        ImageMetadataProber prober = new ImageMetadataProber(gif, gif.length);
+        assertEquals(1, prober.getFrameCount());
+        assertFalse(prober.isAnimated());
+    }
+
+    @Test
+    public void testGifWithoutTrailer() {
+        byte[] gif = newGif(false, 2);
+        ImageMetadataProber prober = new ImageMetadataProber(gif, gif.length - 1);
+        assertEquals(258, prober.getWidth());
+        assertEquals(ImageMetadataProber.UNKNOWN_FRAME_COUNT, prober.getFrameCount());
+        // Both frames were seen even though the end wasn't.
+        assertTrue(prober.isAnimated());
+    }
+
+    @Test
+    public void testAnimatedWebP() {
+        byte[] webp = newAnimatedWebP(3);
+        ImageMetadataProber prober = new ImageMetadataProber(webp, webp.length);
+        assertEquals(DefaultImageFormats.WEBP_ANIMATED, prober.getImageFormat());
+        assertEquals(400, prober.getWidth());
+        assertEquals(70000, prober.getHeight());
+        assertEquals(0, prober.getRotationAngle());
+        assertEquals(3, prober.getFrameCount());
+        assertTrue(prober.isAnimated());
+    }
+
+    @Test
+    public void testAnimatedWebPWithOneFrame() {
+        byte[] webp = newAnimatedWebP(1);
+        ImageMetadataProber prober = new ImageMetadataProber(webp, webp.length);
+        assertEquals(1, prober.getFrameCount());
+        assertFalse(prober.isAnimated());
+    }
+
+    @Test
+    public void testAnimatedWebPCutBeforeEnd() {
+        byte[] webp = newAnimatedWebP(3);
+        // Ends within the header of the last ANMF chunk, which is followed by 18 bytes of data.
+        ImageMetadataProber prober = new ImageMetadataProber(webp, webp.length - 18 - 4);
+        assertEquals(400, prober.getWidth());
+        assertEquals(ImageMetadataProber.UNKNOWN_FRAME_COUNT, prober.getFrameCount());
+        assertTrue(prober.isAnimated());
+    }
+
+    @Test
+    public void testLosslessWebP() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeAscii(body, "WEBP");
+        writeAscii(body, "VP8L");
+        writeLittleEndianInt(body, 5);
+        // Signature, then width - 1 and height - 1 in 14 bits each.
+        writeBytes(body, 0x2F);
+        writeLittleEndianInt(body, (99 - 1) | (77 - 1) << 14);
+        writeBytes(body, 0);
+        byte[] webp = newRiff(body);
+        ImageMetadataProber prober = new ImageMetadataProber(webp, webp.length);
+        assertEquals(DefaultImageFormats.WEBP_LOSSLESS, prober.getImageFormat());
+        assertEquals(99, prober.getWidth());
+        assertEquals(77, prober.getHeight());
+        assertEquals(1, prober.getFrameCount());
+        assertFalse(prober.isAnimated());
+    }
+
+    @Test
+    public void testUnknownFormat() {
+        byte[] header = "not an image at all".getBytes();
+        ImageMetadataProber prober = new ImageMetadataProber(header, header.length);
+        assertEquals(ImageFormat.UNKNOWN, prober.getImageFormat());
+        assertFalse(prober.hasDimensions());
+        assertEquals(EncodedImage.UNKNOWN_ROTATION_ANGLE, prober.getRotationAngle());
+        assertEquals(ImageMetadataProber.UNKNOWN_FRAME_COUNT, prober.getFrameCount());
+    }
+
+    @Test
+    public void testProbeNullStream() {
+        ImageMetadataProber prober = ImageMetadataProber.probe(null, null);
+        assertEquals(ImageFormat.UNKNOWN, prober.getImageFormat());
+        assertFalse(prober.hasDimensions());
+    }
+
+    @Test
+    public void testProbeReleasesPooledHeader() {
+        byte[] png = newPng();
+        OneArrayPool pool = new OneArrayPool();
+        ImageMetadataProber prober = ImageMetadataProber.probe(new ByteArrayInputStream(png), pool);
+        assertEquals(DefaultImageFormats.PNG, prober.getImageFormat());
+        assertEquals(300, prober.getWidth());
+        assertEquals(1, pool.mGetCount);
+        assertEquals(1, pool.mReleaseCount);
+    }
+
+    /**
+     * A JPEG of 640x480 up to the start of its scan, with an EXIF orientation of 6 if asked for.
+     */
+    private static byte[] newJpeg(boolean withExif) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeBytes(out, 0xFF, 0xD8);
+        if (withExif) {
+            ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+            writeAscii(tiff, "MM");
+            writeBytes(tiff, 0, 0x2A, 0, 0, 0, 8);
+            // One IFD entry: orientation, SHORT, count 1, value 6.
+            writeBytes(tiff, 0, 1);
+            writeBytes(tiff, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0);
+            writeBytes(tiff, 0, 0, 0, 0);
+            writeBytes(out, 0xFF, 0xE1);
+            writeBigEndianShort(out, 2 + 6 + tiff.size());
+            writeAscii(out, "Exif");
+            writeBytes(out, 0, 0);
+            writeBytes(out, tiff.toByteArray());
+        }
+        // SOF0: length, precision, height, width, one component.
+        writeBytes(out, 0xFF, 0xC0);
+        writeBigEndianShort(out, 11);
+        writeBytes(out, 8);
+        writeBigEndianShort(out, 480);
+        writeBigEndianShort(out, 640);
+        writeBytes(out, 1, 1, 0x11, 0);
+        writeBytes(out, 0xFF, 0xDA);
+        writeBigEndianShort(out, 8);
+        writeBytes(out, 1, 1, 0, 0, 0x3F, 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * A PNG of 300x70000 up to the end of its IHDR chunk.
+     */
+    private static byte[] newPng() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeBytes(out, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A);
+        writeBigEndianInt(out, 13);
+        writeAscii(out, "IHDR");
+        writeBigEndianInt(out, 300);
+        writeBigEndianInt(out, 70000);
+        writeBytes(out, 8, 6, 0, 0, 0);
+        // CRC, not checked
+        writeBigEndianInt(out, 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * A GIF of 258x2 with a global color table, one extension and a local color table per frame.
+     */
+    private static byte[] newGif(boolean withLoopExtension, int frameCount) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAscii(out, "GIF89a");
+        writeBytes(out, 2, 1, 2, 0, 0x80, 0, 0);
+        writeBytes(out, new byte[6]);
+        if (withLoopExtension) {
+            writeBytes(out, 0x21, 0xFF, 11);
+            writeAscii(out, "NETSCAPE2.0");
+            writeBytes(out, 3, 1, 0, 0, 0);
+        }
+        for (int frame = 0; frame < frameCount; frame++) {
+            writeBytes(out, 0x21, 0xF9, 4, 0, 10, 0, 0, 0);
+            writeBytes(out, 0x2C, 0, 0, 0, 0, 2, 1, 2, 0, 0x81);
+            writeBytes(out, new byte[12]);
+            writeBytes(out, 2, 2, 0x4C, 0x01, 1, 0x05, 0);
+        }
+        writeBytes(out, 0x3B);
+        return out.toByteArray();
+    }
+
+    /**
+     * An animated WebP of 400x70000 with an ANIM chunk and the given number of odd sized frames.
+     */
+    private static byte[] newAnimatedWebP(int frameCount) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeAscii(body, "WEBP");
+        writeAscii(body, "VP8X");
+        writeLittleEndianInt(body, 10);
+        // Animation flag, reserved, then the canvas size minus one in 3 bytes each.
+        writeBytes(body, 0x02, 0, 0, 0);
+        writeLittleEndianInt24(body, 400 - 1);
+        writeLittleEndianInt24(body, 70000 - 1);
+        writeChunk(body, "ANIM", 6);
+        for (int frame = 0; frame < frameCount; frame++) {
+            writeChunk(body, "ANMF", 17);
+        }
+        return newRiff(body);
+    }
+
+    private static byte[] newRiff(ByteArrayOutputStream body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAscii(out, "RIFF");
+        writeLittleEndianInt(out, body.size());
+        writeBytes(out, body.toByteArray());
+        return out.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String fourCc, int size) {
+        writeAscii(out, fourCc);
+        writeLittleEndianInt(out, size);
+        writeBytes(out, new byte[size + (size & 1)]);
+    }
+
+    private static void writeBigEndianShort(ByteArrayOutputStream out, int value) {
+        writeBytes(out, value >> 8, value);
+    }
+
+    private static void writeBigEndianInt(ByteArrayOutputStream out, int value) {
+        writeBytes(out, value >> 24, value >> 16, value >> 8, value);
+    }
+
+    private static void writeLittleEndianInt24(ByteArrayOutputStream out, int value) {
+        writeBytes(out, value, value >> 8, value >> 16);
+    }
+
+    private static void writeLittleEndianInt(ByteArrayOutputStream out, int value) {
+        writeBytes(out, value, value >> 8, value >> 16, value >> 24);
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        writeBytes(out, text.getBytes());
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Lends the same array every time and counts how often it was lent and given back.
+     */
+    private static class OneArrayPool implements ByteArrayPool {
+
+        private final byte[] mArray = new byte[ImageMetadataProber.PROBE_SIZE];
+        private int mGetCount;
+        private int mReleaseCount;
+
+        @Override
+        public byte[] get(int size) {
+            assertTrue(size <= mArray.length);
+            mGetCount++;
+            return mArray;
+        }
+
+        @Override
+        public void release(byte[] value) {
+            assertSame(mArray, value);
+            mReleaseCount++;
+        }
+
+        @Override
+        public void trim(MemoryTrimType trimType) {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.facebook.image.imageDecode;
+
+import com.facebook.image.EncodedImage;
+import com.facebook.imagepipeline.nativecode.JpegTranscoder;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link DownsampleUtil}.
+ */
+public class DownsampleUtilTest {
+
+    @Test
+    public void testDetermineSampleSize() {
+        assertEquals(4, DownsampleUtil.determineSampleSize(
+                new ResizeOptions(600, 600),
+                newEncodedImage(4000, 3000, 0)));
+        // Half the size covers it exactly.
+        assertEquals(2, DownsampleUtil.determineSampleSize(
+                new ResizeOptions(2000, 1500),
+                newEncodedImage(4000, 3000, 0)));
+        assertEquals(1, DownsampleUtil.determineSampleSize(
+                new ResizeOptions(2001, 1500),
+                newEncodedImage(4000, 3000, 0)));
+    }
+
+    @Test
+    public void testDetermineSampleSizeWithRotation() {
+        ResizeOptions resizeOptions = new ResizeOptions(1000, 1800);
+        assertEquals(1, DownsampleUtil.determineSampleSize(
+                resizeOptions,
+                newEncodedImage(4000, 3000, 0)));
+        assertEquals(1, DownsampleUtil.determineSampleSize(
+                resizeOptions,
+                newEncodedImage(4000, 3000, 180)));
+        // Sideways, the image is 3000x4000.
+        assertEquals(2, DownsampleUtil.determineSampleSize(
+                resizeOptions,
+                newEncodedImage(4000, 3000, 90)));
+        assertEquals(2, DownsampleUtil.determineSampleSize(
+                resizeOptions,
+                newEncodedImage(4000, 3000, 270)));
+    }
+
+    @Test
+    public void testDetermineSampleSizeOfUnknownSize() {
+        assertEquals(EncodedImage.DEFAULT_SAMPLE_SIZE, DownsampleUtil.determineSampleSize(
+                new ResizeOptions(10, 10),
+                newEncodedImage(EncodedImage.UNKNOWN_WIDTH, EncodedImage.UNKNOWN_HEIGHT, 0)));
+    }
+
+    @Test
+    public void testDetermineScaleNumerator() {
+        assertEquals(6, DownsampleUtil.determineScaleNumerator(
+                new ResizeOptions(720, 1280),
+                newEncodedImage(1080, 1920, 0)));
+        assertEquals(JpegTranscoder.MIN_SCALE_NUMERATOR, DownsampleUtil.determineScaleNumerator(
+                new ResizeOptions(100, 100),
+                newEncodedImage(1080, 1920, 0)));
+        // Covering it takes the full size.
+        assertEquals(JpegTranscoder.SCALE_DENOMINATOR, DownsampleUtil.determineScaleNumerator(
+                new ResizeOptions(1080, 1920),
+                newEncodedImage(1080, 1920, 0)));
+    }
+
+    @Test
+    public void testDetermineScaleNumeratorWithRotation() {
+        // Sideways, 1920 has to cover 1280 and 1080 has to cover 720, so 6/8 still does.
+        assertEquals(6, DownsampleUtil.determineScaleNumerator(
+                new ResizeOptions(1280, 720),
+                newEncodedImage(1080, 1920, 90)));
+        // Without the rotation, 1080 has to cover 1280.
+        assertEquals(JpegTranscoder.SCALE_DENOMINATOR, DownsampleUtil.determineScaleNumerator(
+                new ResizeOptions(1280, 720),
+                newEncodedImage(1080, 1920, 0)));
+    }
+
+    @Test
+    public void testDetermineScaleNumeratorOfUnknownSize() {
+        assertEquals(JpegTranscoder.SCALE_DENOMINATOR, DownsampleUtil.determineScaleNumerator(
+                new ResizeOptions(10, 10),
+                newEncodedImage(EncodedImage.UNKNOWN_WIDTH, EncodedImage.UNKNOWN_HEIGHT, 0)));
+    }
+
+    @Test
+    public void testIsTranscodingSmaller() {
+        assertTrue(DownsampleUtil.isTranscodingSmaller(7, 1));
+        assertTrue(DownsampleUtil.isTranscodingSmaller(3, 2));
+        assertFalse(DownsampleUtil.isTranscodingSmaller(4, 2));
+        assertFalse(DownsampleUtil.isTranscodingSmaller(JpegTranscoder.SCALE_DENOMINATOR, 1));
+    }
+
+    @Test
+    public void testShouldTranscode() {
+        // 5/8 of the side is less than half the pixels.
+        assertTrue(DownsampleUtil.shouldTranscode(5, 1));
+        assertTrue(DownsampleUtil.shouldTranscode(1, 4));
+        // Smaller, but not enough to pay for a lossy decode and encode.
+        assertFalse(DownsampleUtil.shouldTranscode(6, 1));
+        assertFalse(DownsampleUtil.shouldTranscode(3, 2));
+        assertFalse(DownsampleUtil.shouldTranscode(4, 2));
+    }
+
+    @Test
+    public void testScale() {
+        assertEquals(810, DownsampleUtil.scale(1080, 6));
+        assertEquals(1080, DownsampleUtil.scale(1080, JpegTranscoder.SCALE_DENOMINATOR));
+        // Rounded up
+        assertEquals(126, DownsampleUtil.scale(1001, 1));
+        assertEquals(1, DownsampleUtil.scale(1, 1));
+    }
+
+    private static EncodedImage newEncodedImage(int width, int height, int rotationAngle) {
+        EncodedImage encodedImage = new EncodedImage(new Supplier<FileInputStream>() {
+            @Override
+            public FileInputStream get() {
+                return null;
+            }
+        });
+        encodedImage.setWidth(width);
+        encodedImage.setHeight(height);
+        encodedImage.setRotationAngle(rotationAngle);
+        return encodedImage;
+    }
+}
@@ -0,0 +1,91 @@
+package com.facebook.pool;
+
+import android.util.SparseIntArray;
+
+import com.facebook.pool.poolParams.PoolParams;
+import com.facebook.pool.poolUtil.NoOpPoolStatsTracker;
+import com.facebook.trimmable.NoOpMemoryTrimmableRegistry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the in-use accounting of {@link BasePool} across retunes in adaptive mode.
+ */
+public class BasePoolTest {
+
+    private static final int RETUNE_INTERVAL = 200;
+
+    @Test
+    public void testRetuneDropsBucket() {
+        GenericByteArrayPool pool = newAdaptivePool();
+        byte[] held = pool.get(4096);
+        assertEquals(1, pool.getBucket(4096).getInUseCount());
+
+        getAndRelease(pool, 1024, RETUNE_INTERVAL - 1);
+        // 4096 got half a percent of the requests
+        assertNull(pool.getBucket(4096));
+        assertNotNull(pool.getBucket(1024));
+
+        pool.release(held);
+        assertEquals(0, pool.getBucket(1024).getInUseCount());
+    }
+
+    @Test
+    public void testRetuneAddsDroppedBucketBack() {
+        GenericByteArrayPool pool = newAdaptivePool();
+        byte[] held = pool.get(4096);
+        getAndRelease(pool, 1024, RETUNE_INTERVAL - 1);
+        assertNull(pool.getBucket(4096));
+
+        getAndRelease(pool, 4096, RETUNE_INTERVAL);
+        assertNotNull(pool.getBucket(4096));
+        // The held array is still counted in the bucket that came back.
+        assertEquals(1, pool.getBucket(4096).getInUseCount());
+
+        pool.release(held);
+        assertEquals(0, pool.getBucket(4096).getInUseCount());
+    }
+
+    @Test
+    public void testRetuneAddsBucketForValueAllocatedWithout() {
+        GenericByteArrayPool pool = newAdaptivePool();
+        getAndRelease(pool, 1024, RETUNE_INTERVAL);
+        assertNull(pool.getBucket(8192));
+
+        byte[] held = pool.get(8192);
+        getAndRelease(pool, 8192, RETUNE_INTERVAL - 1);
+        assertNotNull(pool.getBucket(8192));
+        assertEquals(1, pool.getBucket(8192).getInUseCount());
+
+        pool.release(held);
+        assertEquals(0, pool.getBucket(8192).getInUseCount());
+        assertEquals(0, pool.getBucket(1024).getInUseCount());
+    }
+
+    private static void getAndRelease(GenericByteArrayPool pool, int size, int times) {
+        for (int i = 0; i < times; i++) {
+            pool.release(pool.get(size));
+        }
+    }
+
+    private static GenericByteArrayPool newAdaptivePool() {
+        SparseIntArray bucketSizes = new SparseIntArray();
+        bucketSizes.put(1024, 4);
+        bucketSizes.put(4096, 4);
+        PoolParams poolParams = new PoolParams(
+                64 * 1024,
+                1024 * 1024,
+                bucketSizes,
+                1024,
+                64 * 1024,
+                PoolParams.IGNORE_THREADS,
+                false,
+                RETUNE_INTERVAL);
+        return new GenericByteArrayPool(
+                NoOpMemoryTrimmableRegistry.getInstance(),
+                poolParams,
+                NoOpPoolStatsTracker.getInstance());
+    }
+}
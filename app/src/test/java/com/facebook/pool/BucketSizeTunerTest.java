@@ -0,0 +1,67 @@
+package com.facebook.pool;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the request recording of {@link BucketSizeTuner}.
+ */
+public class BucketSizeTunerTest {
+
+    @Test
+    public void testSignalsOncePerInterval() {
+        BucketSizeTuner tuner = new BucketSizeTuner(10);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 9; i++) {
+                assertFalse(tuner.recordRequest(1024));
+            }
+            assertTrue(tuner.recordRequest(1024));
+        }
+    }
+
+    @Test
+    public void testIgnoresNonPositiveSizes() {
+        BucketSizeTuner tuner = new BucketSizeTuner(1);
+        assertFalse(tuner.recordRequest(0));
+        assertFalse(tuner.recordRequest(-1));
+        assertTrue(tuner.recordRequest(1));
+    }
+
+    @Test
+    public void testAcceptsLargestSize() {
+        BucketSizeTuner tuner = new BucketSizeTuner(1);
+        assertTrue(tuner.recordRequest(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testConcurrentRequestsSignalOncePerInterval() throws InterruptedException {
+        final int interval = 100;
+        final int threads = 4;
+        final int requestsPerThread = 25000;
+        final BucketSizeTuner tuner = new BucketSizeTuner(interval);
+        final AtomicInteger signals = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (tuner.recordRequest(4096 + j % 1000)) {
+                            signals.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        // Requests racing with a reset may be counted towards the next interval, never twice.
+        assertTrue(signals.get() <= threads * requestsPerThread / interval);
+        assertTrue(signals.get() >= threads * requestsPerThread / interval / 2);
+    }
+}
@@ -0,0 +1,64 @@
+package com.facebook.pool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SizeClasses}.
+ */
+public class SizeClassesTest {
+
+    @Test
+    public void testSmallSizesAreExact() {
+        for (int size = 1; size <= SizeClasses.MAX_EXACT_SIZE; size++) {
+            assertEquals(size, SizeClasses.getClassIndex(size));
+            assertEquals(size, SizeClasses.getClassSize(size));
+            assertEquals(size, SizeClasses.roundUp(size));
+            assertEquals(size, SizeClasses.roundDown(size));
+        }
+    }
+
+    @Test
+    public void testFourClassesPerPowerOfTwo() {
+        assertEquals(10, SizeClasses.roundUp(9));
+        assertEquals(10, SizeClasses.roundUp(10));
+        assertEquals(12, SizeClasses.roundUp(11));
+        assertEquals(14, SizeClasses.roundUp(13));
+        assertEquals(16, SizeClasses.roundUp(16));
+        assertEquals(1280, SizeClasses.roundUp(1025));
+        assertEquals(1024, SizeClasses.roundDown(1279));
+        assertEquals(1280, SizeClasses.roundDown(1280));
+    }
+
+    @Test
+    public void testClassIndicesRoundTrip() {
+        for (int classIndex = 1; classIndex < SizeClasses.CLASSES; classIndex++) {
+            int classSize = SizeClasses.getClassSize(classIndex);
+            assertEquals(classIndex, SizeClasses.getClassIndex(classSize));
+            assertTrue(SizeClasses.getClassSize(classIndex - 1) < classSize);
+        }
+    }
+
+    @Test
+    public void testCoversAllPositiveInts() {
+        int lastIndex = SizeClasses.CLASSES - 1;
+        assertEquals(lastIndex, SizeClasses.getClassIndex(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, SizeClasses.getClassSize(lastIndex));
+        assertEquals(Integer.MAX_VALUE, SizeClasses.roundUp(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testRoundingWastesAtMostAQuarter() {
+        for (int size = 1; size > 0 && size < Integer.MAX_VALUE / 2; size = size * 3 / 2 + 1) {
+            for (int offset = 0; offset < 3; offset++) {
+                int value = size + offset;
+                int roundedUp = SizeClasses.roundUp(value);
+                int roundedDown = SizeClasses.roundDown(value);
+                assertTrue(roundedUp >= value);
+                assertTrue(roundedDown <= value);
+                assertTrue((long) roundedUp * 4 <= (long) value * 5 + 4);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.facebook.pool.poolUtil;
+
+import com.facebook.common.time.MonotonicClock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CountingPoolStatsTracker}.
+ */
+public class CountingPoolStatsTrackerTest {
+
+    @Test
+    public void testEmptySnapshot() {
+        CountingPoolStatsTracker.Snapshot snapshot =
+                new CountingPoolStatsTracker("test", new FakeClock()).getSnapshot();
+        assertEquals("test", snapshot.name);
+        assertTrue(snapshot.buckets.isEmpty());
+        assertEquals(0, snapshot.bytesAllocated);
+        assertEquals(0, snapshot.bytesReused);
+        assertEquals(0f, snapshot.allocationsPerSecond, 0f);
+        assertEquals(0f, snapshot.overflow.getReuseRatio(), 0f);
+        // No pool was set.
+        assertNull(snapshot.poolStats);
+    }
+
+    @Test
+    public void testBucketCounters() {
+        CountingPoolStatsTracker tracker = new CountingPoolStatsTracker("test", new FakeClock());
+        tracker.onAlloc(4096);
+        tracker.onValueRelease(4096);
+        tracker.onValueReuse(4096);
+        tracker.onValueReuse(4096);
+        tracker.onValueReuse(4096);
+        tracker.onFree(4096);
+
+        CountingPoolStatsTracker.BucketSnapshot bucket = tracker.getSnapshot().buckets.get(0);
+        assertEquals(4096, bucket.size);
+        assertEquals(3, bucket.reused);
+        assertEquals(1, bucket.allocated);
+        assertEquals(1, bucket.released);
+        assertEquals(1, bucket.freed);
+        assertEquals(0.75f, bucket.getReuseRatio(), 0f);
+    }
+
+    @Test
+    public void testBucketsSortedBySize() {
+        CountingPoolStatsTracker tracker = new CountingPoolStatsTracker("test", new FakeClock());
+        tracker.onAlloc(16384);
+        tracker.onAlloc(1024);
+        tracker.onAlloc(4096);
+        tracker.onValueReuse(1024);
+
+        CountingPoolStatsTracker.Snapshot snapshot = tracker.getSnapshot();
+        assertEquals(3, snapshot.buckets.size());
+        assertEquals(1024, snapshot.buckets.get(0).size);
+        assertEquals(4096, snapshot.buckets.get(1).size);
+        assertEquals(16384, snapshot.buckets.get(2).size);
+        assertEquals(0.5f, snapshot.buckets.get(0).getReuseRatio(), 0f);
+        assertEquals(0f, snapshot.buckets.get(1).getReuseRatio(), 0f);
+    }
+
+    @Test
+    public void testBytesAllocatedAndReused() {
+        CountingPoolStatsTracker tracker = new CountingPoolStatsTracker("test", new FakeClock());
+        tracker.onAlloc(1024);
+        tracker.onAlloc(4096);
+        tracker.onValueReuse(4096);
+        tracker.onValueReuse(4096);
+        // Neither allocates nor reuses.
+        tracker.onValueRelease(4096);
+        tracker.onFree(1024);
+
+        CountingPoolStatsTracker.Snapshot snapshot = tracker.getSnapshot();
+        assertEquals(1024 + 4096, snapshot.bytesAllocated);
+        assertEquals(2 * 4096, snapshot.bytesReused);
+    }
+
+    @Test
+    public void testCapHits() {
+        CountingPoolStatsTracker tracker = new CountingPoolStatsTracker("test", new FakeClock());
+        tracker.onSoftCapReached();
+        tracker.onSoftCapReached();
+        tracker.onHardCapReached();
+
+        CountingPoolStatsTracker.Snapshot snapshot = tracker.getSnapshot();
+        assertEquals(2, snapshot.softCapHits);
+        assertEquals(1, snapshot.hardCapHits);
+    }
+
+    @Test
+    public void testAllocationRate() {
+        FakeClock clock = new FakeClock();
+        CountingPoolStatsTracker tracker = new CountingPoolStatsTracker("test", clock);
+        for (int second = 0; second < 10; second++) {
+            for (int i = 0; i < 5; i++) {
+                tracker.onAlloc(1024);
+            }
+            // Reuses aren't allocations.
+            tracker.onValueReuse(1024);
+            clock.advanceSeconds(1);
+        }
+        assertEquals(5f, tracker.getSnapshot().allocationsPerSecond, 0f);
+
+        // The allocations of the current second aren't counted yet.
+        tracker.onAlloc(1024);
+        assertEquals(5f, tracker.getSnapshot().allocationsPerSecond, 0f);
+
+        // Seconds without allocations bring the rate down.
+        clock.advanceSeconds(5);
+        assertEquals((5 * 5 + 1) / 10f, tracker.getSnapshot().allocationsPerSecond, 0f);
+    }
+
+    @Test
+    public void testSizesBeyondCapGoToOverflow() {
+        CountingPoolStatsTracker tracker = new CountingPoolStatsTracker("test", new FakeClock());
+        int maxTrackedSizes = CountingPoolStatsTracker.MAX_TRACKED_SIZES;
+        for (int i = 1; i <= maxTrackedSizes; i++) {
+            tracker.onAlloc(i * 100);
+        }
+        // Exact sizes of bitmaps, none seen before.
+        tracker.onAlloc(123457);
+        tracker.onValueReuse(123457);
+        tracker.onAlloc(99999);
+        tracker.onFree(99999);
+        // Sizes that have counters of their own keep them.
+        tracker.onValueReuse(100);
+
+        CountingPoolStatsTracker.Snapshot snapshot = tracker.getSnapshot();
+        assertEquals(maxTrackedSizes, snapshot.buckets.size());
+        assertEquals(1, snapshot.buckets.get(0).reused);
+        assertEquals(0, snapshot.overflow.size);
+        assertEquals(2, snapshot.overflow.allocated);
+        assertEquals(1, snapshot.overflow.reused);
+        assertEquals(1, snapshot.overflow.freed);
+        assertEquals(1 / 3f, snapshot.overflow.getReuseRatio(), 1e-6f);
+        // The totals include the overflow.
+        assertEquals(123457 + 99999 + 100L * maxTrackedSizes * (maxTrackedSizes + 1) / 2,
+                snapshot.bytesAllocated);
+        assertTrue(snapshot.toString().contains("overflow"));
+    }
+
+    private static class FakeClock implements MonotonicClock {
+        private volatile long mNowMs = 1000;
+
+        void advanceSeconds(int seconds) {
+            mNowMs += seconds * 1000L;
+        }
+
+        @Override
+        public long now() {
+            return mNowMs;
+        }
+    }
+}
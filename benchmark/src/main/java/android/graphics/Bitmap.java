@@ -0,0 +1,78 @@
+package android.graphics;
+
+import java.util.Arrays;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android的Bitmap，只有一个ARGB像素数组
+ * Plain JVM stand-in for the Android class, used when running the benchmarks. Backed by an array of
+ * ARGB pixels.
+ */
+public final class Bitmap {
+
+    public enum Config {
+        ALPHA_8(1),
+        RGB_565(2),
+        ARGB_4444(2),
+        ARGB_8888(4);
+
+        final int bytesPerPixel;
+
+        Config(int bytesPerPixel) {
+            this.bytesPerPixel = bytesPerPixel;
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Config mConfig;
+    private final int[] mPixels;
+
+    private Bitmap(int width, int height, Config config) {
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mPixels = new int[width * height];
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config) {
+        return new Bitmap(width, height, config);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public Config getConfig() {
+        return mConfig;
+    }
+
+    public boolean hasAlpha() {
+        return mConfig != Config.RGB_565;
+    }
+
+    public int getRowBytes() {
+        return mWidth * mConfig.bytesPerPixel;
+    }
+
+    public int getByteCount() {
+        return getRowBytes() * mHeight;
+    }
+
+    public int getAllocationByteCount() {
+        return getByteCount();
+    }
+
+    public void eraseColor(int color) {
+        Arrays.fill(mPixels, color);
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(mPixels, (y + row) * mWidth + x, pixels, offset + row * stride, width);
+        }
+    }
+}
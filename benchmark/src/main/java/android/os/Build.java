@@ -0,0 +1,25 @@
+package android.os;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android的Build，假装运行在最新的平台上
+ * Plain JVM stand-in for the Android class, used when running the benchmarks. Pretends to run on
+ * the latest platform.
+ */
+public final class Build {
+
+    private Build() {
+    }
+
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.N_MR1;
+    }
+
+    public static class VERSION_CODES {
+        public static final int GINGERBREAD = 9;
+        public static final int HONEYCOMB = 11;
+        public static final int HONEYCOMB_MR1 = 12;
+        public static final int KITKAT = 19;
+        public static final int LOLLIPOP = 21;
+        public static final int N_MR1 = 25;
+    }
+}
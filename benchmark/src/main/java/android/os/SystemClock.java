@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android的SystemClock
+ * Plain JVM stand-in for the Android class, used when running the benchmarks.
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,12 @@
+package android.support.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * 在普通JVM上运行基准测试时代替support库的注解
+ * Plain JVM stand-in for the support library annotation, used when running the benchmarks.
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface VisibleForTesting {
+}
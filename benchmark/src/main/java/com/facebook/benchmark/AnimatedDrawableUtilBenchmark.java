@@ -0,0 +1,62 @@
+package com.facebook.benchmark;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.common.util.AnimatedDrawableUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量每次绘制时根据时间戳查找帧的耗时
+ * Measures the frame lookup done on every draw to map a timestamp to a frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AnimatedDrawableUtilBenchmark {
+
+    private static final int TIMESTAMPS = 1024;
+
+    @Param({"8", "64", "512"})
+    public int frameCount;
+
+    private AnimatedDrawableUtil mAnimatedDrawableUtil;
+    private int[] mFrameTimestampsMs;
+    private int[] mTimestampsMs;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mAnimatedDrawableUtil = new AnimatedDrawableUtil();
+        Random random = new Random(42);
+        int[] frameDurationsMs = new int[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frameDurationsMs[i] = 20 + random.nextInt(80);
+        }
+        mAnimatedDrawableUtil.fixFrameDurations(frameDurationsMs);
+        mFrameTimestampsMs = mAnimatedDrawableUtil.getFrameTimeStampsFromDurations(frameDurationsMs);
+        int totalDurationMs = mAnimatedDrawableUtil.getTotalDurationFromFrameDurations(frameDurationsMs);
+        mTimestampsMs = new int[TIMESTAMPS];
+        for (int i = 0; i < TIMESTAMPS; i++) {
+            mTimestampsMs[i] = random.nextInt(totalDurationMs);
+        }
+    }
+
+    @Benchmark
+    public int getFrameForTimestampMs() {
+        mIndex = (mIndex + 1) & (TIMESTAMPS - 1);
+        return mAnimatedDrawableUtil.getFrameForTimestampMs(mFrameTimestampsMs, mTimestampsMs[mIndex]);
+    }
+}
@@ -0,0 +1,142 @@
+package com.facebook.benchmark;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import android.util.SparseIntArray;
+
+import com.facebook.common.s.ByteConstants;
+import com.facebook.pool.BasePool;
+import com.facebook.pool.poolParams.PoolParams;
+import com.facebook.pool.poolUtil.NoOpPoolStatsTracker;
+import com.facebook.trimmable.NoOpMemoryTrimmableRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测量{@link BasePool}的get/release，分配器是假的，所以测量的只是pool自身的记账开销
+ * Measures get/release on {@link BasePool}. The allocator is fake, so only the bookkeeping of the
+ * pool itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BasePoolBenchmark {
+
+    private static final int MIN_BUCKET_SIZE = 16 * ByteConstants.KB;
+    private static final int MAX_BUCKET_SIZE = 1 * ByteConstants.MB;
+    private static final int BUCKET_LENGTH = 8;
+
+    @Param({"false", "true"})
+    public boolean concurrent;
+
+    private FakeBytePool mPool;
+
+    @Setup
+    public void setUp() {
+        SparseIntArray bucketSizes = new SparseIntArray();
+        for (int size = MIN_BUCKET_SIZE; size <= MAX_BUCKET_SIZE; size *= 2) {
+            bucketSizes.put(size, BUCKET_LENGTH);
+        }
+        mPool = new FakeBytePool(new PoolParams(
+                64 * ByteConstants.MB,
+                128 * ByteConstants.MB,
+                bucketSizes,
+                0,
+                Integer.MAX_VALUE,
+                PoolParams.IGNORE_THREADS,
+                concurrent));
+    }
+
+    @Benchmark
+    public byte[] getAndRelease() {
+        byte[] value = mPool.get(100 * ByteConstants.KB);
+        mPool.release(value);
+        return value;
+    }
+
+    /**
+     * 每个线程请求不同的大小，就像多个解码线程一样
+     * Every thread requests a different size, like several decode threads do.
+     */
+    @Benchmark
+    @Threads(4)
+    public byte[] getAndReleaseContended(RequestSize requestSize) {
+        byte[] value = mPool.get(requestSize.size);
+        mPool.release(value);
+        return value;
+    }
+
+    @State(Scope.Thread)
+    public static class RequestSize {
+
+        private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+        int size;
+
+        @Setup
+        public void setUp() {
+            size = (MIN_BUCKET_SIZE << (sThreadCount.getAndIncrement() % 4)) - 1;
+        }
+    }
+
+    /**
+     * 一个在Java堆上分配的pool，预热之后所有的请求都会从pool中得到满足，所以不会测量到分配器和GC
+     * A pool allocating on the Java heap. After warm-up all requests are served from the free lists,
+     * so the benchmark doesn't measure the allocator or the GC.
+     */
+    static class FakeBytePool extends BasePool<byte[]> {
+
+        private final SparseIntArray mBucketSizes;
+
+        FakeBytePool(PoolParams poolParams) {
+            super(
+                    NoOpMemoryTrimmableRegistry.getInstance(),
+                    poolParams,
+                    NoOpPoolStatsTracker.getInstance());
+            mBucketSizes = poolParams.bucketSizes;
+            initialize();
+        }
+
+        @Override
+        protected byte[] alloc(int bucketedSize) {
+            return new byte[bucketedSize];
+        }
+
+        @Override
+        protected void free(byte[] value) {
+        }
+
+        @Override
+        protected int getBucketedSize(int requestSize) {
+            for (int i = 0; i < mBucketSizes.size(); i++) {
+                if (mBucketSizes.keyAt(i) >= requestSize) {
+                    return mBucketSizes.keyAt(i);
+                }
+            }
+            return requestSize;
+        }
+
+        @Override
+        protected int getBucketedSizeForValue(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        protected int getSizeInBytes(int bucketedSize) {
+            return bucketedSize;
+        }
+    }
+}
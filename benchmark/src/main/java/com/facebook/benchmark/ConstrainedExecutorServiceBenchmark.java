@@ -0,0 +1,73 @@
+package com.facebook.benchmark;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.executor.serialExecutor.ConstrainedExecutorService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量{@link ConstrainedExecutorService}执行大量小任务的吞吐量
+ * Measures the throughput of {@link ConstrainedExecutorService} running many small tasks on a
+ * shared thread pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConstrainedExecutorServiceBenchmark {
+
+    private static final int TASKS = 1000;
+
+    @Param({"1", "4"})
+    public int maxConcurrency;
+
+    private ExecutorService mDelegate;
+    private ConstrainedExecutorService mExecutor;
+
+    @Setup
+    public void setUp() {
+        mDelegate = Executors.newFixedThreadPool(4);
+        mExecutor = ConstrainedExecutorService.newConstrainedExecutor(
+                "Benchmark",
+                maxConcurrency,
+                Integer.MAX_VALUE,
+                mDelegate);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDelegate.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void executeTasks() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(TASKS);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < TASKS; i++) {
+            mExecutor.execute(task);
+        }
+        latch.await();
+    }
+}
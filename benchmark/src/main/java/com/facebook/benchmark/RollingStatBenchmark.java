@@ -0,0 +1,66 @@
+package com.facebook.benchmark;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.common.RollingStat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量每一帧都会调用的{@link RollingStat#incrementStats(int)}
+ * Measures {@link RollingStat#incrementStats(int)}, which is called for every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RollingStatBenchmark {
+
+    private RollingStat mRollingStat;
+
+    @Setup
+    public void setUp() {
+        mRollingStat = new RollingStat();
+    }
+
+    @Benchmark
+    public void incrementStats() {
+        mRollingStat.incrementStats(1);
+    }
+
+    @Benchmark
+    public int incrementStatsAndGetSum() {
+        mRollingStat.incrementStats(1);
+        return mRollingStat.getSum(10);
+    }
+
+    @Benchmark
+    public int getPercentile() {
+        return mRollingStat.getPercentile(10, 90);
+    }
+
+    /**
+     * 多个线程同时上报，就像UI线程和预读线程那样
+     * Several threads reporting at once, like the UI thread and the prefetch threads do.
+     */
+    @Benchmark
+    @Threads(4)
+    public void incrementStatsContended(SharedStat sharedStat) {
+        sharedStat.rollingStat.incrementStats(1);
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedStat {
+        final RollingStat rollingStat = new RollingStat();
+    }
+}
@@ -0,0 +1,62 @@
+package com.facebook.benchmark;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.references.ResourceReleaser;
+import com.facebook.references.SharedReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量{@link SharedReference}的引用计数，包括多个线程竞争同一个引用以及创建和释放引用的开销
+ * Measures the reference counting of {@link SharedReference}, both with threads contending on the
+ * same reference and for the creation and release of references, which go through the global map
+ * of live values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SharedReferenceBenchmark {
+
+    private static final ResourceReleaser<Object> NO_OP_RELEASER = new ResourceReleaser<Object>() {
+        @Override
+        public void release(Object value) {
+        }
+    };
+
+    private SharedReference<Object> mSharedReference;
+
+    @Setup
+    public void setUp() {
+        mSharedReference = new SharedReference<Object>(new Object(), NO_OP_RELEASER);
+    }
+
+    @Benchmark
+    public void addAndDeleteReference() {
+        mSharedReference.addReference();
+        mSharedReference.deleteReference();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addAndDeleteReferenceContended() {
+        addAndDeleteReference();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void createAndDeleteContended() {
+        new SharedReference<Object>(new Object(), NO_OP_RELEASER).deleteReference();
+    }
+}
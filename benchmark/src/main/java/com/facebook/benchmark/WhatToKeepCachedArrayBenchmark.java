@@ -0,0 +1,61 @@
+package com.facebook.benchmark;
+
+/**
+ * Created by Administrator on 2017/3/28 0028.
+ */
+
+import com.facebook.factoryAndProvider.animatedFactory.animatedDrawableFactory.other.WhatToKeepCachedArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量预取时对需要缓存的帧的标记的更新
+ * Measures the updates of the frames to keep cached done on every prefetch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WhatToKeepCachedArrayBenchmark {
+
+    private static final int PREFETCH_WINDOW = 3;
+
+    @Param({"8", "64", "512"})
+    public int frameCount;
+
+    private WhatToKeepCachedArray mWhatToKeepCached;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mWhatToKeepCached = new WhatToKeepCachedArray(frameCount);
+    }
+
+    @Benchmark
+    public void setAll() {
+        mWhatToKeepCached.setAll(true);
+    }
+
+    /**
+     * 模拟预取：保留当前帧之后的几帧，去掉窗口之外的帧
+     * Mimics a prefetch: keeps the frames ahead of the current one and drops the rest.
+     */
+    @Benchmark
+    public boolean prefetchWindow() {
+        mFrame = (mFrame + 1) % frameCount;
+        int end = (mFrame + PREFETCH_WINDOW) % frameCount;
+        for (int i = 0; i < PREFETCH_WINDOW; i++) {
+            mWhatToKeepCached.set((mFrame + i) % frameCount, true);
+        }
+        mWhatToKeepCached.removeOutsideRange(mFrame, end);
+        return mWhatToKeepCached.get(end);
+    }
+}